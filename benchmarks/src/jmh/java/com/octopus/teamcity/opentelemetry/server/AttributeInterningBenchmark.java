@@ -0,0 +1,79 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import com.octopus.teamcity.opentelemetry.server.synthetic.SyntheticBuildChain;
+import jetbrains.buildServer.serverSide.SRunningBuild;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The heap held by the finished spans of a build with a large test suite, while they wait to be exported, with and
+ * without the chain's attribute values being shared (<code>maxInterned</code> of 0 turns the sharing off). The spans
+ * are kept by the exporter rather than thrown away, and the heap retained by them is reported as the
+ * <code>retainedBytes</code> counter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class AttributeInterningBenchmark {
+
+    @Param({"50000"})
+    public int tests;
+
+    @Param({"0", "4096"})
+    public int maxInterned;
+
+    private SRunningBuild build;
+    private BufferingSpanExporter spanExporter;
+    private BenchmarkListener benchmarkListener;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class RetainedHeap {
+        public long retainedBytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        build = SyntheticBuildChain.builder(1)
+                .withDependencies(0)
+                .withStepsPerBuild(0)
+                .withTestsPerBuild(tests)
+                .build()
+                .getRoot();
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() {
+        spanExporter = new BufferingSpanExporter();
+        benchmarkListener = new BenchmarkListener(spanExporter, maxInterned);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDownInvocation() {
+        benchmarkListener.close();
+        spanExporter = null;
+    }
+
+    @Benchmark
+    public void createTestExecutionSpans(RetainedHeap retainedHeap, Blackhole blackhole) {
+        var before = usedHeap();
+        var listener = benchmarkListener.getListener();
+        var buildSpan = benchmarkListener.getOTELHelper().getOrCreateParentSpan(1L);
+        var testBlocks = listener.createBuildStepSpans(build, buildSpan);
+        listener.createTestExecutionSpans(build, buildSpan, "Root", testBlocks);
+        retainedHeap.retainedBytes += usedHeap() - before;
+        blackhole.consume(spanExporter.size());
+    }
+
+    private static long usedHeap() {
+        var runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,122 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import com.octopus.teamcity.opentelemetry.common.PluginConstants;
+import com.octopus.teamcity.opentelemetry.server.artifacts.ArtifactSizeCalculator;
+import com.octopus.teamcity.opentelemetry.server.baselines.DurationBaselines;
+import com.octopus.teamcity.opentelemetry.server.helpers.OTELHelper;
+import com.octopus.teamcity.opentelemetry.server.helpers.OTELHelperFactory;
+import com.octopus.teamcity.opentelemetry.server.helpers.OTELHelperImpl;
+import com.octopus.teamcity.opentelemetry.server.telemetry.PluginTelemetry;
+import com.octopus.teamcity.opentelemetry.server.processors.SpanProcessorFactory;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import jetbrains.buildServer.serverSide.BuildPromotion;
+import jetbrains.buildServer.serverSide.TeamCityNodes;
+import jetbrains.buildServer.util.EventDispatcher;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * A <code>TeamCityBuildListener</code> wired to a single real <code>OTELHelperImpl</code>, whose spans are ended
+ * and converted to span data as usual, then thrown away by a no-op exporter. By default the spans are exported
+ * synchronously as they end; {@link #withProductionProcessor} puts them through the same processors as the server.
+ */
+class BenchmarkListener implements AutoCloseable {
+    private final OTELHelperImpl otelHelper;
+    private final TeamCityBuildListener listener;
+
+    BenchmarkListener() {
+        this(new NoopSpanExporter(), PluginConstants.ATTRIBUTE_VALUES_MAX_INTERNED);
+    }
+
+    BenchmarkListener(SpanExporter spanExporter, int maxInternedAttributeValues) {
+        this(SimpleSpanProcessor.create(spanExporter), maxInternedAttributeValues, ParallelTestSpans.fromServerProperties());
+    }
+
+    private BenchmarkListener(SpanProcessor spanProcessor, int maxInternedAttributeValues, ParallelTestSpans parallelTestSpans) {
+        this.otelHelper = new OTELHelperImpl(spanProcessor, null, "benchmark", maxInternedAttributeValues);
+        var nodes = mock(TeamCityNodes.class, withSettings().defaultAnswer(RETURNS_DEEP_STUBS).stubOnly());
+        when(nodes.getCurrentNode().isMainNode()).thenReturn(true);
+        var helperFactory = new OTELHelperFactory() {
+            @Override
+            public OTELHelper getOTELHelper(BuildPromotion build) {
+                return otelHelper;
+            }
+
+            @Override
+            public void release(Long buildId) {
+            }
+
+            @Override
+            public void shutdown(Duration timeout) {
+            }
+        };
+        var pluginTelemetry = new PluginTelemetry(null, "benchmark");
+        //noinspection unchecked
+        this.listener = new TeamCityBuildListener(
+                mock(EventDispatcher.class, withSettings().stubOnly()),
+                helperFactory,
+                mock(BuildStorageManager.class, withSettings().stubOnly()),
+                nodes,
+                pluginTelemetry,
+                new ArtifactSizeCalculator(),
+                new BuildUtilisationMetrics(pluginTelemetry),
+                new DurationBaselines((Path) null),
+                new ChainSummaries(pluginTelemetry),
+                parallelTestSpans);
+    }
+
+    /**
+     * Exports through the processors <code>SpanProcessorFactory</code> builds for the server (batching, retries,
+     * circuit breaker and span metrics), so ending a span only queues it, as it does in production. The queue holds at
+     * least <code>minQueueSize</code> spans, so a build's spans can all be queued without any being dropped.
+     */
+    static BenchmarkListener withProductionProcessor(ParallelTestSpans parallelTestSpans, SpanExporter spanExporter, int minQueueSize) {
+        var maxQueueSize = Math.max(minQueueSize, PluginConstants.BATCH_SPAN_PROCESSOR_MAX_QUEUE_SIZE);
+        var spanProcessor = new SpanProcessorFactory(new PluginTelemetry(null, "benchmark"), maxQueueSize)
+                .create(spanExporter, "benchmark", "benchmark", null);
+        return new BenchmarkListener(spanProcessor, PluginConstants.ATTRIBUTE_VALUES_MAX_INTERNED, parallelTestSpans);
+    }
+
+    void forceFlush() {
+        otelHelper.forceFlush(Duration.ofMinutes(1));
+    }
+
+    TeamCityBuildListener getListener() {
+        return listener;
+    }
+
+    OTELHelperImpl getOTELHelper() {
+        return otelHelper;
+    }
+
+    @Override
+    public void close() {
+        otelHelper.release("benchmark");
+    }
+
+    private static class NoopSpanExporter implements SpanExporter {
+        @Override
+        public CompletableResultCode export(@NotNull Collection<SpanData> spans) {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode flush() {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode shutdown() {
+            return CompletableResultCode.ofSuccess();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Keeps every span exported to it, rather than throwing them away; for benchmarks that need the finished spans.
+ */
+class BufferingSpanExporter implements SpanExporter {
+    private final List<SpanData> spans = new ArrayList<>();
+
+    @Override
+    public synchronized CompletableResultCode export(@NotNull Collection<SpanData> spans) {
+        this.spans.addAll(spans);
+        return CompletableResultCode.ofSuccess();
+    }
+
+    synchronized List<SpanData> getSpans() {
+        return new ArrayList<>(spans);
+    }
+
+    synchronized int size() {
+        return spans.size();
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        return CompletableResultCode.ofSuccess();
+    }
+}
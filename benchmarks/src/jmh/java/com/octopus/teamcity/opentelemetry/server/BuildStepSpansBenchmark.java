@@ -0,0 +1,53 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import com.octopus.teamcity.opentelemetry.server.synthetic.SyntheticBuildChain;
+import io.opentelemetry.api.trace.Span;
+import jetbrains.buildServer.serverSide.SRunningBuild;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Block spans for a build whose steps each contain a chain of nested blocks, <code>blockDepth</code> deep.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class BuildStepSpansBenchmark {
+
+    @Param({"20"})
+    public int steps;
+
+    @Param({"1", "10", "50"})
+    public int blockDepth;
+
+    private BenchmarkListener benchmarkListener;
+    private SRunningBuild build;
+    private Span buildSpan;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        benchmarkListener = new BenchmarkListener();
+        build = SyntheticBuildChain.builder(1)
+                .withDependencies(0)
+                .withStepsPerBuild(steps)
+                .withBlockDepth(blockDepth)
+                .withTestsPerBuild(0)
+                .build()
+                .getRoot();
+        buildSpan = benchmarkListener.getOTELHelper().getOrCreateParentSpan(1L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        benchmarkListener.close();
+    }
+
+    @Benchmark
+    public BuildBlockIndex createBuildStepSpans() {
+        return benchmarkListener.getListener().createBuildStepSpans(build, buildSpan);
+    }
+}
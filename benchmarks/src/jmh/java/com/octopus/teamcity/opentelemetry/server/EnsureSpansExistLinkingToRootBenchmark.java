@@ -0,0 +1,65 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import com.octopus.teamcity.opentelemetry.server.synthetic.SyntheticBuildChain;
+import io.opentelemetry.api.trace.Span;
+import jetbrains.buildServer.serverSide.BuildPromotion;
+import jetbrains.buildServer.serverSide.SRunningBuild;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Walking from the deepest build of a linear chain up to the root, creating the span of every build on the way.
+ * <p>
+ * <code>cached</code> measures the walk when every span already exists (any build starting after its dependencies);
+ * otherwise the spans are removed after each walk, so each one is created again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class EnsureSpansExistLinkingToRootBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int depth;
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private BenchmarkListener benchmarkListener;
+    private BuildPromotion deepest;
+    private BuildPromotion root;
+    private List<SRunningBuild> dependencies;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        benchmarkListener = new BenchmarkListener();
+        var chain = SyntheticBuildChain.builder(1)
+                .withFanOut(1)
+                .withDepth(depth)
+                .build();
+        dependencies = chain.getDependencies();
+        deepest = dependencies.get(0).getBuildPromotion();
+        root = chain.getRoot().getBuildPromotion();
+        benchmarkListener.getOTELHelper().getOrCreateParentSpan(root.getId());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        benchmarkListener.close();
+    }
+
+    @Benchmark
+    public Span ensureSpansExistLinkingToRoot() {
+        var otelHelper = benchmarkListener.getOTELHelper();
+        var span = benchmarkListener.getListener().ensureSpansExistLinkingToRoot(otelHelper, deepest, root);
+        if (!cached) {
+            for (var dependency : dependencies)
+                otelHelper.removeSpan(dependency.getBuildId());
+        }
+        return span;
+    }
+}
@@ -0,0 +1,35 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Masking api keys out of a log message, with and without a key to replace.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class LogMaskerBenchmark {
+
+    @Param({"NO_KEY", "ONE_KEY"})
+    public String message;
+
+    private String text;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        var prefix = "Setting OTLP headers for endpoint https://api.honeycomb.io:443 and dataset teamcity-builds, ";
+        text = message.equals("ONE_KEY")
+                ? prefix + "x-honeycomb-team=abcdefghij0123456789abcdefghij0"
+                : prefix + "x-honeycomb-team=<redacted>";
+    }
+
+    @Benchmark
+    public String mask() {
+        return LogMasker.mask(text);
+    }
+}
@@ -0,0 +1,100 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import com.octopus.teamcity.opentelemetry.server.synthetic.SyntheticBuildChain;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import jetbrains.buildServer.serverSide.SRunningBuild;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The test spans of a build with a very large test suite, created on the listener's thread (a parallelism of 1) and
+ * on the shared test span pool; the same work as <code>TestExecutionSpansBenchmark</code>, timed per build.
+ * <p>
+ * The spans go through the server's own batching processor, as a synchronous processor would serialise the pool's
+ * threads on the exporter. The queue is big enough for every span of a build, and is flushed after each build,
+ * outside the timing, so every build starts with it empty; if fewer spans than tests were exported, some were dropped,
+ * and the benchmark fails rather than timing the drops.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ParallelTestSpansBenchmark {
+
+    @Param({"10000", "50000", "100000"})
+    public int tests;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private BenchmarkListener benchmarkListener;
+    private ParallelTestSpans parallelTestSpans;
+    private SRunningBuild build;
+    private Span buildSpan;
+    private CountingSpanExporter spanExporter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        parallelTestSpans = new ParallelTestSpans(parallelism, 0);
+        spanExporter = new CountingSpanExporter();
+        // room for the build's other spans too
+        benchmarkListener = BenchmarkListener.withProductionProcessor(parallelTestSpans, spanExporter, 2 * tests);
+        build = SyntheticBuildChain.builder(1)
+                .withDependencies(0)
+                .withStepsPerBuild(0)
+                .withTestsPerBuild(tests)
+                .build()
+                .getRoot();
+        buildSpan = benchmarkListener.getOTELHelper().getOrCreateParentSpan(1L);
+    }
+
+    @TearDown(Level.Invocation)
+    public void flush() {
+        benchmarkListener.forceFlush();
+        var exported = spanExporter.exported.getAndSet(0);
+        if (exported < tests)
+            throw new IllegalStateException(String.format("Only %d spans were exported for %d tests; the rest were dropped.", exported, tests));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        parallelTestSpans.shutdown();
+        benchmarkListener.close();
+    }
+
+    @Benchmark
+    public void createTestExecutionSpans() {
+        var listener = benchmarkListener.getListener();
+        var testBlocks = listener.createBuildStepSpans(build, buildSpan);
+        listener.createTestExecutionSpans(build, buildSpan, "Root", testBlocks);
+    }
+
+    private static class CountingSpanExporter implements SpanExporter {
+        private final AtomicLong exported = new AtomicLong();
+
+        @Override
+        public CompletableResultCode export(@NotNull Collection<SpanData> spans) {
+            exported.addAndGet(spans.size());
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode flush() {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode shutdown() {
+            return CompletableResultCode.ofSuccess();
+        }
+    }
+}
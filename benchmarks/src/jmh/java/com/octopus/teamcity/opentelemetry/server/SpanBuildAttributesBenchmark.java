@@ -0,0 +1,44 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import com.octopus.teamcity.opentelemetry.server.synthetic.SyntheticBuildChain;
+import io.opentelemetry.api.trace.Span;
+import jetbrains.buildServer.serverSide.SRunningBuild;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The build attributes that are copied onto every build, block, queue and test span.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class SpanBuildAttributesBenchmark {
+
+    private BenchmarkListener benchmarkListener;
+    private SRunningBuild build;
+    private Span span;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        benchmarkListener = new BenchmarkListener();
+        build = SyntheticBuildChain.builder(1)
+                .withDependencies(0)
+                .build()
+                .getRoot();
+        span = benchmarkListener.getOTELHelper().getOrCreateParentSpan(1L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        benchmarkListener.close();
+    }
+
+    @Benchmark
+    public void setSpanBuildAttributes() {
+        benchmarkListener.getListener().setSpanBuildAttributes(benchmarkListener.getOTELHelper(), build, span, "Root", TeamCityBuildListener.BUILD_SERVICE_NAME);
+    }
+}
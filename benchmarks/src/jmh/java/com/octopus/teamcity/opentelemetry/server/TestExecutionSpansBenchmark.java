@@ -0,0 +1,52 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import com.octopus.teamcity.opentelemetry.server.synthetic.SyntheticBuildChain;
+import io.opentelemetry.api.trace.Span;
+import jetbrains.buildServer.serverSide.SRunningBuild;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One <code>Tests</code> span plus a span per test, as created when a build with a large test suite finishes. This
+ * includes indexing the test blocks in the build log, which the listener does while creating the build step spans.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class TestExecutionSpansBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int tests;
+
+    private BenchmarkListener benchmarkListener;
+    private SRunningBuild build;
+    private Span buildSpan;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        benchmarkListener = new BenchmarkListener();
+        build = SyntheticBuildChain.builder(1)
+                .withDependencies(0)
+                .withStepsPerBuild(0)
+                .withTestsPerBuild(tests)
+                .build()
+                .getRoot();
+        buildSpan = benchmarkListener.getOTELHelper().getOrCreateParentSpan(1L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        benchmarkListener.close();
+    }
+
+    @Benchmark
+    public void createTestExecutionSpans() {
+        var listener = benchmarkListener.getListener();
+        var testBlocks = listener.createBuildStepSpans(build, buildSpan);
+        listener.createTestExecutionSpans(build, buildSpan, "Root", testBlocks);
+    }
+}
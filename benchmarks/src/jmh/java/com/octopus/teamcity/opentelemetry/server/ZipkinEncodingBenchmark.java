@@ -0,0 +1,136 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import com.octopus.teamcity.opentelemetry.server.synthetic.SyntheticBuildChain;
+import io.opentelemetry.exporter.zipkin.ZipkinSpanExporter;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import org.openjdk.jmh.annotations.*;
+import zipkin2.reporter.BytesMessageSender;
+import zipkin2.reporter.Encoding;
+import zipkin2.reporter.SpanBytesEncoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The cost of turning a batch of test spans into the body of a Zipkin request, for each encoding, with and without
+ * gzip: the time per batch, and the size of the body (the <code>bytesPerBatch</code> counter). The request isn't
+ * sent; the body is built the way the Zipkin HTTP sender builds it, then thrown away.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ZipkinEncodingBenchmark {
+
+    @Param({"512", "8192"})
+    public int batchSize;
+
+    @Param({"json", "proto3"})
+    public String encoding;
+
+    @Param({"none", "gzip"})
+    public String compression;
+
+    private List<SpanData> batch;
+    private ZipkinSpanExporter spanExporter;
+    private BodySizeSender sender;
+
+    // EVENTS rather than OPERATIONS, which JMH would divide by the time taken; the body is the same size every time, so
+    // the counter is set rather than added to, and is reported as the size of one batch
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class BatchBytes {
+        public long bytesPerBatch;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        var bufferingSpanExporter = new BufferingSpanExporter();
+        var benchmarkListener = new BenchmarkListener(bufferingSpanExporter, 0);
+        var build = SyntheticBuildChain.builder(1)
+                .withDependencies(0)
+                .withStepsPerBuild(0)
+                .withTestsPerBuild(batchSize)
+                .build()
+                .getRoot();
+        var listener = benchmarkListener.getListener();
+        var buildSpan = benchmarkListener.getOTELHelper().getOrCreateParentSpan(1L);
+        listener.createTestExecutionSpans(build, buildSpan, "Root", listener.createBuildStepSpans(build, buildSpan));
+        benchmarkListener.close();
+        batch = bufferingSpanExporter.getSpans();
+
+        var proto3 = encoding.equals("proto3");
+        sender = new BodySizeSender(proto3 ? Encoding.PROTO3 : Encoding.JSON, compression.equals("gzip"));
+        spanExporter = ZipkinSpanExporter.builder()
+                .setSender(sender)
+                .setEncoder(proto3 ? SpanBytesEncoder.PROTO3 : SpanBytesEncoder.JSON_V2)
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        spanExporter.shutdown();
+    }
+
+    @Benchmark
+    public void exportBatch(BatchBytes batchBytes) {
+        spanExporter.export(batch).join(10, TimeUnit.SECONDS);
+        batchBytes.bytesPerBatch = sender.lastBodySize;
+    }
+
+    private static class BodySizeSender implements BytesMessageSender {
+        private final Encoding encoding;
+        private final boolean gzip;
+        private volatile long lastBodySize;
+
+        BodySizeSender(Encoding encoding, boolean gzip) {
+            this.encoding = encoding;
+            this.gzip = gzip;
+        }
+
+        @Override
+        public Encoding encoding() {
+            return encoding;
+        }
+
+        @Override
+        public int messageMaxBytes() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public int messageSizeInBytes(List<byte[]> encodedSpans) {
+            return encoding.listSizeInBytes(encodedSpans);
+        }
+
+        @Override
+        public int messageSizeInBytes(int encodedSizeInBytes) {
+            return encoding.listSizeInBytes(encodedSizeInBytes);
+        }
+
+        @Override
+        public void send(List<byte[]> encodedSpans) throws IOException {
+            var body = new ByteArrayOutputStream(encoding.listSizeInBytes(encodedSpans));
+            try (OutputStream out = gzip ? new GZIPOutputStream(body) : body) {
+                // a JSON list, or proto3 list fields, which are just the encoded spans one after another
+                if (encoding == Encoding.JSON) out.write('[');
+                for (int i = 0; i < encodedSpans.size(); i++) {
+                    if (i > 0 && encoding == Encoding.JSON) out.write(',');
+                    out.write(encodedSpans.get(i));
+                }
+                if (encoding == Encoding.JSON) out.write(']');
+            }
+            lastBodySize = body.size();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.octopus.teamcity.opentelemetry.server.load;
+
+import java.util.Arrays;
+
+/**
+ * Every latency recorded for one kind of listener call, kept in full so the percentiles are exact.
+ */
+class LatencySamples {
+    private final String name;
+    private long[] samples = new long[1024];
+    private int count;
+
+    LatencySamples(String name) {
+        this.name = name;
+    }
+
+    synchronized void record(long nanos) {
+        if (count == samples.length)
+            samples = Arrays.copyOf(samples, samples.length * 2);
+        samples[count++] = nanos;
+    }
+
+    synchronized String summarise() {
+        if (count == 0)
+            return String.format("%-16s no calls", name);
+        var sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return String.format("%-16s %8d calls  p50 %9.3f ms  p90 %9.3f ms  p99 %9.3f ms  max %9.3f ms",
+                name, count, millis(sorted, 0.50), millis(sorted, 0.90), millis(sorted, 0.99), sorted[count - 1] / 1_000_000.0);
+    }
+
+    private static double millis(long[] sorted, double quantile) {
+        var index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+}
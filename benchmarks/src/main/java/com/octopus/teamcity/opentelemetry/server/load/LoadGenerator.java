@@ -0,0 +1,252 @@
+package com.octopus.teamcity.opentelemetry.server.load;
+
+import com.octopus.teamcity.opentelemetry.server.BuildStorageManager;
+import com.octopus.teamcity.opentelemetry.server.BuildUtilisationMetrics;
+import com.octopus.teamcity.opentelemetry.server.ChainSummaries;
+import com.octopus.teamcity.opentelemetry.server.TeamCityBuildListener;
+import com.octopus.teamcity.opentelemetry.server.artifacts.ArtifactSizeCalculator;
+import com.octopus.teamcity.opentelemetry.server.baselines.DurationBaselines;
+import com.octopus.teamcity.opentelemetry.server.endpoints.OTELEndpointFactory;
+import com.octopus.teamcity.opentelemetry.server.endpoints.OTELService;
+import com.octopus.teamcity.opentelemetry.server.endpoints.file.OtlpJsonSegmentWriterRegistry;
+import com.octopus.teamcity.opentelemetry.server.helpers.HelperPerBuildOTELHelperFactory;
+import com.octopus.teamcity.opentelemetry.server.processors.SpanProcessorFactory;
+import com.octopus.teamcity.opentelemetry.server.receivers.OtlpGrpcTestReceiver;
+import com.octopus.teamcity.opentelemetry.server.synthetic.SyntheticBuildChain;
+import com.octopus.teamcity.opentelemetry.server.telemetry.PluginTelemetry;
+import jetbrains.buildServer.serverSide.ProjectManager;
+import jetbrains.buildServer.serverSide.SProject;
+import jetbrains.buildServer.serverSide.SProjectFeatureDescriptor;
+import jetbrains.buildServer.serverSide.SRunningBuild;
+import jetbrains.buildServer.serverSide.TeamCityNodes;
+import jetbrains.buildServer.util.EventDispatcher;
+import jetbrains.buildServer.web.openapi.PluginDescriptor;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Replays synthetic build chains against <code>TeamCityBuildListener</code> from many threads, exporting over gRPC
+ * to an in-process receiver, and reports how the listener held up: call latency percentiles, throughput, heap
+ * growth, thread count and dropped spans.
+ * <p>
+ * Each thread keeps a few chains in flight and randomly picks which one to advance next, so
+ * <code>buildStarted</code> and <code>buildFinished</code> calls for different builds and chains interleave the way
+ * they do on a busy server. Within a chain, a build starts before the previous one finishes, and the root build
+ * finishes last (which flushes and releases the chain's exporter).
+ * <p>
+ * Run with <code>./gradlew :benchmarks:run --args="--chains=500 --threads=32 --tests=1000"</code>; see
+ * {@link LoadProfile} for the shape options.
+ */
+public class LoadGenerator {
+    private final LoadProfile profile;
+    private final LatencySamples started = new LatencySamples("buildStarted");
+    private final LatencySamples finished = new LatencySamples("buildFinished");
+    private final LatencySamples rootFinished = new LatencySamples("root finished");
+
+    private LoadGenerator(LoadProfile profile) {
+        this.profile = profile;
+    }
+
+    public static void main(String[] args) throws Exception {
+        var profile = LoadProfile.fromArgs(args);
+        System.out.println("Load profile: " + profile);
+        new LoadGenerator(profile).run();
+        // gRPC and exporter threads may outlive the run
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        try (var receiver = new OtlpGrpcTestReceiver()) {
+            receiver.countSpansOnly();
+            if (profile.getReceiverLatencyMs() > 0)
+                receiver.faults().withLatency(Duration.ofMillis(profile.getReceiverLatencyMs()));
+            if (profile.getReceiverFailureRate() > 0)
+                receiver.faults().withFailureRate(profile.getReceiverFailureRate());
+
+            var listener = createListener(receiver.getEndpoint());
+            var chains = createChains();
+            var expectedSpans = chains.stream().mapToLong(SyntheticBuildChain::getExpectedSpanCount).sum();
+            var builds = chains.stream().mapToLong(SyntheticBuildChain::getBuildCount).sum();
+            System.out.printf("Created %d chains of %d builds; expecting %d spans%n", chains.size(), chains.get(0).getBuildCount(), expectedSpans);
+
+            var memory = ManagementFactory.getMemoryMXBean();
+            var threads = ManagementFactory.getThreadMXBean();
+            System.gc();
+            var heapBefore = memory.getHeapMemoryUsage().getUsed();
+            var threadsBefore = threads.getThreadCount();
+            threads.resetPeakThreadCount();
+            var peakHeap = new AtomicLong(heapBefore);
+            var sampler = Executors.newSingleThreadScheduledExecutor();
+            sampler.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max), 0, 100, TimeUnit.MILLISECONDS);
+
+            var start = System.nanoTime();
+            drive(listener, chains);
+            var elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+            var drained = receiver.awaitSpans((int) expectedSpans, Duration.ofSeconds(profile.getDrainTimeoutSeconds()));
+            var drainElapsed = Duration.ofNanos(System.nanoTime() - start);
+            sampler.shutdownNow();
+            var peakThreads = threads.getPeakThreadCount();
+            var threadsAfter = threads.getThreadCount();
+            System.gc();
+            var heapAfter = memory.getHeapMemoryUsage().getUsed();
+            var receivedSpans = receiver.getSpanCount();
+
+            var minutes = elapsed.toMillis() / 60_000.0;
+            System.out.println();
+            System.out.println("Listener latency");
+            System.out.println("  " + started.summarise());
+            System.out.println("  " + finished.summarise());
+            System.out.println("  " + rootFinished.summarise());
+            System.out.println("Throughput");
+            System.out.printf("  %d ms to replay, %d ms until the receiver had every span%s%n", elapsed.toMillis(), drainElapsed.toMillis(), drained ? "" : " (timed out)");
+            System.out.printf("  %.0f builds/min, %.0f tests/min, %.0f spans/min%n",
+                    builds / minutes, builds * profile.getTestsPerBuild() / minutes, expectedSpans / minutes);
+            System.out.println("Heap");
+            System.out.printf("  before %d MB, peak %d MB, after %d MB (growth %d MB)%n",
+                    mb(heapBefore), mb(peakHeap.get()), mb(heapAfter), mb(heapAfter - heapBefore));
+            System.out.println("Threads");
+            System.out.printf("  before %d, peak %d, after %d%n", threadsBefore, peakThreads, threadsAfter);
+            System.out.println("Spans");
+            System.out.printf("  expected %d, received %d, dropped %d; %d requests accepted, %d rejected%n",
+                    expectedSpans, receivedSpans, expectedSpans - receivedSpans, receiver.getAcceptedRequestCount(), receiver.getRejectedRequestCount());
+        }
+    }
+
+    private List<SyntheticBuildChain> createChains() {
+        var chains = new ArrayList<SyntheticBuildChain>(profile.getChains());
+        long rootBuildId = 1;
+        for (int i = 0; i < profile.getChains(); i++) {
+            var chain = SyntheticBuildChain.builder(rootBuildId)
+                    .withFanOut(profile.getFanOut())
+                    .withDepth(profile.getDepth())
+                    .withStepsPerBuild(profile.getStepsPerBuild())
+                    .withBlockDepth(profile.getBlockDepth())
+                    .withTestsPerBuild(profile.getTestsPerBuild())
+                    .withArtifactsPerBuild(profile.getArtifactsPerBuild())
+                    .withQueueWaitReasonsPerBuild(profile.getQueueWaitReasonsPerBuild())
+                    .build();
+            chains.add(chain);
+            rootBuildId += chain.getBuildCount();
+        }
+        return chains;
+    }
+
+    private void drive(TeamCityBuildListener listener, List<SyntheticBuildChain> chains) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(profile.getThreads());
+        try {
+            var workers = new ArrayList<Future<?>>();
+            for (int thread = 0; thread < profile.getThreads(); thread++) {
+                var assigned = new ArrayList<ChainReplay>();
+                for (int i = thread; i < chains.size(); i += profile.getThreads())
+                    assigned.add(new ChainReplay(chains.get(i)));
+                var seed = thread;
+                workers.add(executor.submit(() -> replay(listener, assigned, new Random(seed))));
+            }
+            for (var worker : workers)
+                worker.get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void replay(TeamCityBuildListener listener, List<ChainReplay> assigned, Random random) {
+        var pending = new ArrayList<>(assigned);
+        var inFlight = new ArrayList<ChainReplay>();
+        while (!pending.isEmpty() || !inFlight.isEmpty()) {
+            while (inFlight.size() < profile.getChainsInFlightPerThread() && !pending.isEmpty())
+                inFlight.add(pending.remove(pending.size() - 1));
+            var index = random.nextInt(inFlight.size());
+            var chain = inFlight.get(index);
+            chain.advance(listener);
+            if (chain.isDone())
+                inFlight.remove(index);
+        }
+    }
+
+    private static long mb(long bytes) {
+        return bytes / (1024 * 1024);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static TeamCityBuildListener createListener(String endpoint) {
+        // stub-only, as mocks that record their invocations would grow with every build and skew the heap numbers
+        var feature = mock(SProjectFeatureDescriptor.class, withSettings().stubOnly());
+        when(feature.getParameters()).thenReturn(Map.of(
+                PROPERTY_KEY_ENABLED, "true",
+                PROPERTY_KEY_SERVICE, OTELService.CUSTOM.getValue(),
+                PROPERTY_KEY_ENDPOINT, endpoint));
+        var project = mock(SProject.class, withSettings().stubOnly());
+        when(project.getAvailableFeaturesOfType(PLUGIN_NAME)).thenReturn(List.of(feature));
+        var projectManager = mock(ProjectManager.class, withSettings().stubOnly());
+        when(projectManager.findProjectByExternalId(SyntheticBuildChain.PROJECT_EXTERNAL_ID)).thenReturn(project);
+
+        var nodes = mock(TeamCityNodes.class, withSettings().defaultAnswer(RETURNS_DEEP_STUBS).stubOnly());
+        when(nodes.getCurrentNode().isMainNode()).thenReturn(true);
+
+        var pluginTelemetry = new PluginTelemetry(null, "load-generator");
+        var spanProcessorFactory = new SpanProcessorFactory(pluginTelemetry);
+        var endpointFactory = new OTELEndpointFactory(
+                mock(PluginDescriptor.class, withSettings().stubOnly()),
+                nodes,
+                spanProcessorFactory,
+                mock(OtlpJsonSegmentWriterRegistry.class, withSettings().stubOnly()),
+                pluginTelemetry);
+        var helperFactory = new HelperPerBuildOTELHelperFactory(projectManager, endpointFactory, spanProcessorFactory, pluginTelemetry);
+        return new TeamCityBuildListener(
+                mock(EventDispatcher.class, withSettings().stubOnly()),
+                helperFactory,
+                mock(BuildStorageManager.class, withSettings().stubOnly()),
+                nodes,
+                pluginTelemetry,
+                new ArtifactSizeCalculator(),
+                new BuildUtilisationMetrics(pluginTelemetry),
+                new DurationBaselines((Path) null),
+                new ChainSummaries(pluginTelemetry));
+    }
+
+    /**
+     * The calls for one chain: start each build before finishing the one before it, then finish the last (root) build.
+     */
+    private class ChainReplay {
+        private final List<SRunningBuild> builds;
+        private int nextStart;
+        private int nextFinish;
+
+        ChainReplay(SyntheticBuildChain chain) {
+            this.builds = chain.getBuildsInExecutionOrder();
+        }
+
+        boolean isDone() {
+            return nextFinish == builds.size();
+        }
+
+        void advance(TeamCityBuildListener listener) {
+            if (nextStart < builds.size() && nextStart <= nextFinish + 1) {
+                var build = builds.get(nextStart++);
+                var start = System.nanoTime();
+                listener.buildStarted(build);
+                started.record(System.nanoTime() - start);
+                return;
+            }
+            var build = builds.get(nextFinish++);
+            var start = System.nanoTime();
+            listener.buildFinished(build);
+            (isDone() ? rootFinished : finished).record(System.nanoTime() - start);
+        }
+    }
+}
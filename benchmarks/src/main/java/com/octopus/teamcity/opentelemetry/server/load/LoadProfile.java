@@ -0,0 +1,120 @@
+package com.octopus.teamcity.opentelemetry.server.load;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The shape of the load to generate, from <code>--name=value</code> arguments. Anything not given keeps its default.
+ */
+class LoadProfile {
+    private final int chains;
+    private final int threads;
+    private final int fanOut;
+    private final int depth;
+    private final int stepsPerBuild;
+    private final int blockDepth;
+    private final int testsPerBuild;
+    private final int artifactsPerBuild;
+    private final int queueWaitReasonsPerBuild;
+    private final int chainsInFlightPerThread;
+    private final long receiverLatencyMs;
+    private final double receiverFailureRate;
+    private final long drainTimeoutSeconds;
+
+    private LoadProfile(Map<String, String> values) {
+        this.chains = getInt(values, "chains", 200);
+        this.threads = getInt(values, "threads", 16);
+        this.fanOut = getInt(values, "fanOut", 3);
+        this.depth = getInt(values, "depth", 2);
+        this.stepsPerBuild = getInt(values, "steps", 5);
+        this.blockDepth = getInt(values, "blockDepth", 3);
+        this.testsPerBuild = getInt(values, "tests", 200);
+        this.artifactsPerBuild = getInt(values, "artifacts", 20);
+        this.queueWaitReasonsPerBuild = getInt(values, "queueWaitReasons", 1);
+        this.chainsInFlightPerThread = getInt(values, "chainsInFlightPerThread", 4);
+        this.receiverLatencyMs = getInt(values, "receiverLatencyMs", 0);
+        this.receiverFailureRate = Double.parseDouble(values.getOrDefault("receiverFailureRate", "0"));
+        this.drainTimeoutSeconds = getInt(values, "drainTimeoutSeconds", 60);
+        if (values.size() > 0)
+            throw new IllegalArgumentException("Unknown arguments: " + values.keySet());
+    }
+
+    static LoadProfile fromArgs(String[] args) {
+        var values = new HashMap<String, String>();
+        for (var arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("="))
+                throw new IllegalArgumentException(String.format("Expected --name=value, got '%s'", arg));
+            var separator = arg.indexOf('=');
+            values.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return new LoadProfile(values);
+    }
+
+    private static int getInt(Map<String, String> values, String name, int defaultValue) {
+        var value = values.remove(name);
+        if (value == null)
+            return defaultValue;
+        return Integer.parseInt(value);
+    }
+
+    int getChains() {
+        return chains;
+    }
+
+    int getThreads() {
+        return threads;
+    }
+
+    int getFanOut() {
+        return fanOut;
+    }
+
+    int getDepth() {
+        return depth;
+    }
+
+    int getStepsPerBuild() {
+        return stepsPerBuild;
+    }
+
+    int getBlockDepth() {
+        return blockDepth;
+    }
+
+    int getTestsPerBuild() {
+        return testsPerBuild;
+    }
+
+    int getArtifactsPerBuild() {
+        return artifactsPerBuild;
+    }
+
+    int getQueueWaitReasonsPerBuild() {
+        return queueWaitReasonsPerBuild;
+    }
+
+    /**
+     * How many chains each thread interleaves at once; each step picks one of them and starts or finishes its next build.
+     */
+    int getChainsInFlightPerThread() {
+        return chainsInFlightPerThread;
+    }
+
+    long getReceiverLatencyMs() {
+        return receiverLatencyMs;
+    }
+
+    double getReceiverFailureRate() {
+        return receiverFailureRate;
+    }
+
+    long getDrainTimeoutSeconds() {
+        return drainTimeoutSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d chains on %d threads (%d in flight per thread); fan-out %d, depth %d, %d steps x %d blocks, %d tests, %d artifacts, %d queue wait reasons per build; receiver latency %d ms, failure rate %.2f",
+                chains, threads, chainsInFlightPerThread, fanOut, depth, stepsPerBuild, blockDepth, testsPerBuild, artifactsPerBuild, queueWaitReasonsPerBuild, receiverLatencyMs, receiverFailureRate);
+    }
+}
@@ -16,11 +16,165 @@ public class PluginConstants {
     public static final String PROPERTY_KEY_HONEYCOMB_DATASET = "octopus.teamcity.opentelemetry.plugin.honeycomb.dataset";
     public static final String PROPERTY_KEY_HONEYCOMB_APIKEY = "octopus.teamcity.opentelemetry.plugin.honeycomb.apikey";
     public static final String PROPERTY_KEY_HONEYCOMB_METRICS_ENABLED = "octopus.teamcity.opentelemetry.plugin.honeycomb.metrics.enabled";
+    public static final String PROPERTY_KEY_FILE_COMPRESSION_ENABLED = "octopus.teamcity.opentelemetry.plugin.file.compression.enabled";
+    public static final String PROPERTY_KEY_ZIPKIN_ENCODING = "octopus.teamcity.opentelemetry.plugin.zipkin.encoding";
+    public static final String PROPERTY_KEY_ZIPKIN_COMPRESSION = "octopus.teamcity.opentelemetry.plugin.zipkin.compression";
+    public static final String PROPERTY_KEY_ZIPKIN_MESSAGE_MAX_BYTES = "octopus.teamcity.opentelemetry.plugin.zipkin.messageMaxBytes";
+    public static final String PROPERTY_KEY_ZIPKIN_TIMEOUT_SECONDS = "octopus.teamcity.opentelemetry.plugin.zipkin.timeoutSeconds";
+
+    // Defaults for the Zipkin project settings, which are the same as the Zipkin HTTP sender's own defaults.
+    public static final String ZIPKIN_ENCODING_JSON = "json";
+    public static final String ZIPKIN_ENCODING_PROTO3 = "proto3";
+    public static final String ZIPKIN_COMPRESSION_GZIP = "gzip";
+    public static final String ZIPKIN_COMPRESSION_NONE = "none";
+    public static final int ZIPKIN_MESSAGE_MAX_BYTES = 5 * 1024 * 1024;
+    public static final Duration ZIPKIN_TIMEOUT = Duration.ofSeconds(10);
 
     public static final int BATCH_SPAN_PROCESSOR_MAX_QUEUE_SIZE = 32768; // Default is 2048. Increasing it to limit dropped spans.
     public static final Duration BATCH_SPAN_PROCESSOR_MAX_SCHEDULE_DELAY = Duration.ofSeconds(5); // Default is 5s. This is another lever we can tweak.
     public static final int BATCH_SPAN_PROCESSOR_MAX_EXPORT_BATCH_SIZE = 8192; // Default is 512. Increasing it to limit dropped spans.
 
+    // Server-wide (internal property) overrides for the adaptive batch span processor, which is off unless enabled. The
+    // processor tunes the batch size and schedule delay between these bounds, based on export latency, errors and
+    // queue depth.
+    public static final String PROPERTY_KEY_ADAPTIVE_BATCHING_ENABLED = "octopus.teamcity.opentelemetry.batching.adaptive.enabled";
+    public static final String PROPERTY_KEY_ADAPTIVE_BATCHING_MIN_BATCH_SIZE = "octopus.teamcity.opentelemetry.batching.adaptive.minBatchSize";
+    public static final String PROPERTY_KEY_ADAPTIVE_BATCHING_MAX_BATCH_SIZE = "octopus.teamcity.opentelemetry.batching.adaptive.maxBatchSize";
+    public static final String PROPERTY_KEY_ADAPTIVE_BATCHING_MIN_SCHEDULE_DELAY_MS = "octopus.teamcity.opentelemetry.batching.adaptive.minScheduleDelayMs";
+    public static final String PROPERTY_KEY_ADAPTIVE_BATCHING_MAX_SCHEDULE_DELAY_MS = "octopus.teamcity.opentelemetry.batching.adaptive.maxScheduleDelayMs";
+    public static final String PROPERTY_KEY_ADAPTIVE_BATCHING_TARGET_EXPORT_LATENCY_MS = "octopus.teamcity.opentelemetry.batching.adaptive.targetExportLatencyMs";
+    public static final String PROPERTY_KEY_ADAPTIVE_BATCHING_MAX_ERROR_RATE_PERCENT = "octopus.teamcity.opentelemetry.batching.adaptive.maxErrorRatePercent";
+    public static final int ADAPTIVE_BATCHING_MIN_BATCH_SIZE = 512;
+    public static final Duration ADAPTIVE_BATCHING_MIN_SCHEDULE_DELAY = Duration.ofMillis(200);
+    public static final Duration ADAPTIVE_BATCHING_MAX_SCHEDULE_DELAY = Duration.ofSeconds(30);
+    public static final Duration ADAPTIVE_BATCHING_TARGET_EXPORT_LATENCY = Duration.ofSeconds(2);
+    public static final Duration ADAPTIVE_BATCHING_EXPORT_TIMEOUT = Duration.ofSeconds(30);
+    public static final int ADAPTIVE_BATCHING_MAX_ERROR_RATE_PERCENT = 20;
+
+    // Server-wide (internal property) overrides for retrying failed span exports.
+    public static final String PROPERTY_KEY_RETRY_ENABLED = "octopus.teamcity.opentelemetry.retry.enabled";
+    public static final String PROPERTY_KEY_RETRY_MAX_ATTEMPTS = "octopus.teamcity.opentelemetry.retry.maxAttempts";
+    public static final String PROPERTY_KEY_RETRY_INITIAL_BACKOFF_MS = "octopus.teamcity.opentelemetry.retry.initialBackoffMs";
+    public static final String PROPERTY_KEY_RETRY_MAX_BACKOFF_MS = "octopus.teamcity.opentelemetry.retry.maxBackoffMs";
+    public static final String PROPERTY_KEY_RETRY_BUDGET_SPANS_PER_SECOND = "octopus.teamcity.opentelemetry.retry.budget.spansPerSecond";
+    public static final String PROPERTY_KEY_RETRY_BUDGET_BURST_SPANS = "octopus.teamcity.opentelemetry.retry.budget.burstSpans";
+    public static final int RETRY_MAX_ATTEMPTS = 5;
+    public static final Duration RETRY_INITIAL_BACKOFF = Duration.ofSeconds(1);
+    public static final Duration RETRY_MAX_BACKOFF = Duration.ofMinutes(1);
+    public static final int RETRY_BUDGET_SPANS_PER_SECOND = 2000;
+    public static final int RETRY_BUDGET_BURST_SPANS = 4 * BATCH_SPAN_PROCESSOR_MAX_EXPORT_BATCH_SIZE;
+
+    // Server-wide (internal property) overrides for the per-destination circuit breaker, which stops new build chains
+    // being traced (and drops batches without sending them) once a destination has failed enough exports in a row.
+    public static final String PROPERTY_KEY_CIRCUIT_BREAKER_ENABLED = "octopus.teamcity.opentelemetry.circuitBreaker.enabled";
+    public static final String PROPERTY_KEY_CIRCUIT_BREAKER_FAILURE_THRESHOLD = "octopus.teamcity.opentelemetry.circuitBreaker.failureThreshold";
+    public static final String PROPERTY_KEY_CIRCUIT_BREAKER_OPEN_SECONDS = "octopus.teamcity.opentelemetry.circuitBreaker.openSeconds";
+    public static final int CIRCUIT_BREAKER_FAILURE_THRESHOLD = 3;
+    public static final Duration CIRCUIT_BREAKER_OPEN_DURATION = Duration.ofMinutes(1);
+
+    // Server-wide (internal property) overrides for warming up the exporters for every configured endpoint in the
+    // background when the server starts.
+    public static final String PROPERTY_KEY_PREWARM_ENABLED = "octopus.teamcity.opentelemetry.prewarm.enabled";
+    public static final String PROPERTY_KEY_PREWARM_TIMEOUT_SECONDS = "octopus.teamcity.opentelemetry.prewarm.timeoutSeconds";
+    public static final Duration PREWARM_TIMEOUT = Duration.ofSeconds(10);
+
+    // Server-wide (internal property) override for how long, in total, to spend exporting every chain's spans when the
+    // server shuts down.
+    public static final String PROPERTY_KEY_SHUTDOWN_FLUSH_TIMEOUT_SECONDS = "octopus.teamcity.opentelemetry.shutdown.flushTimeoutSeconds";
+    public static final Duration SHUTDOWN_FLUSH_TIMEOUT = Duration.ofSeconds(10);
+
+    // Server-wide (internal property) overrides for the file exporter's segment rotation and retention.
+    public static final String PROPERTY_KEY_FILE_SEGMENT_MAX_BYTES = "octopus.teamcity.opentelemetry.file.segment.maxBytes";
+    public static final String PROPERTY_KEY_FILE_SEGMENT_MAX_AGE_MS = "octopus.teamcity.opentelemetry.file.segment.maxAgeMs";
+    public static final String PROPERTY_KEY_FILE_RETENTION_MAX_BYTES = "octopus.teamcity.opentelemetry.file.retention.maxBytes";
+    public static final String PROPERTY_KEY_FILE_RETENTION_MAX_AGE_HOURS = "octopus.teamcity.opentelemetry.file.retention.maxAgeHours";
+    public static final String PROPERTY_KEY_FILE_BUFFER_BYTES = "octopus.teamcity.opentelemetry.file.bufferBytes";
+    public static final long FILE_SEGMENT_MAX_BYTES = 64L * 1024 * 1024;
+    public static final Duration FILE_SEGMENT_MAX_AGE = Duration.ofMinutes(5);
+    public static final long FILE_RETENTION_MAX_BYTES = 1024L * 1024 * 1024;
+    public static final Duration FILE_RETENTION_MAX_AGE = Duration.ofDays(7);
+    public static final int FILE_BUFFER_BYTES = 256 * 1024;
+    public static final Duration FILE_MAINTENANCE_INTERVAL = Duration.ofSeconds(10);
+
+    // Server-wide (internal property) settings for exporting the plugin's own metrics; not exported unless an endpoint is set.
+    public static final String PROPERTY_KEY_SELF_TELEMETRY_ENDPOINT = "octopus.teamcity.opentelemetry.selfTelemetry.endpoint";
+    public static final String PROPERTY_KEY_SELF_TELEMETRY_HEADERS = "octopus.teamcity.opentelemetry.selfTelemetry.headers";
+    public static final String PROPERTY_KEY_SELF_TELEMETRY_EXPORT_INTERVAL_SECONDS = "octopus.teamcity.opentelemetry.selfTelemetry.exportIntervalSeconds";
+    public static final Duration SELF_TELEMETRY_EXPORT_INTERVAL = Duration.ofSeconds(60);
+
+    // Server-wide (internal property) overrides for the rate, error and duration metrics aggregated from build spans,
+    // which are published with the plugin's own metrics.
+    public static final String PROPERTY_KEY_SPAN_METRICS_ENABLED = "octopus.teamcity.opentelemetry.spanMetrics.enabled";
+    public static final String PROPERTY_KEY_SPAN_METRICS_MAX_SERIES = "octopus.teamcity.opentelemetry.spanMetrics.maxSeries";
+    public static final int SPAN_METRICS_MAX_SERIES = 2000;
+
+    // Server-wide (internal property) override for how many distinct attribute values each build chain shares between
+    // its spans; 0 turns the sharing off.
+    public static final String PROPERTY_KEY_ATTRIBUTE_VALUES_MAX_INTERNED = "octopus.teamcity.opentelemetry.attributeValues.maxInterned";
+    public static final int ATTRIBUTE_VALUES_MAX_INTERNED = 4096;
+
+    // Server-wide (internal property) overrides for creating the test spans of builds with very large test runs on a
+    // shared pool of threads; with a parallelism of 1 they are always created on the listener's thread.
+    public static final String PROPERTY_KEY_TEST_SPANS_PARALLELISM = "octopus.teamcity.opentelemetry.testSpans.parallelism";
+    public static final String PROPERTY_KEY_TEST_SPANS_PARALLEL_MIN_TESTS = "octopus.teamcity.opentelemetry.testSpans.parallelMinTests";
+    public static final int TEST_SPANS_PARALLELISM = 1;
+    public static final int TEST_SPANS_PARALLEL_MIN_TESTS = 10000;
+
+    // Server-wide (internal property) rules for turning step and test names into stable span names; rules are numbered
+    // from 1 (eg spanNames.rule.1), in the form "pattern => template", and run after the default rules. Replacing
+    // every number of five digits or more is opt-in, as it merges tests that are really different.
+    public static final String PROPERTY_KEY_SPAN_NAMES_DEFAULT_RULES_ENABLED = "octopus.teamcity.opentelemetry.spanNames.defaultRules.enabled";
+    public static final String PROPERTY_KEY_SPAN_NAMES_NUMBER_RULE_ENABLED = "octopus.teamcity.opentelemetry.spanNames.numberRule.enabled";
+    public static final String PROPERTY_KEY_SPAN_NAMES_RULE_PREFIX = "octopus.teamcity.opentelemetry.spanNames.rule.";
+    public static final String PROPERTY_KEY_SPAN_NAMES_MAX_CACHED = "octopus.teamcity.opentelemetry.spanNames.maxCached";
+    public static final int SPAN_NAMES_MAX_CACHED = 20000;
+
+    // Server-wide (internal property) overrides for the build queue and agent pool gauges, which are sampled in the
+    // background and published with the plugin's own metrics.
+    public static final String PROPERTY_KEY_QUEUE_METRICS_ENABLED = "octopus.teamcity.opentelemetry.queueMetrics.enabled";
+    public static final String PROPERTY_KEY_QUEUE_METRICS_INTERVAL_SECONDS = "octopus.teamcity.opentelemetry.queueMetrics.intervalSeconds";
+    public static final String PROPERTY_KEY_QUEUE_METRICS_MAX_SERIES = "octopus.teamcity.opentelemetry.queueMetrics.maxSeries";
+    public static final Duration QUEUE_METRICS_INTERVAL = Duration.ofSeconds(30);
+    public static final int QUEUE_METRICS_MAX_SERIES = 100;
+
+    // Server-wide (internal property) overrides for summarising build artifact sizes, which is done in the background
+    // from when a build starts finishing, and given up on (leaving a partial summary) once the time budget runs out.
+    public static final String PROPERTY_KEY_ARTIFACT_SIZE_TIME_BUDGET_MS = "octopus.teamcity.opentelemetry.artifacts.sizeTimeBudgetMs";
+    public static final String PROPERTY_KEY_ARTIFACT_SIZE_LARGEST_DIRECTORIES = "octopus.teamcity.opentelemetry.artifacts.largestDirectories";
+    public static final Duration ARTIFACT_SIZE_TIME_BUDGET = Duration.ofSeconds(2);
+    public static final int ARTIFACT_SIZE_LARGEST_DIRECTORIES = 5;
+    public static final int ARTIFACT_SIZE_DIRECTORY_DEPTH = 2;
+    public static final int ARTIFACT_SIZE_THREADS = 2;
+
+    // Server-wide (internal property) overrides for the rolling duration baselines that build, step and test spans are
+    // compared against. Each build type, step and test keeps between windowRuns and 2 * windowRuns recent runs.
+    public static final String PROPERTY_KEY_BASELINES_ENABLED = "octopus.teamcity.opentelemetry.baselines.enabled";
+    public static final String PROPERTY_KEY_BASELINES_MAX_SERIES = "octopus.teamcity.opentelemetry.baselines.maxSeries";
+    public static final String PROPERTY_KEY_BASELINES_MAX_TEST_SERIES = "octopus.teamcity.opentelemetry.baselines.maxTestSeries";
+    public static final String PROPERTY_KEY_BASELINES_WINDOW_RUNS = "octopus.teamcity.opentelemetry.baselines.windowRuns";
+    public static final String PROPERTY_KEY_BASELINES_MIN_RUNS = "octopus.teamcity.opentelemetry.baselines.minRuns";
+    public static final String PROPERTY_KEY_BASELINES_REGRESSION_PERCENTILE = "octopus.teamcity.opentelemetry.baselines.regressionPercentile";
+    public static final int BASELINES_MAX_SERIES = 50000;
+    public static final int BASELINES_MAX_TEST_SERIES = 50000;
+    public static final int BASELINES_WINDOW_RUNS = 100;
+    public static final int BASELINES_MIN_RUNS = 10;
+    public static final int BASELINES_REGRESSION_PERCENTILE = 95;
+
+    // Server-wide (internal property) override for how many build configurations, and how many queue wait reasons, get
+    // their own series in the agent utilisation and queue wait histograms; any after that are recorded as "_other".
+    public static final String PROPERTY_KEY_UTILISATION_METRICS_MAX_SERIES = "octopus.teamcity.opentelemetry.utilisationMetrics.maxSeries";
+    public static final int UTILISATION_METRICS_MAX_SERIES = 500;
+
+    // Server-wide (internal property) override for how many root build configurations get their own series in the
+    // chain summary histograms; any after that are recorded as "_other".
+    public static final String PROPERTY_KEY_CHAIN_METRICS_MAX_SERIES = "octopus.teamcity.opentelemetry.chainMetrics.maxSeries";
+    public static final int CHAIN_METRICS_MAX_SERIES = 500;
+    public static final double BASELINES_RELATIVE_ACCURACY = 0.02;
+    public static final Duration BASELINES_PERSIST_INTERVAL = Duration.ofMinutes(5);
+    public static final String BASELINES_FILE_NAME = "duration-baselines.bin";
+
+    public static final String METRIC_PREFIX = TRACER_INSTRUMENTATION_NAME;
+
     public static final String ATTRIBUTE_SERVICE_NAME = "service_name";
     public static final String ATTRIBUTE_NAME = "name";
     public static final String ATTRIBUTE_BUILD_ID = TRACER_INSTRUMENTATION_NAME + ".build_id";
@@ -45,13 +199,36 @@ public class PluginConstants {
     public static final String ATTRIBUTE_FAILED_TEST_COUNT = TRACER_INSTRUMENTATION_NAME + ".failed_test_count";
     public static final String ATTRIBUTE_BUILD_PROBLEMS_COUNT = TRACER_INSTRUMENTATION_NAME + ".build_problems_count";
     public static final String ATTRIBUTE_TOTAL_ARTIFACT_SIZE = TRACER_INSTRUMENTATION_NAME + ".build_artifacts.total_size";
+    public static final String ATTRIBUTE_ARTIFACT_COUNT = TRACER_INSTRUMENTATION_NAME + ".build_artifacts.count";
+    public static final String ATTRIBUTE_ARTIFACT_SIZE_TRUNCATED = TRACER_INSTRUMENTATION_NAME + ".build_artifacts.truncated";
+    public static final String ATTRIBUTE_LARGEST_ARTIFACT_DIRECTORIES = TRACER_INSTRUMENTATION_NAME + ".build_artifacts.largest_directories";
+    public static final String ATTRIBUTE_LARGEST_ARTIFACT_DIRECTORY_SIZES = TRACER_INSTRUMENTATION_NAME + ".build_artifacts.largest_directory_sizes";
     public static final String ATTRIBUTE_BUILD_CHECKOUT_TIME = TRACER_INSTRUMENTATION_NAME + ".build_checkout_time_ms";
+    public static final String ATTRIBUTE_BUILD_STEPS_BUSY_TIME = TRACER_INSTRUMENTATION_NAME + ".build_steps.busy_time_ms";
+    public static final String ATTRIBUTE_BUILD_STEPS_IDLE_TIME = TRACER_INSTRUMENTATION_NAME + ".build_steps.idle_time_ms";
+    public static final String ATTRIBUTE_TEST_CONCURRENCY_PEAK = TRACER_INSTRUMENTATION_NAME + ".tests.concurrency_peak";
+    public static final String ATTRIBUTE_TEST_CONCURRENCY_AVERAGE = TRACER_INSTRUMENTATION_NAME + ".tests.concurrency_average";
+    public static final String ATTRIBUTE_TEST_BUSY_TIME = TRACER_INSTRUMENTATION_NAME + ".tests.busy_time_ms";
+    public static final String ATTRIBUTE_TEST_IDLE_TIME = TRACER_INSTRUMENTATION_NAME + ".tests.idle_time_ms";
+    public static final String ATTRIBUTE_DURATION_PERCENTILE = TRACER_INSTRUMENTATION_NAME + ".duration.percentile";
+    public static final String ATTRIBUTE_DURATION_BASELINE_MEDIAN = TRACER_INSTRUMENTATION_NAME + ".duration.baseline_median_ms";
+    public static final String ATTRIBUTE_DURATION_REGRESSION = TRACER_INSTRUMENTATION_NAME + ".duration.regression";
+    public static final String ATTRIBUTE_CHAIN_MEMBER_COUNT = TRACER_INSTRUMENTATION_NAME + ".chain.member_count";
+    public static final String ATTRIBUTE_CHAIN_AGENT_TIME = TRACER_INSTRUMENTATION_NAME + ".chain.agent_time_ms";
+    public static final String ATTRIBUTE_CHAIN_QUEUE_TIME = TRACER_INSTRUMENTATION_NAME + ".chain.queue_time_ms";
+    public static final String ATTRIBUTE_CHAIN_TEST_COUNT = TRACER_INSTRUMENTATION_NAME + ".chain.test_count";
+    public static final String ATTRIBUTE_CHAIN_FAILED_TEST_COUNT = TRACER_INSTRUMENTATION_NAME + ".chain.failed_test_count";
+    public static final String ATTRIBUTE_CHAIN_TOTAL_ARTIFACT_SIZE = TRACER_INSTRUMENTATION_NAME + ".chain.artifacts_total_size";
+    public static final String ATTRIBUTE_CHAIN_SLOWEST_MEMBER_BUILD_ID = TRACER_INSTRUMENTATION_NAME + ".chain.slowest_member.build_id";
+    public static final String ATTRIBUTE_CHAIN_SLOWEST_MEMBER_BUILD_TYPE = TRACER_INSTRUMENTATION_NAME + ".chain.slowest_member.build_type_external_id";
+    public static final String ATTRIBUTE_CHAIN_SLOWEST_MEMBER_TIME = TRACER_INSTRUMENTATION_NAME + ".chain.slowest_member.agent_time_ms";
 
     public static final String EVENT_STARTED = "Build Started";
     public static final String EVENT_FINISHED = "Build Finished";
 
     public static final String EXCEPTION_ERROR_MESSAGE_DURING_BUILD_START = "Error during build start process";
     public static final String EXCEPTION_ERROR_MESSAGE_DURING_BUILD_FINISH = "Error during build finish process";
+    public static final String ERROR_MESSAGE_INTERRUPTED_BY_SHUTDOWN = "Interrupted by server shutdown";
 
     public final static String PLUGIN_NAME = "teamcity-opentelemetry";
 }
@@ -0,0 +1,103 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import jetbrains.buildServer.serverSide.buildLog.BlockLogMessage;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * When each test and build step in a build actually ran, taken from the blocks in its build log.
+ * <p>
+ * Test timings (from the <code>$TEST_BLOCK$</code> blocks) are keyed by test name, so test spans can be given real
+ * start and end times rather than all starting with the build. A test that ran more than once (eg retried) has a block
+ * per run; these are handed out in log order, one per {@link #take} of that name. Not thread-safe; an index is built
+ * and used by the thread handling one build.
+ */
+class BuildBlockIndex {
+    static final String TEST_BLOCK_TYPE = "$TEST_BLOCK$";
+
+    private final Map<String, Timing> timings = new HashMap<>();
+    private final Intervals testIntervals = new Intervals();
+    private final Intervals stepIntervals = new Intervals();
+    private long checkoutTime = -1;
+
+    void add(BlockLogMessage testBlock) {
+        var finishDate = testBlock.getFinishDate();
+        if (finishDate == null) return;
+
+        var timing = new Timing(testBlock.getTimestamp().getTime(), finishDate.getTime());
+        testIntervals.add(timing.startTime, timing.finishTime);
+        var first = timings.putIfAbsent(testBlock.getText(), timing);
+        if (first != null) {
+            first.last.next = timing;
+            first.last = timing;
+        }
+    }
+
+    /**
+     * Notes when a top-level block (a build step) ran, for working out how busy the agent was.
+     */
+    void addStep(BlockLogMessage stepBlock) {
+        var finishDate = stepBlock.getFinishDate();
+        if (finishDate != null)
+            stepIntervals.add(stepBlock.getTimestamp().getTime(), finishDate.getTime());
+    }
+
+    void setCheckoutTime(long checkoutTime) {
+        this.checkoutTime = checkoutTime;
+    }
+
+    /**
+     * @return how long the build's checkout block took, in milliseconds, or -1 if it didn't have one
+     */
+    long getCheckoutTime() {
+        return checkoutTime;
+    }
+
+    Intervals getTestIntervals() {
+        return testIntervals;
+    }
+
+    Intervals getStepIntervals() {
+        return stepIntervals;
+    }
+
+    /**
+     * @return the timing of the next (in log order) run of the named test that hasn't been taken yet, if any
+     */
+    @Nullable
+    Timing take(String testName) {
+        var first = timings.remove(testName);
+        if (first != null && first.next != null) {
+            first.next.last = first.last;
+            timings.put(testName, first.next);
+        }
+        return first;
+    }
+
+    int size() {
+        return timings.size();
+    }
+
+    static class Timing {
+        private final long startTime;
+        private final long finishTime;
+        private Timing next;
+        private Timing last;
+
+        Timing(long startTime, long finishTime) {
+            this.startTime = startTime;
+            this.finishTime = finishTime;
+            this.last = this;
+        }
+
+        long getStartTime() {
+            return startTime;
+        }
+
+        long getFinishTime() {
+            return finishTime;
+        }
+    }
+}
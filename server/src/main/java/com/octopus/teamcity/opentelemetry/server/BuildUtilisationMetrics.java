@@ -0,0 +1,78 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import com.octopus.teamcity.opentelemetry.server.telemetry.PluginTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongHistogram;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+
+/**
+ * Histograms of how well each build configuration uses its agents: how concurrently its tests ran, and how long the
+ * agent sat idle between tests and between build steps; and of how long builds waited in the queue for each reason.
+ * Published alongside the plugin's own metrics, as they're server-wide rather than belonging to any one build's trace.
+ * Build configurations and wait reasons (which can name agents or builds) are each capped at <code>maxSeries</code>
+ * values, after which new ones are recorded as {@link CappedAttributes#OTHER}.
+ */
+public class BuildUtilisationMetrics {
+    private static final AttributeKey<String> BUILD_TYPE_KEY = AttributeKey.stringKey(ATTRIBUTE_BUILD_TYPE_EXTERNAL_ID);
+    private static final AttributeKey<String> REASON_KEY = AttributeKey.stringKey("reason");
+
+    private final LongHistogram testConcurrencyPeak;
+    private final DoubleHistogram testConcurrencyAverage;
+    private final LongHistogram testIdleTime;
+    private final LongHistogram stepIdleTime;
+    private final LongHistogram queueWaitTime;
+    private final CappedAttributes buildTypeAttributes;
+    private final CappedAttributes reasonAttributes;
+
+    public BuildUtilisationMetrics(@NotNull PluginTelemetry pluginTelemetry) {
+        this(pluginTelemetry, TeamCityProperties.getInteger(PROPERTY_KEY_UTILISATION_METRICS_MAX_SERIES, UTILISATION_METRICS_MAX_SERIES));
+    }
+
+    BuildUtilisationMetrics(@NotNull PluginTelemetry pluginTelemetry, int maxSeries) {
+        var meter = pluginTelemetry.getMeter();
+        this.buildTypeAttributes = new CappedAttributes(BUILD_TYPE_KEY, maxSeries);
+        this.reasonAttributes = new CappedAttributes(REASON_KEY, maxSeries);
+        this.testConcurrencyPeak = meter.histogramBuilder(METRIC_PREFIX + ".build.tests.concurrency.peak")
+                .setDescription("The most tests running at once in a build")
+                .ofLongs()
+                .build();
+        this.testConcurrencyAverage = meter.histogramBuilder(METRIC_PREFIX + ".build.tests.concurrency.average")
+                .setDescription("How many tests were running at once on average in a build, while any were")
+                .build();
+        this.testIdleTime = meter.histogramBuilder(METRIC_PREFIX + ".build.tests.idle_time")
+                .setDescription("Time between a build's first test starting and last test finishing that no test was running")
+                .setUnit("ms")
+                .ofLongs()
+                .build();
+        this.stepIdleTime = meter.histogramBuilder(METRIC_PREFIX + ".build.steps.idle_time")
+                .setDescription("Time between a build's first step starting and last step finishing that no step was running")
+                .setUnit("ms")
+                .ofLongs()
+                .build();
+        this.queueWaitTime = meter.histogramBuilder(METRIC_PREFIX + ".build.queue.wait_time")
+                .setDescription("Time a build spent waiting in the queue for each reason, recorded when it starts")
+                .setUnit("ms")
+                .ofLongs()
+                .build();
+    }
+
+    void record(String buildTypeExternalId, @Nullable Intervals.Concurrency steps, @Nullable Intervals.Concurrency tests) {
+        var attributes = buildTypeAttributes.get(buildTypeExternalId);
+        if (steps != null)
+            stepIdleTime.record(steps.getIdleMillis(), attributes);
+        if (tests != null) {
+            testConcurrencyPeak.record(tests.getPeak(), attributes);
+            testConcurrencyAverage.record(tests.getAverage(), attributes);
+            testIdleTime.record(tests.getIdleMillis(), attributes);
+        }
+    }
+
+    void recordQueueWait(String reason, long durationMillis) {
+        queueWaitTime.record(durationMillis, reasonAttributes.get(reason));
+    }
+}
@@ -0,0 +1,44 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Attribute sets for one dimension of the plugin's own metrics, by value, so recording doesn't allocate once a value
+ * has been seen. Once there are <code>maxValues</code> of them, new values share the {@link #OTHER} set, so a server
+ * with thousands of build configurations doesn't make thousands of series.
+ */
+class CappedAttributes {
+    static final String OTHER = "_other";
+
+    private final AttributeKey<String> key;
+    private final int maxValues;
+    private final ConcurrentHashMap<String, Attributes> attributes;
+
+    CappedAttributes(AttributeKey<String> key, int maxValues) {
+        this.key = key;
+        this.maxValues = maxValues;
+        this.attributes = new ConcurrentHashMap<>();
+    }
+
+    Attributes get(String value) {
+        var existing = attributes.get(value);
+        if (existing != null)
+            return existing;
+
+        // checked and added under one lock, so values seen for the first time at once can't take it past the limit
+        synchronized (attributes) {
+            existing = attributes.get(value);
+            if (existing != null)
+                return existing;
+            var capped = attributes.size() < maxValues ? value : OTHER;
+            return attributes.computeIfAbsent(capped, v -> Attributes.of(key, v));
+        }
+    }
+
+    int size() {
+        return attributes.size();
+    }
+}
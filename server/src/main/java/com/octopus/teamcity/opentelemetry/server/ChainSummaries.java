@@ -0,0 +1,131 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import com.octopus.teamcity.opentelemetry.server.artifacts.ArtifactSizes;
+import com.octopus.teamcity.opentelemetry.server.telemetry.PluginTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.metrics.LongHistogram;
+import io.opentelemetry.api.trace.Span;
+import jetbrains.buildServer.serverSide.BuildStatistics;
+import jetbrains.buildServer.serverSide.SRunningBuild;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+
+/**
+ * A {@link ChainSummary} for each chain being traced, keyed by its root build. Each member build is added as it
+ * finishes; when the root finishes, the totals are set on its span and recorded as chain-level histograms (by the
+ * root's build configuration), alongside the plugin's own metrics. Once there are <code>maxSeries</code> root build
+ * configurations, further ones are recorded as {@link CappedAttributes#OTHER}.
+ */
+public class ChainSummaries {
+    private static final AttributeKey<String> BUILD_TYPE_KEY = AttributeKey.stringKey(ATTRIBUTE_BUILD_TYPE_EXTERNAL_ID);
+
+    private final ConcurrentHashMap<Long, ChainSummary> summaries;
+    private final CappedAttributes buildTypeAttributes;
+    private final LongHistogram memberCount;
+    private final LongHistogram agentTime;
+    private final LongHistogram queueTime;
+    private final LongHistogram testCount;
+    private final LongHistogram artifactSize;
+
+    public ChainSummaries(@NotNull PluginTelemetry pluginTelemetry) {
+        this(pluginTelemetry, TeamCityProperties.getInteger(PROPERTY_KEY_CHAIN_METRICS_MAX_SERIES, CHAIN_METRICS_MAX_SERIES));
+    }
+
+    ChainSummaries(@NotNull PluginTelemetry pluginTelemetry, int maxSeries) {
+        var meter = pluginTelemetry.getMeter();
+        this.summaries = new ConcurrentHashMap<>();
+        this.buildTypeAttributes = new CappedAttributes(BUILD_TYPE_KEY, maxSeries);
+        this.memberCount = meter.histogramBuilder(METRIC_PREFIX + ".chain.members")
+                .setDescription("The number of builds in a chain that finished")
+                .ofLongs()
+                .build();
+        this.agentTime = meter.histogramBuilder(METRIC_PREFIX + ".chain.agent_time")
+                .setDescription("The total time the builds in a chain ran on agents")
+                .setUnit("ms")
+                .ofLongs()
+                .build();
+        this.queueTime = meter.histogramBuilder(METRIC_PREFIX + ".chain.queue_time")
+                .setDescription("The total time the builds in a chain waited in the queue")
+                .setUnit("ms")
+                .ofLongs()
+                .build();
+        this.testCount = meter.histogramBuilder(METRIC_PREFIX + ".chain.tests")
+                .setDescription("The number of tests run by the builds in a chain")
+                .ofLongs()
+                .build();
+        this.artifactSize = meter.histogramBuilder(METRIC_PREFIX + ".chain.artifacts.size")
+                .setDescription("The total size of the artifacts published by the builds in a chain")
+                .setUnit("By")
+                .ofLongs()
+                .build();
+    }
+
+    void add(long rootBuildId, SRunningBuild build, BuildStatistics buildStatistics, @Nullable ArtifactSizes artifactSizes) {
+        var composite = build.isCompositeBuild();
+        long queueTimeMillis = 0;
+        long agentTimeMillis = -1;
+        var clientStartDate = build.getClientStartDate();
+        if (clientStartDate != null) {
+            var startTime = build.convertToServerTime(clientStartDate).getTime();
+            var queuedDate = build.getQueuedDate();
+            if (queuedDate != null)
+                queueTimeMillis = Math.max(0, startTime - queuedDate.getTime());
+            if (!composite) {
+                var finishDate = build.getFinishDate();
+                agentTimeMillis = Math.max(0, (finishDate != null ? finishDate.getTime() : System.currentTimeMillis()) - startTime);
+            }
+        }
+        // a composite build's statistics include the tests of the builds it's made of, which are counted themselves
+        summaries.computeIfAbsent(rootBuildId, key -> new ChainSummary()).add(
+                build.getBuildId(),
+                build.getBuildTypeExternalId(),
+                queueTimeMillis,
+                agentTimeMillis,
+                composite ? 0 : buildStatistics.getAllTestCount(),
+                composite ? 0 : buildStatistics.getFailedTestCount(),
+                artifactSizes != null ? artifactSizes.getTotalSize() : 0);
+    }
+
+    /**
+     * Sets the chain's totals on its root build's span and records them, then forgets the chain.
+     */
+    void finish(long rootBuildId, String rootBuildTypeExternalId, Span rootSpan) {
+        var summary = summaries.remove(rootBuildId);
+        if (summary == null) return;
+
+        rootSpan.setAttribute(ATTRIBUTE_CHAIN_MEMBER_COUNT, summary.getMemberCount());
+        rootSpan.setAttribute(ATTRIBUTE_CHAIN_AGENT_TIME, summary.getAgentTimeMillis());
+        rootSpan.setAttribute(ATTRIBUTE_CHAIN_QUEUE_TIME, summary.getQueueTimeMillis());
+        rootSpan.setAttribute(ATTRIBUTE_CHAIN_TEST_COUNT, summary.getTestCount());
+        rootSpan.setAttribute(ATTRIBUTE_CHAIN_FAILED_TEST_COUNT, summary.getFailedTestCount());
+        rootSpan.setAttribute(ATTRIBUTE_CHAIN_TOTAL_ARTIFACT_SIZE, summary.getArtifactBytes());
+        if (summary.getSlowestMemberBuildId() >= 0) {
+            rootSpan.setAttribute(ATTRIBUTE_CHAIN_SLOWEST_MEMBER_BUILD_ID, summary.getSlowestMemberBuildId());
+            rootSpan.setAttribute(ATTRIBUTE_CHAIN_SLOWEST_MEMBER_BUILD_TYPE, summary.getSlowestMemberBuildType());
+            rootSpan.setAttribute(ATTRIBUTE_CHAIN_SLOWEST_MEMBER_TIME, summary.getSlowestMemberMillis());
+        }
+
+        var attributes = buildTypeAttributes.get(rootBuildTypeExternalId);
+        memberCount.record(summary.getMemberCount(), attributes);
+        agentTime.record(summary.getAgentTimeMillis(), attributes);
+        queueTime.record(summary.getQueueTimeMillis(), attributes);
+        testCount.record(summary.getTestCount(), attributes);
+        artifactSize.record(summary.getArtifactBytes(), attributes);
+    }
+
+    /**
+     * Forgets a chain without reporting it; for when its root build's span is gone.
+     */
+    void forget(long rootBuildId) {
+        summaries.remove(rootBuildId);
+    }
+
+    int size() {
+        return summaries.size();
+    }
+}
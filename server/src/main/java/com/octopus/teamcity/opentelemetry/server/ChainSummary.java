@@ -0,0 +1,79 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Running totals for the builds in a chain, added to as each member build finishes, so the root build's span can
+ * say what the whole chain cost without the backend having to add up every span in the trace.
+ */
+class ChainSummary {
+    private int memberCount;
+    private long agentTimeMillis;
+    private long queueTimeMillis;
+    private long testCount;
+    private long failedTestCount;
+    private long artifactBytes;
+    private long slowestMemberBuildId = -1;
+    @Nullable
+    private String slowestMemberBuildType;
+    private long slowestMemberMillis = -1;
+
+    /**
+     * @param agentTimeMillis how long the build ran on an agent, or -1 if it didn't (eg it's a composite build)
+     */
+    synchronized void add(long buildId, String buildTypeExternalId, long queueTimeMillis, long agentTimeMillis, long tests, long failedTests, long artifactBytes) {
+        this.memberCount++;
+        this.queueTimeMillis += queueTimeMillis;
+        this.testCount += tests;
+        this.failedTestCount += failedTests;
+        this.artifactBytes += artifactBytes;
+        if (agentTimeMillis < 0)
+            return;
+        this.agentTimeMillis += agentTimeMillis;
+        if (agentTimeMillis > slowestMemberMillis) {
+            this.slowestMemberBuildId = buildId;
+            this.slowestMemberBuildType = buildTypeExternalId;
+            this.slowestMemberMillis = agentTimeMillis;
+        }
+    }
+
+    synchronized int getMemberCount() {
+        return memberCount;
+    }
+
+    synchronized long getAgentTimeMillis() {
+        return agentTimeMillis;
+    }
+
+    synchronized long getQueueTimeMillis() {
+        return queueTimeMillis;
+    }
+
+    synchronized long getTestCount() {
+        return testCount;
+    }
+
+    synchronized long getFailedTestCount() {
+        return failedTestCount;
+    }
+
+    synchronized long getArtifactBytes() {
+        return artifactBytes;
+    }
+
+    /**
+     * @return the id of the member build that ran longest on an agent, or -1 if none ran on one
+     */
+    synchronized long getSlowestMemberBuildId() {
+        return slowestMemberBuildId;
+    }
+
+    @Nullable
+    synchronized String getSlowestMemberBuildType() {
+        return slowestMemberBuildType;
+    }
+
+    synchronized long getSlowestMemberMillis() {
+        return slowestMemberMillis;
+    }
+}
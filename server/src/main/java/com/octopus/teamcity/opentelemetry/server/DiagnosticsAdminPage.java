@@ -0,0 +1,101 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import com.octopus.teamcity.opentelemetry.server.helpers.HelperPerBuildOTELHelperFactory;
+import com.octopus.teamcity.opentelemetry.server.helpers.HelperSnapshot;
+import com.octopus.teamcity.opentelemetry.server.telemetry.EndpointHealth;
+import com.octopus.teamcity.opentelemetry.server.telemetry.PluginTelemetry;
+import jetbrains.buildServer.controllers.admin.AdminPage;
+import jetbrains.buildServer.serverSide.auth.Permission;
+import jetbrains.buildServer.web.openapi.PagePlaces;
+import jetbrains.buildServer.web.openapi.PluginDescriptor;
+import jetbrains.buildServer.web.openapi.PositionConstraint;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+
+public class DiagnosticsAdminPage extends AdminPage {
+    public static final String TAB_ID = PLUGIN_NAME + "-diagnostics";
+    @NotNull
+    private final PluginTelemetry pluginTelemetry;
+    @NotNull
+    private final HelperPerBuildOTELHelperFactory otelHelperFactory;
+
+    public DiagnosticsAdminPage(
+            @NotNull PagePlaces pagePlaces,
+            @NotNull PluginDescriptor pluginDescriptor,
+            @NotNull PluginTelemetry pluginTelemetry,
+            @NotNull HelperPerBuildOTELHelperFactory otelHelperFactory
+        ) {
+        super(pagePlaces, TAB_ID, pluginDescriptor.getPluginResourcesPath("diagnostics.jsp"), "OpenTelemetry Diagnostics");
+        this.pluginTelemetry = pluginTelemetry;
+        this.otelHelperFactory = otelHelperFactory;
+        setPosition(PositionConstraint.last());
+        addJsFile(pluginDescriptor.getPluginResourcesPath("diagnostics.js"));
+
+        register();
+    }
+
+    @Override
+    public boolean isAvailable(@NotNull HttpServletRequest request) {
+        return super.isAvailable(request) && checkHasGlobalPermission(request, Permission.CHANGE_SERVER_SETTINGS);
+    }
+
+    @NotNull
+    @Override
+    public String getGroup() {
+        return SERVER_RELATED_GROUP;
+    }
+
+    @Override
+    public void fillModel(@NotNull Map<String, Object> model, @NotNull HttpServletRequest request) {
+        super.fillModel(model, request);
+
+        // both are lock-free reads, so rendering this page never holds up the build listener or the exporters
+        var destinations = new TreeMap<String, DestinationDiagnostics>();
+        for (var health : pluginTelemetry.getEndpointSnapshots())
+            destinations.computeIfAbsent(health.getDestination(), DestinationDiagnostics::new).health = health;
+        for (var helper : otelHelperFactory.getHelperSnapshots())
+            destinations.computeIfAbsent(helper.getDestination(), DestinationDiagnostics::new).helpers.add(helper);
+
+        model.put("destinations", destinations.values());
+        model.put("pluginMetrics", pluginTelemetry.summarise());
+    }
+
+    /**
+     * Everything known about one destination: its export health, and the build chains currently exporting to it.
+     */
+    public static class DestinationDiagnostics {
+        private final String destination;
+        private final List<HelperSnapshot> helpers = new ArrayList<>();
+        @Nullable
+        private EndpointHealth.Snapshot health;
+
+        DestinationDiagnostics(String destination) {
+            this.destination = destination;
+        }
+
+        public String getDestination() {
+            return destination;
+        }
+
+        public List<HelperSnapshot> getHelpers() {
+            return helpers;
+        }
+
+        public int getOpenSpans() {
+            return helpers.stream().mapToInt(HelperSnapshot::getOpenSpans).sum();
+        }
+
+        @Nullable
+        public EndpointHealth.Snapshot getHealth() {
+            return health;
+        }
+    }
+}
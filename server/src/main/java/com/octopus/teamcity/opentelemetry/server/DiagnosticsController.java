@@ -0,0 +1,70 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import com.octopus.teamcity.opentelemetry.server.helpers.HelperPerBuildOTELHelperFactory;
+import jetbrains.buildServer.controllers.ActionErrors;
+import jetbrains.buildServer.controllers.ActionMessages;
+import jetbrains.buildServer.controllers.BaseFormXmlController;
+import jetbrains.buildServer.controllers.SimpleView;
+import jetbrains.buildServer.serverSide.auth.Permission;
+import jetbrains.buildServer.web.openapi.WebControllerManager;
+import jetbrains.buildServer.web.util.SessionUser;
+import org.apache.log4j.Logger;
+import org.jdom.Element;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.web.servlet.ModelAndView;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.time.Duration;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+
+public class DiagnosticsController extends BaseFormXmlController {
+    static Logger LOG = Logger.getLogger(DiagnosticsController.class.getName());
+    private static final Duration FORCE_FLUSH_TIMEOUT = Duration.ofSeconds(10);
+    @NotNull
+    private final HelperPerBuildOTELHelperFactory otelHelperFactory;
+
+    public DiagnosticsController(
+            @NotNull WebControllerManager controllerManager,
+            @NotNull HelperPerBuildOTELHelperFactory otelHelperFactory) {
+        this.otelHelperFactory = otelHelperFactory;
+
+        controllerManager.registerController("/admin/" + PLUGIN_NAME + "/forceFlush.html", this);
+    }
+
+    @NotNull
+    @Override
+    protected ModelAndView doGet(@NotNull HttpServletRequest request, @NotNull HttpServletResponse response) {
+        return SimpleView.createTextView("Method is not supported!");
+    }
+
+    @Override
+    protected void doPost(@NotNull HttpServletRequest request, @NotNull HttpServletResponse response, @NotNull Element xmlResponse) {
+        ActionErrors errors = new ActionErrors();
+
+        var user = SessionUser.getUser(request);
+        if (user == null || !user.isPermissionGrantedGlobally(Permission.CHANGE_SERVER_SETTINGS)) {
+            errors.addError("rootBuildId", "You don't have permission to flush traces.");
+            errors.serialize(xmlResponse);
+            return;
+        }
+
+        long rootBuildId;
+        try {
+            rootBuildId = Long.parseLong(request.getParameter("rootBuildId"));
+        } catch (NumberFormatException e) {
+            errors.addError("rootBuildId", String.format("'%s' is not a build id.", request.getParameter("rootBuildId")));
+            errors.serialize(xmlResponse);
+            return;
+        }
+
+        if (otelHelperFactory.forceFlush(rootBuildId, FORCE_FLUSH_TIMEOUT)) {
+            ActionMessages.getOrCreateMessages(request).addMessage("helperFlushed", String.format("Flushed the spans for build %d.", rootBuildId));
+        } else {
+            LOG.warn(String.format("Force flush for build %d did not complete within %d seconds.", rootBuildId, FORCE_FLUSH_TIMEOUT.toSeconds()));
+            errors.addError("rootBuildId", String.format("Build %d is no longer being traced, or its spans could not be exported within %d seconds.", rootBuildId, FORCE_FLUSH_TIMEOUT.toSeconds()));
+            errors.serialize(xmlResponse);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * A set of (possibly overlapping) time intervals, in epoch milliseconds, such as the test blocks of a build, and how
+ * concurrent they were.
+ */
+class Intervals {
+    private long[] starts = new long[16];
+    private long[] ends = new long[16];
+    private int size;
+
+    void add(long start, long end) {
+        if (end < start) return;
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Sweeps the start and end times in order, keeping count of how many intervals are open: O(n log n) for the sort,
+     * then a single pass.
+     *
+     * @return how concurrent the intervals were, or null if there are none
+     */
+    @Nullable
+    Concurrency analyse() {
+        if (size == 0) return null;
+
+        var sortedStarts = Arrays.copyOf(starts, size);
+        var sortedEnds = Arrays.copyOf(ends, size);
+        Arrays.sort(sortedStarts);
+        Arrays.sort(sortedEnds);
+
+        long totalDuration = 0;
+        for (int i = 0; i < size; i++)
+            totalDuration += ends[i] - starts[i];
+
+        int open = 0;
+        int peak = 0;
+        long busy = 0;
+        long previous = sortedStarts[0];
+        int nextStart = 0;
+        int nextEnd = 0;
+        while (nextEnd < size) {
+            // on a tie, close before opening, so back-to-back intervals don't count as concurrent
+            var closing = nextStart == size || (nextEnd < nextStart && sortedEnds[nextEnd] <= sortedStarts[nextStart]);
+            var time = closing ? sortedEnds[nextEnd] : sortedStarts[nextStart];
+            if (open > 0)
+                busy += time - previous;
+            previous = time;
+            if (closing) {
+                open--;
+                nextEnd++;
+            } else {
+                open++;
+                nextStart++;
+                peak = Math.max(peak, open);
+            }
+        }
+
+        var elapsed = sortedEnds[size - 1] - sortedStarts[0];
+        var average = busy == 0 ? peak : (double) totalDuration / busy;
+        return new Concurrency(size, peak, average, busy, elapsed - busy);
+    }
+
+    static class Concurrency {
+        private final int count;
+        private final int peak;
+        private final double average;
+        private final long busyMillis;
+        private final long idleMillis;
+
+        Concurrency(int count, int peak, double average, long busyMillis, long idleMillis) {
+            this.count = count;
+            this.peak = peak;
+            this.average = average;
+            this.busyMillis = busyMillis;
+            this.idleMillis = idleMillis;
+        }
+
+        int getCount() {
+            return count;
+        }
+
+        /**
+         * @return the most intervals open at once
+         */
+        int getPeak() {
+            return peak;
+        }
+
+        /**
+         * @return how many intervals were open on average, while any were
+         */
+        double getAverage() {
+            return average;
+        }
+
+        /**
+         * @return the time at least one interval was open
+         */
+        long getBusyMillis() {
+            return busyMillis;
+        }
+
+        /**
+         * @return the time between the first interval starting and the last one ending that none were open
+         */
+        long getIdleMillis() {
+            return idleMillis;
+        }
+    }
+}
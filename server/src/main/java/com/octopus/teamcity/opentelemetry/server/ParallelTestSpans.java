@@ -0,0 +1,109 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+
+/**
+ * A small fork-join pool, shared by all builds, for creating the test spans of builds with so many tests that doing it
+ * on the listener's thread takes a noticeable time. The tests are split into ranges, which the pool's threads work
+ * through; the listener's thread isn't one of them, so it just blocks until they're done.
+ * <p>
+ * The pool never has more threads than the configured parallelism, nor more than one less than the number of
+ * processors, so creating spans can't take over the server. With a parallelism of 1 there is no pool, and spans are
+ * always created on the listener's thread.
+ */
+class ParallelTestSpans {
+    static Logger LOG = Logger.getLogger(ParallelTestSpans.class.getName());
+    static final int RANGE_SIZE = 1000;
+
+    private final int parallelism;
+    private final int minTests;
+    @Nullable
+    private final ForkJoinPool pool;
+
+    ParallelTestSpans(int parallelism, int minTests) {
+        this.parallelism = Math.max(1, Math.min(parallelism, Runtime.getRuntime().availableProcessors() - 1));
+        this.minTests = Math.max(minTests, RANGE_SIZE);
+        if (this.parallelism > 1) {
+            this.pool = new ForkJoinPool(this.parallelism, pool -> {
+                var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("OTEL-TestSpans-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                // the plugin's classes, rather than whichever thread happened to start the worker
+                thread.setContextClassLoader(ParallelTestSpans.class.getClassLoader());
+                return thread;
+            }, null, false);
+            LOG.info(String.format("Test spans will be created by up to %d threads, for builds with at least %d tests.", this.parallelism, this.minTests));
+        } else {
+            this.pool = null;
+        }
+    }
+
+    static ParallelTestSpans fromServerProperties() {
+        return new ParallelTestSpans(
+                TeamCityProperties.getInteger(PROPERTY_KEY_TEST_SPANS_PARALLELISM, TEST_SPANS_PARALLELISM),
+                TeamCityProperties.getInteger(PROPERTY_KEY_TEST_SPANS_PARALLEL_MIN_TESTS, TEST_SPANS_PARALLEL_MIN_TESTS));
+    }
+
+    int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return whether a build's tests should be handed to {@link #forEachRange}, rather than looped over on the
+     * listener's thread
+     */
+    boolean shouldUse(int tests) {
+        return pool != null && !pool.isShutdown() && tests >= minTests;
+    }
+
+    /**
+     * Runs the action over every range of <code>[0, count)</code> on the pool, blocking until they've all run. The
+     * action is run on several threads at once, so anything it shares between ranges must be thread-safe.
+     */
+    void forEachRange(int count, RangeAction action) {
+        if (pool == null) {
+            action.run(0, count);
+            return;
+        }
+        pool.invoke(new RangeTask(action, 0, count));
+    }
+
+    void shutdown() {
+        if (pool != null)
+            pool.shutdownNow();
+    }
+
+    interface RangeAction {
+        void run(int from, int to);
+    }
+
+    private static class RangeTask extends RecursiveAction {
+        private final RangeAction action;
+        private final int from;
+        private final int to;
+
+        RangeTask(RangeAction action, int from, int to) {
+            this.action = action;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= RANGE_SIZE) {
+                action.run(from, to);
+                return;
+            }
+            var middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(action, from, middle), new RangeTask(action, middle, to));
+        }
+    }
+}
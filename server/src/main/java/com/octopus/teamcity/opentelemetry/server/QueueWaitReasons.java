@@ -0,0 +1,54 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The time a build spent waiting in the queue for each reason, from the <code>queueWaitReason:</code> statistics
+ * TeamCity reports for it, eg <code>queueWaitReason:Waiting for a compatible agent</code>.
+ */
+class QueueWaitReasons {
+    static final String SERVICE_NAME = "queueWaitReason";
+    private static final Pattern STATISTIC_KEY = Pattern.compile("^" + SERVICE_NAME + ":(.+)$");
+
+    private QueueWaitReasons() {
+    }
+
+    /**
+     * @return the wait reasons, in the statistics' iteration order
+     */
+    static List<QueueWait> parse(Map<String, BigDecimal> statistics) {
+        var waits = new ArrayList<QueueWait>();
+        for (var entry : statistics.entrySet()) {
+            var key = entry.getKey();
+            // most statistics aren't wait reasons, so rule them out before running the pattern
+            if (!key.startsWith(SERVICE_NAME)) continue;
+
+            var matcher = STATISTIC_KEY.matcher(key);
+            if (!matcher.matches()) continue;
+            waits.add(new QueueWait(matcher.group(1), entry.getValue().longValue()));
+        }
+        return waits;
+    }
+
+    static class QueueWait {
+        private final String reason;
+        private final long durationMillis;
+
+        QueueWait(String reason, long durationMillis) {
+            this.reason = reason;
+            this.durationMillis = durationMillis;
+        }
+
+        String getReason() {
+            return reason;
+        }
+
+        long getDurationMillis() {
+            return durationMillis;
+        }
+    }
+}
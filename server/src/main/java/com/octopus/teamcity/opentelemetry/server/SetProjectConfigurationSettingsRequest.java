@@ -59,12 +59,7 @@ public abstract class SetProjectConfigurationSettingsRequest {
             serviceSpecificValidate(errors);
         }
 
-        if (StringUtil.isEmptyOrSpaces(this.endpoint)) {
-            errors.addError("endpoint", "Endpoint must be set!");
-        } else {
-            if (!this.endpoint.startsWith("https://") && !this.endpoint.startsWith("http://"))
-                errors.addError("endpoint", "Endpoint must be a valid url!");
-        }
+        validateEndpoint(errors);
         if (!StringUtil.isEmptyOrSpaces(enabled) && !enabled.equals("true") && !enabled.equals("false"))
             errors.addError("enabled", String.format("Enabled value %s was not set to true or false!", enabled));
         if (headers.stream().anyMatch(x -> StringUtil.isEmptyOrSpaces(x.getKey())))
@@ -90,6 +85,15 @@ public abstract class SetProjectConfigurationSettingsRequest {
         return params;
     }
 
+    protected void validateEndpoint(ActionErrors errors) {
+        if (StringUtil.isEmptyOrSpaces(this.endpoint)) {
+            errors.addError("endpoint", "Endpoint must be set!");
+        } else {
+            if (!this.endpoint.startsWith("https://") && !this.endpoint.startsWith("http://"))
+                errors.addError("endpoint", "Endpoint must be a valid url!");
+        }
+    }
+
     protected abstract void serviceSpecificValidate(ActionErrors errors);
 
     protected abstract void mapServiceSpecificParams(HashMap<String, String> params, ArrayList<HeaderDto> headers);
@@ -0,0 +1,163 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+
+/**
+ * Turns step and test names into stable span names, by replacing the parts that change from run to run (ids, hashes,
+ * timestamps and the like) with placeholders; so a backend can group the spans by name, rather than seeing a new name
+ * every build. The names as they were are kept in the spans' <code>name</code> attribute.
+ * <p>
+ * Each rule is a regular expression and the template to replace its matches with (which can refer to the
+ * expression's groups, eg <code>$1</code>), applied in order. Builds run the same steps and tests build after build,
+ * so the result for each name is cached, forgetting the least recently used names once there are more than the maximum.
+ * The cache is split across stripes that are each locked on their own, as test spans are created from several threads.
+ * <p>
+ * Replacing every long number is opt-in, as it also merges tests that really are different (eg
+ * <code>issue12345</code> and <code>issue12346</code>), along with their duration baselines.
+ */
+class SpanNameTemplates {
+    static Logger LOG = Logger.getLogger(SpanNameTemplates.class.getName());
+    static final String RULE_SEPARATOR = "=>";
+    static final List<String> DEFAULT_RULES = List.of(
+            "\\d{4}-\\d{2}-\\d{2}[T ]\\d{2}:\\d{2}(:\\d{2}(\\.\\d+)?)?(Z|[+-]\\d{2}:?\\d{2})? => {timestamp}",
+            "\\b[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}\\b => {uuid}",
+            "\\b(?=[0-9a-f]*[0-9])(?=[0-9a-f]*[a-f])[0-9a-f]{12,64}\\b => {hash}");
+    static final String NUMBER_RULE = "\\d{5,} => {n}";
+    private static final int STRIPES = 16;
+    private static final int MIN_NAMES_TO_STRIPE = 1024;
+
+    private final List<Rule> rules;
+    private final List<LinkedHashMap<String, String>> stripes;
+
+    SpanNameTemplates(List<String> rules, int maxNames) {
+        this.rules = new ArrayList<>();
+        for (var rule : rules) {
+            var parsed = Rule.parse(rule);
+            if (parsed != null)
+                this.rules.add(parsed);
+        }
+        var stripeCount = maxNames >= MIN_NAMES_TO_STRIPE ? STRIPES : 1;
+        var maxNamesPerStripe = Math.max(maxNames, 0) / stripeCount;
+        this.stripes = new ArrayList<>(stripeCount);
+        for (int i = 0; i < stripeCount; i++) {
+            stripes.add(new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > maxNamesPerStripe;
+                }
+            });
+        }
+    }
+
+    static SpanNameTemplates fromServerProperties() {
+        var rules = new ArrayList<String>();
+        if (TeamCityProperties.getBooleanOrTrue(PROPERTY_KEY_SPAN_NAMES_DEFAULT_RULES_ENABLED))
+            rules.addAll(DEFAULT_RULES);
+        if (TeamCityProperties.getBoolean(PROPERTY_KEY_SPAN_NAMES_NUMBER_RULE_ENABLED))
+            rules.add(NUMBER_RULE);
+        for (int i = 1; ; i++) {
+            var rule = TeamCityProperties.getPropertyOrNull(PROPERTY_KEY_SPAN_NAMES_RULE_PREFIX + i);
+            if (rule == null) break;
+            rules.add(rule);
+        }
+        return new SpanNameTemplates(rules, TeamCityProperties.getInteger(PROPERTY_KEY_SPAN_NAMES_MAX_CACHED, SPAN_NAMES_MAX_CACHED));
+    }
+
+    /**
+     * @return the span name for a step or test
+     */
+    String getSpanName(String name) {
+        if (rules.isEmpty())
+            return name;
+
+        var stripe = getStripe(name);
+        synchronized (stripe) {
+            var spanName = stripe.get(name);
+            if (spanName != null)
+                return spanName;
+        }
+
+        // worked out outside the lock, so a slow rule doesn't hold up the other names in the stripe
+        var spanName = apply(name);
+        synchronized (stripe) {
+            stripe.put(name, spanName);
+        }
+        return spanName;
+    }
+
+    int size() {
+        var size = 0;
+        for (var stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    private LinkedHashMap<String, String> getStripe(String name) {
+        var hash = name.hashCode();
+        return stripes.get((hash ^ (hash >>> 16)) & (stripes.size() - 1));
+    }
+
+    private String apply(String name) {
+        var spanName = name;
+        for (var rule : rules)
+            spanName = rule.pattern.matcher(spanName).replaceAll(rule.template);
+        return spanName;
+    }
+
+    private static class Rule {
+        private final Pattern pattern;
+        private final String template;
+
+        private Rule(Pattern pattern, String template) {
+            this.pattern = pattern;
+            this.template = template;
+        }
+
+        @Nullable
+        static Rule parse(String rule) {
+            var separator = rule.lastIndexOf(RULE_SEPARATOR);
+            if (separator <= 0) {
+                LOG.warn(String.format("Ignoring span name rule '%s', as it isn't in the form 'pattern %s template'.", rule, RULE_SEPARATOR));
+                return null;
+            }
+            Pattern pattern;
+            try {
+                pattern = Pattern.compile(rule.substring(0, separator).trim());
+            } catch (PatternSyntaxException e) {
+                LOG.warn(String.format("Ignoring span name rule '%s', as its pattern is invalid: %s", rule, e.getMessage()));
+                return null;
+            }
+            var template = rule.substring(separator + RULE_SEPARATOR.length()).trim();
+            try {
+                checkTemplate(pattern, template);
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                LOG.warn(String.format("Ignoring span name rule '%s', as its template is invalid: %s", rule, e.getMessage()));
+                return null;
+            }
+            return new Rule(pattern, template);
+        }
+
+        /**
+         * Throws as <code>replaceAll</code> would if the template refers to a group the pattern doesn't have, or has a
+         * stray <code>$</code> or <code>\</code>; so it's found when the rule is read, not on every build that finishes.
+         */
+        private static void checkTemplate(Pattern pattern, String template) {
+            // the same groups, with an empty alternative so there's always a match to apply the template to
+            Pattern.compile("(?:" + pattern.pattern() + ")|").matcher("").replaceFirst(template);
+        }
+    }
+}
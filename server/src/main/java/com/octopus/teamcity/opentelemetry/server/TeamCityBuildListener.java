@@ -1,8 +1,14 @@
 package com.octopus.teamcity.opentelemetry.server;
 
 import com.octopus.teamcity.opentelemetry.common.PluginConstants;
+import com.octopus.teamcity.opentelemetry.server.artifacts.ArtifactSizeCalculator;
+import com.octopus.teamcity.opentelemetry.server.artifacts.ArtifactSizes;
+import com.octopus.teamcity.opentelemetry.server.baselines.DurationBaselines;
+import com.octopus.teamcity.opentelemetry.server.baselines.DurationComparison;
 import com.octopus.teamcity.opentelemetry.server.helpers.OTELHelper;
 import com.octopus.teamcity.opentelemetry.server.helpers.OTELHelperFactory;
+import com.octopus.teamcity.opentelemetry.server.telemetry.PluginTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.StatusCode;
 import io.opentelemetry.context.Scope;
@@ -10,33 +16,39 @@ import io.opentelemetry.context.Scope;
 import jetbrains.buildServer.messages.DefaultMessagesInfo;
 import jetbrains.buildServer.messages.Status;
 import jetbrains.buildServer.serverSide.*;
-import jetbrains.buildServer.serverSide.artifacts.BuildArtifacts;
-import jetbrains.buildServer.serverSide.artifacts.BuildArtifactsViewMode;
 import jetbrains.buildServer.serverSide.buildLog.BlockLogMessage;
 import jetbrains.buildServer.serverSide.buildLog.LogMessage;
 import jetbrains.buildServer.serverSide.buildLog.LogMessageFilter;
+import jetbrains.buildServer.users.User;
 import jetbrains.buildServer.util.EventDispatcher;
 import org.apache.log4j.Logger;
 import org.apache.logging.log4j.CloseableThreadContext;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import java.math.BigDecimal;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 public class TeamCityBuildListener extends BuildServerAdapter {
 
     public static final String BUILD_SERVICE_NAME = "teamcity-build";
     static Logger LOG = Logger.getLogger(TeamCityBuildListener.class.getName());
-    private final ConcurrentHashMap<String, Long> checkoutTimeMap;
+    // builds whose queue wait spans were created when they started, so they aren't created again when they finish
+    private final Set<Long> queueWaitsTraced;
+    private final SpanNameTemplates spanNameTemplates;
+    private final ParallelTestSpans parallelTestSpans;
     private final OTELHelperFactory otelHelperFactory;
     private final BuildStorageManager buildStorageManager;
     private final TeamCityNodes nodesService;
+    private final PluginTelemetry pluginTelemetry;
+    private final ArtifactSizeCalculator artifactSizeCalculator;
+    private final BuildUtilisationMetrics buildUtilisationMetrics;
+    private final DurationBaselines durationBaselines;
+    private final ChainSummaries chainSummaries;
 
     @Autowired
     @SuppressWarnings("SpringJavaInjectionPointsAutowiringInspection")
@@ -44,12 +56,40 @@ public class TeamCityBuildListener extends BuildServerAdapter {
         @NotNull EventDispatcher<BuildServerListener> buildServerListenerEventDispatcher,
         @NotNull OTELHelperFactory otelHelperFactory,
         @NotNull BuildStorageManager buildStorageManager,
-        @NotNull TeamCityNodes nodesService)
+        @NotNull TeamCityNodes nodesService,
+        @NotNull PluginTelemetry pluginTelemetry,
+        @NotNull ArtifactSizeCalculator artifactSizeCalculator,
+        @NotNull BuildUtilisationMetrics buildUtilisationMetrics,
+        @NotNull DurationBaselines durationBaselines,
+        @NotNull ChainSummaries chainSummaries)
+    {
+        this(buildServerListenerEventDispatcher, otelHelperFactory, buildStorageManager, nodesService, pluginTelemetry,
+                artifactSizeCalculator, buildUtilisationMetrics, durationBaselines, chainSummaries, ParallelTestSpans.fromServerProperties());
+    }
+
+    TeamCityBuildListener(
+        @NotNull EventDispatcher<BuildServerListener> buildServerListenerEventDispatcher,
+        @NotNull OTELHelperFactory otelHelperFactory,
+        @NotNull BuildStorageManager buildStorageManager,
+        @NotNull TeamCityNodes nodesService,
+        @NotNull PluginTelemetry pluginTelemetry,
+        @NotNull ArtifactSizeCalculator artifactSizeCalculator,
+        @NotNull BuildUtilisationMetrics buildUtilisationMetrics,
+        @NotNull DurationBaselines durationBaselines,
+        @NotNull ChainSummaries chainSummaries,
+        @NotNull ParallelTestSpans parallelTestSpans)
     {
         this.otelHelperFactory = otelHelperFactory;
         this.buildStorageManager = buildStorageManager;
         this.nodesService = nodesService;
-        this.checkoutTimeMap = new ConcurrentHashMap<>();
+        this.pluginTelemetry = pluginTelemetry;
+        this.artifactSizeCalculator = artifactSizeCalculator;
+        this.buildUtilisationMetrics = buildUtilisationMetrics;
+        this.durationBaselines = durationBaselines;
+        this.chainSummaries = chainSummaries;
+        this.queueWaitsTraced = ConcurrentHashMap.newKeySet();
+        this.spanNameTemplates = SpanNameTemplates.fromServerProperties();
+        this.parallelTestSpans = parallelTestSpans;
         buildServerListenerEventDispatcher.addListener(this);
         LOG.info("BuildListener registered.");
     }
@@ -58,6 +98,7 @@ public class TeamCityBuildListener extends BuildServerAdapter {
     public void buildStarted(@NotNull SRunningBuild build) {
         if (!nodesService.getCurrentNode().isMainNode()) return;
 
+        long startTime = System.nanoTime();
         try {
             var rootBuildInChain = getRootBuildInChain(build);
             try (var ignored1 = CloseableThreadContext.put("teamcity.build.id", String.valueOf(build.getBuildId()))) {
@@ -70,15 +111,18 @@ public class TeamCityBuildListener extends BuildServerAdapter {
                         var rootBuildInChainId = rootBuildInChain.getId();
                         LOG.debug(String.format("Root build of build id %d is %d", build.getBuildId(), rootBuildInChainId));
 
-                        Span rootSpan = otelHelper.getOrCreateParentSpan(String.valueOf(rootBuildInChainId));
+                        Span rootSpan = otelHelper.getOrCreateParentSpan(rootBuildInChainId);
                         buildStorageManager.saveTraceId(build, rootSpan.getSpanContext().getTraceId());
 
                         var span = ensureSpansExistLinkingToRoot(otelHelper, build.getBuildPromotion(), rootBuildInChain);
+                        pluginTelemetry.recordSpansCreated(PluginTelemetry.SPAN_CLASS_BUILD, 1);
 
                         try (Scope ignored3 = rootSpan.makeCurrent()) {
                             setSpanBuildAttributes(otelHelper, build, span, getBuildName(build), BUILD_SERVICE_NAME);
                             span.addEvent(PluginConstants.EVENT_STARTED);
                             LOG.debug(String.format("%s event added to span for build '%s', id %d", PluginConstants.EVENT_STARTED, getBuildName(build), build.getBuildId()));
+                            if (createQueuedEventsSpans(otelHelper, build, span))
+                                queueWaitsTraced.add(build.getBuildId());
                         } catch (Exception e) {
                             LOG.error("Exception in Build Start caused by: " + e + e.getCause() +
                                     ", with message: " + e.getMessage() +
@@ -94,10 +138,13 @@ public class TeamCityBuildListener extends BuildServerAdapter {
             }
         } catch (Exception e) {
             LOG.error("Exception in buildStarted caused by: " + e.getMessage(), e);
+        } finally {
+            pluginTelemetry.recordListenerDuration(PluginTelemetry.EVENT_BUILD_STARTED, System.nanoTime() - startTime);
         }
     }
 
-    private Span ensureSpansExistLinkingToRoot(OTELHelper otelHelper, BuildPromotion buildPromotion, BuildPromotion rootBuildInChain) {
+    // package-private for the benchmarks
+    Span ensureSpansExistLinkingToRoot(OTELHelper otelHelper, BuildPromotion buildPromotion, BuildPromotion rootBuildInChain) {
         var parents = buildPromotion.getDependedOnMe();
         for (var parent : parents) {
             LOG.debug(String.format("Parents of build %d includes %d", buildPromotion.getId(), parent.getDependent().getId()));
@@ -105,7 +152,7 @@ public class TeamCityBuildListener extends BuildServerAdapter {
 
         if ((long) parents.size() == 0) {
             LOG.debug(String.format("Build %d has no parent, meaning we it's the root; creating span if needed", buildPromotion.getId()));
-            return otelHelper.getOrCreateParentSpan(String.valueOf(rootBuildInChain.getId()));
+            return otelHelper.getOrCreateParentSpan(rootBuildInChain.getId());
         }
 
         //get the last one
@@ -115,13 +162,8 @@ public class TeamCityBuildListener extends BuildServerAdapter {
                 .getDependent();
         LOG.debug(String.format("Parent of build %d is %d", buildPromotion.getId(), immediateParentBuild.getId()));
         var parentSpan = ensureSpansExistLinkingToRoot(otelHelper, immediateParentBuild, rootBuildInChain);
-        var parentSpanName = String.valueOf(immediateParentBuild.getId());
         LOG.debug(String.format("Creating span for build %d, with parent id %d", buildPromotion.getId(), immediateParentBuild.getId()));
-        return otelHelper.createSpan(String.valueOf(buildPromotion.getId()), parentSpan, parentSpanName);
-    }
-
-    private String getBuildId(SRunningBuild build) {
-        return String.valueOf(build.getBuildId());
+        return otelHelper.createSpan(buildPromotion.getId(), parentSpan, immediateParentBuild.getId());
     }
 
     private String getBuildName(SRunningBuild build) {
@@ -133,7 +175,8 @@ public class TeamCityBuildListener extends BuildServerAdapter {
         return parentBuilds[0];
     }
 
-    private void setSpanBuildAttributes(OTELHelper otelHelper, SRunningBuild build, Span span, String spanName, String serviceName) {
+    // package-private for the benchmarks
+    void setSpanBuildAttributes(OTELHelper otelHelper, SRunningBuild build, Span span, String spanName, String serviceName) {
         if (build.getBuildType() != null) {
             otelHelper.addAttributeToSpan(span, PluginConstants.ATTRIBUTE_PROJECT_NAME, build.getBuildType().getProject().getName());
         }
@@ -157,11 +200,47 @@ public class TeamCityBuildListener extends BuildServerAdapter {
         otelHelper.addAttributeToSpan(span, PluginConstants.ATTRIBUTE_BUILD_IS_COMPOSITE, build.getBuildPromotion().isCompositeBuild());
     }
 
+    @Override
+    public void serverShutdown() {
+        try {
+            // builds still running will never finish on this server, so end their spans and send what we can
+            var timeout = Duration.ofSeconds(TeamCityProperties.getInteger(PluginConstants.PROPERTY_KEY_SHUTDOWN_FLUSH_TIMEOUT_SECONDS, (int) PluginConstants.SHUTDOWN_FLUSH_TIMEOUT.toSeconds()));
+            otelHelperFactory.shutdown(timeout);
+            parallelTestSpans.shutdown();
+        } catch (Exception e) {
+            LOG.error("Exception in serverShutdown caused by: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void beforeBuildFinish(@NotNull SRunningBuild build) {
+        if (!nodesService.getCurrentNode().isMainNode()) return;
+        if (build.isCompositeBuild()) return;
+
+        try {
+            // the artifacts have been published by now, so get a head start on adding up their sizes
+            if (otelHelperFactory.getOTELHelper(getRootBuildInChain(build)).isReady())
+                artifactSizeCalculator.start(build);
+        } catch (Exception e) {
+            LOG.error("Exception in beforeBuildFinish caused by: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void buildRemovedFromQueue(@NotNull SQueuedBuild queuedBuild, User user, String comment) {
+        try {
+            // a chain whose root is cancelled before it starts never finishes, so its dependencies' totals would be kept forever
+            chainSummaries.forget(queuedBuild.getBuildPromotion().getId());
+        } catch (Exception e) {
+            LOG.error("Exception in buildRemovedFromQueue caused by: " + e.getMessage(), e);
+        }
+    }
+
     @Override
     public void buildFinished(@NotNull SRunningBuild build) {
         try {
             try (var ignored1 = CloseableThreadContext.put("teamcity.build.id", String.valueOf(build.getBuildId()))) {
-                LOG.debug(String.format("Build finished method triggered for %s", getBuildId(build)));
+                LOG.debug(String.format("Build finished method triggered for %d", build.getBuildId()));
                 super.buildFinished(build);
                 buildFinishedOrInterrupted(build);
             }
@@ -174,7 +253,7 @@ public class TeamCityBuildListener extends BuildServerAdapter {
     public void buildInterrupted(@NotNull SRunningBuild build) {
         try {
             try (var ignored1 = CloseableThreadContext.put("teamcity.build.id", String.valueOf(build.getBuildId()))) {
-                LOG.debug(String.format("Build interrupted method triggered for %s", getBuildId(build)));
+                LOG.debug(String.format("Build interrupted method triggered for %d", build.getBuildId()));
                 super.buildInterrupted(build);
                 buildFinishedOrInterrupted(build);
             }
@@ -184,8 +263,20 @@ public class TeamCityBuildListener extends BuildServerAdapter {
     }
 
     private void buildFinishedOrInterrupted (SRunningBuild build) {
+        // taken before anything else, so it's forgotten whichever way the build turns out not to be traced
+        var queueWaitTraced = queueWaitsTraced.remove(build.getBuildId());
         if (!nodesService.getCurrentNode().isMainNode()) return;
 
+        long startTime = System.nanoTime();
+        try {
+            traceFinishedBuild(build, queueWaitTraced);
+        } finally {
+            artifactSizeCalculator.forget(build.getBuildId());
+            pluginTelemetry.recordListenerDuration(PluginTelemetry.EVENT_BUILD_FINISHED, System.nanoTime() - startTime);
+        }
+    }
+
+    private void traceFinishedBuild(SRunningBuild build, boolean queueWaitTraced) {
         BuildStatistics buildStatistics = build.getBuildStatistics(BuildStatisticsOptions.ALL_TESTS_NO_DETAILS);
 
         var rootBuildInChain = getRootBuildInChain(build);
@@ -193,22 +284,33 @@ public class TeamCityBuildListener extends BuildServerAdapter {
         try (var ignored2 = CloseableThreadContext.put("teamcity.root.build.id", String.valueOf(rootBuildInChain.getId()))) {
             var otelHelper = otelHelperFactory.getOTELHelper(rootBuildInChain);
             if (otelHelper.isReady()) {
-                var span = otelHelper.getSpan(getBuildId(build));
+                var span = otelHelper.getSpan(build.getBuildId());
                 if (span != null) {
                     LOG.debug("Build finished and span found for '" + getBuildName(build) + "'");
                     try (Scope ignored3 = span.makeCurrent()) {
-                        createQueuedEventsSpans(build, span);
-                        createBuildStepSpans(build, span);
-                        createTestExecutionSpans(build, span, getBuildName(build));
-                        setArtifactAttributes(build, span);
+                        long phaseStartTime = System.nanoTime();
+                        // normally done when the build started, unless its wait reasons weren't known yet
+                        if (!queueWaitTraced)
+                            createQueuedEventsSpans(otelHelper, build, span);
+                        phaseStartTime = recordPhase(PluginTelemetry.PHASE_QUEUED_EVENTS, phaseStartTime);
+                        var buildBlocks = createBuildStepSpans(build, span);
+                        phaseStartTime = recordPhase(PluginTelemetry.PHASE_BUILD_STEPS, phaseStartTime);
+                        createTestExecutionSpans(build, span, getBuildName(build), buildBlocks);
+                        phaseStartTime = recordPhase(PluginTelemetry.PHASE_TESTS, phaseStartTime);
+                        setUtilisationAttributes(build, span, buildBlocks);
+                        phaseStartTime = recordPhase(PluginTelemetry.PHASE_UTILISATION, phaseStartTime);
+                        var artifactSizes = setArtifactAttributes(build, span);
+                        recordPhase(PluginTelemetry.PHASE_ARTIFACTS, phaseStartTime);
 
                         otelHelper.addAttributeToSpan(span, PluginConstants.ATTRIBUTE_SUCCESS_STATUS, build.getBuildStatus().isSuccessful());
                         otelHelper.addAttributeToSpan(span, PluginConstants.ATTRIBUTE_FAILED_TEST_COUNT, buildStatistics.getFailedTestCount());
                         otelHelper.addAttributeToSpan(span, PluginConstants.ATTRIBUTE_BUILD_PROBLEMS_COUNT, buildStatistics.getCompilationErrorsCount());
-                        if (this.checkoutTimeMap.containsKey(span.getSpanContext().getSpanId())) {
-                            otelHelper.addAttributeToSpan(span, PluginConstants.ATTRIBUTE_BUILD_CHECKOUT_TIME, this.checkoutTimeMap.get(span.getSpanContext().getSpanId()));
-                            this.checkoutTimeMap.remove(span.getSpanContext().getSpanId());
-                        }
+                        if (buildBlocks.getCheckoutTime() >= 0)
+                            otelHelper.addAttributeToSpan(span, PluginConstants.ATTRIBUTE_BUILD_CHECKOUT_TIME, buildBlocks.getCheckoutTime());
+                        compareBuildDuration(build, span);
+                        chainSummaries.add(rootBuildInChain.getId(), build, buildStatistics, artifactSizes);
+                        if (build.getBuildId() == rootBuildInChain.getId())
+                            chainSummaries.finish(rootBuildInChain.getId(), build.getBuildTypeExternalId(), span);
                         span.addEvent(PluginConstants.EVENT_FINISHED);
                         LOG.debug(PluginConstants.EVENT_FINISHED + " event added to span for build '" + getBuildName(build) + "' id " + build.getBuildId());
                     } catch (Exception e) {
@@ -218,21 +320,40 @@ public class TeamCityBuildListener extends BuildServerAdapter {
                         span.setStatus(StatusCode.ERROR, PluginConstants.EXCEPTION_ERROR_MESSAGE_DURING_BUILD_FINISH + ": " + e.getMessage());
                     } finally {
                         span.end();
-                        var buildId = getBuildId(build);
+                        var buildId = build.getBuildId();
                         otelHelper.removeSpan(buildId);
-                        if (buildId.equals(String.valueOf(getRootBuildInChain(build).getId())))
-                            otelHelperFactory.release(build.getBuildId());
+                        if (buildId == rootBuildInChain.getId()) {
+                            chainSummaries.forget(buildId);
+                            otelHelperFactory.release(buildId);
+                        }
                     }
                 } else {
                     LOG.warn("Build end triggered but span not found for build '" + getBuildName(build) + "' id " + build.getBuildId());
+                    if (build.getBuildId() == rootBuildInChain.getId())
+                        chainSummaries.forget(build.getBuildId());
                 }
             } else {
                 LOG.warn(String.format("Build finished (or interrupted) for '%s', id %d and plugin not ready.", getBuildName(build), build.getBuildId()));
+                // the chain wasn't traced (eg its destination's circuit breaker was open), but don't keep its helper around
+                if (build.getBuildId() == rootBuildInChain.getId()) {
+                    chainSummaries.forget(build.getBuildId());
+                    otelHelperFactory.release(build.getBuildId());
+                }
             }
         }
     }
 
-    private void createTestExecutionSpans(SRunningBuild build, Span parentSpan, String parentSpanName) {
+    /**
+     * @return the time now, to start timing the next phase from
+     */
+    private long recordPhase(String phase, long phaseStartTime) {
+        var now = System.nanoTime();
+        pluginTelemetry.recordPhaseDuration(phase, now - phaseStartTime);
+        return now;
+    }
+
+    // package-private for the benchmarks
+    void createTestExecutionSpans(SRunningBuild build, Span parentSpan, String parentSpanName, BuildBlockIndex testBlocks) {
         if (build.isCompositeBuild()) return;
 
         var buildStatistics = build.getBuildStatistics(
@@ -247,13 +368,19 @@ public class TeamCityBuildListener extends BuildServerAdapter {
             LOG.info("Creating child span '" + spanName + "' under parent " + parentSpanName);
 
             var testsSpan = otelHelper.createTransientSpan(spanName, parentSpan, startTime);
+            pluginTelemetry.recordSpansCreated(PluginTelemetry.SPAN_CLASS_TESTS, 1);
             setSpanBuildAttributes(otelHelper, build, testsSpan, spanName, "tests-execution");
 
             try {
                 LOG.info("Creating " + tests.size() + " test spans under '" + parentSpanName + "' > '" + spanName + "'");
-                for (var test : tests) {
-                    createTestExecutionSpan(otelHelper, build, test, testsSpan, startTime);
+                if (parallelTestSpans.shouldUse(tests.size())) {
+                    createTestExecutionSpansInParallel(otelHelper, build, tests, testsSpan, startTime, testBlocks);
+                } else {
+                    for (var test : tests) {
+                        createTestExecutionSpan(otelHelper, build, test, testsSpan, startTime, takeTestTiming(testBlocks, test));
+                    }
                 }
+                pluginTelemetry.recordSpansCreated(PluginTelemetry.SPAN_CLASS_TEST, tests.size());
                 LOG.info("Created " + tests.size() + " test spans under '" + parentSpanName + "' > '" + spanName + "'");
             } finally {
                 var finishDate = build.getFinishDate();
@@ -268,15 +395,45 @@ public class TeamCityBuildListener extends BuildServerAdapter {
 
     }
 
-    private void createTestExecutionSpan(OTELHelper otelHelper, SRunningBuild build, STestRun test, Span parentSpan, long startTime) {
-        var durationMs = test.getDuration(); // milliseconds
-        // For now, we are starting all tests in sync with their parent build. This isn't ideal, however the SDK doesn't expose test start/finish times here.
-        var endTime = startTime + durationMs;
+    private void createTestExecutionSpansInParallel(OTELHelper otelHelper, SRunningBuild build, List<STestRun> tests, Span parentSpan, long buildStartTime, BuildBlockIndex testBlocks) {
+        // a test that ran more than once gets its runs' timings in log order, and the index isn't thread-safe, so
+        // every test's timing is taken up front, in order
+        var timings = new BuildBlockIndex.Timing[tests.size()];
+        for (int i = 0; i < timings.length; i++) {
+            timings[i] = takeTestTiming(testBlocks, tests.get(i));
+        }
+        parallelTestSpans.forEachRange(tests.size(), (from, to) -> {
+            for (int i = from; i < to; i++) {
+                createTestExecutionSpan(otelHelper, build, tests.get(i), parentSpan, buildStartTime, timings[i]);
+            }
+        });
+    }
+
+    @Nullable
+    private static BuildBlockIndex.Timing takeTestTiming(BuildBlockIndex testBlocks, STestRun test) {
+        var timing = testBlocks.take(test.getTest().getName().getAsString());
+        if (timing == null)
+            timing = testBlocks.take(test.getTest().getName().getNameWithoutSuite());
+        return timing;
+    }
+
+    private void createTestExecutionSpan(OTELHelper otelHelper, SRunningBuild build, STestRun test, Span parentSpan, long buildStartTime, @Nullable BuildBlockIndex.Timing timing) {
+        var testName = test.getTest().getName().getAsString();
+
+        long startTime;
+        long endTime;
+        if (timing != null) {
+            startTime = timing.getStartTime();
+            endTime = timing.getFinishTime();
+        } else {
+            // No test block in the log for this test, so fall back to starting it in sync with its parent build.
+            startTime = buildStartTime;
+            endTime = buildStartTime + test.getDuration(); // milliseconds
+        }
         var failed = test.getStatus().isFailed();
         var passed = test.getStatus() == Status.NORMAL;
         var muted = test.isMuted();
         var ignored = test.isIgnored();
-        var testName = test.getTest().getName().getAsString();
 
         var humanReadableStatus = "unknown";
 
@@ -293,7 +450,9 @@ public class TeamCityBuildListener extends BuildServerAdapter {
             humanReadableStatus = "ignored";
         }
 
-        Span childSpan = otelHelper.createTransientSpan(testName, parentSpan, startTime);
+        var testSpanName = spanNameTemplates.getSpanName(testName);
+        Span childSpan = otelHelper.createTransientSpan(testSpanName, parentSpan, startTime);
+        setBaselineAttributes(childSpan, durationBaselines.observe(DurationBaselines.KIND_TEST, build.getBuildTypeId(), testSpanName, test.getDuration()));
         otelHelper.addAttributeToSpan(childSpan, PluginConstants.ATTRIBUTE_TEST_STATUS, humanReadableStatus);
         otelHelper.addAttributeToSpan(childSpan, PluginConstants.ATTRIBUTE_TEST_PASSED_FLAG, passed);
         otelHelper.addAttributeToSpan(childSpan, PluginConstants.ATTRIBUTE_TEST_FAILED_FLAG, failed);
@@ -307,44 +466,55 @@ public class TeamCityBuildListener extends BuildServerAdapter {
         childSpan.end(endTime, TimeUnit.MILLISECONDS);
     }
 
-    private void createQueuedEventsSpans(SRunningBuild build, Span buildSpan) {
+    /**
+     * TeamCity only reports the total time spent waiting for each reason, so the spans are laid end to end from when
+     * the build was queued.
+     *
+     * @return whether there were any wait reasons to create spans for
+     */
+    private boolean createQueuedEventsSpans(OTELHelper otelHelper, SRunningBuild build, Span buildSpan) {
+        var waits = QueueWaitReasons.parse(build.getStatisticValues());
+        if (waits.isEmpty()) return false;
+
         long startDateTime = build.getQueuedDate().getTime();
-        Map<String, BigDecimal> reportedStatics = build.getStatisticValues();
-
-        for (Map.Entry<String,BigDecimal> entry : reportedStatics.entrySet()) {
-            String key = entry.getKey();
-            if (key.contains("queueWaitReason:")) {
-                BigDecimal value = entry.getValue();
-                var otelHelper = otelHelperFactory.getOTELHelper(getRootBuildInChain(build));
-                Span childSpan = otelHelper.createTransientSpan(key, buildSpan, startDateTime);
-                List<String> keySplitList = Pattern.compile(":")
-                        .splitAsStream(key)
-                        .toList();
-                setSpanBuildAttributes(otelHelper, build, childSpan, keySplitList.get(1), keySplitList.get(0));
-                childSpan.end(startDateTime + value.longValue(), TimeUnit.MILLISECONDS);
-                startDateTime+= value.longValue();
-            }
+        for (var wait : waits) {
+            var duration = wait.getDurationMillis();
+            Span childSpan = otelHelper.createTransientSpan(QueueWaitReasons.SERVICE_NAME + ":" + wait.getReason(), buildSpan, startDateTime);
+            setSpanBuildAttributes(otelHelper, build, childSpan, wait.getReason(), QueueWaitReasons.SERVICE_NAME);
+            childSpan.end(startDateTime + duration, TimeUnit.MILLISECONDS);
+            buildUtilisationMetrics.recordQueueWait(wait.getReason(), duration);
+            startDateTime += duration;
         }
+        pluginTelemetry.recordSpansCreated(PluginTelemetry.SPAN_CLASS_QUEUED_EVENT, waits.size());
+        return true;
     }
 
-    private void createBuildStepSpans(SRunningBuild build, Span buildSpan) {
-        if (build.isCompositeBuild()) return;
+    // package-private for the benchmarks
+    BuildBlockIndex createBuildStepSpans(SRunningBuild build, Span buildSpan) {
+        var buildBlocks = new BuildBlockIndex();
+        if (build.isCompositeBuild()) return buildBlocks;
         Map<String, Span> blockMessageSpanMap = new HashMap<>();
         List<LogMessage> buildBlockLogs = getBuildBlockLogs(build);
         for (LogMessage logMessage: buildBlockLogs) {
             BlockLogMessage blockLogMessage = (BlockLogMessage) logMessage;
-            createBlockMessageSpan(blockLogMessage, buildSpan, blockMessageSpanMap, build);
+            if (blockLogMessage.getBlockType().equals(BuildBlockIndex.TEST_BLOCK_TYPE)) {
+                //we create spans for these when we publish tests (in createTestExecutionSpans); for now, just note when they ran
+                buildBlocks.add(blockLogMessage);
+                continue;
+            }
+            var parentBlockMessage = blockLogMessage.getParent();
+            if (!blockLogMessage.getBlockType().equals(DefaultMessagesInfo.BLOCK_TYPE_BUILD)
+                    && (parentBlockMessage == null || parentBlockMessage.getBlockType().equals(DefaultMessagesInfo.BLOCK_TYPE_BUILD))) {
+                buildBlocks.addStep(blockLogMessage);
+            }
+            createBlockMessageSpan(blockLogMessage, buildSpan, blockMessageSpanMap, build, buildBlocks);
         }
+        return buildBlocks;
     }
 
-    private void createBlockMessageSpan(BlockLogMessage blockLogMessage, Span buildSpan, Map<String, Span> blockMessageSpanMap, SRunningBuild build) {
-        if (blockLogMessage.getBlockType().equals("$TEST_BLOCK$")) {
-            //we handle these explicitly when we publish tests (in createTestExecutionSpans)
-            return;
-        }
-
+    private void createBlockMessageSpan(BlockLogMessage blockLogMessage, Span buildSpan, Map<String, Span> blockMessageSpanMap, SRunningBuild build, BuildBlockIndex buildBlocks) {
         Date blockMessageFinishDate = blockLogMessage.getFinishDate();
-        String blockMessageStepName = blockLogMessage.getText() + " " + blockMessageFinishDate;
+        String blockMessageKey = blockLogMessage.getText() + " " + blockMessageFinishDate;
         if (blockMessageFinishDate != null) { // This filters out creating duplicate spans for Builds from their build blockMessages
             BlockLogMessage parentBlockMessage = blockLogMessage.getParent();
             Span parentSpan;
@@ -363,13 +533,9 @@ public class TeamCityBuildListener extends BuildServerAdapter {
                 parentSpan = buildSpan;
             }
             if (parentSpan == null) {
-                LOG.error("Parent span is null; not creating block message spans for '" + blockMessageStepName + "'");
+                LOG.error("Parent span is null; not creating block message spans for '" + blockMessageKey + "'");
                 return;
             }
-            var otelHelper = otelHelperFactory.getOTELHelper(getRootBuildInChain(build));
-            Span childSpan = otelHelper.createTransientSpan(blockMessageStepName, parentSpan, blockLogMessage.getTimestamp().getTime());
-            otelHelper.addAttributeToSpan(childSpan, PluginConstants.ATTRIBUTE_BUILD_STEP_STATUS, blockLogMessage.getStatus());
-            blockMessageSpanMap.put(blockMessageStepName, childSpan);
             String spanName;
             if (blockLogMessage.getBlockDescription() != null) {
                 // Only the Build Step Types "teamcity-build-step-type" has blockDescriptions
@@ -377,22 +543,30 @@ public class TeamCityBuildListener extends BuildServerAdapter {
             } else {
                 spanName = blockLogMessage.getText();
             }
+            var stepSpanName = spanNameTemplates.getSpanName(spanName);
+            var otelHelper = otelHelperFactory.getOTELHelper(getRootBuildInChain(build));
+            Span childSpan = otelHelper.createTransientSpan(stepSpanName, parentSpan, blockLogMessage.getTimestamp().getTime());
+            otelHelper.addAttributeToSpan(childSpan, PluginConstants.ATTRIBUTE_BUILD_STEP_STATUS, blockLogMessage.getStatus());
+            blockMessageSpanMap.put(blockMessageKey, childSpan);
             if (blockLogMessage.getBlockType().equals("checkout")) {
-                calculateBuildCheckoutTime(blockLogMessage, buildSpan);
+                calculateBuildCheckoutTime(blockLogMessage, buildBlocks);
             }
             setSpanBuildAttributes(otelHelper, build, childSpan, spanName, blockLogMessage.getBlockType());
+            var stepDuration = blockMessageFinishDate.getTime() - blockLogMessage.getTimestamp().getTime();
+            setBaselineAttributes(childSpan, durationBaselines.observe(DurationBaselines.KIND_STEP, build.getBuildTypeId(), stepSpanName, stepDuration));
             childSpan.end(blockMessageFinishDate.getTime(),TimeUnit.MILLISECONDS);
+            pluginTelemetry.recordSpansCreated(PluginTelemetry.SPAN_CLASS_BUILD_STEP, 1);
         }
     }
 
-    private void calculateBuildCheckoutTime(BlockLogMessage blockLogMessage, Span span) {
+    private void calculateBuildCheckoutTime(BlockLogMessage blockLogMessage, BuildBlockIndex buildBlocks) {
         if (blockLogMessage.getBlockDescription() != null && blockLogMessage.getBlockDescription().contains("checkout")) {
             Date checkoutStartDate = blockLogMessage.getTimestamp();
             Date checkoutEndDate = blockLogMessage.getFinishDate();
             if (checkoutEndDate != null) {
                 Duration checkoutDuration = Duration.between(checkoutStartDate.toInstant(), checkoutEndDate.toInstant());
                 long checkoutDifference = Math.abs(checkoutDuration.toMillis());
-                this.checkoutTimeMap.put(span.getSpanContext().getSpanId(), checkoutDifference);
+                buildBlocks.setCheckoutTime(checkoutDifference);
             }
         }
     }
@@ -408,16 +582,65 @@ public class TeamCityBuildListener extends BuildServerAdapter {
         return buildLogs;
     }
 
-    private void setArtifactAttributes(SRunningBuild build, Span span) {
+    private void compareBuildDuration(SRunningBuild build, Span span) {
+        var clientStartDate = build.getClientStartDate();
+        if (clientStartDate == null) return;
+        var startTime = build.convertToServerTime(clientStartDate).getTime();
+        var finishDate = build.getFinishDate();
+        var finishTime = finishDate != null ? finishDate.getTime() : System.currentTimeMillis();
+        var comparison = durationBaselines.observe(DurationBaselines.KIND_BUILD, build.getBuildTypeId(), null, finishTime - startTime);
+        if (comparison != null && durationBaselines.isRegression(comparison))
+            LOG.info(String.format("Build %d of %s took longer than %.0f%% of its recent runs (median %.0f ms)",
+                    build.getBuildId(), build.getBuildTypeId(), comparison.getPercentile(), comparison.getBaselineMedianMs()));
+        setBaselineAttributes(span, comparison);
+    }
+
+    private void setBaselineAttributes(Span span, @Nullable DurationComparison comparison) {
+        if (comparison == null) return;
+        span.setAttribute(PluginConstants.ATTRIBUTE_DURATION_PERCENTILE, comparison.getPercentile());
+        span.setAttribute(PluginConstants.ATTRIBUTE_DURATION_BASELINE_MEDIAN, comparison.getBaselineMedianMs());
+        span.setAttribute(PluginConstants.ATTRIBUTE_DURATION_REGRESSION, durationBaselines.isRegression(comparison));
+    }
+
+    private void setUtilisationAttributes(SRunningBuild build, Span span, BuildBlockIndex buildBlocks) {
         if (build.isCompositeBuild()) return;
-        LOG.debug("Retrieving build artifact attributes for build '" + getBuildName(build) + "' with id: " + getBuildId(build));
-        AtomicLong buildTotalArtifactSize = new AtomicLong();
-        BuildArtifacts buildArtifacts = build.getArtifacts(BuildArtifactsViewMode.VIEW_DEFAULT);
-        buildArtifacts.iterateArtifacts(artifact -> {
-            buildTotalArtifactSize.getAndAdd(artifact.getSize());
-            return BuildArtifacts.BuildArtifactsProcessor.Continuation.CONTINUE;
-        });
-        LOG.debug("Build total artifact size attribute " + PluginConstants.ATTRIBUTE_TOTAL_ARTIFACT_SIZE + "=" + buildTotalArtifactSize);
-        span.setAttribute(PluginConstants.ATTRIBUTE_TOTAL_ARTIFACT_SIZE, String.valueOf(buildTotalArtifactSize));
+        var steps = buildBlocks.getStepIntervals().analyse();
+        if (steps != null) {
+            span.setAttribute(PluginConstants.ATTRIBUTE_BUILD_STEPS_BUSY_TIME, steps.getBusyMillis());
+            span.setAttribute(PluginConstants.ATTRIBUTE_BUILD_STEPS_IDLE_TIME, steps.getIdleMillis());
+        }
+        var tests = buildBlocks.getTestIntervals().analyse();
+        if (tests != null) {
+            LOG.debug(String.format("Tests in build %d ran at most %d and on average %.2f at a time, idle for %d ms in between",
+                    build.getBuildId(), tests.getPeak(), tests.getAverage(), tests.getIdleMillis()));
+            span.setAttribute(PluginConstants.ATTRIBUTE_TEST_CONCURRENCY_PEAK, tests.getPeak());
+            span.setAttribute(PluginConstants.ATTRIBUTE_TEST_CONCURRENCY_AVERAGE, tests.getAverage());
+            span.setAttribute(PluginConstants.ATTRIBUTE_TEST_BUSY_TIME, tests.getBusyMillis());
+            span.setAttribute(PluginConstants.ATTRIBUTE_TEST_IDLE_TIME, tests.getIdleMillis());
+        }
+        buildUtilisationMetrics.record(build.getBuildTypeExternalId(), steps, tests);
+    }
+
+    @Nullable
+    private ArtifactSizes setArtifactAttributes(SRunningBuild build, Span span) {
+        if (build.isCompositeBuild()) return null;
+        LOG.debug("Retrieving build artifact attributes for build '" + getBuildName(build) + "' with id: " + build.getBuildId());
+        var artifactSizes = artifactSizeCalculator.await(build);
+        if (artifactSizes == null) return null;
+
+        LOG.debug("Build total artifact size attribute " + PluginConstants.ATTRIBUTE_TOTAL_ARTIFACT_SIZE + "=" + artifactSizes.getTotalSize());
+        span.setAttribute(PluginConstants.ATTRIBUTE_TOTAL_ARTIFACT_SIZE, artifactSizes.getTotalSize());
+        span.setAttribute(PluginConstants.ATTRIBUTE_ARTIFACT_COUNT, artifactSizes.getFileCount());
+        if (!artifactSizes.isComplete())
+            span.setAttribute(PluginConstants.ATTRIBUTE_ARTIFACT_SIZE_TRUNCATED, true);
+
+        var largestDirectories = artifactSizes.getLargestDirectories(artifactSizeCalculator.getLargestDirectoryCount());
+        if (!largestDirectories.isEmpty()) {
+            span.setAttribute(AttributeKey.stringArrayKey(PluginConstants.ATTRIBUTE_LARGEST_ARTIFACT_DIRECTORIES),
+                    largestDirectories.stream().map(Map.Entry::getKey).collect(Collectors.toList()));
+            span.setAttribute(AttributeKey.longArrayKey(PluginConstants.ATTRIBUTE_LARGEST_ARTIFACT_DIRECTORY_SIZES),
+                    largestDirectories.stream().map(Map.Entry::getValue).collect(Collectors.toList()));
+        }
+        return artifactSizes;
     }
 }
@@ -0,0 +1,158 @@
+package com.octopus.teamcity.opentelemetry.server.artifacts;
+
+import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import jetbrains.buildServer.serverSide.artifacts.BuildArtifacts;
+import jetbrains.buildServer.serverSide.artifacts.BuildArtifactsViewMode;
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+
+/**
+ * Works out {@link ArtifactSizes} off the build listener's thread.
+ * <p>
+ * Walking the artifacts of a build with hundreds of thousands of files (or with them in remote storage) can take
+ * seconds, so the walk is started as soon as a build starts finishing. Each walk gets the time budget from when it
+ * actually starts, so one queued behind other builds' walks isn't cut short; whoever needs the result waits for the
+ * budget from when the walk was asked for, and then for the rest of the walk's own budget if it started late. If the
+ * budget runs out mid-walk, the sizes counted so far are returned, marked as incomplete.
+ */
+public class ArtifactSizeCalculator {
+    static Logger LOG = Logger.getLogger(ArtifactSizeCalculator.class.getName());
+    // how long past the budget to wait for a walk to notice it's out of time, before giving up on it altogether
+    private static final Duration COMPLETION_GRACE = Duration.ofMillis(100);
+
+    private final ExecutorService executor;
+    private final Duration timeBudget;
+    private final int largestDirectoryCount;
+    private final ConcurrentHashMap<Long, Calculation> calculations;
+
+    public ArtifactSizeCalculator() {
+        this(Executors.newFixedThreadPool(ARTIFACT_SIZE_THREADS, runnable -> {
+                    var thread = new Thread(runnable, "OTEL-ArtifactSizeCalculator");
+                    thread.setDaemon(true);
+                    return thread;
+                }),
+                Duration.ofMillis(TeamCityProperties.getLong(PROPERTY_KEY_ARTIFACT_SIZE_TIME_BUDGET_MS, ARTIFACT_SIZE_TIME_BUDGET.toMillis())),
+                TeamCityProperties.getInteger(PROPERTY_KEY_ARTIFACT_SIZE_LARGEST_DIRECTORIES, ARTIFACT_SIZE_LARGEST_DIRECTORIES));
+    }
+
+    ArtifactSizeCalculator(ExecutorService executor, Duration timeBudget, int largestDirectoryCount) {
+        this.executor = executor;
+        this.timeBudget = timeBudget;
+        this.largestDirectoryCount = largestDirectoryCount;
+        this.calculations = new ConcurrentHashMap<>();
+    }
+
+    public int getLargestDirectoryCount() {
+        return largestDirectoryCount;
+    }
+
+    /**
+     * Starts walking the build's artifacts in the background, unless that's already under way.
+     */
+    public void start(@NotNull SBuild build) {
+        calculations.computeIfAbsent(build.getBuildId(), buildId -> new Calculation(build));
+    }
+
+    /**
+     * @return the build's artifact sizes, starting the walk now if {@link #start} wasn't called; or null if the walk
+     * failed, or was still stuck once the time budget ran out
+     */
+    @Nullable
+    public ArtifactSizes await(@NotNull SBuild build) {
+        var calculation = calculations.remove(build.getBuildId());
+        if (calculation == null)
+            calculation = new Calculation(build);
+
+        try {
+            try {
+                return calculation.result.get(getRemainingNanos(calculation.submittedNanos), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                if (!calculation.started)
+                    throw e;
+                // it was queued behind other walks, so give it the rest of its own budget
+                return calculation.result.get(getRemainingNanos(calculation.startedNanos), TimeUnit.NANOSECONDS);
+            }
+        } catch (TimeoutException | CancellationException e) {
+            calculation.cancel();
+            LOG.warn(String.format("Gave up waiting for the artifacts of build %d to be listed after %d ms.", build.getBuildId(), timeBudget.toMillis()));
+        } catch (ExecutionException e) {
+            LOG.warn(String.format("Failed to work out the artifact sizes of build %d: %s", build.getBuildId(), e.getCause().getMessage()), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    /**
+     * Drops the build's walk if it hasn't started, or tells it to stop at the next artifact if it has, eg because the
+     * build turned out not to be traced.
+     */
+    public void forget(long buildId) {
+        var calculation = calculations.remove(buildId);
+        if (calculation != null)
+            calculation.cancel();
+    }
+
+    public void shutdown() {
+        calculations.values().forEach(Calculation::cancel);
+        calculations.clear();
+        executor.shutdownNow();
+    }
+
+    private long getRemainingNanos(long fromNanos) {
+        return Math.max(0, fromNanos + timeBudget.toNanos() + COMPLETION_GRACE.toNanos() - System.nanoTime());
+    }
+
+    private ArtifactSizes walk(SBuild build, Calculation calculation) {
+        var startedNanos = System.nanoTime();
+        calculation.startedNanos = startedNanos;
+        calculation.started = true;
+        var deadlineNanos = startedNanos + timeBudget.toNanos();
+        var sizes = new ArtifactSizes(ARTIFACT_SIZE_DIRECTORY_DEPTH);
+        build.getArtifacts(BuildArtifactsViewMode.VIEW_DEFAULT).iterateArtifacts(artifact -> {
+            // the flag as well as the interrupt, as artifact storage can swallow interrupts
+            if (System.nanoTime() - deadlineNanos > 0 || calculation.cancelled || Thread.currentThread().isInterrupted()) {
+                sizes.markIncomplete();
+                return BuildArtifacts.BuildArtifactsProcessor.Continuation.BREAK;
+            }
+            if (!artifact.isDirectory())
+                sizes.add(artifact.getRelativePath(), artifact.getSize());
+            return BuildArtifacts.BuildArtifactsProcessor.Continuation.CONTINUE;
+        });
+        if (!sizes.isComplete())
+            LOG.info(String.format("Ran out of time listing the artifacts of build %d after %d files; their sizes will be incomplete.", build.getBuildId(), sizes.getFileCount()));
+        return sizes;
+    }
+
+    private class Calculation {
+        private final long submittedNanos;
+        private volatile long startedNanos;
+        private volatile boolean started;
+        private volatile boolean cancelled;
+        private final Future<ArtifactSizes> result;
+
+        Calculation(SBuild build) {
+            this.submittedNanos = System.nanoTime();
+            this.result = executor.submit(() -> walk(build, this));
+        }
+
+        void cancel() {
+            cancelled = true;
+            result.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.octopus.teamcity.opentelemetry.server.artifacts;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * The total size of a build's artifacts, and how that is split between its directories.
+ * <p>
+ * Files are counted against their directory, cut down to the first <code>directoryDepth</code> levels (so
+ * <code>reports/coverage/html/index.html</code> counts towards <code>reports/coverage</code> at depth 2); files at the
+ * top level count towards <code>.</code>.
+ */
+public class ArtifactSizes {
+    static final String ROOT_DIRECTORY = ".";
+
+    private final int directoryDepth;
+    private final Map<String, Long> directorySizes;
+    private long totalSize;
+    private long fileCount;
+    private boolean complete;
+
+    ArtifactSizes(int directoryDepth) {
+        this.directoryDepth = directoryDepth;
+        this.directorySizes = new HashMap<>();
+        this.complete = true;
+    }
+
+    void add(String relativePath, long size) {
+        if (size < 0) return;
+        totalSize += size;
+        fileCount++;
+        directorySizes.merge(directoryOf(relativePath), size, Long::sum);
+    }
+
+    void markIncomplete() {
+        this.complete = false;
+    }
+
+    private String directoryOf(String relativePath) {
+        var lastSeparator = relativePath.lastIndexOf('/');
+        if (lastSeparator <= 0)
+            return ROOT_DIRECTORY;
+
+        var end = -1;
+        for (int level = 0; level < directoryDepth; level++) {
+            end = relativePath.indexOf('/', end + 1);
+            if (end == lastSeparator)
+                break;
+        }
+        return relativePath.substring(0, end);
+    }
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    /**
+     * @return false if the time budget ran out before every artifact was counted, so the sizes are a lower bound
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return up to <code>count</code> directories and their sizes, largest first
+     */
+    public List<Map.Entry<String, Long>> getLargestDirectories(int count) {
+        return directorySizes.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(count)
+                .map(entry -> new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+}
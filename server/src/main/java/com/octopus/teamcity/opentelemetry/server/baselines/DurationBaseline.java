@@ -0,0 +1,69 @@
+package com.octopus.teamcity.opentelemetry.server.baselines;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The recent durations of one build type, step or test, to compare the next run against.
+ * <p>
+ * Runs are compared against a window sketch, which holds the runs of the current generation plus (once there has been
+ * one) the whole of the previous generation. A generation ends after <code>windowRuns</code> runs, so comparisons
+ * cover between the last <code>windowRuns</code> and <code>2 * windowRuns</code> runs, and older runs drop out
+ * without having to be kept individually.
+ */
+class DurationBaseline {
+    private final double relativeAccuracy;
+    private final int windowRuns;
+    // this generation's runs
+    private DurationSketch current;
+    // this generation's runs, plus the previous generation's
+    private DurationSketch window;
+
+    DurationBaseline(double relativeAccuracy, int windowRuns) {
+        this(relativeAccuracy, windowRuns, new DurationSketch(relativeAccuracy), new DurationSketch(relativeAccuracy));
+    }
+
+    private DurationBaseline(double relativeAccuracy, int windowRuns, DurationSketch current, DurationSketch window) {
+        this.relativeAccuracy = relativeAccuracy;
+        this.windowRuns = windowRuns;
+        this.current = current;
+        this.window = window;
+    }
+
+    /**
+     * Compares the duration against the baseline so far, then adds it to the baseline.
+     *
+     * @return the comparison, or null if there were fewer than <code>minRuns</code> runs to compare against
+     */
+    @Nullable
+    synchronized DurationComparison observe(long durationMs, int minRuns) {
+        DurationComparison comparison = null;
+        var runs = window.getCount();
+        if (runs >= minRuns && runs > 0)
+            comparison = new DurationComparison(100 * window.countBelow(durationMs) / runs, window.getQuantile(0.5), runs);
+
+        current.add(durationMs);
+        window.add(durationMs);
+        if (current.getCount() >= windowRuns) {
+            // the generation that just ended becomes the previous one, and the one before that drops out
+            window = new DurationSketch(relativeAccuracy);
+            window.merge(current);
+            current = new DurationSketch(relativeAccuracy);
+        }
+        return comparison;
+    }
+
+    synchronized void write(DataOutput output) throws IOException {
+        current.write(output);
+        window.write(output);
+    }
+
+    static DurationBaseline read(DataInput input, double relativeAccuracy, int windowRuns) throws IOException {
+        var current = DurationSketch.read(input, relativeAccuracy);
+        var window = DurationSketch.read(input, relativeAccuracy);
+        return new DurationBaseline(relativeAccuracy, windowRuns, current, window);
+    }
+}
@@ -0,0 +1,186 @@
+package com.octopus.teamcity.opentelemetry.server.baselines;
+
+import jetbrains.buildServer.serverSide.ServerPaths;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+
+/**
+ * Rolling duration baselines for build types, build steps and tests, so spans can say how unusual their duration
+ * was without querying the tracing backend for history.
+ * <p>
+ * Each series is a pair of small quantile sketches (see {@link DurationBaseline}), so comparing a run and adding it
+ * costs a map lookup and a pass over a few hundred buckets at most, without a lock shared by every series (see
+ * {@link LruSeries}). The least recently used series are dropped once there are more than the configured maximum,
+ * and the rest are saved to the plugin's data directory periodically and when the server stops, then loaded again
+ * when it starts.
+ */
+public class DurationBaselines {
+    static Logger LOG = Logger.getLogger(DurationBaselines.class.getName());
+    public static final String KIND_BUILD = "build";
+    public static final String KIND_STEP = "step";
+    public static final String KIND_TEST = "test";
+    private static final int FILE_MAGIC = 0x4F544244; // "OTBD"
+    private static final int FILE_VERSION = 1;
+    private static final int MAX_KEY_BYTES = 64 * 1024;
+
+    private final boolean enabled;
+    private final int windowRuns;
+    private final int minRuns;
+    private final double regressionPercentile;
+    @Nullable
+    private final Path file;
+    @Nullable
+    private ScheduledExecutorService persistenceScheduler;
+    // builds and steps, kept apart from the tests so one huge test suite can't push out every other baseline
+    private final LruSeries series;
+    private final LruSeries testSeries;
+
+    @Autowired
+    public DurationBaselines(@NotNull ServerPaths serverPaths) {
+        this(serverPaths.getPluginDataDirectory().toPath().resolve(PLUGIN_NAME).resolve(BASELINES_FILE_NAME));
+
+        if (enabled) {
+            this.persistenceScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "OTEL-BaselinePersistence");
+                thread.setDaemon(true);
+                return thread;
+            });
+            var interval = BASELINES_PERSIST_INTERVAL.toMillis();
+            persistenceScheduler.scheduleWithFixedDelay(this::persist, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @param file where to save the baselines (and load them from, if it exists); or null to keep them in memory only
+     */
+    public DurationBaselines(@Nullable Path file) {
+        this(file,
+                TeamCityProperties.getBooleanOrTrue(PROPERTY_KEY_BASELINES_ENABLED),
+                TeamCityProperties.getInteger(PROPERTY_KEY_BASELINES_MAX_SERIES, BASELINES_MAX_SERIES),
+                TeamCityProperties.getInteger(PROPERTY_KEY_BASELINES_MAX_TEST_SERIES, BASELINES_MAX_TEST_SERIES),
+                TeamCityProperties.getInteger(PROPERTY_KEY_BASELINES_WINDOW_RUNS, BASELINES_WINDOW_RUNS),
+                TeamCityProperties.getInteger(PROPERTY_KEY_BASELINES_MIN_RUNS, BASELINES_MIN_RUNS),
+                TeamCityProperties.getInteger(PROPERTY_KEY_BASELINES_REGRESSION_PERCENTILE, BASELINES_REGRESSION_PERCENTILE));
+    }
+
+    DurationBaselines(@Nullable Path file, boolean enabled, int maxSeries, int maxTestSeries, int windowRuns, int minRuns, double regressionPercentile) {
+        this.file = file;
+        this.enabled = enabled;
+        this.windowRuns = windowRuns;
+        this.minRuns = minRuns;
+        this.regressionPercentile = regressionPercentile;
+        this.series = new LruSeries(maxSeries);
+        this.testSeries = new LruSeries(maxTestSeries);
+        if (enabled && file != null && Files.exists(file))
+            load(file);
+    }
+
+    /**
+     * Compares a run's duration against the recent runs of the same build type, step or test, then adds it to them.
+     *
+     * @param kind one of the <code>KIND_</code> constants
+     * @param name the step or test name, or null for the build itself
+     * @return the comparison, or null if there aren't enough recent runs to compare against (or baselines are disabled)
+     */
+    @Nullable
+    public DurationComparison observe(String kind, String buildTypeId, @Nullable String name, long durationMs) {
+        if (!enabled) return null;
+
+        var key = name == null ? kind + '|' + buildTypeId : kind + '|' + buildTypeId + '|' + name;
+        var baseline = getSeries(key).computeIfAbsent(key, () -> new DurationBaseline(BASELINES_RELATIVE_ACCURACY, windowRuns));
+        return baseline.observe(durationMs, minRuns);
+    }
+
+    /**
+     * @return whether the comparison is slow enough to be called a regression
+     */
+    public boolean isRegression(DurationComparison comparison) {
+        return comparison.getPercentile() >= regressionPercentile;
+    }
+
+    private LruSeries getSeries(String key) {
+        return key.startsWith(KIND_TEST + '|') ? testSeries : series;
+    }
+
+    int size() {
+        return series.size() + testSeries.size();
+    }
+
+    public void persist() {
+        if (file == null || !enabled) return;
+
+        var entries = series.snapshot();
+        entries.addAll(testSeries.snapshot());
+        entries.removeIf(entry -> entry.getKey().length() > MAX_KEY_BYTES / 4);
+
+        try {
+            Files.createDirectories(file.getParent());
+            var temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+            try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+                output.writeInt(FILE_MAGIC);
+                output.writeInt(FILE_VERSION);
+                output.writeDouble(BASELINES_RELATIVE_ACCURACY);
+                output.writeInt(entries.size());
+                // oldest first, so the least recently used order survives a reload
+                for (var entry : entries) {
+                    var key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                    output.writeInt(key.length);
+                    output.write(key);
+                    entry.getValue().write(output);
+                }
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOG.debug(String.format("Saved %d duration baselines to %s.", entries.size(), file));
+        } catch (IOException | RuntimeException e) {
+            LOG.warn(String.format("Failed to save duration baselines to %s: %s", file, e.getMessage()), e);
+        }
+    }
+
+    private void load(Path file) {
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != FILE_MAGIC || input.readInt() != FILE_VERSION || input.readDouble() != BASELINES_RELATIVE_ACCURACY) {
+                LOG.info(String.format("Ignoring duration baselines in %s, as they were saved by an incompatible version.", file));
+                return;
+            }
+            var count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                var keyLength = input.readInt();
+                if (keyLength < 0 || keyLength > MAX_KEY_BYTES)
+                    throw new IOException("Corrupt baseline key length " + keyLength);
+                var key = new byte[keyLength];
+                input.readFully(key);
+                var name = new String(key, StandardCharsets.UTF_8);
+                getSeries(name).put(name, DurationBaseline.read(input, BASELINES_RELATIVE_ACCURACY, windowRuns));
+            }
+            LOG.info(String.format("Loaded %d duration baselines from %s.", count, file));
+        } catch (IOException | RuntimeException e) {
+            LOG.warn(String.format("Failed to load duration baselines from %s; starting afresh: %s", file, e.getMessage()), e);
+            series.clear();
+            testSeries.clear();
+        }
+    }
+
+    public void shutdown() {
+        if (persistenceScheduler != null)
+            persistenceScheduler.shutdownNow();
+        persist();
+    }
+}
@@ -0,0 +1,31 @@
+package com.octopus.teamcity.opentelemetry.server.baselines;
+
+/**
+ * How one run's duration compares to the recent runs of the same build type, step or test.
+ */
+public class DurationComparison {
+    private final double percentile;
+    private final double baselineMedianMs;
+    private final long baselineRuns;
+
+    DurationComparison(double percentile, double baselineMedianMs, long baselineRuns) {
+        this.percentile = percentile;
+        this.baselineMedianMs = baselineMedianMs;
+        this.baselineRuns = baselineRuns;
+    }
+
+    /**
+     * @return the percentage (0-100) of recent runs that were quicker
+     */
+    public double getPercentile() {
+        return percentile;
+    }
+
+    public double getBaselineMedianMs() {
+        return baselineMedianMs;
+    }
+
+    public long getBaselineRuns() {
+        return baselineRuns;
+    }
+}
@@ -0,0 +1,168 @@
+package com.octopus.teamcity.opentelemetry.server.baselines;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A mergeable quantile sketch of durations (in milliseconds), after DDSketch: each duration is counted in a bucket
+ * whose bounds grow geometrically, so any quantile read back is within the relative accuracy of a real duration.
+ * <p>
+ * Durations are clamped to between 1 ms and {@link #MAX_DURATION_MS}, which bounds a sketch to a few hundred buckets
+ * however many durations are added; durations of 0 ms are counted separately. Not thread-safe.
+ */
+class DurationSketch {
+    static final long MAX_DURATION_MS = 31L * 24 * 60 * 60 * 1000;
+    private static final int INITIAL_BUCKETS = 8;
+
+    private final double gamma;
+    private final double logGamma;
+    private int[] counts;
+    // the bucket index of counts[0]
+    private int offset;
+    private long zeroCount;
+    private long count;
+
+    DurationSketch(double relativeAccuracy) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1)
+            throw new IllegalArgumentException("relativeAccuracy must be between 0 and 1, exclusive");
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.counts = new int[0];
+    }
+
+    void add(long durationMs) {
+        count++;
+        if (durationMs <= 0) {
+            zeroCount++;
+            return;
+        }
+        var index = index(durationMs);
+        ensureCapacity(index, index);
+        counts[index - offset]++;
+    }
+
+    void merge(DurationSketch other) {
+        if (other.gamma != gamma)
+            throw new IllegalArgumentException("Only sketches with the same relative accuracy can be merged");
+        count += other.count;
+        zeroCount += other.zeroCount;
+        if (other.counts.length == 0)
+            return;
+        ensureCapacity(other.offset, other.offset + other.counts.length - 1);
+        for (int i = 0; i < other.counts.length; i++)
+            counts[other.offset + i - offset] += other.counts[i];
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * @return how many of the durations were shorter than the given one, counting half of those that fall in the same
+     * bucket
+     */
+    double countBelow(long durationMs) {
+        if (durationMs <= 0)
+            return zeroCount / 2.0;
+
+        var index = index(durationMs);
+        double below = zeroCount;
+        var end = Math.min(index - offset, counts.length);
+        for (int i = 0; i < end; i++)
+            below += counts[i];
+        if (index - offset >= 0 && index - offset < counts.length)
+            below += counts[index - offset] / 2.0;
+        return below;
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     * @return the duration at that quantile, or 0 if the sketch is empty
+     */
+    double getQuantile(double quantile) {
+        if (count == 0)
+            return 0;
+
+        var rank = (long) (quantile * (count - 1));
+        if (rank < zeroCount)
+            return 0;
+        long seen = zeroCount;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen > rank)
+                return value(offset + i);
+        }
+        return value(offset + counts.length - 1);
+    }
+
+    private int index(long durationMs) {
+        return (int) Math.ceil(Math.log(Math.min(durationMs, MAX_DURATION_MS)) / logGamma);
+    }
+
+    private double value(int index) {
+        // the middle of the bucket, in relative terms
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    private void ensureCapacity(int minIndex, int maxIndex) {
+        if (counts.length == 0) {
+            var length = Math.max(INITIAL_BUCKETS, maxIndex - minIndex + 1);
+            counts = new int[length];
+            offset = minIndex;
+            return;
+        }
+        var newOffset = Math.min(offset, minIndex);
+        var newEnd = Math.max(offset + counts.length - 1, maxIndex);
+        if (newOffset == offset && newEnd == offset + counts.length - 1)
+            return;
+
+        // grow by at least half again, on whichever side(s) ran out
+        var needed = newEnd - newOffset + 1;
+        var length = Math.max(needed, counts.length + counts.length / 2);
+        if (newOffset < offset)
+            newOffset = Math.min(newOffset, newEnd - length + 1);
+        var grown = new int[length];
+        System.arraycopy(counts, 0, grown, offset - newOffset, counts.length);
+        counts = grown;
+        offset = newOffset;
+    }
+
+    void write(DataOutput output) throws IOException {
+        output.writeLong(count);
+        output.writeLong(zeroCount);
+        // trim empty buckets at either end
+        int first = 0;
+        while (first < counts.length && counts[first] == 0)
+            first++;
+        int last = counts.length - 1;
+        while (last >= first && counts[last] == 0)
+            last--;
+        output.writeInt(offset + first);
+        output.writeInt(last - first + 1);
+        for (int i = first; i <= last; i++)
+            output.writeInt(counts[i]);
+    }
+
+    static DurationSketch read(DataInput input, double relativeAccuracy) throws IOException {
+        var sketch = new DurationSketch(relativeAccuracy);
+        sketch.count = input.readLong();
+        sketch.zeroCount = input.readLong();
+        sketch.offset = input.readInt();
+        var length = input.readInt();
+        // check everything against what add() could have produced before allocating, so a corrupt file can't ask
+        // for a huge array
+        var maxIndex = sketch.index(MAX_DURATION_MS);
+        if (sketch.count < 0 || sketch.zeroCount < 0 || sketch.zeroCount > sketch.count)
+            throw new IOException(String.format("Corrupt sketch: count %d, zero count %d", sketch.count, sketch.zeroCount));
+        if (length < 0 || length > maxIndex + 1 || (length > 0 && (sketch.offset < 0 || sketch.offset > maxIndex + 1 - length)))
+            throw new IOException(String.format("Corrupt sketch: %d buckets from %d, when there can only be %d", length, sketch.offset, maxIndex + 1));
+        sketch.counts = new int[length];
+        for (int i = 0; i < length; i++) {
+            sketch.counts[i] = input.readInt();
+            if (sketch.counts[i] < 0)
+                throw new IOException("Corrupt sketch: negative bucket count");
+        }
+        return sketch;
+    }
+}
@@ -0,0 +1,85 @@
+package com.octopus.teamcity.opentelemetry.server.baselines;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Baselines by key, forgetting the least recently used once there are more than the maximum.
+ * <p>
+ * Every test span looks its baseline up, from the workers creating test spans in parallel too, so the series are
+ * split across stripes that are each locked on their own, and each stripe forgets its own least recently used
+ * series. Small maximums use one stripe, so the limit and the order things are forgotten in stay exact.
+ */
+class LruSeries {
+    private static final int STRIPES = 16;
+    private static final int MIN_SERIES_TO_STRIPE = 1024;
+    private final List<LinkedHashMap<String, DurationBaseline>> stripes;
+
+    LruSeries(int maxSeries) {
+        var stripeCount = maxSeries >= MIN_SERIES_TO_STRIPE ? STRIPES : 1;
+        var maxSeriesPerStripe = Math.max(maxSeries, 0) / stripeCount;
+        this.stripes = new ArrayList<>(stripeCount);
+        for (int i = 0; i < stripeCount; i++) {
+            stripes.add(new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, DurationBaseline> eldest) {
+                    return size() > maxSeriesPerStripe;
+                }
+            });
+        }
+    }
+
+    DurationBaseline computeIfAbsent(String key, Supplier<DurationBaseline> create) {
+        var stripe = getStripe(key);
+        synchronized (stripe) {
+            return stripe.computeIfAbsent(key, ignored -> create.get());
+        }
+    }
+
+    void put(String key, DurationBaseline baseline) {
+        var stripe = getStripe(key);
+        synchronized (stripe) {
+            stripe.put(key, baseline);
+        }
+    }
+
+    /**
+     * @return every series, with each stripe's least recently used first, so putting them back in order keeps it
+     */
+    List<Map.Entry<String, DurationBaseline>> snapshot() {
+        var entries = new ArrayList<Map.Entry<String, DurationBaseline>>();
+        for (var stripe : stripes) {
+            synchronized (stripe) {
+                for (var entry : stripe.entrySet())
+                    entries.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+        }
+        return entries;
+    }
+
+    int size() {
+        var size = 0;
+        for (var stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    void clear() {
+        for (var stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    private LinkedHashMap<String, DurationBaseline> getStripe(String key) {
+        var hash = key.hashCode();
+        return stripes.get((hash ^ (hash >>> 16)) & (stripes.size() - 1));
+    }
+}
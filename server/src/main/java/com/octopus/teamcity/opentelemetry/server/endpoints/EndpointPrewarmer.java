@@ -0,0 +1,160 @@
+package com.octopus.teamcity.opentelemetry.server.endpoints;
+
+import com.octopus.teamcity.opentelemetry.server.telemetry.PluginTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import jetbrains.buildServer.serverSide.BuildServerAdapter;
+import jetbrains.buildServer.serverSide.BuildServerListener;
+import jetbrains.buildServer.serverSide.ProjectManager;
+import jetbrains.buildServer.serverSide.TeamCityNodes;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import jetbrains.buildServer.util.EventDispatcher;
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+
+/**
+ * Once the main node has started, warms up the exporters for every distinct endpoint configured across the projects,
+ * in the background; otherwise the first build traced after a restart pays for loading the exporter and HTTP client
+ * classes, and resolving the endpoint, on the thread handling its build event.
+ * <p>
+ * Each build chain's exporter has an HTTP client (and so connections) of its own, so the connection made here isn't
+ * reused; what carries over is the loaded classes, and the resolved address while the JVM caches it. Only the main
+ * node traces builds, so the other nodes don't warm anything up.
+ */
+public class EndpointPrewarmer extends BuildServerAdapter {
+    static Logger LOG = Logger.getLogger(EndpointPrewarmer.class.getName());
+    private static final AttributeKey<String> SERVICE_KEY = AttributeKey.stringKey("service");
+    private static final AttributeKey<Boolean> SUCCESS_KEY = AttributeKey.booleanKey("success");
+
+    private final ProjectManager projectManager;
+    private final TeamCityNodes nodesService;
+    private final OTELEndpointFactory otelEndpointFactory;
+    private final DoubleHistogram prewarmDuration;
+    private final DoubleHistogram endpointPrewarmDuration;
+
+    public EndpointPrewarmer(
+            @NotNull EventDispatcher<BuildServerListener> buildServerListenerEventDispatcher,
+            @NotNull ProjectManager projectManager,
+            @NotNull TeamCityNodes nodesService,
+            @NotNull OTELEndpointFactory otelEndpointFactory,
+            @NotNull PluginTelemetry pluginTelemetry) {
+        this.projectManager = projectManager;
+        this.nodesService = nodesService;
+        this.otelEndpointFactory = otelEndpointFactory;
+
+        var meter = pluginTelemetry.getMeter();
+        this.prewarmDuration = meter.histogramBuilder(METRIC_PREFIX + ".plugin.startup.prewarm.duration")
+                .setDescription("Time taken to warm up the exporters for every configured endpoint after the server started")
+                .setUnit("ms")
+                .build();
+        this.endpointPrewarmDuration = meter.histogramBuilder(METRIC_PREFIX + ".plugin.startup.prewarm.endpoint.duration")
+                .setDescription("Time taken to warm up the exporter for each configured endpoint after the server started")
+                .setUnit("ms")
+                .build();
+        buildServerListenerEventDispatcher.addListener(this);
+    }
+
+    @Override
+    public void serverStartup() {
+        if (!TeamCityProperties.getBooleanOrTrue(PROPERTY_KEY_PREWARM_ENABLED))
+            return;
+        if (!nodesService.getCurrentNode().isMainNode())
+            return;
+        var thread = new Thread(this::prewarm, "OTEL-EndpointPrewarmer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void prewarm() {
+        var startTime = System.nanoTime();
+        var timeout = Duration.ofSeconds(TeamCityProperties.getInteger(PROPERTY_KEY_PREWARM_TIMEOUT_SECONDS, (int) PREWARM_TIMEOUT.toSeconds()));
+        var endpoints = findEndpoints();
+        for (var endpoint : endpoints.values())
+            prewarm(endpoint, timeout);
+        var durationMillis = (System.nanoTime() - startTime) / 1_000_000.0;
+        prewarmDuration.record(durationMillis);
+        LOG.info(String.format("Warmed up the exporters for %d endpoints in %.0f ms.", endpoints.size(), durationMillis));
+    }
+
+    private void prewarm(ConfiguredEndpoint endpoint, Duration timeout) {
+        var startTime = System.nanoTime();
+        var success = false;
+        try {
+            var otelHandler = otelEndpointFactory.getOTELEndpointHandler(endpoint.service);
+            otelHandler.prewarm(endpoint.endpoint, endpoint.params, timeout);
+            success = true;
+        } catch (RuntimeException e) {
+            LOG.warn(String.format("Failed to warm up the %s exporter for %s: %s", endpoint.service, endpoint.destination, e.getMessage()));
+        } finally {
+            endpointPrewarmDuration.record((System.nanoTime() - startTime) / 1_000_000.0,
+                    Attributes.of(SERVICE_KEY, endpoint.service, SUCCESS_KEY, success));
+        }
+    }
+
+    /**
+     * @return the enabled endpoints configured on any project, by service and destination, so that an endpoint shared
+     * by many projects is only warmed up once
+     */
+    Map<String, ConfiguredEndpoint> findEndpoints() {
+        var endpoints = new LinkedHashMap<String, ConfiguredEndpoint>();
+        for (var project : projectManager.getActiveProjects()) {
+            for (var feature : project.getOwnFeaturesOfType(PLUGIN_NAME)) {
+                var params = feature.getParameters();
+                if (!"true".equals(params.get(PROPERTY_KEY_ENABLED))) continue;
+                var service = params.get(PROPERTY_KEY_SERVICE);
+                var endpoint = params.get(PROPERTY_KEY_ENDPOINT);
+                if (service == null || endpoint == null) continue;
+
+                try {
+                    var destination = otelEndpointFactory.getOTELEndpointHandler(service).getDestination(endpoint);
+                    endpoints.putIfAbsent(service + " " + destination, new ConfiguredEndpoint(service, endpoint, destination, params));
+                } catch (RuntimeException e) {
+                    LOG.debug(String.format("Not warming up endpoint %s for project %s: %s", endpoint, project.getExternalId(), e.getMessage()));
+                }
+            }
+        }
+        return endpoints;
+    }
+
+    /**
+     * Exports an empty batch, which loads the exporter's classes and resolves and connects to the endpoint without
+     * sending it any spans, then shuts the exporter down.
+     */
+    public static void sendEmptyBatch(SpanExporter spanExporter, Duration timeout) {
+        try {
+            var result = spanExporter.export(List.of()).join(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            if (!result.isSuccess())
+                LOG.debug("Empty batch sent while warming up an exporter wasn't accepted; the exporter is still warmed up.");
+        } finally {
+            spanExporter.shutdown().join(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    static class ConfiguredEndpoint {
+        private final String service;
+        private final String endpoint;
+        private final String destination;
+        private final Map<String, String> params;
+
+        ConfiguredEndpoint(String service, String endpoint, String destination, Map<String, String> params) {
+            this.service = service;
+            this.endpoint = endpoint;
+            this.destination = destination;
+            this.params = params;
+        }
+
+        String getDestination() {
+            return destination;
+        }
+    }
+}
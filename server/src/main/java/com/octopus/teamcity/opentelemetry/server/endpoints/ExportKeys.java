@@ -0,0 +1,41 @@
+package com.octopus.teamcity.opentelemetry.server.endpoints;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Builds the keys that circuit breakers and retry backoffs are shared under. Whether an export succeeds can depend on
+ * more than the endpoint (eg an API key or dataset sent as headers), so projects sending to the same endpoint with
+ * different credentials get keys of their own; otherwise one project's bad API key would stop every other project
+ * sending to that endpoint. The settings are hashed, so the keys can be shown in logs and metrics.
+ */
+public final class ExportKeys {
+    private static final String SEPARATOR = "#";
+    private static final int FINGERPRINT_BYTES = 6;
+
+    private ExportKeys() {}
+
+    public static String of(String destination, Map<String, String> settings) {
+        if (settings.isEmpty())
+            return destination;
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            // sorted, so the same settings always give the same key
+            new TreeMap<>(settings).forEach((name, value) -> {
+                digest.update(name.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                if (value != null)
+                    digest.update(value.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            });
+            return destination + SEPARATOR + HexFormat.of().formatHex(digest.digest(), 0, FINGERPRINT_BYTES);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
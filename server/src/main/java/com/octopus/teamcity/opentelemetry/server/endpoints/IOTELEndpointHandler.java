@@ -9,6 +9,7 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.web.servlet.ModelAndView;
 
 import javax.servlet.http.HttpServletRequest;
+import java.time.Duration;
 import java.util.Map;
 
 public interface IOTELEndpointHandler {
@@ -16,6 +17,29 @@ public interface IOTELEndpointHandler {
 
     Pair<SpanProcessor, SdkMeterProvider> buildSpanProcessorAndMeterProvider(BuildPromotion buildPromotion, String endpoint, Map<String, String> params);
 
+    /**
+     * @return the name that builds exporting to this endpoint share their retry backoff and diagnostics under
+     */
+    default String getDestination(String endpoint) {
+        return endpoint;
+    }
+
+    /**
+     * @return the key that builds exporting with these settings share their circuit breaker and retry backoff under:
+     * the destination, plus a fingerprint of any settings (eg credentials) that decide whether an export succeeds
+     */
+    default String getExportKey(String endpoint, Map<String, String> params) {
+        return getDestination(endpoint);
+    }
+
+    /**
+     * Loads the classes exporting to the endpoint needs and, where it can be done without sending any spans, connects
+     * to it; so the first build traced after a server start doesn't pay for it. Blocks until done, so only call it in
+     * the background.
+     */
+    default void prewarm(String endpoint, Map<String, String> params, Duration timeout) {
+    }
+
     SetProjectConfigurationSettingsRequest getSetProjectConfigurationSettingsRequest(HttpServletRequest request);
 
     void mapParamsToModel(Map<String, String> params, Map<String, Object> model);
@@ -1,8 +1,12 @@
 package com.octopus.teamcity.opentelemetry.server.endpoints;
 
 import com.octopus.teamcity.opentelemetry.server.endpoints.custom.CustomOTELEndpointHandler;
+import com.octopus.teamcity.opentelemetry.server.endpoints.file.FileOTELEndpointHandler;
+import com.octopus.teamcity.opentelemetry.server.endpoints.file.OtlpJsonSegmentWriterRegistry;
 import com.octopus.teamcity.opentelemetry.server.endpoints.honeycomb.HoneycombOTELEndpointHandler;
 import com.octopus.teamcity.opentelemetry.server.endpoints.zipkin.ZipkinOTELEndpointHandler;
+import com.octopus.teamcity.opentelemetry.server.processors.SpanProcessorFactory;
+import com.octopus.teamcity.opentelemetry.server.telemetry.PluginTelemetry;
 import jetbrains.buildServer.serverSide.TeamCityNodes;
 import jetbrains.buildServer.web.openapi.PluginDescriptor;
 import org.jetbrains.annotations.NotNull;
@@ -13,13 +17,25 @@ public class OTELEndpointFactory {
     private final PluginDescriptor pluginDescriptor;
     @NotNull
     private final TeamCityNodes teamcityNodesService;
+    @NotNull
+    private final SpanProcessorFactory spanProcessorFactory;
+    @NotNull
+    private final OtlpJsonSegmentWriterRegistry segmentWriterRegistry;
+    @NotNull
+    private final PluginTelemetry pluginTelemetry;
 
     public OTELEndpointFactory(
             @NotNull PluginDescriptor pluginDescriptor,
-            @NotNull TeamCityNodes teamcityNodesService)
+            @NotNull TeamCityNodes teamcityNodesService,
+            @NotNull SpanProcessorFactory spanProcessorFactory,
+            @NotNull OtlpJsonSegmentWriterRegistry segmentWriterRegistry,
+            @NotNull PluginTelemetry pluginTelemetry)
     {
         this.pluginDescriptor = pluginDescriptor;
         this.teamcityNodesService = teamcityNodesService;
+        this.spanProcessorFactory = spanProcessorFactory;
+        this.segmentWriterRegistry = segmentWriterRegistry;
+        this.pluginTelemetry = pluginTelemetry;
     }
 
     public IOTELEndpointHandler getOTELEndpointHandler(String otelService)
@@ -33,11 +49,13 @@ public class OTELEndpointFactory {
         switch (otelService)
         {
             case HONEYCOMB:
-                return new HoneycombOTELEndpointHandler(pluginDescriptor, teamcityNodesService);
+                return new HoneycombOTELEndpointHandler(pluginDescriptor, teamcityNodesService, spanProcessorFactory);
             case ZIPKIN:
-                return new ZipkinOTELEndpointHandler(pluginDescriptor);
+                return new ZipkinOTELEndpointHandler(pluginDescriptor, spanProcessorFactory, pluginTelemetry);
             case CUSTOM:
-                return new CustomOTELEndpointHandler(pluginDescriptor);
+                return new CustomOTELEndpointHandler(pluginDescriptor, spanProcessorFactory);
+            case FILE:
+                return new FileOTELEndpointHandler(pluginDescriptor, spanProcessorFactory, segmentWriterRegistry);
             default:
                 throw new IllegalArgumentException("Invalid service name " + otelService);
         }
@@ -6,7 +6,8 @@ import java.util.Optional;
 public enum OTELService {
     HONEYCOMB("honeycomb.io"),
     ZIPKIN("zipkin.io"),
-    CUSTOM("custom");
+    CUSTOM("custom"),
+    FILE("file");
 
     private final String value;
 
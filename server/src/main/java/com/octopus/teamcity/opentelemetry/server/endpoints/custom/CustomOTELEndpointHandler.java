@@ -1,12 +1,14 @@
 package com.octopus.teamcity.opentelemetry.server.endpoints.custom;
 
 import com.octopus.teamcity.opentelemetry.server.*;
+import com.octopus.teamcity.opentelemetry.server.endpoints.EndpointPrewarmer;
+import com.octopus.teamcity.opentelemetry.server.endpoints.ExportKeys;
 import com.octopus.teamcity.opentelemetry.server.endpoints.IOTELEndpointHandler;
+import com.octopus.teamcity.opentelemetry.server.processors.SpanProcessorFactory;
 import io.opentelemetry.exporter.otlp.trace.OtlpGrpcSpanExporter;
 import io.opentelemetry.exporter.otlp.trace.OtlpGrpcSpanExporterBuilder;
 import io.opentelemetry.sdk.metrics.SdkMeterProvider;
 import io.opentelemetry.sdk.trace.SpanProcessor;
-import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
 import io.opentelemetry.sdk.trace.export.SpanExporter;
 import jetbrains.buildServer.serverSide.BuildPromotion;
 import jetbrains.buildServer.serverSide.SBuild;
@@ -17,6 +19,7 @@ import org.apache.log4j.Logger;
 import org.springframework.web.servlet.ModelAndView;
 
 import javax.servlet.http.HttpServletRequest;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
@@ -25,11 +28,14 @@ import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
 
 public class CustomOTELEndpointHandler implements IOTELEndpointHandler {
     private final PluginDescriptor pluginDescriptor;
+    private final SpanProcessorFactory spanProcessorFactory;
     static Logger LOG = Logger.getLogger(CustomOTELEndpointHandler.class.getName());
 
     public CustomOTELEndpointHandler(
-            PluginDescriptor pluginDescriptor) {
+            PluginDescriptor pluginDescriptor,
+            SpanProcessorFactory spanProcessorFactory) {
         this.pluginDescriptor = pluginDescriptor;
+        this.spanProcessorFactory = spanProcessorFactory;
     }
 
     public ModelAndView getBuildOverviewModelAndView(SBuild build, Map<String, String> params, String traceId) {
@@ -38,6 +44,25 @@ public class CustomOTELEndpointHandler implements IOTELEndpointHandler {
 
     @Override
     public Pair<SpanProcessor, SdkMeterProvider> buildSpanProcessorAndMeterProvider(BuildPromotion buildPromotion, String endpoint, Map<String, String> params) {
+        return Pair.of(buildGrpcSpanProcessor(getHeaders(params), endpoint, getExportKey(endpoint, params)), null);
+    }
+
+    @Override
+    public String getExportKey(String endpoint, Map<String, String> params) {
+        // headers usually carry the credentials, so projects with different ones get their own breaker
+        return ExportKeys.of(getDestination(endpoint), getHeaders(params));
+    }
+
+    @Override
+    public void prewarm(String endpoint, Map<String, String> params, Duration timeout) {
+        var spanExporterBuilder = OtlpGrpcSpanExporter.builder()
+                .setEndpoint(endpoint)
+                .setRetryPolicy(null);
+        getHeaders(params).forEach(spanExporterBuilder::addHeader);
+        EndpointPrewarmer.sendEmptyBatch(spanExporterBuilder.build(), timeout);
+    }
+
+    private Map<String, String> getHeaders(Map<String, String> params) {
         Map<String, String> headers = new HashMap<>();
         params.forEach((k, v) -> {
             if (k.startsWith(PROPERTY_KEY_HEADERS)) {
@@ -47,7 +72,7 @@ public class CustomOTELEndpointHandler implements IOTELEndpointHandler {
                 headers.put(name, value);
             }
         });
-        return Pair.of(buildGrpcSpanProcessor(headers, endpoint), null);
+        return headers;
     }
 
     @Override
@@ -74,17 +99,17 @@ public class CustomOTELEndpointHandler implements IOTELEndpointHandler {
         model.put("otelHeaders", headers);
     }
 
-    private SpanProcessor buildGrpcSpanProcessor(Map<String, String> headers, String exporterEndpoint) {
+    private SpanProcessor buildGrpcSpanProcessor(Map<String, String> headers, String exporterEndpoint, String exportKey) {
 
         OtlpGrpcSpanExporterBuilder spanExporterBuilder = OtlpGrpcSpanExporter.builder();
         headers.forEach(spanExporterBuilder::addHeader);
         spanExporterBuilder.setEndpoint(exporterEndpoint);
+        if (spanProcessorFactory.isRetryEnabled()) {
+            // retries are handled by RetryingSpanExporter, so they share the server-wide retry budget
+            spanExporterBuilder.setRetryPolicy(null);
+        }
         SpanExporter spanExporter = spanExporterBuilder.build();
 
-        return BatchSpanProcessor.builder(spanExporter)
-                .setMaxQueueSize(BATCH_SPAN_PROCESSOR_MAX_QUEUE_SIZE)
-                .setScheduleDelay(BATCH_SPAN_PROCESSOR_MAX_SCHEDULE_DELAY)
-                .setMaxExportBatchSize(BATCH_SPAN_PROCESSOR_MAX_EXPORT_BATCH_SIZE)
-                .build();
+        return spanProcessorFactory.create(spanExporter, exporterEndpoint, exportKey, null);
     }
 }
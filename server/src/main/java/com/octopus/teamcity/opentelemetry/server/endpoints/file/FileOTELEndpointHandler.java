@@ -0,0 +1,59 @@
+package com.octopus.teamcity.opentelemetry.server.endpoints.file;
+
+import com.octopus.teamcity.opentelemetry.server.SetProjectConfigurationSettingsRequest;
+import com.octopus.teamcity.opentelemetry.server.endpoints.IOTELEndpointHandler;
+import com.octopus.teamcity.opentelemetry.server.processors.SpanProcessorFactory;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import jetbrains.buildServer.serverSide.BuildPromotion;
+import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.web.openapi.PluginDescriptor;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.web.servlet.ModelAndView;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Map;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+
+public class FileOTELEndpointHandler implements IOTELEndpointHandler {
+    private final PluginDescriptor pluginDescriptor;
+    private final SpanProcessorFactory spanProcessorFactory;
+    private final OtlpJsonSegmentWriterRegistry writerRegistry;
+
+    public FileOTELEndpointHandler(
+            PluginDescriptor pluginDescriptor,
+            SpanProcessorFactory spanProcessorFactory,
+            OtlpJsonSegmentWriterRegistry writerRegistry) {
+        this.pluginDescriptor = pluginDescriptor;
+        this.spanProcessorFactory = spanProcessorFactory;
+        this.writerRegistry = writerRegistry;
+    }
+
+    public ModelAndView getBuildOverviewModelAndView(SBuild build, Map<String, String> params, String traceId) {
+        return new ModelAndView(pluginDescriptor.getPluginResourcesPath("buildOverviewEmpty.jsp"));
+    }
+
+    @Override
+    public Pair<SpanProcessor, SdkMeterProvider> buildSpanProcessorAndMeterProvider(BuildPromotion buildPromotion, String endpoint, Map<String, String> params) {
+        var compressed = "true".equals(params.get(PROPERTY_KEY_FILE_COMPRESSION_ENABLED));
+        var spanExporter = new FileSpanExporter(writerRegistry, endpoint, compressed);
+        return Pair.of(spanProcessorFactory.create(spanExporter, getDestination(endpoint), getDestination(endpoint), null), null);
+    }
+
+    @Override
+    public String getDestination(String endpoint) {
+        return "file:" + endpoint;
+    }
+
+    @Override
+    public SetProjectConfigurationSettingsRequest getSetProjectConfigurationSettingsRequest(HttpServletRequest request) {
+        return new SetFileProjectConfigurationSettingsRequest(request);
+    }
+
+    @Override
+    public void mapParamsToModel(Map<String, String> params, Map<String, Object> model) {
+        model.put("otelFileDirectory", params.get(PROPERTY_KEY_ENDPOINT));
+        model.put("otelFileCompressionEnabled", params.get(PROPERTY_KEY_FILE_COMPRESSION_ENABLED));
+    }
+}
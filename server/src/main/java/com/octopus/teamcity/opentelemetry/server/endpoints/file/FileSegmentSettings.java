@@ -0,0 +1,58 @@
+package com.octopus.teamcity.opentelemetry.server.endpoints.file;
+
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+
+import java.time.Duration;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+
+public class FileSegmentSettings {
+    private final long maxSegmentBytes;
+    private final Duration maxSegmentAge;
+    private final long maxRetainedBytes;
+    private final Duration maxRetainedAge;
+    private final int bufferBytes;
+
+    public FileSegmentSettings(long maxSegmentBytes, Duration maxSegmentAge, long maxRetainedBytes, Duration maxRetainedAge, int bufferBytes) {
+        if (maxSegmentBytes < 1 || bufferBytes < 1)
+            throw new IllegalArgumentException("Segment and buffer sizes must be positive");
+        if (maxRetainedBytes < maxSegmentBytes)
+            throw new IllegalArgumentException(String.format("Retained size %d must be at least the segment size %d", maxRetainedBytes, maxSegmentBytes));
+        if (maxSegmentAge.isNegative() || maxSegmentAge.isZero() || maxRetainedAge.compareTo(maxSegmentAge) < 0)
+            throw new IllegalArgumentException(String.format("Segment age %s and retained age %s are invalid", maxSegmentAge, maxRetainedAge));
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxSegmentAge = maxSegmentAge;
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.maxRetainedAge = maxRetainedAge;
+        this.bufferBytes = bufferBytes;
+    }
+
+    public static FileSegmentSettings fromServerProperties() {
+        return new FileSegmentSettings(
+                TeamCityProperties.getLong(PROPERTY_KEY_FILE_SEGMENT_MAX_BYTES, FILE_SEGMENT_MAX_BYTES),
+                Duration.ofMillis(TeamCityProperties.getLong(PROPERTY_KEY_FILE_SEGMENT_MAX_AGE_MS, FILE_SEGMENT_MAX_AGE.toMillis())),
+                TeamCityProperties.getLong(PROPERTY_KEY_FILE_RETENTION_MAX_BYTES, FILE_RETENTION_MAX_BYTES),
+                Duration.ofHours(TeamCityProperties.getLong(PROPERTY_KEY_FILE_RETENTION_MAX_AGE_HOURS, FILE_RETENTION_MAX_AGE.toHours())),
+                TeamCityProperties.getInteger(PROPERTY_KEY_FILE_BUFFER_BYTES, FILE_BUFFER_BYTES));
+    }
+
+    public long getMaxSegmentBytes() {
+        return maxSegmentBytes;
+    }
+
+    public Duration getMaxSegmentAge() {
+        return maxSegmentAge;
+    }
+
+    public long getMaxRetainedBytes() {
+        return maxRetainedBytes;
+    }
+
+    public Duration getMaxRetainedAge() {
+        return maxRetainedAge;
+    }
+
+    public int getBufferBytes() {
+        return bufferBytes;
+    }
+}
@@ -0,0 +1,57 @@
+package com.octopus.teamcity.opentelemetry.server.endpoints.file;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class FileSpanExporter implements SpanExporter {
+    static Logger LOG = Logger.getLogger(FileSpanExporter.class.getName());
+    private final OtlpJsonSegmentWriterRegistry writerRegistry;
+    private final String directory;
+    private final boolean compressed;
+    private final AtomicBoolean isShutdown;
+
+    public FileSpanExporter(OtlpJsonSegmentWriterRegistry writerRegistry, String directory, boolean compressed) {
+        this.writerRegistry = writerRegistry;
+        this.directory = directory;
+        this.compressed = compressed;
+        this.isShutdown = new AtomicBoolean(false);
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+        if (isShutdown.get())
+            return CompletableResultCode.ofFailure();
+        try {
+            writerRegistry.getWriter(directory, compressed).write(spans);
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            LOG.warn(String.format("Failed to write %d spans to %s: %s", spans.size(), directory, e.getMessage()));
+            return CompletableResultCode.ofExceptionalFailure(e);
+        }
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        try {
+            writerRegistry.getWriter(directory, compressed).flush();
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            LOG.warn(String.format("Failed to flush spans to %s: %s", directory, e.getMessage()));
+            return CompletableResultCode.ofExceptionalFailure(e);
+        }
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        // the writer is shared with other builds, so just make sure our spans have left the buffer
+        if (isShutdown.getAndSet(true))
+            return CompletableResultCode.ofSuccess();
+        return flush();
+    }
+}
@@ -0,0 +1,26 @@
+package com.octopus.teamcity.opentelemetry.server.endpoints.file;
+
+import io.opentelemetry.exporter.internal.otlp.traces.TraceRequestMarshaler;
+import io.opentelemetry.sdk.trace.data.SpanData;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+
+/**
+ * Encodes spans as an OTLP/JSON <code>ExportTraceServiceRequest</code>.
+ * <p>
+ * The SDK has no public API for this, so this is the one place that uses the OTLP exporters' internal marshaler
+ * (<code>io.opentelemetry.exporter.internal</code>), which can change in any release. That's safe only because
+ * opentelemetry-exporter-otlp-common comes from the same BOM as the SDK (see server/build.gradle), and
+ * OtlpJsonSegmentWriterTest checks the output, so check both when upgrading OpenTelemetry.
+ */
+class OtlpJsonEncoder {
+    private OtlpJsonEncoder() {
+        throw new IllegalStateException("Utility class OtlpJsonEncoder should not be instantiated ");
+    }
+
+    static void writeTraceRequest(Collection<SpanData> spans, OutputStream output) throws IOException {
+        TraceRequestMarshaler.create(spans).writeJsonTo(output);
+    }
+}
@@ -0,0 +1,296 @@
+package com.octopus.teamcity.opentelemetry.server.endpoints.file;
+
+import io.opentelemetry.sdk.trace.data.SpanData;
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Appends OTLP/JSON encoded <code>ExportTraceServiceRequest</code>s, one per line, to segment files in a directory.
+ * <p>
+ * The segment being written has an <code>.open</code> suffix, which is removed once the segment is rotated (by size
+ * or age), so anything shipping the files only needs to pick up <code>*.jsonl</code> and <code>*.jsonl.gz</code>.
+ * Writes are staged in a buffer and written through a {@link FileChannel}. Completed segments are deleted once they
+ * are older than, or push the directory over, the retention limits.
+ * <p>
+ * One writer is shared by every build writing to a directory with the same compression (see
+ * {@link OtlpJsonSegmentWriterRegistry}), so all access is synchronized.
+ */
+public class OtlpJsonSegmentWriter implements Closeable {
+    static Logger LOG = Logger.getLogger(OtlpJsonSegmentWriter.class.getName());
+    static final String SEGMENT_PREFIX = "spans-";
+    static final String OPEN_SUFFIX = ".open";
+    private static final String JSON_LINES_EXTENSION = ".jsonl";
+    private static final String GZIP_EXTENSION = ".gz";
+    private static final int GZIP_BUFFER_BYTES = 64 * 1024;
+    // the serialized payload is usually a few MB at most; don't hang on to anything bigger than this between writes
+    private static final int MAX_RETAINED_SCRATCH_BYTES = 4 * 1024 * 1024;
+    private static final DateTimeFormatter SEGMENT_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+
+    private final Path directory;
+    private final boolean compressed;
+    private final FileSegmentSettings settings;
+    private final Clock clock;
+    private final ByteBuffer buffer;
+    private ScratchOutputStream scratch;
+    private long sequence;
+    private boolean closed;
+
+    @Nullable
+    private FileChannel channel;
+    @Nullable
+    private OutputStream compressedStream;
+    @Nullable
+    private Path openSegment;
+    private long segmentBytes;
+    private Instant segmentOpenedAt;
+
+    public OtlpJsonSegmentWriter(Path directory, boolean compressed, FileSegmentSettings settings) throws IOException {
+        this(directory, compressed, settings, Clock.systemUTC());
+    }
+
+    OtlpJsonSegmentWriter(Path directory, boolean compressed, FileSegmentSettings settings, Clock clock) throws IOException {
+        this.directory = directory;
+        this.compressed = compressed;
+        this.settings = settings;
+        this.clock = clock;
+        this.buffer = ByteBuffer.allocate(settings.getBufferBytes());
+        this.scratch = new ScratchOutputStream();
+
+        Files.createDirectories(directory);
+        completeAbandonedSegments();
+    }
+
+    public synchronized void write(Collection<SpanData> spans) throws IOException {
+        if (closed)
+            throw new IOException(String.format("Segment writer for %s is closed", directory));
+        if (spans.isEmpty())
+            return;
+
+        scratch.reset();
+        OtlpJsonEncoder.writeTraceRequest(spans, scratch);
+        scratch.write('\n');
+        var line = scratch.asByteBuffer();
+
+        if (channel != null && (segmentBytes + line.remaining() > settings.getMaxSegmentBytes() || isSegmentExpired()))
+            closeSegment();
+        if (channel == null)
+            openSegment();
+
+        segmentBytes += line.remaining();
+        append(line);
+
+        if (scratch.capacity() > MAX_RETAINED_SCRATCH_BYTES)
+            scratch = new ScratchOutputStream();
+    }
+
+    /**
+     * Writes out anything still in the buffer. The current segment stays open.
+     */
+    public synchronized void flush() throws IOException {
+        if (channel == null)
+            return;
+        drainBuffer();
+        if (compressedStream != null)
+            compressedStream.flush();
+    }
+
+    /**
+     * Called periodically: writes out the buffer, rotates the current segment if it is too old and applies the
+     * retention policy, so that quiet periods still produce complete segments and expire old ones.
+     */
+    public synchronized void maintain() throws IOException {
+        if (closed)
+            return;
+        if (channel != null) {
+            if (isSegmentExpired())
+                closeSegment();
+            else
+                flush();
+        }
+        applyRetention();
+    }
+
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        if (channel != null)
+            closeSegment();
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private boolean isSegmentExpired() {
+        return segmentOpenedAt != null && !clock.instant().isBefore(segmentOpenedAt.plus(settings.getMaxSegmentAge()));
+    }
+
+    private void openSegment() throws IOException {
+        segmentOpenedAt = clock.instant();
+        var name = String.format("%s%s-%06d%s", SEGMENT_PREFIX, SEGMENT_TIMESTAMP.format(segmentOpenedAt), sequence++, getExtension());
+        openSegment = directory.resolve(name + OPEN_SUFFIX);
+        channel = FileChannel.open(openSegment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        if (compressed)
+            compressedStream = new GZIPOutputStream(Channels.newOutputStream(channel), GZIP_BUFFER_BYTES);
+        segmentBytes = 0;
+        LOG.debug(String.format("Opened trace segment %s.", openSegment));
+    }
+
+    private void closeSegment() throws IOException {
+        var segment = openSegment;
+        try {
+            drainBuffer();
+            if (compressedStream != null)
+                compressedStream.close(); // also closes the channel
+            else if (channel != null)
+                channel.close();
+        } finally {
+            channel = null;
+            compressedStream = null;
+            openSegment = null;
+            segmentOpenedAt = null;
+            buffer.clear();
+        }
+        if (segment != null) {
+            var completed = completedName(segment);
+            Files.move(segment, completed, StandardCopyOption.ATOMIC_MOVE);
+            LOG.debug(String.format("Completed trace segment %s (%d bytes uncompressed).", completed, segmentBytes));
+        }
+        applyRetention();
+    }
+
+    private void append(ByteBuffer source) throws IOException {
+        if (source.remaining() > buffer.remaining())
+            drainBuffer();
+        if (source.remaining() >= buffer.capacity()) {
+            // big enough that staging it would just be an extra copy
+            writeThrough(source);
+        } else {
+            buffer.put(source);
+        }
+    }
+
+    private void drainBuffer() throws IOException {
+        buffer.flip();
+        try {
+            writeThrough(buffer);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private void writeThrough(ByteBuffer source) throws IOException {
+        if (!source.hasRemaining() || channel == null)
+            return;
+        if (compressedStream != null) {
+            compressedStream.write(source.array(), source.arrayOffset() + source.position(), source.remaining());
+            source.position(source.limit());
+        } else {
+            while (source.hasRemaining())
+                channel.write(source);
+        }
+    }
+
+    private void applyRetention() throws IOException {
+        List<Path> segments;
+        try (var files = Files.list(directory)) {
+            segments = files
+                    .filter(OtlpJsonSegmentWriter::isCompletedSegment)
+                    .sorted(Comparator.comparing((Path path) -> path.getFileName().toString()).reversed())
+                    .collect(Collectors.toList());
+        }
+
+        var oldestRetained = clock.instant().minus(settings.getMaxRetainedAge());
+        long retainedBytes = 0;
+        var toDelete = new ArrayList<Path>();
+        for (var segment : segments) {
+            var size = Files.size(segment);
+            var modified = Files.getLastModifiedTime(segment).toInstant();
+            if (retainedBytes + size > settings.getMaxRetainedBytes() || modified.isBefore(oldestRetained)) {
+                toDelete.add(segment);
+            } else {
+                retainedBytes += size;
+            }
+        }
+
+        for (var segment : toDelete) {
+            LOG.info(String.format("Deleting trace segment %s as it is outside the retention policy.", segment));
+            Files.deleteIfExists(segment);
+        }
+    }
+
+    private void completeAbandonedSegments() throws IOException {
+        List<Path> abandoned;
+        try (var files = Files.list(directory)) {
+            abandoned = files
+                    .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    // only our own, as a writer with the other compression may be sharing the directory
+                    .filter(path -> path.getFileName().toString().endsWith(getExtension() + OPEN_SUFFIX))
+                    .collect(Collectors.toList());
+        }
+        for (var segment : abandoned) {
+            // left behind by a server restart; keep what was written (a gzip segment may be truncated)
+            LOG.warn(String.format("Completing trace segment %s left open by a previous run.", segment));
+            Files.move(segment, completedName(segment), StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private String getExtension() {
+        return compressed ? JSON_LINES_EXTENSION + GZIP_EXTENSION : JSON_LINES_EXTENSION;
+    }
+
+    private static Path completedName(Path openSegment) {
+        var name = openSegment.getFileName().toString();
+        return openSegment.resolveSibling(name.substring(0, name.length() - OPEN_SUFFIX.length()));
+    }
+
+    static boolean isCompletedSegment(Path path) {
+        var name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX)
+                && (name.endsWith(JSON_LINES_EXTENSION) || name.endsWith(JSON_LINES_EXTENSION + GZIP_EXTENSION));
+    }
+
+    /**
+     * Lets us hand the serialized bytes to the channel without copying them out of the stream.
+     */
+    private static class ScratchOutputStream extends ByteArrayOutputStream {
+        ScratchOutputStream() {
+            super(64 * 1024);
+        }
+
+        ByteBuffer asByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+    }
+}
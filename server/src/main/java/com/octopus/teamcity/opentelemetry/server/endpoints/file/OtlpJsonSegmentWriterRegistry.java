@@ -0,0 +1,135 @@
+package com.octopus.teamcity.opentelemetry.server.endpoints.file;
+
+import jetbrains.buildServer.serverSide.ServerPaths;
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+
+/**
+ * Hands out one {@link OtlpJsonSegmentWriter} per output directory and compression, so builds from different projects
+ * writing to the same directory share segments rather than racing each other, and periodically rotates and expires
+ * their segments. Closing it completes every open segment, so gzip segments aren't left without their trailer.
+ */
+public class OtlpJsonSegmentWriterRegistry implements Closeable {
+    static Logger LOG = Logger.getLogger(OtlpJsonSegmentWriterRegistry.class.getName());
+    private final Path rootDirectory;
+    private final ConcurrentHashMap<WriterKey, OtlpJsonSegmentWriter> writers;
+    @Nullable
+    private final ScheduledExecutorService maintenanceScheduler;
+    private volatile boolean closed;
+
+    public OtlpJsonSegmentWriterRegistry(@NotNull ServerPaths serverPaths) {
+        this(serverPaths.getPluginDataDirectory().toPath().resolve(PLUGIN_NAME), Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "OTEL-FileSegmentMaintenance");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        var interval = FILE_MAINTENANCE_INTERVAL.toMillis();
+        maintenanceScheduler.scheduleWithFixedDelay(this::maintain, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    OtlpJsonSegmentWriterRegistry(Path rootDirectory) {
+        this(rootDirectory, null);
+    }
+
+    private OtlpJsonSegmentWriterRegistry(Path rootDirectory, @Nullable ScheduledExecutorService maintenanceScheduler) {
+        this.rootDirectory = rootDirectory.toAbsolutePath().normalize();
+        this.writers = new ConcurrentHashMap<>();
+        this.maintenanceScheduler = maintenanceScheduler;
+    }
+
+    public OtlpJsonSegmentWriter getWriter(String relativeDirectory, boolean compressed) throws IOException {
+        var key = new WriterKey(resolveDirectory(relativeDirectory), compressed);
+        // called on every export, so don't take a lock once the writer exists
+        var writer = writers.get(key);
+        if (writer != null)
+            return writer;
+        if (closed)
+            throw new IOException(String.format("Trace segment writers for %s are closed", rootDirectory));
+        try {
+            return writers.computeIfAbsent(key, k -> {
+                try {
+                    LOG.debug(String.format("Creating %s trace segment writer for %s.", k.compressed ? "compressed" : "uncompressed", k.directory));
+                    return new OtlpJsonSegmentWriter(k.directory, k.compressed, FileSegmentSettings.fromServerProperties());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public Path resolveDirectory(String relativeDirectory) throws IOException {
+        var directory = rootDirectory.resolve(relativeDirectory).normalize();
+        if (!directory.startsWith(rootDirectory))
+            throw new IOException(String.format("Trace directory %s must be inside %s", relativeDirectory, rootDirectory));
+        return directory;
+    }
+
+    public Path getRootDirectory() {
+        return rootDirectory;
+    }
+
+    private void maintain() {
+        writers.values().forEach(writer -> {
+            try {
+                writer.maintain();
+            } catch (IOException | RuntimeException e) {
+                LOG.warn(String.format("Failed to rotate or expire trace segments in %s: %s", writer.getDirectory(), e.getMessage()), e);
+            }
+        });
+    }
+
+    /**
+     * Stops the maintenance and writes out and completes every open segment. Exports after this fail.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (maintenanceScheduler != null)
+            maintenanceScheduler.shutdownNow();
+        writers.values().forEach(writer -> {
+            try {
+                writer.close();
+            } catch (IOException | RuntimeException e) {
+                LOG.warn(String.format("Failed to complete the trace segment in %s: %s", writer.getDirectory(), e.getMessage()), e);
+            }
+        });
+    }
+
+    private static class WriterKey {
+        private final Path directory;
+        private final boolean compressed;
+
+        WriterKey(Path directory, boolean compressed) {
+            this.directory = directory;
+            this.compressed = compressed;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof WriterKey)) return false;
+            var other = (WriterKey) o;
+            return compressed == other.compressed && directory.equals(other.directory);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(directory, compressed);
+        }
+    }
+}
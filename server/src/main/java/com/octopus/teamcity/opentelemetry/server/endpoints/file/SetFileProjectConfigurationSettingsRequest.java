@@ -0,0 +1,51 @@
+package com.octopus.teamcity.opentelemetry.server.endpoints.file;
+
+import com.octopus.teamcity.opentelemetry.server.HeaderDto;
+import com.octopus.teamcity.opentelemetry.server.SetProjectConfigurationSettingsRequest;
+import jetbrains.buildServer.controllers.ActionErrors;
+import jetbrains.buildServer.util.StringUtil;
+
+import javax.servlet.http.HttpServletRequest;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+
+public class SetFileProjectConfigurationSettingsRequest extends SetProjectConfigurationSettingsRequest {
+    public final String fileDirectory;
+    public final String fileCompressionEnabled;
+
+    public SetFileProjectConfigurationSettingsRequest(HttpServletRequest request) {
+        super(request);
+        this.fileDirectory = request.getParameter("fileDirectory");
+        this.fileCompressionEnabled = request.getParameter("fileCompressionEnabled");
+    }
+
+    @Override
+    protected void validateEndpoint(ActionErrors errors) {
+        // the directory takes the place of the endpoint, and is validated below
+    }
+
+    @Override
+    protected void serviceSpecificValidate(ActionErrors errors) {
+        if (StringUtil.isEmptyOrSpaces(fileDirectory)) {
+            errors.addError("fileDirectory", "Directory must be set!");
+            return;
+        }
+        try {
+            var path = Paths.get(fileDirectory).normalize();
+            if (path.isAbsolute() || path.startsWith(".."))
+                errors.addError("fileDirectory", "Directory must be a relative path inside the plugin data directory!");
+        } catch (InvalidPathException e) {
+            errors.addError("fileDirectory", "Directory must be a valid path!");
+        }
+    }
+
+    @Override
+    protected void mapServiceSpecificParams(HashMap<String, String> params, ArrayList<HeaderDto> headers) {
+        params.put(PROPERTY_KEY_ENDPOINT, fileDirectory);
+        params.put(PROPERTY_KEY_FILE_COMPRESSION_ENABLED, fileCompressionEnabled);
+    }
+}
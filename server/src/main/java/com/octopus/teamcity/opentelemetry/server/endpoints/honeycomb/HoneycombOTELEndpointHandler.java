@@ -2,8 +2,11 @@ package com.octopus.teamcity.opentelemetry.server.endpoints.honeycomb;
 
 import com.octopus.teamcity.opentelemetry.common.PluginConstants;
 import com.octopus.teamcity.opentelemetry.server.*;
+import com.octopus.teamcity.opentelemetry.server.endpoints.EndpointPrewarmer;
+import com.octopus.teamcity.opentelemetry.server.endpoints.ExportKeys;
 import com.octopus.teamcity.opentelemetry.server.endpoints.IOTELEndpointHandler;
 import com.octopus.teamcity.opentelemetry.server.helpers.OTELMetrics;
+import com.octopus.teamcity.opentelemetry.server.processors.SpanProcessorFactory;
 import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.exporter.otlp.metrics.OtlpGrpcMetricExporter;
@@ -12,7 +15,6 @@ import io.opentelemetry.sdk.metrics.SdkMeterProvider;
 import io.opentelemetry.sdk.metrics.export.MetricExporter;
 import io.opentelemetry.sdk.resources.Resource;
 import io.opentelemetry.sdk.trace.SpanProcessor;
-import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
 import jetbrains.buildServer.serverSide.BuildPromotion;
 import io.opentelemetry.semconv.ServiceAttributes;
 import jetbrains.buildServer.serverSide.BuildPromotion;
@@ -28,6 +30,7 @@ import org.jetbrains.annotations.Nullable;
 import org.springframework.web.servlet.ModelAndView;
 
 import javax.servlet.http.HttpServletRequest;
+import java.time.Duration;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -38,11 +41,13 @@ public class HoneycombOTELEndpointHandler implements IOTELEndpointHandler {
 
     private final PluginDescriptor pluginDescriptor;
     private final TeamCityNodes nodesService;
+    private final SpanProcessorFactory spanProcessorFactory;
     static Logger LOG = Logger.getLogger(HoneycombOTELEndpointHandler.class.getName());
 
-    public HoneycombOTELEndpointHandler(PluginDescriptor pluginDescriptor, TeamCityNodes nodesService) {
+    public HoneycombOTELEndpointHandler(PluginDescriptor pluginDescriptor, TeamCityNodes nodesService, SpanProcessorFactory spanProcessorFactory) {
         this.pluginDescriptor = pluginDescriptor;
         this.nodesService = nodesService;
+        this.spanProcessorFactory = spanProcessorFactory;
     }
 
     @NotNull
@@ -67,14 +72,32 @@ public class HoneycombOTELEndpointHandler implements IOTELEndpointHandler {
 
     @Override
     public Pair<SpanProcessor, SdkMeterProvider> buildSpanProcessorAndMeterProvider(BuildPromotion buildPromotion, String endpoint, Map<String, String> params) {
+        var metricsExporter = buildMetricsExporter(endpoint, params);
+
+        return buildGrpcSpanProcessor(buildPromotion, getHeaders(params), endpoint, getExportKey(endpoint, params), metricsExporter);
+    }
+
+    @Override
+    public String getExportKey(String endpoint, Map<String, String> params) {
+        // the API key and dataset decide whether exports are accepted, so each project's get their own breaker
+        return ExportKeys.of(getDestination(endpoint), getHeaders(params));
+    }
+
+    @Override
+    public void prewarm(String endpoint, Map<String, String> params, Duration timeout) {
+        var spanExporterBuilder = OtlpGrpcSpanExporter.builder()
+                .setEndpoint(endpoint)
+                .setRetryPolicy(null);
+        getHeaders(params).forEach(spanExporterBuilder::addHeader);
+        EndpointPrewarmer.sendEmptyBatch(spanExporterBuilder.build(), timeout);
+    }
+
+    private Map<String, String> getHeaders(Map<String, String> params) {
         Map<String, String> headers = new HashMap<>();
         //todo: add a setting to say "use classic" or "use environments"
         headers.put("x-honeycomb-dataset", params.get(PROPERTY_KEY_HONEYCOMB_DATASET));
         headers.put("x-honeycomb-team", EncryptUtil.unscramble(params.get(PROPERTY_KEY_HONEYCOMB_APIKEY)));
-
-        var metricsExporter = buildMetricsExporter(endpoint, params);
-
-        return buildGrpcSpanProcessor(buildPromotion, headers, endpoint, metricsExporter);
+        return headers;
     }
 
     @Nullable
@@ -93,6 +116,7 @@ public class HoneycombOTELEndpointHandler implements IOTELEndpointHandler {
             BuildPromotion buildPromotion,
             Map<String, String> headers,
             String exporterEndpoint,
+            String exportKey,
             @Nullable MetricExporter metricsExporter) {
 
         //todo: centralise the definition of this
@@ -107,19 +131,16 @@ public class HoneycombOTELEndpointHandler implements IOTELEndpointHandler {
         var spanExporterBuilder = OtlpGrpcSpanExporter.builder();
         spanExporterBuilder.setEndpoint(exporterEndpoint);
         headers.forEach(spanExporterBuilder::addHeader);
+        if (spanProcessorFactory.isRetryEnabled()) {
+            // retries are handled by RetryingSpanExporter, so they share the server-wide retry budget
+            spanExporterBuilder.setRetryPolicy(null);
+        }
         if (meterProvider != null) {
             spanExporterBuilder.setMeterProvider(meterProvider);
         }
         var spanExporter = spanExporterBuilder.build();
 
-        var batchSpanProcessorBuilder = BatchSpanProcessor.builder(spanExporter);
-        batchSpanProcessorBuilder.setMaxQueueSize(BATCH_SPAN_PROCESSOR_MAX_QUEUE_SIZE);
-        batchSpanProcessorBuilder.setScheduleDelay(BATCH_SPAN_PROCESSOR_MAX_SCHEDULE_DELAY);
-        batchSpanProcessorBuilder.setMaxExportBatchSize(BATCH_SPAN_PROCESSOR_MAX_EXPORT_BATCH_SIZE);
-        if (meterProvider != null) {
-            batchSpanProcessorBuilder.setMeterProvider(meterProvider);
-        }
-        return Pair.of(batchSpanProcessorBuilder.build(), meterProvider);
+        return Pair.of(spanProcessorFactory.create(spanExporter, exporterEndpoint, exportKey, meterProvider), meterProvider);
     }
 
     @Override
@@ -0,0 +1,131 @@
+package com.octopus.teamcity.opentelemetry.server.endpoints.zipkin;
+
+import com.octopus.teamcity.opentelemetry.server.telemetry.PluginTelemetry;
+import org.apache.log4j.Logger;
+import zipkin2.reporter.BytesMessageSender;
+import zipkin2.reporter.Encoding;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Splits each batch of encoded spans into as many requests as it takes to keep each one within the sender's message
+ * size limit. The Zipkin exporter sends each batch it is given as a single request, however big, and a batch of test
+ * spans can easily be larger than a collector will accept. A span that is too big to send on its own is dropped.
+ * <p>
+ * If a request fails after earlier ones from the same batch were accepted, the batch fails as a whole and is retried
+ * as a whole, so we remember how far we got and only send the rest when the same batch comes round again.
+ */
+class MessageSizeLimitingSender implements BytesMessageSender {
+    static Logger LOG = Logger.getLogger(MessageSizeLimitingSender.class.getName());
+    private final BytesMessageSender delegate;
+    private final PluginTelemetry pluginTelemetry;
+    private final AtomicReference<PartialSend> lastPartialSend;
+
+    MessageSizeLimitingSender(BytesMessageSender delegate, PluginTelemetry pluginTelemetry) {
+        this.delegate = delegate;
+        this.pluginTelemetry = pluginTelemetry;
+        this.lastPartialSend = new AtomicReference<>();
+    }
+
+    @Override
+    public Encoding encoding() {
+        return delegate.encoding();
+    }
+
+    @Override
+    public int messageMaxBytes() {
+        return delegate.messageMaxBytes();
+    }
+
+    @Override
+    public int messageSizeInBytes(List<byte[]> encodedSpans) {
+        return delegate.messageSizeInBytes(encodedSpans);
+    }
+
+    @Override
+    public int messageSizeInBytes(int encodedSizeInBytes) {
+        return delegate.messageSizeInBytes(encodedSizeInBytes);
+    }
+
+    @Override
+    public void send(List<byte[]> encodedSpans) throws IOException {
+        var messageMaxBytes = delegate.messageMaxBytes();
+        var partialSend = lastPartialSend.get();
+        var firstUnsent = partialSend != null && partialSend.isOf(encodedSpans) ? partialSend.firstUnsent : 0;
+        if (firstUnsent == 0 && delegate.messageSizeInBytes(encodedSpans) <= messageMaxBytes) {
+            delegate.send(encodedSpans);
+            return;
+        }
+
+        var message = new ArrayList<byte[]>();
+        var messageStart = firstUnsent;
+        // the size of each span as a message of its own, which is never less than what it adds to a longer message
+        long messageSize = 0;
+        var droppedSpans = 0;
+        for (var i = firstUnsent; i < encodedSpans.size(); i++) {
+            var encodedSpan = encodedSpans.get(i);
+            var spanSize = delegate.messageSizeInBytes(encodedSpan.length);
+            if (spanSize > messageMaxBytes) {
+                LOG.warn(String.format("Dropping a span of %d bytes, as it is larger than the Zipkin message size limit of %d bytes.", encodedSpan.length, messageMaxBytes));
+                droppedSpans++;
+                continue;
+            }
+            if (messageSize + spanSize > messageMaxBytes) {
+                sendPart(encodedSpans, message, messageStart);
+                // only once sent, as a retry goes over the spans since the start of the failed message again
+                pluginTelemetry.recordDroppedSpans("zipkin_message_too_large", droppedSpans);
+                droppedSpans = 0;
+                message = new ArrayList<>();
+                messageStart = i;
+                messageSize = 0;
+            }
+            message.add(encodedSpan);
+            messageSize += spanSize;
+        }
+        if (!message.isEmpty())
+            sendPart(encodedSpans, message, messageStart);
+        pluginTelemetry.recordDroppedSpans("zipkin_message_too_large", droppedSpans);
+        lastPartialSend.compareAndSet(partialSend, null);
+    }
+
+    private void sendPart(List<byte[]> encodedSpans, List<byte[]> message, int messageStart) throws IOException {
+        try {
+            delegate.send(message);
+        } catch (IOException | RuntimeException e) {
+            if (messageStart > 0)
+                lastPartialSend.set(new PartialSend(encodedSpans, messageStart));
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    private static class PartialSend {
+        private final List<byte[]> encodedSpans;
+        private final int firstUnsent;
+
+        PartialSend(List<byte[]> encodedSpans, int firstUnsent) {
+            this.encodedSpans = encodedSpans;
+            this.firstUnsent = firstUnsent;
+        }
+
+        // a retry encodes the batch again, so compare the spans rather than the lists
+        boolean isOf(@Nullable List<byte[]> batch) {
+            if (batch == null || batch.size() != encodedSpans.size())
+                return false;
+            for (var i = 0; i < batch.size(); i++) {
+                if (!Arrays.equals(batch.get(i), encodedSpans.get(i)))
+                    return false;
+            }
+            return true;
+        }
+    }
+}
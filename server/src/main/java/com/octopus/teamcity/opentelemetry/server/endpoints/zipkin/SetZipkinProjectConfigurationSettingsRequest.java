@@ -3,24 +3,55 @@ package com.octopus.teamcity.opentelemetry.server.endpoints.zipkin;
 import com.octopus.teamcity.opentelemetry.server.HeaderDto;
 import com.octopus.teamcity.opentelemetry.server.SetProjectConfigurationSettingsRequest;
 import jetbrains.buildServer.controllers.ActionErrors;
-import jetbrains.buildServer.serverSide.crypt.EncryptUtil;
+import jetbrains.buildServer.util.StringUtil;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.ArrayList;
 import java.util.HashMap;
 
-import static com.octopus.teamcity.opentelemetry.common.PluginConstants.PROPERTY_KEY_HEADERS;
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
 
 public class SetZipkinProjectConfigurationSettingsRequest extends SetProjectConfigurationSettingsRequest {
+    public final String zipkinEncoding;
+    public final String zipkinCompression;
+    public final String zipkinMessageMaxBytes;
+    public final String zipkinTimeoutSeconds;
+
     public SetZipkinProjectConfigurationSettingsRequest(HttpServletRequest request) {
         super(request);
+        this.zipkinEncoding = request.getParameter("zipkinEncoding");
+        this.zipkinCompression = request.getParameter("zipkinCompression");
+        this.zipkinMessageMaxBytes = request.getParameter("zipkinMessageMaxBytes");
+        this.zipkinTimeoutSeconds = request.getParameter("zipkinTimeoutSeconds");
     }
 
     @Override
     protected void serviceSpecificValidate(ActionErrors errors) {
+        if (!StringUtil.isEmptyOrSpaces(zipkinEncoding) && !zipkinEncoding.equals(ZIPKIN_ENCODING_JSON) && !zipkinEncoding.equals(ZIPKIN_ENCODING_PROTO3))
+            errors.addError("zipkinEncoding", String.format("Encoding must be either '%s' or '%s'!", ZIPKIN_ENCODING_JSON, ZIPKIN_ENCODING_PROTO3));
+        if (!StringUtil.isEmptyOrSpaces(zipkinCompression) && !zipkinCompression.equals(ZIPKIN_COMPRESSION_GZIP) && !zipkinCompression.equals(ZIPKIN_COMPRESSION_NONE))
+            errors.addError("zipkinCompression", String.format("Compression must be either '%s' or '%s'!", ZIPKIN_COMPRESSION_GZIP, ZIPKIN_COMPRESSION_NONE));
+        if (!isEmptyOrPositive(zipkinMessageMaxBytes))
+            errors.addError("zipkinMessageMaxBytes", "Message size limit must be a positive number of bytes!");
+        if (!isEmptyOrPositive(zipkinTimeoutSeconds))
+            errors.addError("zipkinTimeoutSeconds", "Timeout must be a positive number of seconds!");
+    }
+
+    private static boolean isEmptyOrPositive(String value) {
+        if (StringUtil.isEmptyOrSpaces(value))
+            return true;
+        try {
+            return Integer.parseInt(value.trim()) > 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
     }
 
     @Override
     protected void mapServiceSpecificParams(HashMap<String, String> params, ArrayList<HeaderDto> headers) {
+        params.put(PROPERTY_KEY_ZIPKIN_ENCODING, zipkinEncoding);
+        params.put(PROPERTY_KEY_ZIPKIN_COMPRESSION, zipkinCompression);
+        params.put(PROPERTY_KEY_ZIPKIN_MESSAGE_MAX_BYTES, zipkinMessageMaxBytes);
+        params.put(PROPERTY_KEY_ZIPKIN_TIMEOUT_SECONDS, zipkinTimeoutSeconds);
     }
 }
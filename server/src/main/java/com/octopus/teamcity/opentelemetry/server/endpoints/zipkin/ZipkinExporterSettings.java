@@ -0,0 +1,58 @@
+package com.octopus.teamcity.opentelemetry.server.endpoints.zipkin;
+
+import jetbrains.buildServer.util.StringUtil;
+import zipkin2.reporter.Encoding;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+
+/**
+ * How spans are sent to a project's Zipkin endpoint: the encoding, whether requests are gzipped, the largest request
+ * to send, and how long to wait for the endpoint. Projects saved before these were settings get the defaults, which
+ * are what spans were always sent with (JSON v2, gzipped).
+ */
+public class ZipkinExporterSettings {
+    private final Encoding encoding;
+    private final boolean compressionEnabled;
+    private final int messageMaxBytes;
+    private final Duration timeout;
+
+    public ZipkinExporterSettings(Encoding encoding, boolean compressionEnabled, int messageMaxBytes, Duration timeout) {
+        if (messageMaxBytes < 1)
+            throw new IllegalArgumentException("Message size limit must be positive");
+        if (timeout.isNegative() || timeout.isZero())
+            throw new IllegalArgumentException("Timeout must be positive");
+        this.encoding = encoding;
+        this.compressionEnabled = compressionEnabled;
+        this.messageMaxBytes = messageMaxBytes;
+        this.timeout = timeout;
+    }
+
+    public static ZipkinExporterSettings fromParams(Map<String, String> params) {
+        var messageMaxBytes = params.get(PROPERTY_KEY_ZIPKIN_MESSAGE_MAX_BYTES);
+        var timeoutSeconds = params.get(PROPERTY_KEY_ZIPKIN_TIMEOUT_SECONDS);
+        return new ZipkinExporterSettings(
+                ZIPKIN_ENCODING_PROTO3.equals(params.get(PROPERTY_KEY_ZIPKIN_ENCODING)) ? Encoding.PROTO3 : Encoding.JSON,
+                !ZIPKIN_COMPRESSION_NONE.equals(params.get(PROPERTY_KEY_ZIPKIN_COMPRESSION)),
+                StringUtil.isEmptyOrSpaces(messageMaxBytes) ? ZIPKIN_MESSAGE_MAX_BYTES : Integer.parseInt(messageMaxBytes.trim()),
+                StringUtil.isEmptyOrSpaces(timeoutSeconds) ? ZIPKIN_TIMEOUT : Duration.ofSeconds(Long.parseLong(timeoutSeconds.trim())));
+    }
+
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    public int getMessageMaxBytes() {
+        return messageMaxBytes;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+}
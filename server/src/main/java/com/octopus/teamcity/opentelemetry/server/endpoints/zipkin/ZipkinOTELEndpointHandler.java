@@ -1,29 +1,41 @@
 package com.octopus.teamcity.opentelemetry.server.endpoints.zipkin;
 
 import com.octopus.teamcity.opentelemetry.server.SetProjectConfigurationSettingsRequest;
+import com.octopus.teamcity.opentelemetry.server.endpoints.EndpointPrewarmer;
 import com.octopus.teamcity.opentelemetry.server.endpoints.IOTELEndpointHandler;
+import com.octopus.teamcity.opentelemetry.server.processors.SpanProcessorFactory;
+import com.octopus.teamcity.opentelemetry.server.telemetry.PluginTelemetry;
 import io.opentelemetry.exporter.zipkin.ZipkinSpanExporter;
 import io.opentelemetry.sdk.metrics.SdkMeterProvider;
 import io.opentelemetry.sdk.trace.SpanProcessor;
-import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
 import jetbrains.buildServer.serverSide.BuildPromotion;
 import jetbrains.buildServer.serverSide.SBuild;
 import jetbrains.buildServer.web.openapi.PluginDescriptor;
 import org.apache.commons.lang3.tuple.Pair;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.web.servlet.ModelAndView;
+import zipkin2.reporter.Encoding;
+import zipkin2.reporter.SpanBytesEncoder;
+import zipkin2.reporter.okhttp3.OkHttpSender;
 
 import javax.servlet.http.HttpServletRequest;
+import java.time.Duration;
 import java.util.Map;
 
 import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
 
 public class ZipkinOTELEndpointHandler implements IOTELEndpointHandler {
     private final PluginDescriptor pluginDescriptor;
+    private final SpanProcessorFactory spanProcessorFactory;
+    private final PluginTelemetry pluginTelemetry;
 
     public ZipkinOTELEndpointHandler(
-            PluginDescriptor pluginDescriptor) {
+            PluginDescriptor pluginDescriptor,
+            SpanProcessorFactory spanProcessorFactory,
+            PluginTelemetry pluginTelemetry) {
         this.pluginDescriptor = pluginDescriptor;
+        this.spanProcessorFactory = spanProcessorFactory;
+        this.pluginTelemetry = pluginTelemetry;
     }
 
     @NotNull
@@ -38,19 +50,33 @@ public class ZipkinOTELEndpointHandler implements IOTELEndpointHandler {
 
     @Override
     public Pair<SpanProcessor, SdkMeterProvider> buildSpanProcessorAndMeterProvider(BuildPromotion buildPromotion, String endpoint, Map<String, String> params) {
-        return Pair.of(buildZipkinSpanProcessor(endpoint), null);
+        return Pair.of(buildZipkinSpanProcessor(endpoint, ZipkinExporterSettings.fromParams(params)), null);
     }
 
-    private SpanProcessor buildZipkinSpanProcessor(String exporterEndpoint) {
+    @Override
+    public void prewarm(String endpoint, Map<String, String> params, Duration timeout) {
+        EndpointPrewarmer.sendEmptyBatch(buildZipkinSpanExporter(endpoint, ZipkinExporterSettings.fromParams(params)), timeout);
+    }
+
+    private SpanProcessor buildZipkinSpanProcessor(String exporterEndpoint, ZipkinExporterSettings settings) {
+        return spanProcessorFactory.create(buildZipkinSpanExporter(exporterEndpoint, settings), exporterEndpoint, exporterEndpoint, null);
+    }
+
+    private ZipkinSpanExporter buildZipkinSpanExporter(String exporterEndpoint, ZipkinExporterSettings settings) {
         String endpoint = String.format("%s/api/v2/spans", exporterEndpoint);
-        ZipkinSpanExporter zipkinExporter = ZipkinSpanExporter.builder()
-                .setEndpoint(endpoint)
+        var timeoutMillis = (int) Math.min(settings.getTimeout().toMillis(), Integer.MAX_VALUE);
+        var sender = OkHttpSender.newBuilder()
+                .endpoint(endpoint)
+                .encoding(settings.getEncoding())
+                .compressionEnabled(settings.isCompressionEnabled())
+                .messageMaxBytes(settings.getMessageMaxBytes())
+                .connectTimeout(timeoutMillis)
+                .readTimeout(timeoutMillis)
+                .writeTimeout(timeoutMillis)
                 .build();
-
-        return BatchSpanProcessor.builder(zipkinExporter)
-                .setMaxQueueSize(BATCH_SPAN_PROCESSOR_MAX_QUEUE_SIZE)
-                .setScheduleDelay(BATCH_SPAN_PROCESSOR_MAX_SCHEDULE_DELAY)
-                .setMaxExportBatchSize(BATCH_SPAN_PROCESSOR_MAX_EXPORT_BATCH_SIZE)
+        return ZipkinSpanExporter.builder()
+                .setSender(new MessageSizeLimitingSender(sender, pluginTelemetry))
+                .setEncoder(settings.getEncoding() == Encoding.PROTO3 ? SpanBytesEncoder.PROTO3 : SpanBytesEncoder.JSON_V2)
                 .build();
     }
 
@@ -62,5 +88,9 @@ public class ZipkinOTELEndpointHandler implements IOTELEndpointHandler {
     @Override
     public void mapParamsToModel(Map<String, String> params, Map<String, Object> model) {
         model.put("otelEndpoint", params.get(PROPERTY_KEY_ENDPOINT));
+        model.put("otelZipkinEncoding", params.get(PROPERTY_KEY_ZIPKIN_ENCODING));
+        model.put("otelZipkinCompression", params.get(PROPERTY_KEY_ZIPKIN_COMPRESSION));
+        model.put("otelZipkinMessageMaxBytes", params.get(PROPERTY_KEY_ZIPKIN_MESSAGE_MAX_BYTES));
+        model.put("otelZipkinTimeoutSeconds", params.get(PROPERTY_KEY_ZIPKIN_TIMEOUT_SECONDS));
     }
 }
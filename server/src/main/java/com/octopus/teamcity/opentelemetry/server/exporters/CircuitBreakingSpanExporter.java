@@ -0,0 +1,60 @@
+package com.octopus.teamcity.opentelemetry.server.exporters;
+
+import com.octopus.teamcity.opentelemetry.server.telemetry.PluginTelemetry;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+
+import java.util.Collection;
+
+/**
+ * Drops batches without sending them while the destination's {@link EndpointCircuitBreaker} is open, and reports
+ * the outcome of those it does send back to it. Sits outside any retries, so a batch only counts as failed once it
+ * has been given up on.
+ */
+public class CircuitBreakingSpanExporter implements SpanExporter {
+    public static final String DROPPED_REASON = "circuit_open";
+
+    private final SpanExporter delegate;
+    private final EndpointCircuitBreaker circuitBreaker;
+    private final PluginTelemetry pluginTelemetry;
+
+    public CircuitBreakingSpanExporter(SpanExporter delegate, EndpointCircuitBreaker circuitBreaker, PluginTelemetry pluginTelemetry) {
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+        this.pluginTelemetry = pluginTelemetry;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            pluginTelemetry.recordDroppedSpans(DROPPED_REASON, spans.size());
+            return CompletableResultCode.ofFailure();
+        }
+
+        final CompletableResultCode result;
+        try {
+            result = delegate.export(spans);
+        } catch (RuntimeException e) {
+            circuitBreaker.recordFailure();
+            throw e;
+        }
+        result.whenComplete(() -> {
+            if (result.isSuccess())
+                circuitBreaker.recordSuccess();
+            else
+                circuitBreaker.recordFailure();
+        });
+        return result;
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        return delegate.flush();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        return delegate.shutdown();
+    }
+}
@@ -0,0 +1,49 @@
+package com.octopus.teamcity.opentelemetry.server.exporters;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exponential backoff with full jitter, shared by every exporter sending to the same destination, so that
+ * consecutive failures from any build push all of them further back.
+ */
+public class DestinationBackoff {
+    private final String destination;
+    private final RetrySettings settings;
+    private final AtomicInteger consecutiveFailures;
+
+    public DestinationBackoff(String destination, RetrySettings settings) {
+        this.destination = destination;
+        this.settings = settings;
+        this.consecutiveFailures = new AtomicInteger();
+    }
+
+    public void recordSuccess() {
+        consecutiveFailures.set(0);
+    }
+
+    public Duration recordFailureAndGetDelay() {
+        var failures = consecutiveFailures.incrementAndGet();
+        var ceilingMillis = getBackoffCeiling(failures).toMillis();
+        if (ceilingMillis <= 0)
+            return Duration.ZERO;
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(ceilingMillis + 1));
+    }
+
+    Duration getBackoffCeiling(int failures) {
+        var initialMillis = settings.getInitialBackoff().toMillis();
+        var maxMillis = settings.getMaxBackoff().toMillis();
+        // cap the shift so we don't overflow; anything past 2^20 is past any sane maximum anyway
+        var exponent = Math.min(Math.max(failures - 1, 0), 20);
+        return Duration.ofMillis(Math.min(maxMillis, initialMillis * (1L << exponent)));
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+}
@@ -0,0 +1,113 @@
+package com.octopus.teamcity.opentelemetry.server.exporters;
+
+import org.apache.log4j.Logger;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks whether a destination (endpoint) is worth sending to, shared by every exporter and build chain sending to it.
+ * <p>
+ * Closed, everything goes through. After enough batches in a row have failed (after any retries) it opens: new build
+ * chains aren't traced and batches are dropped without being sent, so an outage doesn't cost us building, queueing and
+ * retrying spans that can't be delivered. Once it has been open for a while it lets a single request through as a
+ * probe (half open); that request succeeding closes it again, failing re-opens it.
+ */
+public class EndpointCircuitBreaker {
+    static Logger LOG = Logger.getLogger(EndpointCircuitBreaker.class.getName());
+
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final String destination;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier nanoClock;
+    private volatile State state;
+    private int consecutiveFailures;
+    // while open, when to let a probe through; while half open, when to let another through if the last never reported
+    private long nextProbeNanos;
+
+    public EndpointCircuitBreaker(String destination, int failureThreshold, Duration openDuration) {
+        this(destination, failureThreshold, openDuration, System::nanoTime);
+    }
+
+    EndpointCircuitBreaker(String destination, int failureThreshold, Duration openDuration, LongSupplier nanoClock) {
+        if (failureThreshold < 1)
+            throw new IllegalArgumentException("failureThreshold must be at least 1");
+        this.destination = destination;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.nanoClock = nanoClock;
+        this.state = State.CLOSED;
+    }
+
+    /**
+     * Only for exports: when half open, only true for the export that gets to be the probe.
+     *
+     * @return true if an export should go ahead
+     */
+    public boolean tryAcquirePermission() {
+        // the usual case, so don't take the lock for it
+        if (state == State.CLOSED)
+            return true;
+
+        synchronized (this) {
+            if (state == State.CLOSED)
+                return true;
+            var now = nanoClock.getAsLong();
+            if (now - nextProbeNanos < 0)
+                return false;
+            nextProbeNanos = now + openNanos;
+            transitionTo(State.HALF_OPEN);
+            return true;
+        }
+    }
+
+    /**
+     * Whether a new build chain should be traced; only looks at the state, so never takes the probe. Chains are traced
+     * again as soon as a probe is due, so there are exports for one of them to be the probe with.
+     */
+    public boolean isAdmittingNewChains() {
+        if (state == State.CLOSED)
+            return true;
+
+        synchronized (this) {
+            return state == State.CLOSED || nanoClock.getAsLong() - nextProbeNanos >= 0;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        transitionTo(State.CLOSED);
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            nextProbeNanos = nanoClock.getAsLong() + openNanos;
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private void transitionTo(State newState) {
+        if (state == newState)
+            return;
+        var oldState = state;
+        state = newState;
+        if (newState == State.OPEN)
+            LOG.warn(String.format("Circuit breaker for %s is now open after %d consecutive failed exports; not tracing new builds or sending spans to it for %d seconds.",
+                    destination, consecutiveFailures, Duration.ofNanos(openNanos).toSeconds()));
+        else
+            LOG.info(String.format("Circuit breaker for %s has gone from %s to %s.", destination, oldState, newState));
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+}
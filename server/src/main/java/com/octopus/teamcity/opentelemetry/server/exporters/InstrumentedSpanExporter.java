@@ -0,0 +1,63 @@
+package com.octopus.teamcity.opentelemetry.server.exporters;
+
+import com.octopus.teamcity.opentelemetry.server.telemetry.PluginTelemetry;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+
+/**
+ * Reports how long each batch took to be accepted (or given up on) to {@link PluginTelemetry}, counting the spans in
+ * failed batches as dropped. Sits outside any retries, so it sees the final outcome of each batch.
+ */
+public class InstrumentedSpanExporter implements SpanExporter {
+    private final SpanExporter delegate;
+    private final String destination;
+    private final PluginTelemetry pluginTelemetry;
+
+    public InstrumentedSpanExporter(SpanExporter delegate, String destination, PluginTelemetry pluginTelemetry) {
+        this.delegate = delegate;
+        this.destination = destination;
+        this.pluginTelemetry = pluginTelemetry;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+        var spanCount = spans.size();
+        var startTime = System.nanoTime();
+        final CompletableResultCode result;
+        try {
+            result = delegate.export(spans);
+        } catch (RuntimeException e) {
+            onFailed(spanCount, startTime, e);
+            throw e;
+        }
+        result.whenComplete(() -> {
+            if (result.isSuccess())
+                pluginTelemetry.recordExport(destination, spanCount, System.nanoTime() - startTime, true);
+            else
+                onFailed(spanCount, startTime, result.getFailureThrowable());
+        });
+        return result;
+    }
+
+    private void onFailed(int spanCount, long startTime, @Nullable Throwable failure) {
+        pluginTelemetry.recordExport(destination, spanCount, System.nanoTime() - startTime, false);
+        pluginTelemetry.recordDroppedSpans("export_failed", spanCount);
+        pluginTelemetry.recordExportError(destination, failure == null
+                ? String.format("Export of %d spans failed", spanCount)
+                : String.format("Export of %d spans failed: %s", spanCount, failure));
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        return delegate.flush();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        return delegate.shutdown();
+    }
+}
@@ -0,0 +1,52 @@
+package com.octopus.teamcity.opentelemetry.server.exporters;
+
+import java.util.function.LongSupplier;
+
+/**
+ * A server-wide token bucket, measured in spans, that every {@link RetryingSpanExporter} draws from before
+ * re-sending a batch. It caps how much re-send traffic hundreds of builds can generate after a collector outage.
+ */
+public class RetryBudget {
+    private final long capacity;
+    private final double tokensPerNano;
+    private final LongSupplier nanoClock;
+    private double tokens;
+    private long lastRefillNanos;
+
+    public RetryBudget(long spansPerSecond, long burstSpans) {
+        this(spansPerSecond, burstSpans, System::nanoTime);
+    }
+
+    RetryBudget(long spansPerSecond, long burstSpans, LongSupplier nanoClock) {
+        if (spansPerSecond < 0 || burstSpans < 0)
+            throw new IllegalArgumentException("Retry budget must not be negative");
+        this.capacity = burstSpans;
+        this.tokensPerNano = spansPerSecond / 1_000_000_000.0;
+        this.nanoClock = nanoClock;
+        this.tokens = burstSpans;
+        this.lastRefillNanos = nanoClock.getAsLong();
+    }
+
+    public synchronized boolean tryAcquire(int spans) {
+        refill();
+        if (tokens < spans)
+            return false;
+        tokens -= spans;
+        return true;
+    }
+
+    public synchronized long getAvailable() {
+        refill();
+        return (long) tokens;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    private void refill() {
+        var now = nanoClock.getAsLong();
+        tokens = Math.min(capacity, tokens + ((now - lastRefillNanos) * tokensPerNano));
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,66 @@
+package com.octopus.teamcity.opentelemetry.server.exporters;
+
+import io.opentelemetry.exporter.internal.FailedExportException;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+
+/**
+ * Decides whether a failed export is worth sending again.
+ * <p>
+ * The exporters only give us a failed result and (sometimes) a throwable, so we look for a gRPC or HTTP status on
+ * the OTLP exporters' failure, or failing that, in the failure's message. Anything we can't classify is treated as
+ * retryable, as that matches the failure modes we actually see (collector restarting, load balancer returning 503s,
+ * connections being reset).
+ */
+public class RetryClassifier {
+    // https://github.com/open-telemetry/opentelemetry-proto/blob/main/docs/specification.md#failures
+    private static final Set<Integer> RETRYABLE_GRPC_CODES = Set.of(
+            1,  // CANCELLED
+            4,  // DEADLINE_EXCEEDED
+            8,  // RESOURCE_EXHAUSTED
+            10, // ABORTED
+            11, // OUT_OF_RANGE
+            14, // UNAVAILABLE
+            15  // DATA_LOSS
+    );
+    private static final Set<Integer> RETRYABLE_HTTP_CODES = Set.of(408, 429, 502, 503, 504);
+    private static final Pattern GRPC_STATUS_PATTERN = Pattern.compile("gRPC status code (\\d+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern HTTP_STATUS_PATTERN = Pattern.compile("(?:HTTP )?status code (\\d{3})", Pattern.CASE_INSENSITIVE);
+
+    private RetryClassifier() {
+        throw new IllegalStateException("Utility class RetryClassifier should not be instantiated ");
+    }
+
+    public static boolean isRetryable(@Nullable Throwable failure) {
+        var current = failure;
+        while (current != null) {
+            if (current instanceof FailedExportException.GrpcExportException) {
+                var response = ((FailedExportException.GrpcExportException) current).getResponse();
+                if (response != null)
+                    return RETRYABLE_GRPC_CODES.contains(response.grpcStatusValue());
+            }
+            if (current instanceof FailedExportException.HttpExportException) {
+                var response = ((FailedExportException.HttpExportException) current).getResponse();
+                if (response != null)
+                    return RETRYABLE_HTTP_CODES.contains(response.statusCode());
+            }
+            if (current instanceof IOException || current instanceof TimeoutException)
+                return true;
+            var message = current.getMessage();
+            if (message != null) {
+                var grpcMatcher = GRPC_STATUS_PATTERN.matcher(message);
+                if (grpcMatcher.find())
+                    return RETRYABLE_GRPC_CODES.contains(Integer.parseInt(grpcMatcher.group(1)));
+                var httpMatcher = HTTP_STATUS_PATTERN.matcher(message);
+                if (httpMatcher.find())
+                    return RETRYABLE_HTTP_CODES.contains(Integer.parseInt(httpMatcher.group(1)));
+            }
+            current = current.getCause() == current ? null : current.getCause();
+        }
+        return true;
+    }
+}
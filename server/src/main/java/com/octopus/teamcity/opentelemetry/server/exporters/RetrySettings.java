@@ -0,0 +1,42 @@
+package com.octopus.teamcity.opentelemetry.server.exporters;
+
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+
+import java.time.Duration;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+
+public class RetrySettings {
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+
+    public RetrySettings(int maxAttempts, Duration initialBackoff, Duration maxBackoff) {
+        if (maxAttempts < 1)
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        if (initialBackoff.isNegative() || maxBackoff.compareTo(initialBackoff) < 0)
+            throw new IllegalArgumentException(String.format("Backoff bounds [%s, %s] are invalid", initialBackoff, maxBackoff));
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    public static RetrySettings fromServerProperties() {
+        return new RetrySettings(
+                TeamCityProperties.getInteger(PROPERTY_KEY_RETRY_MAX_ATTEMPTS, RETRY_MAX_ATTEMPTS),
+                Duration.ofMillis(TeamCityProperties.getLong(PROPERTY_KEY_RETRY_INITIAL_BACKOFF_MS, RETRY_INITIAL_BACKOFF.toMillis())),
+                Duration.ofMillis(TeamCityProperties.getLong(PROPERTY_KEY_RETRY_MAX_BACKOFF_MS, RETRY_MAX_BACKOFF.toMillis())));
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public Duration getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    public Duration getMaxBackoff() {
+        return maxBackoff;
+    }
+}
@@ -0,0 +1,180 @@
+package com.octopus.teamcity.opentelemetry.server.exporters;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.metrics.MeterProvider;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+
+/**
+ * Wraps a {@link SpanExporter} and re-sends batches that failed with a retryable error, backing off per
+ * destination and drawing from a server-wide {@link RetryBudget}.
+ * <p>
+ * Retries are scheduled on a shared scheduler rather than slept. The returned result completes once the batch has
+ * either been accepted or given up on, and the batch processors wait on it, so a processor's worker does sit out the
+ * backoffs - but only up to its export timeout, after which it moves on and any remaining retries carry on in the
+ * background. Only retryable failures count towards the destination's backoff.
+ */
+public class RetryingSpanExporter implements SpanExporter {
+    static Logger LOG = Logger.getLogger(RetryingSpanExporter.class.getName());
+    private static final AttributeKey<String> DESTINATION_KEY = AttributeKey.stringKey("destination");
+    private static final AttributeKey<String> REASON_KEY = AttributeKey.stringKey("reason");
+
+    private final SpanExporter delegate;
+    private final DestinationBackoff backoff;
+    private final RetryBudget retryBudget;
+    private final RetrySettings settings;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean isShutdown;
+    private final AtomicLong pendingRetrySpans;
+    private final Attributes destinationAttributes;
+
+    private final LongCounter retries;
+    private final LongCounter giveUps;
+    private final LongCounter budgetExhausted;
+
+    public RetryingSpanExporter(
+            SpanExporter delegate,
+            DestinationBackoff backoff,
+            RetryBudget retryBudget,
+            RetrySettings settings,
+            ScheduledExecutorService scheduler,
+            MeterProvider meterProvider) {
+        this(delegate, backoff, retryBudget, settings, scheduler, new AtomicLong(), meterProvider);
+    }
+
+    /**
+     * @param pendingRetrySpans kept up to date with the number of spans waiting on the scheduler to be sent again
+     */
+    public RetryingSpanExporter(
+            SpanExporter delegate,
+            DestinationBackoff backoff,
+            RetryBudget retryBudget,
+            RetrySettings settings,
+            ScheduledExecutorService scheduler,
+            AtomicLong pendingRetrySpans,
+            MeterProvider meterProvider) {
+        this.delegate = delegate;
+        this.backoff = backoff;
+        this.retryBudget = retryBudget;
+        this.settings = settings;
+        this.scheduler = scheduler;
+        this.isShutdown = new AtomicBoolean(false);
+        this.pendingRetrySpans = pendingRetrySpans;
+        this.destinationAttributes = Attributes.of(DESTINATION_KEY, backoff.getDestination());
+
+        Meter meter = meterProvider.get(TRACER_INSTRUMENTATION_NAME);
+        this.retries = meter.counterBuilder(METRIC_PREFIX + ".exporter.retries")
+                .setDescription("Batches scheduled to be sent again after a retryable failure")
+                .build();
+        this.giveUps = meter.counterBuilder(METRIC_PREFIX + ".exporter.give_ups")
+                .setDescription("Batches dropped after a failed export")
+                .build();
+        this.budgetExhausted = meter.counterBuilder(METRIC_PREFIX + ".exporter.retry_budget.exhausted")
+                .setDescription("Retries refused because the server-wide retry budget was used up")
+                .build();
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+        if (isShutdown.get())
+            return CompletableResultCode.ofFailure();
+
+        // the processor reuses its batch as soon as this call returns, so keep our own copy for any retries
+        var spansToExport = new ArrayList<>(spans);
+        var result = new CompletableResultCode();
+        attempt(spansToExport, 1, result);
+        return result;
+    }
+
+    private void attempt(List<SpanData> spans, int attempt, CompletableResultCode result) {
+        final CompletableResultCode exportResult;
+        try {
+            exportResult = delegate.export(spans);
+        } catch (RuntimeException e) {
+            onAttemptFailed(spans, attempt, result, e);
+            return;
+        }
+        exportResult.whenComplete(() -> {
+            if (exportResult.isSuccess()) {
+                backoff.recordSuccess();
+                result.succeed();
+            } else {
+                onAttemptFailed(spans, attempt, result, exportResult.getFailureThrowable());
+            }
+        });
+    }
+
+    private void onAttemptFailed(List<SpanData> spans, int attempt, CompletableResultCode result, @Nullable Throwable failure) {
+        // classify first, so that eg a 401 doesn't push back every other batch to the destination
+        if (!RetryClassifier.isRetryable(failure)) {
+            giveUp(spans, result, "not_retryable", failure);
+            return;
+        }
+        var delay = backoff.recordFailureAndGetDelay();
+        if (attempt >= settings.getMaxAttempts()) {
+            giveUp(spans, result, "attempts_exhausted", failure);
+            return;
+        }
+        if (isShutdown.get()) {
+            giveUp(spans, result, "shutdown", failure);
+            return;
+        }
+        if (!retryBudget.tryAcquire(spans.size())) {
+            budgetExhausted.add(1, destinationAttributes);
+            giveUp(spans, result, "budget_exhausted", failure);
+            return;
+        }
+
+        retries.add(1, destinationAttributes);
+        LOG.debug(String.format("Export of %d spans to %s failed (attempt %d of %d); retrying in %d ms.",
+                spans.size(), backoff.getDestination(), attempt, settings.getMaxAttempts(), delay.toMillis()));
+        pendingRetrySpans.addAndGet(spans.size());
+        try {
+            scheduler.schedule(() -> {
+                pendingRetrySpans.addAndGet(-spans.size());
+                attempt(spans, attempt + 1, result);
+            }, delay.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            pendingRetrySpans.addAndGet(-spans.size());
+            giveUp(spans, result, "shutdown", e);
+        }
+    }
+
+    private void giveUp(List<SpanData> spans, CompletableResultCode result, String reason, @Nullable Throwable failure) {
+        giveUps.add(1, destinationAttributes.toBuilder().put(REASON_KEY, reason).build());
+        LOG.warn(String.format("Dropping %d spans for %s after failed export (%s)%s", spans.size(), backoff.getDestination(), reason,
+                failure == null ? "." : ": " + failure.getMessage()));
+        if (failure == null)
+            result.fail();
+        else
+            result.failExceptionally(failure);
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        return delegate.flush();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        if (isShutdown.getAndSet(true))
+            return CompletableResultCode.ofSuccess();
+        return delegate.shutdown();
+    }
+}
@@ -0,0 +1,84 @@
+package com.octopus.teamcity.opentelemetry.server.helpers;
+
+import io.opentelemetry.api.common.AttributeKey;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares attribute keys and values between the spans of a build chain. The same project, branch, commit, agent and
+ * build type values are set on every step and test span of a build, and each one would otherwise be a new string (and
+ * a new key) held by every finished span until it is exported.
+ * <p>
+ * Values are only weakly referenced, so a value no span is holding any more can be collected, and at most
+ * <code>maxValues</code> are interned; past that, values are used as they are. They are split across stripes that are
+ * each locked on their own, so the workers creating test spans in parallel rarely wait on each other. There are only
+ * ever a few dozen attribute names, so the keys are kept for the life of the chain.
+ */
+class AttributeInterner {
+    private static final int STRIPES = 16;
+    // below this, one stripe keeps the limit exact; above it, an uneven split across stripes doesn't matter
+    private static final int MIN_VALUES_TO_STRIPE = 1024;
+    private final int maxValuesPerStripe;
+    private final List<Map<String, WeakReference<String>>> values;
+    private final ConcurrentHashMap<String, AttributeKey<String>> keys;
+
+    AttributeInterner(int maxValues) {
+        var stripes = maxValues >= MIN_VALUES_TO_STRIPE ? STRIPES : 1;
+        this.maxValuesPerStripe = Math.max(maxValues, 0) / stripes;
+        this.values = new ArrayList<>(stripes);
+        for (int i = 0; i < stripes; i++)
+            values.add(new WeakHashMap<>());
+        this.keys = new ConcurrentHashMap<>();
+    }
+
+    AttributeKey<String> key(String attributeName) {
+        // a plain get first, as computeIfAbsent locks the bin even when the key is there
+        var key = keys.get(attributeName);
+        return key != null ? key : keys.computeIfAbsent(attributeName, AttributeKey::stringKey);
+    }
+
+    String value(String value) {
+        if (maxValuesPerStripe <= 0)
+            return value;
+
+        var stripe = getStripe(value);
+        synchronized (stripe) {
+            var reference = stripe.get(value);
+            var interned = reference == null ? null : reference.get();
+            if (interned != null)
+                return interned;
+            if (stripe.size() < maxValuesPerStripe)
+                stripe.put(value, new WeakReference<>(value));
+            return value;
+        }
+    }
+
+    private Map<String, WeakReference<String>> getStripe(String value) {
+        var hash = value.hashCode();
+        return values.get((hash ^ (hash >>> 16)) & (values.size() - 1));
+    }
+
+    int size() {
+        var size = 0;
+        for (var stripe : values) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    void clear() {
+        for (var stripe : values) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+        keys.clear();
+    }
+}
@@ -0,0 +1,193 @@
+package com.octopus.teamcity.opentelemetry.server.helpers;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongFunction;
+
+/**
+ * A concurrent map keyed by primitive <code>long</code>s (build and promotion ids), so lookups neither box the key
+ * nor turn it into a string, and an entry costs two array slots rather than a node, a boxed key and its string.
+ * <p>
+ * Keys are spread over a fixed number of segments, each an open-addressing hash table (linear probing, with
+ * backward-shift deletion so there are no tombstones) guarded by its own lock; so threads working on different build
+ * chains rarely contend, and no lock is held for more than a few probes. Null values aren't allowed.
+ */
+class ConcurrentLongMap<V> {
+    private static final int SEGMENT_COUNT = 16; // a power of two
+    private static final int SEGMENT_SHIFT = 64 - Integer.numberOfTrailingZeros(SEGMENT_COUNT);
+    private static final int INITIAL_SEGMENT_CAPACITY = 8; // a power of two
+
+    private final Segment<V>[] segments;
+
+    @SuppressWarnings("unchecked")
+    ConcurrentLongMap() {
+        this.segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++)
+            segments[i] = new Segment<>();
+    }
+
+    @Nullable
+    V get(long key) {
+        var hash = hash(key);
+        return segmentFor(hash).get(key, hash);
+    }
+
+    /**
+     * @return the value for the key, creating it (while holding the key's segment lock, so the function mustn't use
+     * this map) if there isn't one yet
+     */
+    V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        var hash = hash(key);
+        return segmentFor(hash).computeIfAbsent(key, hash, mappingFunction);
+    }
+
+    @Nullable
+    V remove(long key) {
+        var hash = hash(key);
+        return segmentFor(hash).remove(key, hash);
+    }
+
+    /**
+     * @return the number of entries; not a snapshot, as each segment is read in turn without locking the others
+     */
+    int size() {
+        int size = 0;
+        for (var segment : segments)
+            size += segment.size;
+        return size;
+    }
+
+    /**
+     * @return a copy of the values; like {@link #size()}, not a snapshot of the whole map
+     */
+    List<V> values() {
+        var values = new ArrayList<V>();
+        for (var segment : segments)
+            segment.addValuesTo(values);
+        return values;
+    }
+
+    void clear() {
+        for (var segment : segments)
+            segment.clear();
+    }
+
+    private Segment<V> segmentFor(long hash) {
+        return segments[(int) (hash >>> SEGMENT_SHIFT)];
+    }
+
+    private static long hash(long key) {
+        // Fibonacci hashing, as ids are sequential and would otherwise cluster in the low bits
+        return key * 0x9E3779B97F4A7C15L;
+    }
+
+    private static final class Segment<V> {
+        private long[] keys = new long[INITIAL_SEGMENT_CAPACITY];
+        private Object[] values = new Object[INITIAL_SEGMENT_CAPACITY];
+        private volatile int size;
+
+        @Nullable
+        synchronized V get(long key, long hash) {
+            var index = find(key, hash);
+            return index < 0 ? null : value(index);
+        }
+
+        synchronized V computeIfAbsent(long key, long hash, LongFunction<? extends V> mappingFunction) {
+            var mask = keys.length - 1;
+            var index = slot(hash, mask);
+            while (values[index] != null) {
+                if (keys[index] == key)
+                    return value(index);
+                index = (index + 1) & mask;
+            }
+
+            var value = mappingFunction.apply(key);
+            if (value == null)
+                throw new NullPointerException("The mapping function returned null for key " + key);
+            keys[index] = key;
+            values[index] = value;
+            size++;
+            if (size * 4 > keys.length * 3) // more than 3/4 full
+                resize(keys.length * 2);
+            return value;
+        }
+
+        @Nullable
+        synchronized V remove(long key, long hash) {
+            var index = find(key, hash);
+            if (index < 0)
+                return null;
+
+            var removed = value(index);
+            // shift back any entries further along the probe sequence that could have used the freed slot
+            var mask = keys.length - 1;
+            var free = index;
+            var next = (free + 1) & mask;
+            while (values[next] != null) {
+                var home = slot(hash(keys[next]), mask);
+                // move it unless its home slot lies cyclically between the freed slot and where it is now
+                if (((next - home) & mask) >= ((next - free) & mask)) {
+                    keys[free] = keys[next];
+                    values[free] = values[next];
+                    free = next;
+                }
+                next = (next + 1) & mask;
+            }
+            values[free] = null;
+            size--;
+            return removed;
+        }
+
+        synchronized void addValuesTo(List<V> target) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null)
+                    target.add(value(i));
+            }
+        }
+
+        synchronized void clear() {
+            keys = new long[INITIAL_SEGMENT_CAPACITY];
+            values = new Object[INITIAL_SEGMENT_CAPACITY];
+            size = 0;
+        }
+
+        private int find(long key, long hash) {
+            var mask = keys.length - 1;
+            var index = slot(hash, mask);
+            while (values[index] != null) {
+                if (keys[index] == key)
+                    return index;
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+
+        private void resize(int capacity) {
+            var oldKeys = keys;
+            var oldValues = values;
+            keys = new long[capacity];
+            values = new Object[capacity];
+            var mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] == null) continue;
+                var index = slot(hash(oldKeys[i]), mask);
+                while (values[index] != null)
+                    index = (index + 1) & mask;
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private V value(int index) {
+            return (V) values[index];
+        }
+
+        private static int slot(long hash, int mask) {
+            // the low bits of the hash; the high bits pick the segment
+            return (int) hash & mask;
+        }
+    }
+}
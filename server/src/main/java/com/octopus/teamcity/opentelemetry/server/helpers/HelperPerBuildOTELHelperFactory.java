@@ -1,76 +1,230 @@
 package com.octopus.teamcity.opentelemetry.server.helpers;
 
 import com.octopus.teamcity.opentelemetry.server.endpoints.OTELEndpointFactory;
-import io.opentelemetry.sdk.metrics.SdkMeterProvider;
-import io.opentelemetry.sdk.trace.SpanProcessor;
+import com.octopus.teamcity.opentelemetry.server.processors.SpanProcessorFactory;
+import com.octopus.teamcity.opentelemetry.server.telemetry.PluginTelemetry;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.sdk.common.CompletableResultCode;
 import jetbrains.buildServer.serverSide.BuildPromotion;
 import jetbrains.buildServer.serverSide.ProjectManager;
 import org.apache.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
 
 public class HelperPerBuildOTELHelperFactory implements OTELHelperFactory {
     static Logger LOG = Logger.getLogger(HelperPerBuildOTELHelperFactory.class.getName());
-    private final ConcurrentHashMap<Long, OTELHelper> otelHelpers;
+    // futures rather than helpers, so a helper is created outside the map's locks, once, however many builds in the
+    // chain ask for it at the same time
+    private final ConcurrentHashMap<Long, CompletableFuture<ChainHelper>> otelHelpers;
     private final ProjectManager projectManager;
     @NotNull
     private final OTELEndpointFactory otelEndpointFactory;
+    @NotNull
+    private final SpanProcessorFactory spanProcessorFactory;
+    private final DoubleHistogram creationDuration;
+    private final PluginTelemetry pluginTelemetry;
 
     public HelperPerBuildOTELHelperFactory(
         ProjectManager projectManager,
-        @NotNull OTELEndpointFactory otelEndpointFactory
+        @NotNull OTELEndpointFactory otelEndpointFactory,
+        @NotNull SpanProcessorFactory spanProcessorFactory,
+        @NotNull PluginTelemetry pluginTelemetry
     ) {
         this.projectManager = projectManager;
         this.otelEndpointFactory = otelEndpointFactory;
+        this.spanProcessorFactory = spanProcessorFactory;
+        this.pluginTelemetry = pluginTelemetry;
         LOG.debug("Creating HelperPerBuildOTELHelperFactory.");
 
         this.otelHelpers = new ConcurrentHashMap<>();
+
+        var meter = pluginTelemetry.getMeter();
+        meter.gaugeBuilder(METRIC_PREFIX + ".plugin.helpers.active")
+                .setDescription("Build chains with an OTELHelper, ie being traced (or skipped) right now")
+                .ofLongs()
+                .buildWithCallback(measurement -> measurement.record(otelHelpers.size()));
+        meter.gaugeBuilder(METRIC_PREFIX + ".plugin.helpers.open_spans")
+                .setDescription("Build spans started but not yet finished, across every OTELHelper")
+                .ofLongs()
+                .buildWithCallback(measurement -> measurement.record(otelHelpers.values().stream()
+                        .map(HelperPerBuildOTELHelperFactory::getIfCreated)
+                        .filter(Objects::nonNull)
+                        .mapToLong(chainHelper -> chainHelper.helper.getSpanCount())
+                        .sum()));
+        this.creationDuration = meter.histogramBuilder(METRIC_PREFIX + ".plugin.helpers.creation.duration")
+                .setDescription("Time taken to create an OTELHelper, including its exporter and span processor")
+                .setUnit("ms")
+                .build();
     }
 
     public OTELHelper getOTELHelper(BuildPromotion buildPromotion) {
         var buildId = buildPromotion.getId();
 
-        return otelHelpers.computeIfAbsent(buildId, key -> {
-            LOG.debug(String.format("Creating OTELHelper for build %d.", buildId));
-            var projectId = buildPromotion.getProjectExternalId();
-            var project = projectManager.findProjectByExternalId(projectId);
+        var future = otelHelpers.get(buildId);
+        if (future == null) {
+            var created = new CompletableFuture<ChainHelper>();
+            future = otelHelpers.putIfAbsent(buildId, created);
+            if (future == null) {
+                // this caller won the race, so creates the helper; any others wait on the same future
+                try {
+                    created.complete(createOTELHelper(buildPromotion));
+                } catch (RuntimeException e) {
+                    otelHelpers.remove(buildId, created);
+                    created.completeExceptionally(e);
+                    throw e;
+                }
+                future = created;
+            }
+        }
+        return future.join().helper;
+    }
+
+    private ChainHelper createOTELHelper(BuildPromotion buildPromotion) {
+        var buildId = buildPromotion.getId();
+        LOG.debug(String.format("Creating OTELHelper for build %d.", buildId));
+        long startTime = System.nanoTime();
+        var projectId = buildPromotion.getProjectExternalId();
+        var project = projectManager.findProjectByExternalId(projectId);
 
-            var features = project.getAvailableFeaturesOfType(PLUGIN_NAME);
-            if (!features.isEmpty()) {
-                var feature = features.stream().findFirst().get();
-                var params = feature.getParameters();
-                if (params.get(PROPERTY_KEY_ENABLED).equals("true")) {
-                    var endpoint = params.get(PROPERTY_KEY_ENDPOINT);
+        var features = project.getAvailableFeaturesOfType(PLUGIN_NAME);
+        if (!features.isEmpty()) {
+            var feature = features.stream().findFirst().get();
+            var params = feature.getParameters();
+            if (params.get(PROPERTY_KEY_ENABLED).equals("true")) {
+                var endpoint = params.get(PROPERTY_KEY_ENDPOINT);
 
-                    var otelHandler = otelEndpointFactory.getOTELEndpointHandler(params.get(PROPERTY_KEY_SERVICE));
-                    var spanProcessorMeterProviderPair = otelHandler.buildSpanProcessorAndMeterProvider(buildPromotion, endpoint, params);
+                var otelHandler = otelEndpointFactory.getOTELEndpointHandler(params.get(PROPERTY_KEY_SERVICE));
+                var destination = otelHandler.getDestination(endpoint);
+                var exportKey = otelHandler.getExportKey(endpoint, params);
+                if (!spanProcessorFactory.isAdmittingNewChains(exportKey)) {
+                    LOG.debug(String.format("Using NullOTELHelper for build %d, as the circuit breaker for %s is open.", buildId, exportKey));
+                    return new ChainHelper(new NullOTELHelperImpl(), null);
+                }
 
-                    long startTime = System.nanoTime();
-                    var spanProcessor = spanProcessorMeterProviderPair.getLeft();
-                    var meterProvider = spanProcessorMeterProviderPair.getRight();
-                    var otelHelper = new OTELHelperImpl(spanProcessor, meterProvider, String.valueOf(buildId));
-                    long endTime = System.nanoTime();
+                var spanProcessorMeterProviderPair = otelHandler.buildSpanProcessorAndMeterProvider(buildPromotion, endpoint, params);
 
-                    long duration = (endTime - startTime);
-                    LOG.debug(String.format("Created OTELHelper for build %d in %d milliseconds.", buildId, duration / 1000000));
+                var spanProcessor = spanProcessorMeterProviderPair.getLeft();
+                var meterProvider = spanProcessorMeterProviderPair.getRight();
+                var otelHelper = new OTELHelperImpl(spanProcessor, meterProvider, String.valueOf(buildId));
+                creationDuration.record((System.nanoTime() - startTime) / 1_000_000.0);
 
-                    return otelHelper;
-                }
+                LOG.debug(String.format("Created OTELHelper for build %d.", buildId));
+                return new ChainHelper(otelHelper, new HelperSnapshot(buildId, params.get(PROPERTY_KEY_SERVICE), destination, System.currentTimeMillis(), 0));
             }
-            LOG.debug(String.format("Using NullOTELHelper for build %d.", buildId));
-            return new NullOTELHelperImpl();
-        });
+        }
+        LOG.debug(String.format("Using NullOTELHelper for build %d.", buildId));
+        return new ChainHelper(new NullOTELHelperImpl(), null);
+    }
+
+    /**
+     * @return the chain's helper if it has been created, without waiting for one that's being created
+     */
+    @Nullable
+    private OTELHelper getCreatedHelper(long buildId) {
+        var chainHelper = getIfCreated(otelHelpers.get(buildId));
+        return chainHelper == null ? null : chainHelper.helper;
+    }
+
+    @Nullable
+    private static ChainHelper getIfCreated(@Nullable CompletableFuture<ChainHelper> future) {
+        // checking isDone first, as a future that's still being completed could fail between the other two checks
+        if (future == null || !future.isDone() || future.isCompletedExceptionally())
+            return null;
+        return future.join();
     }
 
     @Override
     public void release(Long buildId) {
-        var helper = otelHelpers.get(buildId);
-        if (helper != null) {
-            helper.release(String.valueOf(buildId));
-            otelHelpers.remove(buildId);
+        // taken out of the map in one step, so two releases can't both get it; a helper that's still being created is
+        // released once it has been, rather than holding up the build that finished
+        var future = otelHelpers.remove(buildId);
+        if (future != null)
+            future.thenAccept(chainHelper -> chainHelper.helper.release(String.valueOf(buildId)));
+    }
+
+    @Override
+    public void shutdown(Duration timeout) {
+        var startTime = System.nanoTime();
+        var helpers = otelHelpers.values().stream()
+                .map(HelperPerBuildOTELHelperFactory::getIfCreated)
+                .filter(Objects::nonNull)
+                .map(chainHelper -> chainHelper.helper)
+                .filter(OTELHelper::isReady)
+                .collect(Collectors.toList());
+
+        var endedSpans = 0;
+        for (var helper : helpers)
+            endedSpans += helper.endOpenSpans(ERROR_MESSAGE_INTERRUPTED_BY_SHUTDOWN);
+
+        // flush every chain at once, under the one deadline, rather than giving each its own timeout in turn
+        var queuedSpans = pluginTelemetry.getQueuedSpanCount();
+        var flushes = helpers.stream()
+                .map(OTELHelper::startForceFlush)
+                .collect(Collectors.toList());
+        CompletableResultCode.ofAll(flushes).join(timeout.toMillis(), TimeUnit.MILLISECONDS);
+
+        var flushedChains = flushes.stream().filter(CompletableResultCode::isSuccess).count();
+        var lostSpans = pluginTelemetry.getQueuedSpanCount();
+        // the flushes wait on retries too, but give any still scheduled what's left of the deadline before dropping them
+        var remaining = timeout.minusNanos(System.nanoTime() - startTime);
+        var lostRetrySpans = spanProcessorFactory.shutdownRetries(remaining.isNegative() ? Duration.ZERO : remaining);
+        pluginTelemetry.recordDroppedSpans("shutdown", lostSpans + lostRetrySpans);
+        var message = String.format("Server shutting down: ended %d open build spans across %d traced chains, and flushed %d of the chains (about %d queued spans) in %d ms; %d spans were still queued and %d were waiting to be retried, and have been lost.",
+                endedSpans, helpers.size(), flushedChains, Math.max(queuedSpans - lostSpans, 0), (System.nanoTime() - startTime) / 1_000_000, lostSpans, lostRetrySpans);
+        if (flushedChains == helpers.size() && lostSpans == 0 && lostRetrySpans == 0)
+            LOG.info(message);
+        else
+            LOG.warn(message);
+    }
+
+    /**
+     * Reads the current helpers without locking, so it's safe to call while builds are being traced.
+     */
+    public List<HelperSnapshot> getHelperSnapshots() {
+        return otelHelpers.values().stream()
+                .map(HelperPerBuildOTELHelperFactory::getIfCreated)
+                .filter(chainHelper -> chainHelper != null && chainHelper.description != null)
+                .map(chainHelper -> {
+                    var description = chainHelper.description;
+                    return new HelperSnapshot(description.getRootBuildId(), description.getService(), description.getDestination(), description.getCreatedAt().getTime(), chainHelper.helper.getSpanCount());
+                })
+                .sorted(Comparator.comparing(HelperSnapshot::getRootBuildId))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return false if there's no helper for the chain, or its spans weren't exported within the timeout
+     */
+    public boolean forceFlush(long rootBuildId, Duration timeout) {
+        var helper = getCreatedHelper(rootBuildId);
+        if (helper == null)
+            return false;
+        LOG.info(String.format("Force flushing OTELHelper for build %d.", rootBuildId));
+        return helper.forceFlush(timeout);
+    }
+
+    /**
+     * A chain's helper, and what it's exporting to for diagnostics; chains that aren't traced have no description.
+     */
+    private static class ChainHelper {
+        private final OTELHelper helper;
+        @Nullable
+        private final HelperSnapshot description;
+
+        private ChainHelper(OTELHelper helper, @Nullable HelperSnapshot description) {
+            this.helper = helper;
+            this.description = description;
         }
     }
 }
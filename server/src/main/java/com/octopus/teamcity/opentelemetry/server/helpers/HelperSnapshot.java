@@ -0,0 +1,42 @@
+package com.octopus.teamcity.opentelemetry.server.helpers;
+
+import java.util.Date;
+
+/**
+ * A point-in-time view of one build chain's {@link OTELHelper}, for the admin diagnostics page.
+ */
+public class HelperSnapshot {
+    private final long rootBuildId;
+    private final String service;
+    private final String destination;
+    private final long createdAt;
+    private final int openSpans;
+
+    HelperSnapshot(long rootBuildId, String service, String destination, long createdAt, int openSpans) {
+        this.rootBuildId = rootBuildId;
+        this.service = service;
+        this.destination = destination;
+        this.createdAt = createdAt;
+        this.openSpans = openSpans;
+    }
+
+    public long getRootBuildId() {
+        return rootBuildId;
+    }
+
+    public String getService() {
+        return service;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public Date getCreatedAt() {
+        return new Date(createdAt);
+    }
+
+    public int getOpenSpans() {
+        return openSpans;
+    }
+}
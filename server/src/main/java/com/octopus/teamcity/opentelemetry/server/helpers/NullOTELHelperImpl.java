@@ -1,8 +1,10 @@
 package com.octopus.teamcity.opentelemetry.server.helpers;
 
 import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.sdk.common.CompletableResultCode;
 
 import javax.annotation.Nullable;
+import java.time.Duration;
 
 public class NullOTELHelperImpl implements OTELHelper {
     @Override
@@ -11,12 +13,12 @@ public class NullOTELHelperImpl implements OTELHelper {
     }
 
     @Override
-    public Span getOrCreateParentSpan(String buildId) {
+    public Span getOrCreateParentSpan(long buildId) {
         return null;
     }
 
     @Override
-    public Span createSpan(String spanName, Span parentSpan, String parentSpanName) {
+    public Span createSpan(long buildId, Span parentSpan, long parentBuildId) {
         return null;
     }
 
@@ -26,12 +28,17 @@ public class NullOTELHelperImpl implements OTELHelper {
     }
 
     @Override
-    public void removeSpan(String buildId) {
+    public void removeSpan(long buildId) {
+    }
+
+    @Override
+    public int getSpanCount() {
+        return 0;
     }
 
     @Override
     @Nullable
-    public Span getSpan(String buildId) {
+    public Span getSpan(long buildId) {
         return null;
     }
 
@@ -42,4 +49,19 @@ public class NullOTELHelperImpl implements OTELHelper {
     @Override
     public void release(String helperName) {
     }
+
+    @Override
+    public boolean forceFlush(Duration timeout) {
+        return true;
+    }
+
+    @Override
+    public CompletableResultCode startForceFlush() {
+        return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public int endOpenSpans(String description) {
+        return 0;
+    }
 }
@@ -1,24 +1,47 @@
 package com.octopus.teamcity.opentelemetry.server.helpers;
 
 import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.sdk.common.CompletableResultCode;
 
 import javax.annotation.Nullable;
+import java.time.Duration;
 
 public interface OTELHelper {
     boolean isReady();
 
-    Span getOrCreateParentSpan(String buildId);
+    Span getOrCreateParentSpan(long buildId);
 
-    Span createSpan(String spanName, Span parentSpan, String parentSpanName);
+    Span createSpan(long buildId, Span parentSpan, long parentBuildId);
 
     Span createTransientSpan(String spanName, Span parentSpan, long startTime);
 
-    void removeSpan(String buildId);
+    void removeSpan(long buildId);
+
+    int getSpanCount();
 
     @Nullable
-    Span getSpan(String buildId);
+    Span getSpan(long buildId);
 
     void addAttributeToSpan(Span span, String attributeName, Object attributeValue);
 
     void release(String helperName);
+
+    /**
+     * Exports any finished spans still waiting in the processor, without waiting for the next scheduled export.
+     *
+     * @return whether they were exported within the timeout
+     */
+    boolean forceFlush(Duration timeout);
+
+    /**
+     * Starts exporting any finished spans still waiting in the processor, without waiting for it to finish.
+     */
+    CompletableResultCode startForceFlush();
+
+    /**
+     * Ends every open build span as failed, with the given description; for when they'll never be finished normally.
+     *
+     * @return how many spans were ended
+     */
+    int endOpenSpans(String description);
 }
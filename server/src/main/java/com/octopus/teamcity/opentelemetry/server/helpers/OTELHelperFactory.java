@@ -3,8 +3,15 @@ package com.octopus.teamcity.opentelemetry.server.helpers;
 import jetbrains.buildServer.serverSide.BuildPromotion;
 import jetbrains.buildServer.serverSide.SRunningBuild;
 
+import java.time.Duration;
+
 public interface OTELHelperFactory {
     OTELHelper getOTELHelper(BuildPromotion build);
 
     void release(Long buildId);
+
+    /**
+     * Ends the open spans of every chain being traced, and exports what it can of them within the timeout.
+     */
+    void shutdown(Duration timeout);
 }
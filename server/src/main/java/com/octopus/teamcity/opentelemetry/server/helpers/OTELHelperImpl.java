@@ -4,37 +4,52 @@ import com.octopus.teamcity.opentelemetry.common.PluginConstants;
 import io.opentelemetry.api.OpenTelemetry;
 import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
 import io.opentelemetry.api.trace.Tracer;
 import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
 import io.opentelemetry.context.Context;
 import io.opentelemetry.context.propagation.ContextPropagators;
 import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.common.CompletableResultCode;
 import io.opentelemetry.sdk.metrics.SdkMeterProvider;
 import io.opentelemetry.sdk.resources.Resource;
 import io.opentelemetry.sdk.trace.SdkTracerProvider;
 import io.opentelemetry.sdk.trace.SpanProcessor;
 import io.opentelemetry.semconv.ServiceAttributes;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
 import org.apache.log4j.Logger;
 
 import javax.annotation.Nullable;
-import java.util.concurrent.ConcurrentHashMap;
+import java.time.Duration;
 import java.util.concurrent.TimeUnit;
 
 public class OTELHelperImpl implements OTELHelper {
     static Logger LOG = Logger.getLogger(OTELHelperImpl.class.getName());
     private final OpenTelemetry openTelemetry;
     private final Tracer tracer;
-    private final ConcurrentHashMap<String, Span> spanMap;
+    // open build spans, by build (promotion) id
+    private final ConcurrentLongMap<Span> spanMap;
     private final SdkTracerProvider sdkTracerProvider;
     private final String helperName;
     @Nullable
     private final SdkMeterProvider meterProvider;
+    // attribute keys and values shared by the chain's spans
+    private final AttributeInterner attributeInterner;
 
     public OTELHelperImpl(
             SpanProcessor spanProcessor,
             @Nullable
             SdkMeterProvider meterProvider,
             String helperName) {
+        this(spanProcessor, meterProvider, helperName, TeamCityProperties.getInteger(PluginConstants.PROPERTY_KEY_ATTRIBUTE_VALUES_MAX_INTERNED, PluginConstants.ATTRIBUTE_VALUES_MAX_INTERNED));
+    }
+
+    public OTELHelperImpl(
+            SpanProcessor spanProcessor,
+            @Nullable
+            SdkMeterProvider meterProvider,
+            String helperName,
+            int maxInternedAttributeValues) {
         this.helperName = helperName;
         Resource serviceNameResource = Resource
                 .create(Attributes.of(ServiceAttributes.SERVICE_NAME, PluginConstants.SERVICE_NAME));
@@ -47,8 +62,9 @@ public class OTELHelperImpl implements OTELHelper {
                 .setPropagators(ContextPropagators.create(W3CTraceContextPropagator.getInstance()))
                 .build();
         this.tracer = this.openTelemetry.getTracer(PluginConstants.TRACER_INSTRUMENTATION_NAME);
-        this.spanMap = new ConcurrentHashMap<>();
+        this.spanMap = new ConcurrentLongMap<>();
         this.meterProvider = meterProvider;
+        this.attributeInterner = new AttributeInterner(maxInternedAttributeValues);
     }
 
     @Override
@@ -57,15 +73,15 @@ public class OTELHelperImpl implements OTELHelper {
     }
 
     @Override
-    public Span getOrCreateParentSpan(String buildId) {
-        return this.spanMap.computeIfAbsent(buildId, key -> this.tracer.spanBuilder(buildId).startSpan());
+    public Span getOrCreateParentSpan(long buildId) {
+        return this.spanMap.computeIfAbsent(buildId, key -> this.tracer.spanBuilder(String.valueOf(buildId)).startSpan());
     }
 
     @Override
-    public Span createSpan(String spanName, Span parentSpan, String parentSpanName) {
-        LOG.info("Creating child span " + spanName + " under parent " + parentSpanName);
-        return this.spanMap.computeIfAbsent(spanName, key -> this.tracer
-                .spanBuilder(spanName)
+    public Span createSpan(long buildId, Span parentSpan, long parentBuildId) {
+        LOG.info("Creating child span " + buildId + " under parent " + parentBuildId);
+        return this.spanMap.computeIfAbsent(buildId, key -> this.tracer
+                .spanBuilder(String.valueOf(buildId))
                 .setParent(Context.current().with(parentSpan))
                 .startSpan());
     }
@@ -79,19 +95,24 @@ public class OTELHelperImpl implements OTELHelper {
     }
 
     @Override
-    public void removeSpan(String spanName) {
-        this.spanMap.remove(spanName);
+    public void removeSpan(long buildId) {
+        this.spanMap.remove(buildId);
+    }
+
+    @Override
+    public int getSpanCount() {
+        return this.spanMap.size();
     }
 
     @Override
     @Nullable
-    public Span getSpan(String spanName) {
-        return this.spanMap.get(spanName);
+    public Span getSpan(long buildId) {
+        return this.spanMap.get(buildId);
     }
 
     @Override
     public void addAttributeToSpan(Span span, String attributeName, Object attributeValue) {
-        span.setAttribute(attributeName, attributeValue.toString());
+        span.setAttribute(attributeInterner.key(attributeName), attributeInterner.value(attributeValue.toString()));
     }
 
     @Override
@@ -103,5 +124,27 @@ public class OTELHelperImpl implements OTELHelper {
         if (this.meterProvider != null)
             this.meterProvider.close();
         this.spanMap.clear();
+        this.attributeInterner.clear();
+    }
+
+    @Override
+    public boolean forceFlush(Duration timeout) {
+        return this.sdkTracerProvider.forceFlush().join(timeout.toMillis(), TimeUnit.MILLISECONDS).isSuccess();
+    }
+
+    @Override
+    public CompletableResultCode startForceFlush() {
+        return this.sdkTracerProvider.forceFlush();
+    }
+
+    @Override
+    public int endOpenSpans(String description) {
+        var spans = this.spanMap.values();
+        for (var span : spans) {
+            span.setStatus(StatusCode.ERROR, description);
+            span.end();
+        }
+        this.spanMap.clear();
+        return spans.size();
     }
 }
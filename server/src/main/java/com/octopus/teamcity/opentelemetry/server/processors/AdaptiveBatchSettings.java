@@ -0,0 +1,94 @@
+package com.octopus.teamcity.opentelemetry.server.processors;
+
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+
+import java.time.Duration;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+
+public class AdaptiveBatchSettings {
+    private final int maxQueueSize;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final Duration minScheduleDelay;
+    private final Duration maxScheduleDelay;
+    private final Duration targetExportLatency;
+    private final Duration exportTimeout;
+    private final double maxErrorRate;
+
+    public AdaptiveBatchSettings(
+            int maxQueueSize,
+            int minBatchSize,
+            int maxBatchSize,
+            Duration minScheduleDelay,
+            Duration maxScheduleDelay,
+            Duration targetExportLatency,
+            Duration exportTimeout,
+            double maxErrorRate) {
+        if (maxQueueSize <= 0)
+            throw new IllegalArgumentException("maxQueueSize must be positive");
+        if (minBatchSize <= 0 || maxBatchSize < minBatchSize)
+            throw new IllegalArgumentException(String.format("Batch size bounds [%d, %d] are invalid", minBatchSize, maxBatchSize));
+        if (minScheduleDelay.isNegative() || minScheduleDelay.isZero() || maxScheduleDelay.compareTo(minScheduleDelay) < 0)
+            throw new IllegalArgumentException(String.format("Schedule delay bounds [%s, %s] are invalid", minScheduleDelay, maxScheduleDelay));
+        this.maxQueueSize = maxQueueSize;
+        this.minBatchSize = minBatchSize;
+        // a batch can never be bigger than the queue that feeds it
+        this.maxBatchSize = Math.min(maxBatchSize, maxQueueSize);
+        this.minScheduleDelay = minScheduleDelay;
+        this.maxScheduleDelay = maxScheduleDelay;
+        this.targetExportLatency = targetExportLatency;
+        this.exportTimeout = exportTimeout;
+        this.maxErrorRate = maxErrorRate;
+    }
+
+    public static AdaptiveBatchSettings fromServerProperties(int maxQueueSize) {
+        var minBatchSize = TeamCityProperties.getInteger(PROPERTY_KEY_ADAPTIVE_BATCHING_MIN_BATCH_SIZE, ADAPTIVE_BATCHING_MIN_BATCH_SIZE);
+        var maxBatchSize = TeamCityProperties.getInteger(PROPERTY_KEY_ADAPTIVE_BATCHING_MAX_BATCH_SIZE, BATCH_SPAN_PROCESSOR_MAX_EXPORT_BATCH_SIZE);
+        var minScheduleDelayMs = TeamCityProperties.getLong(PROPERTY_KEY_ADAPTIVE_BATCHING_MIN_SCHEDULE_DELAY_MS, ADAPTIVE_BATCHING_MIN_SCHEDULE_DELAY.toMillis());
+        var maxScheduleDelayMs = TeamCityProperties.getLong(PROPERTY_KEY_ADAPTIVE_BATCHING_MAX_SCHEDULE_DELAY_MS, ADAPTIVE_BATCHING_MAX_SCHEDULE_DELAY.toMillis());
+        var targetLatencyMs = TeamCityProperties.getLong(PROPERTY_KEY_ADAPTIVE_BATCHING_TARGET_EXPORT_LATENCY_MS, ADAPTIVE_BATCHING_TARGET_EXPORT_LATENCY.toMillis());
+        var maxErrorRatePercent = TeamCityProperties.getInteger(PROPERTY_KEY_ADAPTIVE_BATCHING_MAX_ERROR_RATE_PERCENT, ADAPTIVE_BATCHING_MAX_ERROR_RATE_PERCENT);
+        return new AdaptiveBatchSettings(
+                maxQueueSize,
+                minBatchSize,
+                maxBatchSize,
+                Duration.ofMillis(minScheduleDelayMs),
+                Duration.ofMillis(maxScheduleDelayMs),
+                Duration.ofMillis(targetLatencyMs),
+                ADAPTIVE_BATCHING_EXPORT_TIMEOUT,
+                maxErrorRatePercent / 100.0);
+    }
+
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    public int getMinBatchSize() {
+        return minBatchSize;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public Duration getMinScheduleDelay() {
+        return minScheduleDelay;
+    }
+
+    public Duration getMaxScheduleDelay() {
+        return maxScheduleDelay;
+    }
+
+    public Duration getTargetExportLatency() {
+        return targetExportLatency;
+    }
+
+    public Duration getExportTimeout() {
+        return exportTimeout;
+    }
+
+    public double getMaxErrorRate() {
+        return maxErrorRate;
+    }
+}
@@ -0,0 +1,282 @@
+package com.octopus.teamcity.opentelemetry.server.processors;
+
+import com.octopus.teamcity.opentelemetry.server.telemetry.PluginTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.metrics.MeterProvider;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+
+/**
+ * A batching span processor, modelled on the SDK's {@code BatchSpanProcessor}, whose batch size and schedule
+ * delay are re-tuned by an {@link AdaptiveBatchTuner} after every export.
+ */
+public class AdaptiveBatchSpanProcessor implements SpanProcessor {
+    static Logger LOG = Logger.getLogger(AdaptiveBatchSpanProcessor.class.getName());
+    private static final String WORKER_THREAD_NAME = "OTEL-AdaptiveBatchSpanProcessor";
+    private static final AttributeKey<String> DECISION_KEY = AttributeKey.stringKey("decision");
+    private static final AttributeKey<Boolean> SUCCESS_KEY = AttributeKey.booleanKey("success");
+
+    private final SpanExporter spanExporter;
+    private final AdaptiveBatchSettings settings;
+    private final AdaptiveBatchTuner tuner;
+    private final ArrayBlockingQueue<ReadableSpan> queue;
+    private final BlockingQueue<Boolean> signal;
+    private final AtomicInteger spansNeeded;
+    private final AtomicReference<CompletableResultCode> flushRequested;
+    private final AtomicBoolean isShutdown;
+    private final ArrayList<SpanData> batch;
+    private final Thread workerThread;
+    private volatile boolean continueWork;
+    private long nextExportTime;
+
+    private final LongCounter droppedSpans;
+    private final LongCounter exportedSpans;
+    private final LongCounter adjustments;
+    private final DoubleHistogram exportLatency;
+    private final List<AutoCloseable> observables;
+    private final PluginTelemetry pluginTelemetry;
+
+    public AdaptiveBatchSpanProcessor(SpanExporter spanExporter, String destination, AdaptiveBatchSettings settings, MeterProvider meterProvider, PluginTelemetry pluginTelemetry) {
+        this.spanExporter = spanExporter;
+        this.settings = settings;
+        this.tuner = new AdaptiveBatchTuner(settings, BATCH_SPAN_PROCESSOR_MAX_EXPORT_BATCH_SIZE, BATCH_SPAN_PROCESSOR_MAX_SCHEDULE_DELAY);
+        this.queue = new ArrayBlockingQueue<>(settings.getMaxQueueSize());
+        this.signal = new ArrayBlockingQueue<>(1);
+        this.spansNeeded = new AtomicInteger(Integer.MAX_VALUE);
+        this.flushRequested = new AtomicReference<>();
+        this.isShutdown = new AtomicBoolean(false);
+        this.batch = new ArrayList<>(settings.getMaxBatchSize());
+        this.continueWork = true;
+        this.pluginTelemetry = pluginTelemetry;
+
+        Meter meter = meterProvider.get(TRACER_INSTRUMENTATION_NAME);
+        this.droppedSpans = meter.counterBuilder(METRIC_PREFIX + ".processor.spans.dropped")
+                .setDescription("Spans dropped because the processor queue was full")
+                .build();
+        this.exportedSpans = meter.counterBuilder(METRIC_PREFIX + ".processor.spans.exported")
+                .setDescription("Spans handed to the exporter")
+                .build();
+        this.adjustments = meter.counterBuilder(METRIC_PREFIX + ".processor.adjustments")
+                .setDescription("Batching decisions taken after each export")
+                .build();
+        this.exportLatency = meter.histogramBuilder(METRIC_PREFIX + ".processor.export.latency")
+                .setDescription("Time taken for the exporter to accept a batch")
+                .setUnit("ms")
+                .build();
+        this.observables = new ArrayList<>();
+        this.observables.add(meter.gaugeBuilder(METRIC_PREFIX + ".processor.batch.size")
+                .setDescription("Current maximum export batch size")
+                .ofLongs()
+                .buildWithCallback(measurement -> measurement.record(tuner.getBatchSize())));
+        this.observables.add(meter.gaugeBuilder(METRIC_PREFIX + ".processor.schedule.delay")
+                .setDescription("Current delay between scheduled exports")
+                .setUnit("ms")
+                .ofLongs()
+                .buildWithCallback(measurement -> measurement.record(tuner.getScheduleDelay().toMillis())));
+        this.observables.add(meter.gaugeBuilder(METRIC_PREFIX + ".processor.queue.size")
+                .setDescription("Spans waiting in the processor queue")
+                .ofLongs()
+                .buildWithCallback(measurement -> measurement.record(queue.size())));
+        this.observables.add(pluginTelemetry.registerQueue(destination, queue::size, settings.getMaxQueueSize()));
+
+        this.workerThread = new Thread(this::run, WORKER_THREAD_NAME);
+        this.workerThread.setDaemon(true);
+        this.workerThread.start();
+    }
+
+    @Override
+    public void onStart(Context parentContext, ReadWriteSpan span) {
+    }
+
+    @Override
+    public boolean isStartRequired() {
+        return false;
+    }
+
+    @Override
+    public void onEnd(ReadableSpan span) {
+        if (span == null || !span.getSpanContext().isSampled())
+            return;
+        if (!queue.offer(span)) {
+            droppedSpans.add(1);
+            pluginTelemetry.recordDroppedSpans("queue_full", 1);
+            return;
+        }
+        if (queue.size() >= spansNeeded.get()) {
+            signal.offer(true);
+        }
+    }
+
+    @Override
+    public boolean isEndRequired() {
+        return true;
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        if (isShutdown.getAndSet(true))
+            return CompletableResultCode.ofSuccess();
+
+        var result = new CompletableResultCode();
+        var flushResult = forceFlush();
+        flushResult.whenComplete(() -> {
+            continueWork = false;
+            signal.offer(true);
+            var exporterShutdownResult = spanExporter.shutdown();
+            exporterShutdownResult.whenComplete(() -> {
+                closeObservables();
+                if (flushResult.isSuccess() && exporterShutdownResult.isSuccess()) {
+                    result.succeed();
+                } else {
+                    result.fail();
+                }
+            });
+        });
+        return result;
+    }
+
+    @Override
+    public CompletableResultCode forceFlush() {
+        var flushResult = new CompletableResultCode();
+        if (flushRequested.compareAndSet(null, flushResult)) {
+            signal.offer(true);
+        }
+        var possibleResult = flushRequested.get();
+        return possibleResult == null ? CompletableResultCode.ofSuccess() : possibleResult;
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public AdaptiveBatchTuner getTuner() {
+        return tuner;
+    }
+
+    private void run() {
+        updateNextExportTime();
+        while (continueWork) {
+            var flushResult = flushRequested.get();
+            if (flushResult != null) {
+                flush();
+                flushRequested.set(null);
+                flushResult.succeed();
+            }
+
+            drainQueueIntoBatch();
+            if (batch.size() >= tuner.getBatchSize() || System.nanoTime() >= nextExportTime) {
+                exportCurrentBatch();
+                updateNextExportTime();
+            }
+
+            if (queue.isEmpty()) {
+                try {
+                    long pollWaitTime = nextExportTime - System.nanoTime();
+                    if (pollWaitTime > 0) {
+                        spansNeeded.set(tuner.getBatchSize() - batch.size());
+                        signal.poll(pollWaitTime, TimeUnit.NANOSECONDS);
+                        spansNeeded.set(Integer.MAX_VALUE);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void drainQueueIntoBatch() {
+        var batchSize = tuner.getBatchSize();
+        while (batch.size() < batchSize) {
+            var span = queue.poll();
+            if (span == null)
+                return;
+            batch.add(span.toSpanData());
+        }
+    }
+
+    private void flush() {
+        int spansToFlush = queue.size();
+        while (spansToFlush > 0) {
+            var span = queue.poll();
+            if (span == null)
+                break;
+            batch.add(span.toSpanData());
+            spansToFlush--;
+            if (batch.size() >= tuner.getBatchSize()) {
+                exportCurrentBatch();
+            }
+        }
+        exportCurrentBatch();
+    }
+
+    private void updateNextExportTime() {
+        nextExportTime = System.nanoTime() + tuner.getScheduleDelayNanos();
+    }
+
+    private void exportCurrentBatch() {
+        if (batch.isEmpty())
+            return;
+
+        var exportedCount = batch.size();
+        var success = false;
+        long startTime = System.nanoTime();
+        try {
+            var result = spanExporter.export(Collections.unmodifiableList(batch));
+            result.join(settings.getExportTimeout().toNanos(), TimeUnit.NANOSECONDS);
+            success = result.isSuccess();
+            if (!success) {
+                LOG.debug(String.format("Exporter failed to export a batch of %d spans.", exportedCount));
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Exporter threw an Exception", e);
+        } finally {
+            batch.clear();
+        }
+        long latency = System.nanoTime() - startTime;
+
+        exportedSpans.add(exportedCount, Attributes.of(SUCCESS_KEY, success));
+        exportLatency.record(latency / 1_000_000.0);
+
+        var previousBatchSize = tuner.getBatchSize();
+        var previousDelay = tuner.getScheduleDelay();
+        var decision = tuner.onExportCompleted(exportedCount, latency, success, queue.size());
+        adjustments.add(1, Attributes.of(DECISION_KEY, decision.getValue()));
+        if (previousBatchSize != tuner.getBatchSize() || !previousDelay.equals(tuner.getScheduleDelay())) {
+            LOG.debug(String.format("Adaptive batching decided to %s: batch size %d -> %d, schedule delay %d ms -> %d ms.",
+                    decision.getValue(), previousBatchSize, tuner.getBatchSize(), previousDelay.toMillis(), tuner.getScheduleDelay().toMillis()));
+        }
+    }
+
+    private void closeObservables() {
+        for (var observable : observables) {
+            try {
+                observable.close();
+            } catch (Exception e) {
+                LOG.debug("Unable to close metric callback", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.octopus.teamcity.opentelemetry.server.processors;
+
+import java.time.Duration;
+
+/**
+ * Decides the batch size and schedule delay for an {@link AdaptiveBatchSpanProcessor}, after every export.
+ * <p>
+ * The rules, in priority order:
+ * <ul>
+ *     <li>the exporter is failing or slow: halve the batch size and double the delay, so we stop piling onto it</li>
+ *     <li>the queue is filling up (e.g. the burst at the end of a build): double the batch size and halve the delay</li>
+ *     <li>the queue is nearly empty and batches are going out half full (e.g. overnight): stretch the delay</li>
+ *     <li>full batches are going out comfortably under the target latency: grow the batch size a little</li>
+ * </ul>
+ * All values stay within the bounds given by {@link AdaptiveBatchSettings}.
+ */
+public class AdaptiveBatchTuner {
+    static final double QUEUE_HIGH_WATERMARK = 0.5;
+    static final double QUEUE_LOW_WATERMARK = 0.05;
+    private static final double SMOOTHING = 0.3;
+
+    public enum Decision {
+        BACK_OFF("back_off"),
+        SPEED_UP("speed_up"),
+        SLOW_DOWN("slow_down"),
+        GROW_BATCH("grow_batch"),
+        HOLD("hold");
+
+        private final String value;
+
+        Decision(String value) {
+            this.value = value;
+        }
+
+        public String getValue() {
+            return value;
+        }
+    }
+
+    private final AdaptiveBatchSettings settings;
+    private volatile int batchSize;
+    private volatile long scheduleDelayNanos;
+    private volatile double latencyAverageNanos;
+    private volatile double errorRate;
+
+    public AdaptiveBatchTuner(AdaptiveBatchSettings settings, int initialBatchSize, Duration initialScheduleDelay) {
+        this.settings = settings;
+        this.batchSize = clampBatchSize(initialBatchSize);
+        this.scheduleDelayNanos = clampScheduleDelay(initialScheduleDelay.toNanos());
+        this.latencyAverageNanos = 0;
+        this.errorRate = 0;
+    }
+
+    // Only ever called from the processor's worker thread; the volatile fields are for readers on other threads.
+    public Decision onExportCompleted(int exportedCount, long latencyNanos, boolean success, int queueDepth) {
+        latencyAverageNanos = latencyAverageNanos == 0
+                ? latencyNanos
+                : (SMOOTHING * latencyNanos) + ((1 - SMOOTHING) * latencyAverageNanos);
+        errorRate = (SMOOTHING * (success ? 0 : 1)) + ((1 - SMOOTHING) * errorRate);
+        var queueFill = (double) queueDepth / settings.getMaxQueueSize();
+        var targetLatencyNanos = settings.getTargetExportLatency().toNanos();
+
+        if (!success || errorRate > settings.getMaxErrorRate() || latencyAverageNanos > targetLatencyNanos) {
+            batchSize = clampBatchSize(batchSize / 2);
+            scheduleDelayNanos = clampScheduleDelay(scheduleDelayNanos * 2);
+            return Decision.BACK_OFF;
+        }
+        if (queueFill >= QUEUE_HIGH_WATERMARK) {
+            batchSize = clampBatchSize(batchSize * 2);
+            scheduleDelayNanos = clampScheduleDelay(scheduleDelayNanos / 2);
+            return Decision.SPEED_UP;
+        }
+        if (queueFill <= QUEUE_LOW_WATERMARK && exportedCount < batchSize / 2) {
+            scheduleDelayNanos = clampScheduleDelay(scheduleDelayNanos + (scheduleDelayNanos / 2));
+            return Decision.SLOW_DOWN;
+        }
+        if (exportedCount >= batchSize && latencyAverageNanos < targetLatencyNanos / 2.0) {
+            batchSize = clampBatchSize(batchSize + settings.getMinBatchSize());
+            return Decision.GROW_BATCH;
+        }
+        return Decision.HOLD;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public Duration getScheduleDelay() {
+        return Duration.ofNanos(scheduleDelayNanos);
+    }
+
+    public long getScheduleDelayNanos() {
+        return scheduleDelayNanos;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    public Duration getAverageExportLatency() {
+        return Duration.ofNanos((long) latencyAverageNanos);
+    }
+
+    private int clampBatchSize(int value) {
+        return Math.max(settings.getMinBatchSize(), Math.min(settings.getMaxBatchSize(), value));
+    }
+
+    private long clampScheduleDelay(long valueNanos) {
+        return Math.max(settings.getMinScheduleDelay().toNanos(), Math.min(settings.getMaxScheduleDelay().toNanos(), valueNanos));
+    }
+}
@@ -0,0 +1,216 @@
+package com.octopus.teamcity.opentelemetry.server.processors;
+
+import com.octopus.teamcity.opentelemetry.server.TeamCityBuildListener;
+import com.octopus.teamcity.opentelemetry.server.telemetry.PluginTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.Nullable;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+
+/**
+ * Rate, errors and duration metrics for builds, build steps, queue waits and tests, aggregated from their spans as
+ * they end, so dashboards and alerts don't need to scan the raw spans.
+ * <p>
+ * One instance is shared by every endpoint's span processor and records to the plugin's own meter (see
+ * {@link PluginTelemetry}), so the metrics cover every build whichever service it's traced to. Each measurement
+ * carries the span's context, so exemplars link back to the trace that produced it. The dimensions are the span kind,
+ * project, build configuration, step type and status; once there are <code>maxSeries</code> combinations, further
+ * project and build configuration combinations are counted under {@link #OVERFLOW}.
+ */
+public class SpanMetricsProcessor implements SpanProcessor {
+    static Logger LOG = Logger.getLogger(SpanMetricsProcessor.class.getName());
+    public static final String KIND_BUILD = "build";
+    public static final String KIND_STEP = "step";
+    public static final String KIND_QUEUE_WAIT = "queue_wait";
+    public static final String KIND_TEST = "test";
+    public static final String OVERFLOW = "_other";
+    private static final String QUEUE_WAIT_SERVICE_NAME = "queueWaitReason";
+    private static final String TEST_SERVICE_NAME = "test-execution";
+
+    private static final AttributeKey<String> SERVICE_NAME_KEY = AttributeKey.stringKey(ATTRIBUTE_SERVICE_NAME);
+    private static final AttributeKey<String> PROJECT_ID_KEY = AttributeKey.stringKey(ATTRIBUTE_PROJECT_ID);
+    private static final AttributeKey<String> BUILD_TYPE_KEY = AttributeKey.stringKey(ATTRIBUTE_BUILD_TYPE_EXTERNAL_ID);
+    private static final AttributeKey<String> SUCCESS_STATUS_KEY = AttributeKey.stringKey(ATTRIBUTE_SUCCESS_STATUS);
+    private static final AttributeKey<String> STEP_STATUS_KEY = AttributeKey.stringKey(ATTRIBUTE_BUILD_STEP_STATUS);
+    private static final AttributeKey<String> TEST_STATUS_KEY = AttributeKey.stringKey(ATTRIBUTE_TEST_STATUS);
+
+    private static final AttributeKey<String> KIND_DIMENSION = AttributeKey.stringKey("kind");
+    private static final AttributeKey<String> PROJECT_DIMENSION = AttributeKey.stringKey("project");
+    private static final AttributeKey<String> BUILD_TYPE_DIMENSION = AttributeKey.stringKey("build_type");
+    private static final AttributeKey<String> STEP_TYPE_DIMENSION = AttributeKey.stringKey("step_type");
+    private static final AttributeKey<String> STATUS_DIMENSION = AttributeKey.stringKey("status");
+
+    private final LongCounter runs;
+    private final LongCounter errors;
+    private final DoubleHistogram duration;
+    private final int maxSeries;
+    // attribute sets by dimension values, one level per dimension, so recording doesn't allocate once a combination
+    // has been seen
+    private final SeriesNode series;
+    private final AtomicInteger seriesCount;
+    private final AtomicBoolean overflowLogged;
+
+    public SpanMetricsProcessor(@NotNull PluginTelemetry pluginTelemetry, int maxSeries) {
+        var meter = pluginTelemetry.getMeter();
+        this.maxSeries = maxSeries;
+        this.series = new SeriesNode();
+        this.seriesCount = new AtomicInteger();
+        this.overflowLogged = new AtomicBoolean();
+        this.runs = meter.counterBuilder(METRIC_PREFIX + ".red.runs")
+                .setDescription("Builds, build steps, queue waits and tests that finished")
+                .build();
+        this.errors = meter.counterBuilder(METRIC_PREFIX + ".red.errors")
+                .setDescription("Builds, build steps and tests that failed")
+                .build();
+        this.duration = meter.histogramBuilder(METRIC_PREFIX + ".red.duration")
+                .setDescription("How long builds, build steps, queue waits and tests took")
+                .setUnit("ms")
+                .build();
+    }
+
+    @Override
+    public void onStart(@NotNull Context parentContext, @NotNull ReadWriteSpan span) {
+    }
+
+    @Override
+    public boolean isStartRequired() {
+        return false;
+    }
+
+    @Override
+    public void onEnd(@NotNull ReadableSpan span) {
+        var serviceName = span.getAttribute(SERVICE_NAME_KEY);
+        if (serviceName == null) return;
+
+        String kind;
+        String stepType = "";
+        String status;
+        boolean error;
+        if (serviceName.equals(TeamCityBuildListener.BUILD_SERVICE_NAME)) {
+            kind = KIND_BUILD;
+            var successStatus = span.getAttribute(SUCCESS_STATUS_KEY);
+            if (successStatus == null) return; // the build hasn't really finished, eg the span was ended on shutdown
+            error = !Boolean.parseBoolean(successStatus);
+            status = error ? "failure" : "success";
+        } else if (serviceName.equals(QUEUE_WAIT_SERVICE_NAME)) {
+            kind = KIND_QUEUE_WAIT;
+            status = "";
+            error = false;
+        } else if (serviceName.equals(TEST_SERVICE_NAME)) {
+            kind = KIND_TEST;
+            status = normalise(span.getAttribute(TEST_STATUS_KEY));
+            error = status.equals("failed");
+        } else {
+            var stepStatus = span.getAttribute(STEP_STATUS_KEY);
+            if (stepStatus == null) return; // not a build step, eg the span grouping a build's tests
+            kind = KIND_STEP;
+            stepType = serviceName;
+            status = normalise(stepStatus);
+            error = status.equals("failure") || status.equals("error");
+        }
+
+        var attributes = getAttributes(kind, span.getAttribute(PROJECT_ID_KEY), span.getAttribute(BUILD_TYPE_KEY), stepType, status);
+        var context = Context.root().with(Span.wrap(span.getSpanContext()));
+        runs.add(1, attributes, context);
+        if (error)
+            errors.add(1, attributes, context);
+        duration.record(span.getLatencyNanos() / 1_000_000.0, attributes, context);
+    }
+
+    private static String normalise(@Nullable String status) {
+        return status == null ? "unknown" : status.toLowerCase(Locale.ROOT);
+    }
+
+    private Attributes getAttributes(String kind, @Nullable String project, @Nullable String buildType, String stepType, String status) {
+        project = project == null ? "" : project;
+        buildType = buildType == null ? "" : buildType;
+        var attributes = findAttributes(kind, project, buildType, stepType, status);
+        if (attributes != null)
+            return attributes;
+
+        if (seriesCount.get() >= maxSeries) {
+            if (overflowLogged.compareAndSet(false, true))
+                LOG.warn(String.format("Build metrics have reached %d series; counting further projects and build configurations as '%s'. Set %s to raise the limit.",
+                        maxSeries, OVERFLOW, PROPERTY_KEY_SPAN_METRICS_MAX_SERIES));
+            project = OVERFLOW;
+            buildType = OVERFLOW;
+            var overflow = findAttributes(kind, project, buildType, stepType, status);
+            if (overflow != null)
+                return overflow;
+        }
+
+        var node = series.getOrAddChild(project).getOrAddChild(buildType).getOrAddChild(kind).getOrAddChild(stepType).getOrAddChild(status);
+        synchronized (node) {
+            if (node.attributes == null) {
+                var builder = Attributes.builder()
+                        .put(KIND_DIMENSION, kind)
+                        .put(PROJECT_DIMENSION, project)
+                        .put(BUILD_TYPE_DIMENSION, buildType);
+                if (!stepType.isEmpty())
+                    builder.put(STEP_TYPE_DIMENSION, stepType);
+                if (!status.isEmpty())
+                    builder.put(STATUS_DIMENSION, status);
+                node.attributes = builder.build();
+                seriesCount.incrementAndGet();
+            }
+            return node.attributes;
+        }
+    }
+
+    @Nullable
+    private Attributes findAttributes(String kind, String project, String buildType, String stepType, String status) {
+        var node = series.getChild(project);
+        if (node != null) node = node.getChild(buildType);
+        if (node != null) node = node.getChild(kind);
+        if (node != null) node = node.getChild(stepType);
+        if (node != null) node = node.getChild(status);
+        return node == null ? null : node.attributes;
+    }
+
+    @Override
+    public boolean isEndRequired() {
+        return true;
+    }
+
+    int getSeriesCount() {
+        return seriesCount.get();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        // shared by every endpoint, and the meter belongs to the plugin telemetry, so there's nothing to release
+        return CompletableResultCode.ofSuccess();
+    }
+
+    private static class SeriesNode {
+        private final ConcurrentHashMap<String, SeriesNode> children = new ConcurrentHashMap<>();
+        @Nullable
+        private volatile Attributes attributes;
+
+        @Nullable
+        SeriesNode getChild(String value) {
+            return children.get(value);
+        }
+
+        SeriesNode getOrAddChild(String value) {
+            var child = children.get(value);
+            return child != null ? child : children.computeIfAbsent(value, key -> new SeriesNode());
+        }
+    }
+}
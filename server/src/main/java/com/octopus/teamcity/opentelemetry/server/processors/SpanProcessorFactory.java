@@ -0,0 +1,164 @@
+package com.octopus.teamcity.opentelemetry.server.processors;
+
+import com.octopus.teamcity.opentelemetry.server.exporters.CircuitBreakingSpanExporter;
+import com.octopus.teamcity.opentelemetry.server.exporters.DestinationBackoff;
+import com.octopus.teamcity.opentelemetry.server.exporters.EndpointCircuitBreaker;
+import com.octopus.teamcity.opentelemetry.server.exporters.InstrumentedSpanExporter;
+import com.octopus.teamcity.opentelemetry.server.exporters.RetryBudget;
+import com.octopus.teamcity.opentelemetry.server.exporters.RetrySettings;
+import com.octopus.teamcity.opentelemetry.server.exporters.RetryingSpanExporter;
+import com.octopus.teamcity.opentelemetry.server.telemetry.PluginTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.MeterProvider;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+
+public class SpanProcessorFactory {
+    static Logger LOG = Logger.getLogger(SpanProcessorFactory.class.getName());
+    private static final AttributeKey<String> DESTINATION_KEY = AttributeKey.stringKey("destination");
+    private final RetryBudget retryBudget;
+    private final ConcurrentHashMap<String, DestinationBackoff> destinationBackoffs;
+    private final ConcurrentHashMap<String, EndpointCircuitBreaker> circuitBreakers;
+    private final ScheduledExecutorService retryScheduler;
+    private final AtomicLong pendingRetrySpans;
+    private final PluginTelemetry pluginTelemetry;
+    private final int maxQueueSize;
+    @Nullable
+    private final SpanMetricsProcessor spanMetricsProcessor;
+
+    public SpanProcessorFactory(PluginTelemetry pluginTelemetry) {
+        this(pluginTelemetry, BATCH_SPAN_PROCESSOR_MAX_QUEUE_SIZE);
+    }
+
+    /**
+     * @param maxQueueSize how many spans each chain's processor queues before dropping them; the benchmarks queue a
+     * whole build's test spans at once
+     */
+    public SpanProcessorFactory(PluginTelemetry pluginTelemetry, int maxQueueSize) {
+        this.pluginTelemetry = pluginTelemetry;
+        this.maxQueueSize = maxQueueSize;
+        this.retryBudget = new RetryBudget(
+                TeamCityProperties.getInteger(PROPERTY_KEY_RETRY_BUDGET_SPANS_PER_SECOND, RETRY_BUDGET_SPANS_PER_SECOND),
+                TeamCityProperties.getInteger(PROPERTY_KEY_RETRY_BUDGET_BURST_SPANS, RETRY_BUDGET_BURST_SPANS));
+        this.destinationBackoffs = new ConcurrentHashMap<>();
+        this.circuitBreakers = new ConcurrentHashMap<>();
+        this.spanMetricsProcessor = TeamCityProperties.getBooleanOrTrue(PROPERTY_KEY_SPAN_METRICS_ENABLED)
+                ? new SpanMetricsProcessor(pluginTelemetry, TeamCityProperties.getInteger(PROPERTY_KEY_SPAN_METRICS_MAX_SERIES, SPAN_METRICS_MAX_SERIES))
+                : null;
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "OTEL-ExportRetryScheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.pendingRetrySpans = new AtomicLong();
+
+        pluginTelemetry.getMeter().gaugeBuilder(METRIC_PREFIX + ".exporter.circuit.state")
+                .setDescription("Each destination's circuit breaker: 0 closed, 1 half open (probing), 2 open (not tracing new builds)")
+                .ofLongs()
+                .buildWithCallback(measurement -> {
+                    for (var circuitBreaker : circuitBreakers.values())
+                        measurement.record(circuitBreaker.getState().ordinal(), Attributes.of(DESTINATION_KEY, circuitBreaker.getDestination()));
+                });
+    }
+
+    public boolean isCircuitBreakerEnabled() {
+        return TeamCityProperties.getBooleanOrTrue(PROPERTY_KEY_CIRCUIT_BREAKER_ENABLED);
+    }
+
+    /**
+     * @return false if a new build chain exporting with the export key shouldn't be traced, as its circuit breaker is
+     * open; only looks at the breaker, so never takes its probe away from the exports
+     */
+    public boolean isAdmittingNewChains(String exportKey) {
+        if (!isCircuitBreakerEnabled())
+            return true;
+        return getCircuitBreaker(exportKey).isAdmittingNewChains();
+    }
+
+    private EndpointCircuitBreaker getCircuitBreaker(String exportKey) {
+        return circuitBreakers.computeIfAbsent(exportKey, key -> new EndpointCircuitBreaker(key,
+                TeamCityProperties.getInteger(PROPERTY_KEY_CIRCUIT_BREAKER_FAILURE_THRESHOLD, CIRCUIT_BREAKER_FAILURE_THRESHOLD),
+                Duration.ofSeconds(TeamCityProperties.getInteger(PROPERTY_KEY_CIRCUIT_BREAKER_OPEN_SECONDS, (int) CIRCUIT_BREAKER_OPEN_DURATION.toSeconds()))));
+    }
+
+    /**
+     * @param destination what the exports are reported under, for diagnostics
+     * @param exportKey what the circuit breaker and retry backoff are shared under; see {@link com.octopus.teamcity.opentelemetry.server.endpoints.ExportKeys}
+     */
+    public SpanProcessor create(SpanExporter spanExporter, String destination, String exportKey, @Nullable MeterProvider meterProvider) {
+        var processor = createBatchProcessor(spanExporter, destination, exportKey, meterProvider);
+        if (spanMetricsProcessor == null)
+            return processor;
+        return SpanProcessor.composite(spanMetricsProcessor, processor);
+    }
+
+    private SpanProcessor createBatchProcessor(SpanExporter spanExporter, String destination, String exportKey, @Nullable MeterProvider meterProvider) {
+        var providedMeterProvider = meterProvider == null ? MeterProvider.noop() : meterProvider;
+        SpanExporter exporter = new InstrumentedSpanExporter(wrapWithRetries(spanExporter, exportKey, providedMeterProvider), destination, pluginTelemetry);
+        if (isCircuitBreakerEnabled())
+            exporter = new CircuitBreakingSpanExporter(exporter, getCircuitBreaker(exportKey), pluginTelemetry);
+
+        // opt-in until it has seen production use; otherwise the SDK's batch processor, with the fixed settings
+        if (TeamCityProperties.getBoolean(PROPERTY_KEY_ADAPTIVE_BATCHING_ENABLED)) {
+            var settings = AdaptiveBatchSettings.fromServerProperties(maxQueueSize);
+            LOG.debug(String.format("Creating AdaptiveBatchSpanProcessor with batch size between %d and %d and schedule delay between %d ms and %d ms.",
+                    settings.getMinBatchSize(), settings.getMaxBatchSize(), settings.getMinScheduleDelay().toMillis(), settings.getMaxScheduleDelay().toMillis()));
+            return new AdaptiveBatchSpanProcessor(exporter, destination, settings, providedMeterProvider, pluginTelemetry);
+        }
+
+        var batchSpanProcessorBuilder = BatchSpanProcessor.builder(exporter);
+        batchSpanProcessorBuilder.setMaxQueueSize(maxQueueSize);
+        batchSpanProcessorBuilder.setScheduleDelay(BATCH_SPAN_PROCESSOR_MAX_SCHEDULE_DELAY);
+        batchSpanProcessorBuilder.setMaxExportBatchSize(BATCH_SPAN_PROCESSOR_MAX_EXPORT_BATCH_SIZE);
+        if (meterProvider != null) {
+            batchSpanProcessorBuilder.setMeterProvider(meterProvider);
+        }
+        return batchSpanProcessorBuilder.build();
+    }
+
+    public boolean isRetryEnabled() {
+        return TeamCityProperties.getBooleanOrTrue(PROPERTY_KEY_RETRY_ENABLED);
+    }
+
+    private SpanExporter wrapWithRetries(SpanExporter spanExporter, String exportKey, MeterProvider meterProvider) {
+        if (!isRetryEnabled())
+            return spanExporter;
+
+        var settings = RetrySettings.fromServerProperties();
+        var backoff = destinationBackoffs.computeIfAbsent(exportKey, key -> new DestinationBackoff(key, settings));
+        return new RetryingSpanExporter(spanExporter, backoff, retryBudget, settings, retryScheduler, pendingRetrySpans, meterProvider);
+    }
+
+    /**
+     * Stops scheduling retries, lets the ones already scheduled run for up to the timeout, then drops the rest. Call
+     * once the chains have been flushed, as a retry that fails again is given up on from here on.
+     *
+     * @return the number of spans whose retries were dropped
+     */
+    public long shutdownRetries(Duration timeout) {
+        retryScheduler.shutdown();
+        try {
+            if (!retryScheduler.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS))
+                LOG.debug(String.format("Retries still scheduled after %d ms; dropping them.", timeout.toMillis()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        var droppedSpans = pendingRetrySpans.getAndSet(0);
+        retryScheduler.shutdownNow();
+        return droppedSpans;
+    }
+}
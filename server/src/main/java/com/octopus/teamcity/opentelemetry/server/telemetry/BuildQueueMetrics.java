@@ -0,0 +1,163 @@
+package com.octopus.teamcity.opentelemetry.server.telemetry;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import jetbrains.buildServer.serverSide.BuildAgentManager;
+import jetbrains.buildServer.serverSide.BuildQueue;
+import jetbrains.buildServer.serverSide.SBuildAgent;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import jetbrains.buildServer.serverSide.agentPools.AgentPoolManager;
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+
+/**
+ * Gauges of the build queue and agent pools, sampled in the background every
+ * {@link com.octopus.teamcity.opentelemetry.common.PluginConstants#PROPERTY_KEY_QUEUE_METRICS_INTERVAL_SECONDS} seconds
+ * and published with the plugin's own metrics.
+ * <p>
+ * Sampling copies the queue and agent lists once and summarises the copies, so no TeamCity lock is held for longer than
+ * the copy takes; the gauge callbacks only read the last summary. Only the cheap accessors of each queued build are
+ * used: its build estimates (and so its wait reason) would run TeamCity's estimator for every queued build on every
+ * sample, so why builds waited is left to the queue wait metrics recorded as they start. Projects beyond the busiest
+ * {@link com.octopus.teamcity.opentelemetry.common.PluginConstants#QUEUE_METRICS_MAX_SERIES} are added up under
+ * {@link #OVERFLOW}, so a huge queue can't produce unbounded series.
+ */
+public class BuildQueueMetrics {
+    static Logger LOG = Logger.getLogger(BuildQueueMetrics.class.getName());
+    public static final String OVERFLOW = "_other";
+    public static final String AGENT_STATE_BUSY = "busy";
+    public static final String AGENT_STATE_IDLE = "idle";
+    public static final String AGENT_STATE_DISABLED = "disabled";
+    private static final AttributeKey<String> PROJECT_KEY = AttributeKey.stringKey("project");
+    private static final AttributeKey<String> POOL_KEY = AttributeKey.stringKey("pool");
+    private static final AttributeKey<String> STATE_KEY = AttributeKey.stringKey("state");
+
+    private final BuildQueue buildQueue;
+    private final BuildAgentManager buildAgentManager;
+    private final AgentPoolManager agentPoolManager;
+    private final int maxSeries;
+    private volatile Sample sample = new Sample(Map.of(), 0, Map.of());
+    private ScheduledExecutorService sampler;
+
+    @Autowired
+    public BuildQueueMetrics(
+            @NotNull BuildQueue buildQueue,
+            @NotNull BuildAgentManager buildAgentManager,
+            @NotNull AgentPoolManager agentPoolManager,
+            @NotNull PluginTelemetry pluginTelemetry) {
+        this(buildQueue, buildAgentManager, agentPoolManager, pluginTelemetry, TeamCityProperties.getInteger(PROPERTY_KEY_QUEUE_METRICS_MAX_SERIES, QUEUE_METRICS_MAX_SERIES));
+
+        if (TeamCityProperties.getBooleanOrTrue(PROPERTY_KEY_QUEUE_METRICS_ENABLED)) {
+            this.sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "OTEL-BuildQueueSampler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            var interval = TeamCityProperties.getInteger(PROPERTY_KEY_QUEUE_METRICS_INTERVAL_SECONDS, (int) QUEUE_METRICS_INTERVAL.toSeconds());
+            sampler.scheduleWithFixedDelay(this::sampleSafely, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    BuildQueueMetrics(BuildQueue buildQueue, BuildAgentManager buildAgentManager, AgentPoolManager agentPoolManager, PluginTelemetry pluginTelemetry, int maxSeries) {
+        this.buildQueue = buildQueue;
+        this.buildAgentManager = buildAgentManager;
+        this.agentPoolManager = agentPoolManager;
+        this.maxSeries = maxSeries;
+
+        var meter = pluginTelemetry.getMeter();
+        meter.gaugeBuilder(METRIC_PREFIX + ".queue.length")
+                .setDescription("Builds waiting in the queue, per project")
+                .ofLongs()
+                .buildWithCallback(measurement -> sample.queueLengths.forEach((attributes, count) -> measurement.record(count, attributes)));
+        meter.gaugeBuilder(METRIC_PREFIX + ".queue.wait.longest")
+                .setDescription("How long the build that has been in the queue longest has been waiting")
+                .setUnit("ms")
+                .ofLongs()
+                .buildWithCallback(measurement -> measurement.record(sample.longestWaitMillis));
+        meter.gaugeBuilder(METRIC_PREFIX + ".agents")
+                .setDescription("Registered, authorized agents, per pool and whether they're running a build")
+                .ofLongs()
+                .buildWithCallback(measurement -> sample.agents.forEach((attributes, count) -> measurement.record(count, attributes)));
+    }
+
+    private void sampleSafely() {
+        try {
+            sample();
+        } catch (RuntimeException e) {
+            LOG.warn(String.format("Failed to sample the build queue: %s", e.getMessage()), e);
+        }
+    }
+
+    void sample() {
+        var now = System.currentTimeMillis();
+        var queuedBuilds = buildQueue.getItems();
+
+        var queueLengths = new HashMap<String, Long>();
+        long longestWait = 0;
+        for (var queuedBuild : queuedBuilds) {
+            longestWait = Math.max(longestWait, now - queuedBuild.getWhenQueued().getTime());
+            var buildType = queuedBuild.getBuildType();
+            queueLengths.merge(buildType.getProjectExternalId(), 1L, Long::sum);
+        }
+
+        var agents = new HashMap<Attributes, Long>();
+        var poolNames = new HashMap<Integer, String>();
+        for (SBuildAgent agent : buildAgentManager.getRegisteredAgents()) {
+            var poolName = poolNames.computeIfAbsent(agent.getAgentPoolId(), this::getPoolName);
+            var state = !agent.isEnabled() ? AGENT_STATE_DISABLED : agent.getRunningBuild() != null ? AGENT_STATE_BUSY : AGENT_STATE_IDLE;
+            agents.merge(Attributes.of(POOL_KEY, poolName, STATE_KEY, state), 1L, Long::sum);
+        }
+
+        this.sample = new Sample(limit(queueLengths, PROJECT_KEY), longestWait, agents);
+    }
+
+    private String getPoolName(int poolId) {
+        var pool = agentPoolManager.findAgentPoolById(poolId);
+        return pool == null ? String.valueOf(poolId) : pool.getName();
+    }
+
+    /**
+     * Keeps the largest <code>maxSeries</code> counts, and adds up the rest as {@link #OVERFLOW}.
+     */
+    private Map<Attributes, Long> limit(Map<String, Long> counts, AttributeKey<String> key) {
+        var limited = new HashMap<Attributes, Long>();
+        long overflow = 0;
+        var sorted = counts.entrySet().stream().sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder())).toList();
+        for (var entry : sorted) {
+            if (limited.size() < maxSeries)
+                limited.put(Attributes.of(key, entry.getKey()), entry.getValue());
+            else
+                overflow += entry.getValue();
+        }
+        if (overflow > 0)
+            limited.put(Attributes.of(key, OVERFLOW), overflow);
+        return limited;
+    }
+
+    public void shutdown() {
+        if (sampler != null)
+            sampler.shutdownNow();
+    }
+
+    private static class Sample {
+        private final Map<Attributes, Long> queueLengths;
+        private final long longestWaitMillis;
+        private final Map<Attributes, Long> agents;
+
+        Sample(Map<Attributes, Long> queueLengths, long longestWaitMillis, Map<Attributes, Long> agents) {
+            this.queueLengths = queueLengths;
+            this.longestWaitMillis = longestWaitMillis;
+            this.agents = agents;
+        }
+    }
+}
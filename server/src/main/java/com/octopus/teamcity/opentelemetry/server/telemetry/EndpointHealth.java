@@ -0,0 +1,187 @@
+package com.octopus.teamcity.opentelemetry.server.telemetry;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Export health for one destination (endpoint), updated by the exporter threads and read by the admin page.
+ * <p>
+ * Everything is held in adders, atomics and volatiles, so taking a {@link Snapshot} never blocks an exporter (or the
+ * other way round); a snapshot may be very slightly inconsistent between its fields.
+ */
+public class EndpointHealth {
+    // upper bounds (ms) of the latency buckets shown on the admin page; anything slower goes in a final bucket
+    static final long[] LATENCY_BUCKET_BOUNDS_MS = {10, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+    static final int RECENT_EXPORTS = 256;
+
+    private final String destination;
+    private final LongAdder exportedBatches = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final LongAdder exportedSpans = new LongAdder();
+    private final LongAdder failedSpans = new LongAdder();
+    private final AtomicLongArray recentLatenciesNanos = new AtomicLongArray(RECENT_EXPORTS);
+    private final AtomicLong exportCount = new AtomicLong();
+    private final Set<Queue> queues = ConcurrentHashMap.newKeySet();
+    private volatile String lastError;
+    private volatile long lastErrorTime;
+
+    EndpointHealth(String destination) {
+        this.destination = destination;
+    }
+
+    void recordExport(int spans, long latencyNanos, boolean success) {
+        if (success) {
+            exportedBatches.increment();
+            exportedSpans.add(spans);
+        } else {
+            failedBatches.increment();
+            failedSpans.add(spans);
+        }
+        var index = exportCount.getAndIncrement();
+        recentLatenciesNanos.set((int) (index % RECENT_EXPORTS), latencyNanos);
+    }
+
+    void recordError(String error) {
+        this.lastError = error;
+        this.lastErrorTime = System.currentTimeMillis();
+    }
+
+    AutoCloseable registerQueue(IntSupplier size, int capacity) {
+        var queue = new Queue(size, capacity);
+        queues.add(queue);
+        return () -> queues.remove(queue);
+    }
+
+    long getQueuedSpanCount() {
+        long total = 0;
+        for (var queue : queues)
+            total += queue.size.getAsInt();
+        return total;
+    }
+
+    public Snapshot snapshot() {
+        long queued = 0;
+        long capacity = 0;
+        for (var queue : queues) {
+            queued += queue.size.getAsInt();
+            capacity += queue.capacity;
+        }
+
+        var recent = (int) Math.min(exportCount.get(), RECENT_EXPORTS);
+        var buckets = new long[LATENCY_BUCKET_BOUNDS_MS.length + 1];
+        for (int i = 0; i < recent; i++) {
+            var latencyMs = recentLatenciesNanos.get(i) / 1_000_000;
+            var bucket = 0;
+            while (bucket < LATENCY_BUCKET_BOUNDS_MS.length && latencyMs > LATENCY_BUCKET_BOUNDS_MS[bucket])
+                bucket++;
+            buckets[bucket]++;
+        }
+
+        return new Snapshot(destination, exportedBatches.sum(), failedBatches.sum(), exportedSpans.sum(), failedSpans.sum(),
+                queued, capacity, recent, buckets, lastError, lastErrorTime);
+    }
+
+    private static class Queue {
+        private final IntSupplier size;
+        private final int capacity;
+
+        Queue(IntSupplier size, int capacity) {
+            this.size = size;
+            this.capacity = capacity;
+        }
+    }
+
+    public static class Snapshot {
+        private final String destination;
+        private final long exportedBatches;
+        private final long failedBatches;
+        private final long exportedSpans;
+        private final long failedSpans;
+        private final long queuedSpans;
+        private final long queueCapacity;
+        private final int recentExports;
+        private final long[] recentLatencyBuckets;
+        private final String lastError;
+        private final long lastErrorTime;
+
+        Snapshot(String destination, long exportedBatches, long failedBatches, long exportedSpans, long failedSpans,
+                 long queuedSpans, long queueCapacity, int recentExports, long[] recentLatencyBuckets, String lastError, long lastErrorTime) {
+            this.destination = destination;
+            this.exportedBatches = exportedBatches;
+            this.failedBatches = failedBatches;
+            this.exportedSpans = exportedSpans;
+            this.failedSpans = failedSpans;
+            this.queuedSpans = queuedSpans;
+            this.queueCapacity = queueCapacity;
+            this.recentExports = recentExports;
+            this.recentLatencyBuckets = recentLatencyBuckets;
+            this.lastError = lastError;
+            this.lastErrorTime = lastErrorTime;
+        }
+
+        public String getDestination() {
+            return destination;
+        }
+
+        public long getExportedBatches() {
+            return exportedBatches;
+        }
+
+        public long getFailedBatches() {
+            return failedBatches;
+        }
+
+        public long getExportedSpans() {
+            return exportedSpans;
+        }
+
+        public long getFailedSpans() {
+            return failedSpans;
+        }
+
+        public long getQueuedSpans() {
+            return queuedSpans;
+        }
+
+        public long getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public int getQueueFillPercent() {
+            return queueCapacity == 0 ? 0 : (int) (100 * queuedSpans / queueCapacity);
+        }
+
+        public int getRecentExports() {
+            return recentExports;
+        }
+
+        /**
+         * @return how many of the recent exports fell in each latency bucket, as "&lt;= 10 ms" style labels
+         */
+        public Map<String, Long> getRecentLatencyHistogram() {
+            var histogram = new LinkedHashMap<String, Long>();
+            for (int i = 0; i < recentLatencyBuckets.length; i++) {
+                var label = i < LATENCY_BUCKET_BOUNDS_MS.length
+                        ? "<= " + LATENCY_BUCKET_BOUNDS_MS[i] + " ms"
+                        : "> " + LATENCY_BUCKET_BOUNDS_MS[LATENCY_BUCKET_BOUNDS_MS.length - 1] + " ms";
+                histogram.put(label, recentLatencyBuckets[i]);
+            }
+            return histogram;
+        }
+
+        public String getLastError() {
+            return lastError;
+        }
+
+        public Date getLastErrorTime() {
+            return lastErrorTime == 0 ? null : new Date(lastErrorTime);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.octopus.teamcity.opentelemetry.server.telemetry;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.sdk.metrics.data.DoublePointData;
+import io.opentelemetry.sdk.metrics.data.HistogramPointData;
+import io.opentelemetry.sdk.metrics.data.LongPointData;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.data.PointData;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * One point of one metric, flattened into display strings for the admin page.
+ */
+public class MetricSummary {
+    private final String name;
+    private final String description;
+    private final String attributes;
+    private final String value;
+
+    MetricSummary(String name, String description, String attributes, String value) {
+        this.name = name;
+        this.description = description;
+        this.attributes = attributes;
+        this.value = value;
+    }
+
+    static List<MetricSummary> summarise(Collection<MetricData> metrics) {
+        var summaries = new ArrayList<MetricSummary>();
+        for (var metric : metrics) {
+            var unit = metric.getUnit() == null || metric.getUnit().isEmpty() ? "" : " " + metric.getUnit();
+            for (var point : metric.getData().getPoints()) {
+                summaries.add(new MetricSummary(metric.getName(), metric.getDescription(), format(point.getAttributes()), format(point, unit)));
+            }
+        }
+        summaries.sort(Comparator.comparing(MetricSummary::getName).thenComparing(MetricSummary::getAttributes));
+        return summaries;
+    }
+
+    private static String format(PointData point, String unit) {
+        if (point instanceof LongPointData)
+            return ((LongPointData) point).getValue() + unit;
+        if (point instanceof DoublePointData)
+            return String.format("%.2f%s", ((DoublePointData) point).getValue(), unit);
+        if (point instanceof HistogramPointData) {
+            var histogram = (HistogramPointData) point;
+            if (histogram.getCount() == 0)
+                return "no measurements";
+            return String.format("count %d, mean %.2f%s, max %.2f%s",
+                    histogram.getCount(), histogram.getSum() / histogram.getCount(), unit, histogram.getMax(), unit);
+        }
+        return point.toString();
+    }
+
+    private static String format(Attributes attributes) {
+        return attributes.asMap().entrySet().stream()
+                .map(entry -> entry.getKey().getKey() + "=" + entry.getValue())
+                .sorted()
+                .collect(Collectors.joining(", "));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getAttributes() {
+        return attributes;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
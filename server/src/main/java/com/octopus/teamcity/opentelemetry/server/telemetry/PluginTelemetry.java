@@ -0,0 +1,232 @@
+package com.octopus.teamcity.opentelemetry.server.telemetry;
+
+import com.octopus.teamcity.opentelemetry.common.PluginConstants;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.metrics.MeterProvider;
+import io.opentelemetry.exporter.otlp.metrics.OtlpGrpcMetricExporter;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import io.opentelemetry.sdk.metrics.export.PeriodicMetricReader;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.semconv.ServiceAttributes;
+import jetbrains.buildServer.serverSide.TeamCityNodes;
+import jetbrains.buildServer.serverSide.TeamCityProperties;
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.stream.Collectors;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+
+/**
+ * The plugin's own metrics: what tracing builds costs the server, rather than anything about the builds themselves.
+ * <p>
+ * These go to a meter provider of their own that lives as long as the server, unlike the per-build meter providers
+ * the endpoints create. They can always be seen on the admin diagnostics page, and are also exported over OTLP/gRPC
+ * when {@link PluginConstants#PROPERTY_KEY_SELF_TELEMETRY_ENDPOINT} is set (eg to the collector the build traces go to).
+ */
+public class PluginTelemetry {
+    static Logger LOG = Logger.getLogger(PluginTelemetry.class.getName());
+    private static final AttributeKey<String> EVENT_KEY = AttributeKey.stringKey("event");
+    private static final AttributeKey<String> PHASE_KEY = AttributeKey.stringKey("phase");
+    private static final AttributeKey<String> SPAN_CLASS_KEY = AttributeKey.stringKey("span_class");
+    private static final AttributeKey<String> REASON_KEY = AttributeKey.stringKey("reason");
+    private static final AttributeKey<String> DESTINATION_KEY = AttributeKey.stringKey("destination");
+    private static final AttributeKey<Boolean> SUCCESS_KEY = AttributeKey.booleanKey("success");
+
+    public static final String EVENT_BUILD_STARTED = "build_started";
+    public static final String EVENT_BUILD_FINISHED = "build_finished";
+    public static final String PHASE_QUEUED_EVENTS = "queued_events";
+    public static final String PHASE_BUILD_STEPS = "build_steps";
+    public static final String PHASE_TESTS = "tests";
+    public static final String PHASE_UTILISATION = "utilisation";
+    public static final String PHASE_ARTIFACTS = "artifacts";
+    public static final String SPAN_CLASS_BUILD = "build";
+    public static final String SPAN_CLASS_QUEUED_EVENT = "queued_event";
+    public static final String SPAN_CLASS_BUILD_STEP = "build_step";
+    public static final String SPAN_CLASS_TESTS = "tests";
+    public static final String SPAN_CLASS_TEST = "test";
+
+    private final SdkMeterProvider meterProvider;
+    private final DiagnosticsMetricReader diagnosticsReader;
+    private final Meter meter;
+    private final DoubleHistogram listenerDuration;
+    private final DoubleHistogram phaseDuration;
+    private final LongCounter spansCreated;
+    private final LongCounter droppedSpans;
+    private final DoubleHistogram exportDuration;
+    private final ConcurrentHashMap<String, EndpointHealth> endpoints;
+    private final long startTime;
+    private final AtomicLong firstExportTime;
+    // attribute sets for the handful of fixed values, so recording doesn't allocate on the hot path
+    private final ConcurrentHashMap<String, Attributes> eventAttributes;
+    private final ConcurrentHashMap<String, Attributes> phaseAttributes;
+    private final ConcurrentHashMap<String, Attributes> spanClassAttributes;
+
+    public PluginTelemetry(@NotNull TeamCityNodes nodesService) {
+        this(buildMetricExporter(), nodesService.getCurrentNode().getId());
+    }
+
+    public PluginTelemetry(@Nullable MetricExporter metricExporter, String nodeId) {
+        var resource = Resource.getDefault().merge(Resource.create(Attributes.of(
+                ServiceAttributes.SERVICE_NAME, PluginConstants.SERVICE_NAME,
+                AttributeKey.stringKey("teamcity.node.id"), nodeId)));
+        this.diagnosticsReader = new DiagnosticsMetricReader();
+        var builder = SdkMeterProvider.builder()
+                .setResource(resource)
+                .registerMetricReader(diagnosticsReader);
+        if (metricExporter != null) {
+            var interval = Duration.ofSeconds(TeamCityProperties.getInteger(PROPERTY_KEY_SELF_TELEMETRY_EXPORT_INTERVAL_SECONDS, (int) SELF_TELEMETRY_EXPORT_INTERVAL.toSeconds()));
+            builder.registerMetricReader(PeriodicMetricReader.builder(metricExporter).setInterval(interval).build());
+        }
+        this.meterProvider = builder.build();
+        this.meter = meterProvider.get(TRACER_INSTRUMENTATION_NAME);
+        this.eventAttributes = new ConcurrentHashMap<>();
+        this.phaseAttributes = new ConcurrentHashMap<>();
+        this.spanClassAttributes = new ConcurrentHashMap<>();
+        this.endpoints = new ConcurrentHashMap<>();
+        this.startTime = System.nanoTime();
+        this.firstExportTime = new AtomicLong();
+
+        this.listenerDuration = meter.histogramBuilder(METRIC_PREFIX + ".plugin.listener.duration")
+                .setDescription("Time spent in the build listener for each build event")
+                .setUnit("ms")
+                .build();
+        this.phaseDuration = meter.histogramBuilder(METRIC_PREFIX + ".plugin.listener.phase.duration")
+                .setDescription("Time spent creating each kind of span when a build finishes")
+                .setUnit("ms")
+                .build();
+        this.spansCreated = meter.counterBuilder(METRIC_PREFIX + ".plugin.spans.created")
+                .setDescription("Spans created by the build listener")
+                .build();
+        this.droppedSpans = meter.counterBuilder(METRIC_PREFIX + ".plugin.spans.dropped")
+                .setDescription("Spans that were never accepted by their endpoint")
+                .build();
+        this.exportDuration = meter.histogramBuilder(METRIC_PREFIX + ".plugin.export.duration")
+                .setDescription("Time from handing a batch to the exporter until it was accepted or given up on, including retries")
+                .setUnit("ms")
+                .build();
+        meter.gaugeBuilder(METRIC_PREFIX + ".plugin.exporter.queue.size")
+                .setDescription("Spans waiting to be exported, across every endpoint")
+                .ofLongs()
+                .buildWithCallback(measurement -> measurement.record(getQueuedSpanCount()));
+        meter.gaugeBuilder(METRIC_PREFIX + ".plugin.startup.time_to_first_export")
+                .setDescription("Time from the plugin starting until the first batch of spans was accepted by an endpoint")
+                .setUnit("ms")
+                .ofLongs()
+                .buildWithCallback(measurement -> {
+                    var firstExport = firstExportTime.get();
+                    if (firstExport != 0)
+                        measurement.record((firstExport - startTime) / 1_000_000);
+                });
+    }
+
+    @Nullable
+    private static MetricExporter buildMetricExporter() {
+        var endpoint = TeamCityProperties.getPropertyOrNull(PROPERTY_KEY_SELF_TELEMETRY_ENDPOINT);
+        if (endpoint == null || endpoint.isBlank())
+            return null;
+
+        LOG.info(String.format("Exporting plugin metrics to %s.", endpoint));
+        var builder = OtlpGrpcMetricExporter.builder().setEndpoint(endpoint);
+        var headers = TeamCityProperties.getProperty(PROPERTY_KEY_SELF_TELEMETRY_HEADERS, "");
+        for (var header : headers.split(",")) {
+            var separator = header.indexOf('=');
+            if (separator > 0)
+                builder.addHeader(header.substring(0, separator).trim(), header.substring(separator + 1).trim());
+        }
+        return builder.build();
+    }
+
+    /**
+     * For other parts of the plugin that publish server-wide metrics of their own.
+     */
+    public Meter getMeter() {
+        return meter;
+    }
+
+    public MeterProvider getMeterProvider() {
+        return meterProvider;
+    }
+
+    public void recordListenerDuration(String event, long nanos) {
+        listenerDuration.record(nanos / 1_000_000.0, eventAttributes.computeIfAbsent(event, key -> Attributes.of(EVENT_KEY, key)));
+    }
+
+    public void recordPhaseDuration(String phase, long nanos) {
+        phaseDuration.record(nanos / 1_000_000.0, phaseAttributes.computeIfAbsent(phase, key -> Attributes.of(PHASE_KEY, key)));
+    }
+
+    public void recordSpansCreated(String spanClass, long count) {
+        if (count > 0)
+            spansCreated.add(count, spanClassAttributes.computeIfAbsent(spanClass, key -> Attributes.of(SPAN_CLASS_KEY, key)));
+    }
+
+    public void recordDroppedSpans(String reason, long count) {
+        if (count > 0)
+            droppedSpans.add(count, Attributes.of(REASON_KEY, reason));
+    }
+
+    public void recordExport(String destination, int spans, long nanos, boolean success) {
+        exportDuration.record(nanos / 1_000_000.0, Attributes.of(DESTINATION_KEY, destination, SUCCESS_KEY, success));
+        if (success && firstExportTime.get() == 0)
+            firstExportTime.compareAndSet(0, System.nanoTime());
+        getEndpoint(destination).recordExport(spans, nanos, success);
+    }
+
+    public void recordExportError(String destination, String error) {
+        getEndpoint(destination).recordError(error);
+    }
+
+    /**
+     * Includes a processor's queue in the exporter queue size for its destination, until the returned handle is closed.
+     */
+    public AutoCloseable registerQueue(String destination, IntSupplier queueSize, int capacity) {
+        return getEndpoint(destination).registerQueue(queueSize, capacity);
+    }
+
+    public long getQueuedSpanCount() {
+        long total = 0;
+        for (var endpoint : endpoints.values())
+            total += endpoint.getQueuedSpanCount();
+        return total;
+    }
+
+    /**
+     * @return the export health of every destination exported to since the server started
+     */
+    public List<EndpointHealth.Snapshot> getEndpointSnapshots() {
+        return endpoints.values().stream()
+                .map(EndpointHealth::snapshot)
+                .sorted(Comparator.comparing(EndpointHealth.Snapshot::getDestination))
+                .collect(Collectors.toList());
+    }
+
+    private EndpointHealth getEndpoint(String destination) {
+        return endpoints.computeIfAbsent(destination, EndpointHealth::new);
+    }
+
+    /**
+     * @return the current value of every metric, for display
+     */
+    public List<MetricSummary> summarise() {
+        return MetricSummary.summarise(diagnosticsReader.collect());
+    }
+
+    public void shutdown() {
+        LOG.debug("Shutting down plugin telemetry.");
+        meterProvider.shutdown().join(10, TimeUnit.SECONDS);
+    }
+}
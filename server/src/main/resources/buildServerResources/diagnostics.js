@@ -0,0 +1,20 @@
+'use strict';
+
+BS.OpenTelemetryDiagnostics = {
+    forceFlush: function (url, rootBuildId) {
+        BS.ajaxRequest(url, {
+            parameters: { rootBuildId: rootBuildId },
+            onComplete: function (transport) {
+                var errors = BS.XMLResponse.processErrors(transport.responseXML, {
+                    rootBuildId: function (elem) {
+                        alert(elem.firstChild.nodeValue);
+                    }
+                });
+                if (!errors) {
+                    BS.reload(true);
+                }
+            }
+        });
+        return false;
+    }
+};
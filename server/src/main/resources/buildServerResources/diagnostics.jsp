@@ -0,0 +1,109 @@
+<%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core" %>
+<%@ taglib prefix="fmt" uri="http://java.sun.com/jsp/jstl/fmt" %>
+<%@ taglib prefix="fn" uri="http://java.sun.com/jsp/jstl/functions" %>
+<%@ include file="/include.jsp" %>
+
+<c:set var="forceFlushUrl"><c:url value="/admin/teamcity-opentelemetry/forceFlush.html"/></c:set>
+
+<div>
+    <h2>OpenTelemetry Diagnostics</h2>
+    <div class="grayNote">
+        Where build traces are going, and what tracing builds is costing this server. Totals are since the server started.
+    </div>
+
+    <bs:messages key="helperFlushed"/>
+
+    <h3>Endpoints</h3>
+    <c:if test="${empty destinations}">
+        <p>No builds have been traced since the server started.</p>
+    </c:if>
+    <c:forEach items="${destinations}" var="destination">
+        <h4><c:out value="${destination.destination}"/></h4>
+        <table class="settings">
+            <tr>
+                <th>Active chains</th>
+                <td>${fn:length(destination.helpers)} (${destination.openSpans} open build spans)</td>
+            </tr>
+            <c:set var="health" value="${destination.health}"/>
+            <c:choose>
+                <c:when test="${empty health}">
+                    <tr><td colspan="2">Nothing exported yet.</td></tr>
+                </c:when>
+                <c:otherwise>
+                    <tr>
+                        <th>Queue</th>
+                        <td>${health.queuedSpans} of ${health.queueCapacity} spans (${health.queueFillPercent}% full)</td>
+                    </tr>
+                    <tr>
+                        <th>Exported</th>
+                        <td>${health.exportedSpans} spans in ${health.exportedBatches} batches</td>
+                    </tr>
+                    <tr>
+                        <th>Failed</th>
+                        <td>${health.failedSpans} spans in ${health.failedBatches} batches</td>
+                    </tr>
+                    <tr>
+                        <th>Last error</th>
+                        <td>
+                            <c:choose>
+                                <c:when test="${empty health.lastError}">None</c:when>
+                                <c:otherwise><fmt:formatDate value="${health.lastErrorTime}" type="both"/>: <c:out value="${health.lastError}"/></c:otherwise>
+                            </c:choose>
+                        </td>
+                    </tr>
+                    <tr>
+                        <th>Latency of the last ${health.recentExports} exports</th>
+                        <td>
+                            <c:forEach items="${health.recentLatencyHistogram}" var="bucket">
+                                <c:out value="${bucket.key}"/>: ${bucket.value}<br/>
+                            </c:forEach>
+                        </td>
+                    </tr>
+                </c:otherwise>
+            </c:choose>
+        </table>
+        <c:if test="${not empty destination.helpers}">
+            <table class="settings">
+                <tr>
+                    <th>Root build</th>
+                    <th>Service</th>
+                    <th>Traced since</th>
+                    <th>Open build spans</th>
+                    <th></th>
+                </tr>
+                <c:forEach items="${destination.helpers}" var="helper">
+                    <tr>
+                        <td><a href="<c:url value='/viewLog.html?buildId=${helper.rootBuildId}'/>">${helper.rootBuildId}</a></td>
+                        <td><c:out value="${helper.service}"/></td>
+                        <td><fmt:formatDate value="${helper.createdAt}" type="both"/></td>
+                        <td>${helper.openSpans}</td>
+                        <td><a class="btn" href="#" onclick="return BS.OpenTelemetryDiagnostics.forceFlush('${forceFlushUrl}', ${helper.rootBuildId});">Force flush</a></td>
+                    </tr>
+                </c:forEach>
+            </table>
+        </c:if>
+    </c:forEach>
+
+    <h3>Plugin metrics</h3>
+    <c:choose>
+        <c:when test="${empty pluginMetrics}">
+            <p>Nothing has been recorded yet.</p>
+        </c:when>
+        <c:otherwise>
+            <table class="settings">
+                <tr>
+                    <th>Metric</th>
+                    <th>Attributes</th>
+                    <th>Value</th>
+                </tr>
+                <c:forEach items="${pluginMetrics}" var="metric">
+                    <tr>
+                        <td title="<c:out value='${metric.description}'/>"><c:out value="${metric.name}"/></td>
+                        <td><c:out value="${metric.attributes}"/></td>
+                        <td><c:out value="${metric.value}"/></td>
+                    </tr>
+                </c:forEach>
+            </table>
+        </c:otherwise>
+    </c:choose>
+</div>
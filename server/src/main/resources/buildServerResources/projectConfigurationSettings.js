@@ -42,18 +42,48 @@ BS.ProjectConfigurationSettings = OO.extend(BS.PluginPropertiesForm, OO.extend(B
             $j('#honeycombTeam').closest('tr').show();
             $j('#honeycombDataset').closest('tr').show();
             $j('#honeycombApiKey').closest('tr').show();
+            $j('#fileDirectory').closest('tr').hide();
+            $j('#fileCompressionEnabled').closest('tr').hide();
+            $j('#zipkinEncoding').closest('tr').hide();
+            $j('#zipkinCompression').closest('tr').hide();
+            $j('#zipkinMessageMaxBytes').closest('tr').hide();
+            $j('#zipkinTimeoutSeconds').closest('tr').hide();
         } else if ($j(dropdown).val() === 'zipkin.io') {
             $j('#endpoint').closest('tr').show();
             $j('#customHeaders').closest('tr').hide();
             $j('#honeycombTeam').closest('tr').hide();
             $j('#honeycombDataset').closest('tr').hide();
             $j('#honeycombApiKey').closest('tr').hide();
+            $j('#fileDirectory').closest('tr').hide();
+            $j('#fileCompressionEnabled').closest('tr').hide();
+            $j('#zipkinEncoding').closest('tr').show();
+            $j('#zipkinCompression').closest('tr').show();
+            $j('#zipkinMessageMaxBytes').closest('tr').show();
+            $j('#zipkinTimeoutSeconds').closest('tr').show();
+        } else if ($j(dropdown).val() === 'file') {
+            $j('#endpoint').closest('tr').hide();
+            $j('#customHeaders').closest('tr').hide();
+            $j('#honeycombTeam').closest('tr').hide();
+            $j('#honeycombDataset').closest('tr').hide();
+            $j('#honeycombApiKey').closest('tr').hide();
+            $j('#fileDirectory').closest('tr').show();
+            $j('#fileCompressionEnabled').closest('tr').show();
+            $j('#zipkinEncoding').closest('tr').hide();
+            $j('#zipkinCompression').closest('tr').hide();
+            $j('#zipkinMessageMaxBytes').closest('tr').hide();
+            $j('#zipkinTimeoutSeconds').closest('tr').hide();
         } else {
             $j('#endpoint').closest('tr').show();
             $j('#customHeaders').closest('tr').show();
             $j('#honeycombTeam').closest('tr').hide();
             $j('#honeycombDataset').closest('tr').hide();
             $j('#honeycombApiKey').closest('tr').hide();
+            $j('#fileDirectory').closest('tr').hide();
+            $j('#fileCompressionEnabled').closest('tr').hide();
+            $j('#zipkinEncoding').closest('tr').hide();
+            $j('#zipkinCompression').closest('tr').hide();
+            $j('#zipkinMessageMaxBytes').closest('tr').hide();
+            $j('#zipkinTimeoutSeconds').closest('tr').hide();
         }
     },
 
@@ -50,6 +50,7 @@
                             <option value="honeycomb.io" <c:if test='${otelService == "honeycomb.io"}'>selected="selected"</c:if>>Honeycomb.io</option>
                             <option value="zipkin.io" <c:if test='${otelService == "zipkin.io"}'>selected="selected"</c:if>>Zipkin</option>
                             <option value="custom" <c:if test='${otelService == "custom"}'>selected="selected"</c:if>>Custom</option>
+                            <option value="file" <c:if test='${otelService == "file"}'>selected="selected"</c:if>>File (OTLP JSON)</option>
                         </select>
                         <span class="error" id="error_service"></span>
                     </td>
@@ -58,6 +59,7 @@
                 <%@ include file="projectConfigurationSettingsHoneycomb.jspf" %>
                 <%@ include file="projectConfigurationSettingsZipkin.jspf" %>
                 <%@ include file="projectConfigurationSettingsCustom.jspf" %>
+                <%@ include file="projectConfigurationSettingsFile.jspf" %>
             </table>
 
             <div class="saveButtonsBlock" id="saveButtons">
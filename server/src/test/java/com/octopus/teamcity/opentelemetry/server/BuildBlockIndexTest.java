@@ -0,0 +1,57 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import jetbrains.buildServer.serverSide.buildLog.BlockLogMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class BuildBlockIndexTest {
+
+    @Test
+    void takeShouldReturnEachRunOfATestInLogOrder() {
+        // Arrange
+        var index = new BuildBlockIndex();
+        index.add(testBlock("com.example.Flaky", 1000, 1500));
+        index.add(testBlock("com.example.Other", 1100, 1200));
+        index.add(testBlock("com.example.Flaky", 2000, 2100));
+
+        // Act
+        var firstRun = index.take("com.example.Flaky");
+        var secondRun = index.take("com.example.Flaky");
+        var thirdRun = index.take("com.example.Flaky");
+
+        // Assert
+        assertNotNull(firstRun);
+        assertEquals(1000, firstRun.getStartTime());
+        assertEquals(1500, firstRun.getFinishTime());
+        assertNotNull(secondRun);
+        assertEquals(2000, secondRun.getStartTime());
+        assertNull(thirdRun);
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void unfinishedTestBlocksShouldBeIgnored() {
+        // Arrange
+        var index = new BuildBlockIndex();
+        var unfinished = testBlock("com.example.Hung", 1000, 0);
+        when(unfinished.getFinishDate()).thenReturn(null);
+
+        // Act
+        index.add(unfinished);
+
+        // Assert
+        assertNull(index.take("com.example.Hung"));
+    }
+
+    private static BlockLogMessage testBlock(String testName, long startTime, long finishTime) {
+        var block = mock(BlockLogMessage.class);
+        when(block.getText()).thenReturn(testName);
+        when(block.getTimestamp()).thenReturn(new Date(startTime));
+        when(block.getFinishDate()).thenReturn(new Date(finishTime));
+        return block;
+    }
+}
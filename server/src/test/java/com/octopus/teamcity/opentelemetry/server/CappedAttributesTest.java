@@ -0,0 +1,28 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import io.opentelemetry.api.common.AttributeKey;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CappedAttributesTest {
+    private static final AttributeKey<String> KEY = AttributeKey.stringKey("build_type");
+
+    @Test
+    void valuesPastTheLimitShareTheOtherSet() {
+        // Arrange
+        var attributes = new CappedAttributes(KEY, 2);
+        attributes.get("First");
+        attributes.get("Second");
+
+        // Act
+        var third = attributes.get("Third");
+        var fourth = attributes.get("Fourth");
+
+        // Assert
+        assertEquals(CappedAttributes.OTHER, third.get(KEY));
+        assertSame(third, fourth);
+        assertEquals("First", attributes.get("First").get(KEY));
+        assertEquals(3, attributes.size());
+    }
+}
@@ -0,0 +1,44 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChainSummaryTest {
+
+    @Test
+    void shouldAddUpEveryMemberAndKeepTheSlowest() {
+        // Arrange
+        var summary = new ChainSummary();
+        summary.add(1, "Project_Compile", 1_000, 60_000, 10, 1, 2_048);
+        summary.add(2, "Project_Test", 5_000, 180_000, 500, 3, 0);
+
+        // Act
+        // the composite root, which didn't run on an agent
+        summary.add(3, "Project_Release", 0, -1, 0, 0, 0);
+
+        // Assert
+        assertEquals(3, summary.getMemberCount());
+        assertEquals(240_000, summary.getAgentTimeMillis());
+        assertEquals(6_000, summary.getQueueTimeMillis());
+        assertEquals(510, summary.getTestCount());
+        assertEquals(4, summary.getFailedTestCount());
+        assertEquals(2_048, summary.getArtifactBytes());
+        assertEquals(2, summary.getSlowestMemberBuildId());
+        assertEquals("Project_Test", summary.getSlowestMemberBuildType());
+        assertEquals(180_000, summary.getSlowestMemberMillis());
+    }
+
+    @Test
+    void aChainWithNoAgentBuildsShouldHaveNoSlowestMember() {
+        // Arrange
+        var summary = new ChainSummary();
+
+        // Act
+        summary.add(1, "Project_Release", 0, -1, 0, 0, 0);
+
+        // Assert
+        assertEquals(-1, summary.getSlowestMemberBuildId());
+        assertNull(summary.getSlowestMemberBuildType());
+    }
+}
@@ -0,0 +1,39 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntervalsTest {
+
+    @Test
+    void analyseShouldMeasureOverlapAndGaps() {
+        // Arrange
+        var intervals = new Intervals();
+        intervals.add(0, 100);
+        intervals.add(50, 150);
+        intervals.add(60, 80);
+        intervals.add(150, 200); // starts as the second ends, so doesn't overlap it
+        intervals.add(300, 400);
+
+        // Act
+        var concurrency = intervals.analyse();
+
+        // Assert
+        assertNotNull(concurrency);
+        assertEquals(5, concurrency.getCount());
+        assertEquals(3, concurrency.getPeak());
+        assertEquals(300, concurrency.getBusyMillis());
+        assertEquals(100, concurrency.getIdleMillis());
+        assertEquals(370.0 / 300, concurrency.getAverage(), 0.0001);
+    }
+
+    @Test
+    void analyseShouldReturnNullWithNoIntervals() {
+        // Act
+        var concurrency = new Intervals().analyse();
+
+        // Assert
+        assertNull(concurrency);
+    }
+}
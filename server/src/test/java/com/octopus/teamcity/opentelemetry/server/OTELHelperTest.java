@@ -46,11 +46,11 @@ class OTELHelperTest {
     @Test
     void getParentSpanShouldReturnABuildSpanAndBeAvailableInGetOrCreateSpan(@Mock SRunningBuild build) {
         // Arrange
-        String parentBuildId = String.valueOf(build.getBuildId());
+        long parentBuildId = build.getBuildId();
         Span parentSpan = this.otelHelper.getOrCreateParentSpan(parentBuildId);
 
         // Act
-        Span buildSpan = this.otelHelper.getSpan(String.valueOf(build.getBuildId()));
+        Span buildSpan = this.otelHelper.getSpan(build.getBuildId());
 
         // Assert
         assertNotNull(parentSpan);
@@ -62,10 +62,10 @@ class OTELHelperTest {
         // Arrange
         SRunningBuild build = mock(SRunningBuild.class, RETURNS_DEEP_STUBS);
         Span parentSpan = createParentSpanForTest(build);
-        Span expectedSpan = this.otelHelper.createSpan(String.valueOf(build.getBuildId()), parentSpan, "parentSpanName");
+        Span expectedSpan = this.otelHelper.createSpan(build.getBuildId(), parentSpan, 0L);
 
         // Act
-        Span actualSpan = this.otelHelper.getSpan(String.valueOf(build.getBuildId()));
+        Span actualSpan = this.otelHelper.getSpan(build.getBuildId());
 
         // Assert
         assertEquals(expectedSpan, actualSpan);
@@ -80,14 +80,14 @@ class OTELHelperTest {
         // Work around for mocked build.getBuildId(), as you cannot mock a final method (will return 0 in all cases when called), this ensures that the parent build id and the build id are different values
         // This ensures two different spans are created, a build span and a parent span
         when(build.getBuildId()).thenReturn(12345L);
-        String buildId = String.valueOf(build.getBuildId());
+        long buildId = build.getBuildId();
 
         // Act
-        Span actualSpan = this.otelHelper.createTransientSpan(buildId, parentSpan, new Date().getTime());
+        Span actualSpan = this.otelHelper.createTransientSpan(String.valueOf(buildId), parentSpan, new Date().getTime());
 
         // Assert
         assertNotNull(actualSpan);
-        assertNotNull(this.otelHelper.getSpan(String.valueOf(parentBuild.getBuildId())));
+        assertNotNull(this.otelHelper.getSpan(parentBuild.getBuildId()));
         assertNull(this.otelHelper.getSpan(buildId));
     }
 
@@ -96,13 +96,13 @@ class OTELHelperTest {
         // Arrange
         SRunningBuild build = mock(SRunningBuild.class, RETURNS_DEEP_STUBS);
         Span parentSpan = createParentSpanForTest(build);
-        this.otelHelper.createSpan(String.valueOf(build.getBuildId()), parentSpan, "parentSpanName");
+        this.otelHelper.createSpan(build.getBuildId(), parentSpan, 0L);
 
         // Act
-        this.otelHelper.removeSpan(String.valueOf(build.getBuildId()));
+        this.otelHelper.removeSpan(build.getBuildId());
 
         // Assert
-        assertNull(this.otelHelper.getSpan(String.valueOf(build.getBuildId())));
+        assertNull(this.otelHelper.getSpan(build.getBuildId()));
     }
 
     @Test
@@ -110,19 +110,34 @@ class OTELHelperTest {
         // Arrange
         SRunningBuild build = mock(SRunningBuild.class, RETURNS_DEEP_STUBS);
         Span parentSpan = createParentSpanForTest(build);
-        this.otelHelper.createSpan(String.valueOf(build.getBuildId()), parentSpan, "parentSpanName");
+        this.otelHelper.createSpan(build.getBuildId(), parentSpan, 0L);
 
         // Act
-        Span expectedSpan = this.otelHelper.getSpan(String.valueOf(build.getBuildId()));
+        Span expectedSpan = this.otelHelper.getSpan(build.getBuildId());
 
         // Assert
         assertNotNull(expectedSpan);
     }
 
+    @Test
+    void endOpenSpansShouldEndAndForgetEveryOpenSpan() {
+        // Arrange
+        this.otelHelper.getOrCreateParentSpan(1L);
+        this.otelHelper.getOrCreateParentSpan(2L);
+
+        // Act
+        var ended = this.otelHelper.endOpenSpans("Interrupted by server shutdown");
+
+        // Assert
+        assertEquals(2, ended);
+        assertEquals(0, this.otelHelper.getSpanCount());
+        assertNull(this.otelHelper.getSpan(1L));
+    }
+
     @Test
     void getSpanShouldNOTReturnSpanWhenItDoesNotExist(@Mock SRunningBuild build) {
         // Act & Assert
-        assertNull(this.otelHelper.getSpan(String.valueOf(build.getBuildId())));
+        assertNull(this.otelHelper.getSpan(build.getBuildId()));
     }
 
     private Span createParentSpanForTest(SRunningBuild build) {
@@ -130,7 +145,7 @@ class OTELHelperTest {
         when(build.getBuildPromotion().findTops()).thenReturn(buildPromotions);
         BuildPromotion[] parentBuilds = build.getBuildPromotion().findTops();
         BuildPromotion parentBuildPromotion = parentBuilds[0];
-        String parentBuildId = String.valueOf(parentBuildPromotion.getId());
+        long parentBuildId = parentBuildPromotion.getId();
         return this.otelHelper.getOrCreateParentSpan(parentBuildId);
     }
 }
\ No newline at end of file
@@ -0,0 +1,38 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelTestSpansTest {
+
+    @Test
+    void forEachRangeShouldRunEveryIndexExactlyOnce() {
+        // Arrange
+        var parallelTestSpans = new ParallelTestSpans(4, 0);
+        var runs = new AtomicIntegerArray(10_500);
+
+        // Act
+        parallelTestSpans.forEachRange(runs.length(), (from, to) -> {
+            for (int i = from; i < to; i++)
+                runs.incrementAndGet(i);
+        });
+        parallelTestSpans.shutdown();
+
+        // Assert
+        for (int i = 0; i < runs.length(); i++)
+            assertEquals(1, runs.get(i), "index " + i);
+    }
+
+    @Test
+    void aParallelismOfOneShouldNeverBeUsed() {
+        // Arrange
+        var parallelTestSpans = new ParallelTestSpans(1, 0);
+
+        // Act & Assert
+        assertEquals(1, parallelTestSpans.getParallelism());
+        assertFalse(parallelTestSpans.shouldUse(1_000_000));
+    }
+}
@@ -0,0 +1,31 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueueWaitReasonsTest {
+
+    @Test
+    void parseShouldOnlyReturnWaitReasonStatistics() {
+        // Arrange
+        var statistics = new LinkedHashMap<String, BigDecimal>();
+        statistics.put("BuildDuration", BigDecimal.valueOf(60_000));
+        statistics.put("queueWaitReason:Waiting for a compatible agent", BigDecimal.valueOf(1500));
+        statistics.put("queueWaitReason:Build settings have not been finalized: waiting for VCS", BigDecimal.valueOf(250));
+        statistics.put("TimeSpentInQueue", BigDecimal.valueOf(1750));
+
+        // Act
+        var waits = QueueWaitReasons.parse(statistics);
+
+        // Assert
+        assertEquals(2, waits.size());
+        assertEquals("Waiting for a compatible agent", waits.get(0).getReason());
+        assertEquals(1500, waits.get(0).getDurationMillis());
+        assertEquals("Build settings have not been finalized: waiting for VCS", waits.get(1).getReason());
+        assertEquals(250, waits.get(1).getDurationMillis());
+    }
+}
@@ -0,0 +1,104 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpanNameTemplatesTest {
+
+    @Test
+    void defaultRulesReplaceTheChangingPartsOfAName() {
+        // Arrange
+        var templates = new SpanNameTemplates(SpanNameTemplates.DEFAULT_RULES, 100);
+
+        // Act
+        var spanName = templates.getSpanName("Deploy to 3f2504e0-4f89-11d3-9a0c-0305e82c3301 at 2024-01-17T10:15:30Z");
+
+        // Assert
+        assertEquals("Deploy to {uuid} at {timestamp}", spanName);
+    }
+
+    @Test
+    void defaultRulesLeaveNumbersAlone() {
+        // Arrange
+        var templates = new SpanNameTemplates(SpanNameTemplates.DEFAULT_RULES, 100);
+
+        // Act
+        var first = templates.getSpanName("issue12345");
+        var second = templates.getSpanName("issue12346");
+
+        // Assert
+        assertEquals("issue12345", first);
+        assertEquals("issue12346", second);
+    }
+
+    @Test
+    void numberRuleReplacesLongNumbers() {
+        // Arrange
+        var rules = new ArrayList<>(SpanNameTemplates.DEFAULT_RULES);
+        rules.add(SpanNameTemplates.NUMBER_RULE);
+        var templates = new SpanNameTemplates(rules, 100);
+
+        // Act
+        var spanName = templates.getSpanName("Deploy release 20240117");
+
+        // Assert
+        assertEquals("Deploy release {n}", spanName);
+    }
+
+    @Test
+    void customRulesRunAfterTheDefaultRulesAndCanUseGroups() {
+        // Arrange
+        var rules = new ArrayList<>(SpanNameTemplates.DEFAULT_RULES);
+        rules.add("shouldRetry\\((\\w+)\\)\\[\\d+\\] => shouldRetry($1)");
+        var templates = new SpanNameTemplates(rules, 100);
+
+        // Act
+        var spanName = templates.getSpanName("shouldRetry(timeout)[3]");
+
+        // Assert
+        assertEquals("shouldRetry(timeout)", spanName);
+    }
+
+    @Test
+    void invalidRulesAreIgnored() {
+        // Arrange
+        var templates = new SpanNameTemplates(List.of("no separator", "[unclosed => x", "step-\\d => step"), 100);
+
+        // Act
+        var spanName = templates.getSpanName("step-1");
+
+        // Assert
+        assertEquals("step", spanName);
+    }
+
+    @Test
+    void rulesWithInvalidTemplatesAreIgnored() {
+        // Arrange
+        var templates = new SpanNameTemplates(List.of("step-(\\d) => step-$3", "step-\\d => $", "step-(?<n>\\d) => ${m}", "step-(\\d) => step"), 100);
+
+        // Act
+        var spanName = templates.getSpanName("step-1");
+
+        // Assert
+        assertEquals("step", spanName);
+    }
+
+    @Test
+    void leastRecentlyUsedNamesAreForgottenOnceTheCacheIsFull() {
+        // Arrange
+        var templates = new SpanNameTemplates(List.of(SpanNameTemplates.NUMBER_RULE), 2);
+        templates.getSpanName("Build 123456");
+        templates.getSpanName("Build 234567");
+
+        // Act
+        var spanName = templates.getSpanName("Build 345678");
+
+        // Assert
+        assertEquals("Build {n}", spanName);
+        assertEquals(2, templates.size());
+    }
+}
@@ -0,0 +1,205 @@
+package com.octopus.teamcity.opentelemetry.server;
+
+import com.octopus.teamcity.opentelemetry.server.artifacts.ArtifactSizeCalculator;
+import com.octopus.teamcity.opentelemetry.server.baselines.DurationBaselines;
+import com.octopus.teamcity.opentelemetry.server.endpoints.OTELEndpointFactory;
+import com.octopus.teamcity.opentelemetry.server.endpoints.OTELService;
+import com.octopus.teamcity.opentelemetry.server.endpoints.file.OtlpJsonSegmentWriterRegistry;
+import com.octopus.teamcity.opentelemetry.server.helpers.HelperPerBuildOTELHelperFactory;
+import com.octopus.teamcity.opentelemetry.server.processors.SpanProcessorFactory;
+import com.octopus.teamcity.opentelemetry.server.receivers.OtlpGrpcTestReceiver;
+import com.octopus.teamcity.opentelemetry.server.receivers.ReceivedSpan;
+import com.octopus.teamcity.opentelemetry.server.telemetry.PluginTelemetry;
+import com.octopus.teamcity.opentelemetry.server.synthetic.SyntheticBuildChain;
+import io.grpc.Status;
+import jetbrains.buildServer.serverSide.BuildServerListener;
+import jetbrains.buildServer.serverSide.ProjectManager;
+import jetbrains.buildServer.serverSide.SProject;
+import jetbrains.buildServer.serverSide.SProjectFeatureDescriptor;
+import jetbrains.buildServer.serverSide.SRunningBuild;
+import jetbrains.buildServer.serverSide.TeamCityNodes;
+import jetbrains.buildServer.util.EventDispatcher;
+import jetbrains.buildServer.web.openapi.PluginDescriptor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Drives the listener through synthetic build chains, exporting over real gRPC to an in-process receiver.
+ */
+class TeamCityBuildListenerEndToEndTest {
+
+    private static final Duration RECEIVE_TIMEOUT = Duration.ofSeconds(10);
+    private OtlpGrpcTestReceiver receiver;
+    private PluginTelemetry pluginTelemetry;
+    private HelperPerBuildOTELHelperFactory helperFactory;
+    private ArtifactSizeCalculator artifactSizeCalculator;
+    private TeamCityBuildListener buildListener;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        this.receiver = new OtlpGrpcTestReceiver();
+
+        var feature = mock(SProjectFeatureDescriptor.class);
+        when(feature.getParameters()).thenReturn(Map.of(
+                PROPERTY_KEY_ENABLED, "true",
+                PROPERTY_KEY_SERVICE, OTELService.CUSTOM.getValue(),
+                PROPERTY_KEY_ENDPOINT, receiver.getEndpoint()));
+        var project = mock(SProject.class);
+        when(project.getAvailableFeaturesOfType(PLUGIN_NAME)).thenReturn(List.of(feature));
+        var projectManager = mock(ProjectManager.class);
+        when(projectManager.findProjectByExternalId(SyntheticBuildChain.PROJECT_EXTERNAL_ID)).thenReturn(project);
+
+        var nodes = mock(TeamCityNodes.class, RETURNS_DEEP_STUBS);
+        when(nodes.getCurrentNode().isMainNode()).thenReturn(true);
+
+        this.pluginTelemetry = new PluginTelemetry(null, "test");
+        var spanProcessorFactory = new SpanProcessorFactory(pluginTelemetry);
+        var endpointFactory = new OTELEndpointFactory(
+                mock(PluginDescriptor.class),
+                nodes,
+                spanProcessorFactory,
+                mock(OtlpJsonSegmentWriterRegistry.class),
+                pluginTelemetry);
+        this.helperFactory = new HelperPerBuildOTELHelperFactory(projectManager, endpointFactory, spanProcessorFactory, pluginTelemetry);
+        this.artifactSizeCalculator = new ArtifactSizeCalculator();
+        this.buildListener = new TeamCityBuildListener(
+                mock(EventDispatcher.class),
+                helperFactory,
+                mock(BuildStorageManager.class),
+                nodes,
+                pluginTelemetry,
+                artifactSizeCalculator,
+                new BuildUtilisationMetrics(pluginTelemetry),
+                new DurationBaselines((Path) null),
+                new ChainSummaries(pluginTelemetry));
+    }
+
+    @AfterEach
+    void tearDown() {
+        // the helpers' exporters, the retry scheduler, the artifact walkers and the plugin's meter all have threads
+        helperFactory.shutdown(Duration.ofSeconds(5));
+        artifactSizeCalculator.shutdown();
+        pluginTelemetry.shutdown();
+        receiver.close();
+    }
+
+    @Test
+    void everySpanInTheChainShouldBeExportedAndNestedUnderItsBuild() throws InterruptedException {
+        // Arrange
+        var chain = SyntheticBuildChain.builder(1000).withDependencies(3).build();
+
+        // Act
+        run(chain);
+
+        // Assert
+        assertTrue(receiver.awaitSpans(chain.getExpectedSpanCount(), RECEIVE_TIMEOUT));
+        var spans = receiver.getSpans();
+        assertEquals(chain.getExpectedSpanCount(), spans.size());
+        assertEquals(1, spans.stream().map(ReceivedSpan::getTraceId).distinct().count());
+
+        var roots = receiver.getSpans(ReceivedSpan::isRoot);
+        assertEquals(1, roots.size());
+        assertEquals("1000", roots.get(0).getName());
+
+        var buildSpans = chain.getBuildsInExecutionOrder().stream()
+                .map(build -> findByName(spans, String.valueOf(build.getBuildId())))
+                .collect(Collectors.toMap(ReceivedSpan::getSpanId, span -> span));
+        for (var dependency : chain.getDependencies()) {
+            var span = findByName(spans, String.valueOf(dependency.getBuildId()));
+            assertEquals(roots.get(0).getSpanId(), span.getParentSpanId());
+        }
+        for (var step : receiver.getSpans(span -> span.getName().startsWith("Step "))) {
+            assertTrue(buildSpans.containsKey(step.getParentSpanId()), "Step span should be a child of a build span: " + step);
+        }
+        var testsSpanIds = receiver.getSpans(span -> span.getName().equals("Tests")).stream()
+                .map(ReceivedSpan::getSpanId)
+                .collect(Collectors.toSet());
+        for (var test : receiver.getSpans(span -> span.getName().startsWith("com.example."))) {
+            assertTrue(testsSpanIds.contains(test.getParentSpanId()), "Test span should be a child of a Tests span: " + test);
+        }
+        var testStartTimes = receiver.getSpans(span -> span.getName().startsWith("com.example.")).stream()
+                .map(ReceivedSpan::getStartEpochNanos)
+                .distinct()
+                .count();
+        assertTrue(testStartTimes > chain.getBuildCount(), "Tests should start when their test block did, not all with their build");
+    }
+
+    @Test
+    void retryableFailureShouldNotDropAnySpans() throws InterruptedException {
+        // Arrange
+        var chain = SyntheticBuildChain.builder(2000).withDependencies(2).build();
+        receiver.faults().failNext(1).withFailureCode(Status.Code.UNAVAILABLE.value());
+
+        // Act
+        run(chain);
+
+        // Assert
+        assertTrue(receiver.awaitSpans(chain.getExpectedSpanCount(), RECEIVE_TIMEOUT));
+        assertEquals(chain.getExpectedSpanCount(), receiver.getSpanCount());
+        assertEquals(1, receiver.getRejectedRequestCount());
+    }
+
+    @Test
+    void nonRetryableFailureShouldDropTheRejectedSpans() {
+        // Arrange
+        var chain = SyntheticBuildChain.builder(3000).withDependencies(2).build();
+        receiver.faults().withFailureRate(1).withFailureCode(Status.Code.INVALID_ARGUMENT.value());
+
+        // Act
+        run(chain);
+
+        // Assert
+        var dropped = chain.getExpectedSpanCount() - receiver.getSpanCount();
+        assertEquals(chain.getExpectedSpanCount(), dropped);
+        assertTrue(receiver.getRejectedRequestCount() >= 1);
+        assertEquals(0, receiver.getAcceptedRequestCount());
+    }
+
+    @Test
+    void finishingTheRootBuildShouldFlushRemainingSpansBeforeReturning() {
+        // Arrange
+        var latency = Duration.ofMillis(300);
+        var chain = SyntheticBuildChain.builder(4000).withDependencies(1).build();
+        receiver.faults().withLatency(latency);
+        chain.getDependencies().forEach(this::runBuild);
+        buildListener.buildStarted(chain.getRoot());
+
+        // Act
+        var start = System.nanoTime();
+        buildListener.buildFinished(chain.getRoot());
+        var flushLatency = Duration.ofNanos(System.nanoTime() - start);
+
+        // Assert
+        assertEquals(chain.getExpectedSpanCount(), receiver.getSpanCount());
+        assertTrue(flushLatency.compareTo(latency) >= 0, "Flush took " + flushLatency.toMillis() + "ms");
+        assertTrue(flushLatency.compareTo(RECEIVE_TIMEOUT) < 0, "Flush took " + flushLatency.toMillis() + "ms");
+    }
+
+    private void run(SyntheticBuildChain chain) {
+        chain.getBuildsInExecutionOrder().forEach(this::runBuild);
+    }
+
+    private void runBuild(SRunningBuild build) {
+        buildListener.buildStarted(build);
+        buildListener.buildFinished(build);
+    }
+
+    private static ReceivedSpan findByName(List<ReceivedSpan> spans, String name) {
+        return spans.stream()
+                .filter(span -> span.getName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No span named " + name));
+    }
+}
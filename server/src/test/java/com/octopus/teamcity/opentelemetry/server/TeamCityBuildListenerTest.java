@@ -1,13 +1,17 @@
 package com.octopus.teamcity.opentelemetry.server;
 
+import com.octopus.teamcity.opentelemetry.server.artifacts.ArtifactSizeCalculator;
+import com.octopus.teamcity.opentelemetry.server.baselines.DurationBaselines;
 import com.octopus.teamcity.opentelemetry.server.helpers.OTELHelper;
 import com.octopus.teamcity.opentelemetry.server.helpers.OTELHelperFactory;
 import com.octopus.teamcity.opentelemetry.server.helpers.OTELHelperImpl;
+import com.octopus.teamcity.opentelemetry.server.telemetry.PluginTelemetry;
 import io.opentelemetry.api.GlobalOpenTelemetry;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.sdk.trace.SpanProcessor;
 import jetbrains.buildServer.serverSide.BuildPromotion;
 import jetbrains.buildServer.serverSide.BuildServerListener;
+import jetbrains.buildServer.serverSide.SQueuedBuild;
 import jetbrains.buildServer.serverSide.SRunningBuild;
 import jetbrains.buildServer.serverSide.impl.TeamCityNodesImpl;
 import jetbrains.buildServer.util.EventDispatcher;
@@ -29,6 +33,7 @@ class TeamCityBuildListenerTest {
     private TeamCityBuildListener buildListener;
     private OTELHelperFactory factory;
     private TeamCityNodesImpl teamCityNodes;
+    private ChainSummaries chainSummaries;
 
     @BeforeEach
     void setUp(@Mock EventDispatcher<BuildServerListener> buildServerListenerEventDispatcher) {
@@ -38,7 +43,8 @@ class TeamCityBuildListenerTest {
 
         var buildStorageManager = mock(BuildStorageManager.class, RETURNS_DEEP_STUBS);
         this.teamCityNodes = mock(TeamCityNodesImpl.class, RETURNS_DEEP_STUBS);
-        this.buildListener = new TeamCityBuildListener(buildServerListenerEventDispatcher, factory, buildStorageManager, teamCityNodes);
+        this.chainSummaries = mock(ChainSummaries.class);
+        this.buildListener = new TeamCityBuildListener(buildServerListenerEventDispatcher, factory, buildStorageManager, teamCityNodes, mock(PluginTelemetry.class), mock(ArtifactSizeCalculator.class), mock(BuildUtilisationMetrics.class), mock(DurationBaselines.class), chainSummaries);
     }
 
     @Test
@@ -57,8 +63,8 @@ class TeamCityBuildListenerTest {
 
         // Act
         this.buildListener.buildStarted(build);
-        Span builtSpan = this.otelHelper.getSpan(String.valueOf(build.getBuildId()));
-        Span expectedSpan = this.otelHelper.createSpan(String.valueOf(build.getBuildId()), builtSpan, "parentSpanName");
+        Span builtSpan = this.otelHelper.getSpan(build.getBuildId());
+        Span expectedSpan = this.otelHelper.createSpan(build.getBuildId(), builtSpan, 0L);
 
         // Assert
         assertEquals(expectedSpan, builtSpan);
@@ -75,7 +81,7 @@ class TeamCityBuildListenerTest {
 
         // Act
         this.buildListener.buildStarted(build);
-        Span builtSpan = this.otelHelper.getSpan(String.valueOf(build.getBuildId()));
+        Span builtSpan = this.otelHelper.getSpan(build.getBuildId());
 
         // Assert
         assertNull(builtSpan);
@@ -93,9 +99,9 @@ class TeamCityBuildListenerTest {
 
         // Act
         this.buildListener.buildStarted(build);
-        Span parentSpan = this.otelHelper.getOrCreateParentSpan(String.valueOf(parentBuild.getBuildId()));
-        Span builtSpan = this.otelHelper.getSpan(String.valueOf(build.getBuildId()));
-        Span expectedSpan = this.otelHelper.createSpan(String.valueOf(build.getBuildId()), parentSpan, "parentSpanName");
+        Span parentSpan = this.otelHelper.getOrCreateParentSpan(parentBuild.getBuildId());
+        Span builtSpan = this.otelHelper.getSpan(build.getBuildId());
+        Span expectedSpan = this.otelHelper.createSpan(build.getBuildId(), parentSpan, 0L);
 
         // Assert
         assertEquals(expectedSpan, builtSpan);
@@ -113,13 +119,13 @@ class TeamCityBuildListenerTest {
         when(factory.getOTELHelper(Arrays.stream(buildPromotions).findFirst().get())).thenReturn(otelHelper);
         when(teamCityNodes.getCurrentNode().isMainNode()).thenReturn(true);
         this.buildListener.buildStarted(build);
-        assertNotNull(this.otelHelper.getSpan(String.valueOf(build.getBuildId())));
+        assertNotNull(this.otelHelper.getSpan(build.getBuildId()));
 
         // Act
         this.buildListener.buildFinished(build);
 
         // Assert
-        assertNull(this.otelHelper.getSpan(String.valueOf(build.getBuildId())));
+        assertNull(this.otelHelper.getSpan(build.getBuildId()));
     }
 
     @Test
@@ -132,7 +138,7 @@ class TeamCityBuildListenerTest {
         when(factory.getOTELHelper(Arrays.stream(buildPromotions).findFirst().get())).thenReturn(otelHelper);
         when(teamCityNodes.getCurrentNode().isMainNode()).thenReturn(true);
         this.buildListener.buildStarted(build);
-        assertNotNull(this.otelHelper.getSpan(String.valueOf(build.getBuildId())));
+        assertNotNull(this.otelHelper.getSpan(build.getBuildId()));
 
         // Act
         this.buildListener.buildFinished(build);
@@ -140,4 +146,35 @@ class TeamCityBuildListenerTest {
         // Assert
         verify(factory, times(1)).release(build.getBuildId());
     }
-}
\ No newline at end of file
+
+    @Test
+    void buildRemovedFromQueueShouldForgetItsChain() {
+        // Arrange
+        SQueuedBuild queuedBuild = mock(SQueuedBuild.class, RETURNS_DEEP_STUBS);
+        when(queuedBuild.getBuildPromotion().getId()).thenReturn(42L);
+
+        // Act
+        this.buildListener.buildRemovedFromQueue(queuedBuild, null, null);
+
+        // Assert
+        verify(chainSummaries).forget(42L);
+    }
+
+    @Test
+    void rootBuildFinishedWhenNotReadyShouldForgetItsChain() {
+        // Arrange
+        SRunningBuild build = mock(SRunningBuild.class, RETURNS_DEEP_STUBS);
+        BuildPromotion[] buildPromotions = new BuildPromotion[]{build.getBuildPromotion()};
+        when(build.getBuildPromotion().findTops()).thenReturn(buildPromotions);
+        when(build.getBuildId()).thenReturn(42L);
+        when(buildPromotions[0].getId()).thenReturn(42L);
+        when(factory.getOTELHelper(buildPromotions[0]).isReady()).thenReturn(false);
+        when(teamCityNodes.getCurrentNode().isMainNode()).thenReturn(true);
+
+        // Act
+        this.buildListener.buildFinished(build);
+
+        // Assert
+        verify(chainSummaries).forget(42L);
+    }
+}
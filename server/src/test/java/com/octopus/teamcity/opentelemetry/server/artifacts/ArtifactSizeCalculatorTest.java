@@ -0,0 +1,135 @@
+package com.octopus.teamcity.opentelemetry.server.artifacts;
+
+import jetbrains.buildServer.serverSide.SBuild;
+import jetbrains.buildServer.serverSide.artifacts.BuildArtifact;
+import jetbrains.buildServer.serverSide.artifacts.BuildArtifacts;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ArtifactSizeCalculatorTest {
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        this.executor = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldAddUpFileSizesPerDirectory() {
+        // Arrange
+        var build = buildWithArtifacts(
+                artifact("reports", 0, true),
+                artifact("reports/coverage/html/index.html", 300, false),
+                artifact("reports/coverage/summary.xml", 100, false),
+                artifact("reports/tests.xml", 50, false),
+                artifact("app.zip", 1000, false));
+        var calculator = new ArtifactSizeCalculator(executor, Duration.ofSeconds(10), 2);
+
+        // Act
+        calculator.start(build);
+        var sizes = calculator.await(build);
+
+        // Assert
+        assertNotNull(sizes);
+        assertTrue(sizes.isComplete());
+        assertEquals(1450, sizes.getTotalSize());
+        assertEquals(4, sizes.getFileCount());
+        assertEquals(List.of(Map.entry(".", 1000L), Map.entry("reports/coverage", 400L)), sizes.getLargestDirectories(2));
+    }
+
+    @Test
+    void shouldReturnWhatWasCountedWhenTheTimeBudgetRunsOut() {
+        // Arrange
+        var build = buildWithArtifacts(artifact("app.zip", 1000, false));
+        var calculator = new ArtifactSizeCalculator(executor, Duration.ZERO, 2);
+
+        // Act
+        var sizes = calculator.await(build);
+
+        // Assert
+        assertNotNull(sizes);
+        assertFalse(sizes.isComplete());
+        assertEquals(0, sizes.getFileCount());
+    }
+
+    @Test
+    void forgetShouldStopAWalkThatIsUnderWay() throws Exception {
+        // Arrange
+        var walking = new CountDownLatch(1);
+        var stopped = new CountDownLatch(1);
+        var file = artifact("app.zip", 1000, false);
+        var buildArtifacts = mock(BuildArtifacts.class);
+        doAnswer(invocation -> {
+            BuildArtifacts.BuildArtifactsProcessor processor = invocation.getArgument(0);
+            for (int i = 0; i < 10_000; i++) {
+                walking.countDown();
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException ignored) {
+                    // like storage that swallows interrupts
+                }
+                if (processor.processBuildArtifact(file) == BuildArtifacts.BuildArtifactsProcessor.Continuation.BREAK) {
+                    stopped.countDown();
+                    break;
+                }
+            }
+            return null;
+        }).when(buildArtifacts).iterateArtifacts(any());
+        var build = mock(SBuild.class);
+        when(build.getBuildId()).thenReturn(1L);
+        when(build.getArtifacts(any())).thenReturn(buildArtifacts);
+        var calculator = new ArtifactSizeCalculator(executor, Duration.ofMinutes(1), 2);
+        calculator.start(build);
+        assertTrue(walking.await(10, TimeUnit.SECONDS));
+
+        // Act
+        calculator.forget(1L);
+
+        // Assert
+        assertTrue(stopped.await(10, TimeUnit.SECONDS));
+    }
+
+    private static SBuild buildWithArtifacts(BuildArtifact... artifacts) {
+        var buildArtifacts = mock(BuildArtifacts.class);
+        doAnswer(invocation -> {
+            BuildArtifacts.BuildArtifactsProcessor processor = invocation.getArgument(0);
+            for (var artifact : artifacts) {
+                if (processor.processBuildArtifact(artifact) == BuildArtifacts.BuildArtifactsProcessor.Continuation.BREAK)
+                    break;
+            }
+            return null;
+        }).when(buildArtifacts).iterateArtifacts(any());
+
+        var build = mock(SBuild.class);
+        when(build.getBuildId()).thenReturn(1L);
+        when(build.getArtifacts(any())).thenReturn(buildArtifacts);
+        return build;
+    }
+
+    private static BuildArtifact artifact(String relativePath, long size, boolean directory) {
+        var artifact = mock(BuildArtifact.class);
+        when(artifact.getRelativePath()).thenReturn(relativePath);
+        when(artifact.getSize()).thenReturn(size);
+        when(artifact.isDirectory()).thenReturn(directory);
+        return artifact;
+    }
+}
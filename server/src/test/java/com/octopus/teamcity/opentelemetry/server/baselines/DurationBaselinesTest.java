@@ -0,0 +1,126 @@
+package com.octopus.teamcity.opentelemetry.server.baselines;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DurationBaselinesTest {
+
+    @Test
+    void shouldFlagARunSlowerThanAlmostAllRecentRunsAsARegression() {
+        // Arrange
+        var baselines = new DurationBaselines(null, true, 100, 100, 100, 10, 95);
+        for (int i = 0; i < 9; i++)
+            assertNull(baselines.observe(DurationBaselines.KIND_BUILD, "bt1", null, 900 + i * 25));
+        baselines.observe(DurationBaselines.KIND_BUILD, "bt1", null, 1000);
+
+        // Act
+        var typical = baselines.observe(DurationBaselines.KIND_BUILD, "bt1", null, 1000);
+        var slow = baselines.observe(DurationBaselines.KIND_BUILD, "bt1", null, 5000);
+
+        // Assert
+        assertNotNull(typical);
+        assertFalse(baselines.isRegression(typical));
+        assertEquals(10, typical.getBaselineRuns());
+        assertEquals(1000, typical.getBaselineMedianMs(), 1000 * 0.02);
+        assertNotNull(slow);
+        assertEquals(100, slow.getPercentile());
+        assertTrue(baselines.isRegression(slow));
+    }
+
+    @Test
+    void shouldForgetTheLeastRecentlyUsedSeriesFirst() {
+        // Arrange
+        var baselines = new DurationBaselines(null, true, 2, 2, 100, 1, 95);
+        baselines.observe(DurationBaselines.KIND_STEP, "bt1", "Compile", 100);
+        baselines.observe(DurationBaselines.KIND_STEP, "bt1", "Package", 100);
+        baselines.observe(DurationBaselines.KIND_STEP, "bt1", "Compile", 100);
+
+        // Act
+        baselines.observe(DurationBaselines.KIND_STEP, "bt1", "Publish", 100);
+
+        // Assert
+        assertEquals(2, baselines.size());
+        assertNotNull(baselines.observe(DurationBaselines.KIND_STEP, "bt1", "Compile", 100));
+        assertNull(baselines.observe(DurationBaselines.KIND_STEP, "bt1", "Package", 100));
+    }
+
+    @Test
+    void testsShouldNotPushOutBuildAndStepBaselines() {
+        // Arrange
+        var baselines = new DurationBaselines(null, true, 2, 2, 100, 1, 95);
+        baselines.observe(DurationBaselines.KIND_BUILD, "bt1", null, 100);
+        baselines.observe(DurationBaselines.KIND_STEP, "bt1", "Compile", 100);
+
+        // Act
+        for (int i = 0; i < 10; i++)
+            baselines.observe(DurationBaselines.KIND_TEST, "bt1", "MyTest.test" + i, 100);
+
+        // Assert
+        assertEquals(4, baselines.size());
+        assertNotNull(baselines.observe(DurationBaselines.KIND_BUILD, "bt1", null, 100));
+        assertNotNull(baselines.observe(DurationBaselines.KIND_STEP, "bt1", "Compile", 100));
+    }
+
+    @Test
+    void shouldStayWithinTheLimitWhenTheSeriesAreStriped() {
+        // Arrange
+        var baselines = new DurationBaselines(null, true, 2048, 2048, 100, 1, 95);
+
+        // Act
+        for (int i = 0; i < 5000; i++)
+            baselines.observe(DurationBaselines.KIND_STEP, "bt1", "Step " + i, 100);
+
+        // Assert
+        assertTrue(baselines.size() <= 2048);
+        assertTrue(baselines.size() > 1024);
+        assertNotNull(baselines.observe(DurationBaselines.KIND_STEP, "bt1", "Step 4999", 100));
+    }
+
+    @Test
+    void shouldLoadTheBaselinesItSaved(@TempDir Path directory) {
+        // Arrange
+        var file = directory.resolve("duration-baselines.bin");
+        var baselines = new DurationBaselines(file, true, 100, 100, 100, 10, 95);
+        for (int i = 0; i < 10; i++)
+            baselines.observe(DurationBaselines.KIND_TEST, "bt1", "MyTest.shouldPass", 200);
+        baselines.persist();
+
+        // Act
+        var reloaded = new DurationBaselines(file, true, 100, 100, 100, 10, 95);
+        var comparison = reloaded.observe(DurationBaselines.KIND_TEST, "bt1", "MyTest.shouldPass", 200);
+
+        // Assert
+        assertEquals(1, reloaded.size());
+        assertNotNull(comparison);
+        assertEquals(10, comparison.getBaselineRuns());
+        assertEquals(200, comparison.getBaselineMedianMs(), 200 * 0.02);
+    }
+
+    @Test
+    void shouldStartAfreshRatherThanAllocateWhatACorruptFileAsksFor(@TempDir Path directory) throws IOException {
+        // Arrange
+        var file = directory.resolve("duration-baselines.bin");
+        var baselines = new DurationBaselines(file, true, 100, 100, 100, 1, 95);
+        baselines.observe(DurationBaselines.KIND_BUILD, "bt1", null, 100);
+        baselines.persist();
+        var bytes = Files.readAllBytes(file);
+        // the first sketch's bucket count: after the header, the key and the sketch's counts and offset
+        var key = "build|bt1".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer.wrap(bytes).putInt(4 + 4 + 8 + 4 + 4 + key.length + 8 + 8 + 4, Integer.MAX_VALUE);
+        Files.write(file, bytes);
+
+        // Act
+        var reloaded = new DurationBaselines(file, true, 100, 100, 100, 1, 95);
+
+        // Assert
+        assertEquals(0, reloaded.size());
+    }
+}
@@ -0,0 +1,83 @@
+package com.octopus.teamcity.opentelemetry.server.endpoints;
+
+import com.octopus.teamcity.opentelemetry.server.telemetry.PluginTelemetry;
+import jetbrains.buildServer.serverSide.ProjectManager;
+import jetbrains.buildServer.serverSide.SProject;
+import jetbrains.buildServer.serverSide.SProjectFeatureDescriptor;
+import jetbrains.buildServer.serverSide.TeamCityNodes;
+import jetbrains.buildServer.util.EventDispatcher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class EndpointPrewarmerTest {
+
+    private final PluginTelemetry pluginTelemetry = new PluginTelemetry(null, "test");
+
+    @AfterEach
+    void tearDown() {
+        pluginTelemetry.shutdown();
+    }
+
+    @Test
+    void shouldWarmUpEachEnabledEndpointOnce() {
+        // Arrange
+        var handler = mock(IOTELEndpointHandler.class);
+        when(handler.getDestination(anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+        var endpointFactory = mock(OTELEndpointFactory.class);
+        when(endpointFactory.getOTELEndpointHandler("custom")).thenReturn(handler);
+        var projectManager = mock(ProjectManager.class);
+        doReturn(List.of(
+                project(feature("true", "https://collector:4317")),
+                project(feature("true", "https://collector:4317")),
+                project(feature("false", "https://disabled:4317")))).when(projectManager).getActiveProjects();
+        var prewarmer = new EndpointPrewarmer(mock(EventDispatcher.class), projectManager, mock(TeamCityNodes.class), endpointFactory, pluginTelemetry);
+
+        // Act
+        prewarmer.prewarm();
+
+        // Assert
+        verify(handler, times(1)).prewarm(eq("https://collector:4317"), anyMap(), any(Duration.class));
+        verify(handler, never()).prewarm(eq("https://disabled:4317"), anyMap(), any(Duration.class));
+    }
+
+    @Test
+    void shouldNotWarmUpAnythingOnASecondaryNode() {
+        // Arrange
+        var projectManager = mock(ProjectManager.class);
+        var nodes = mock(TeamCityNodes.class, RETURNS_DEEP_STUBS);
+        when(nodes.getCurrentNode().isMainNode()).thenReturn(false);
+        var prewarmer = new EndpointPrewarmer(mock(EventDispatcher.class), projectManager, nodes, mock(OTELEndpointFactory.class), pluginTelemetry);
+
+        // Act
+        prewarmer.serverStartup();
+
+        // Assert
+        verifyNoInteractions(projectManager);
+    }
+
+    private static SProject project(SProjectFeatureDescriptor feature) {
+        var project = mock(SProject.class);
+        when(project.getOwnFeaturesOfType(PLUGIN_NAME)).thenReturn(List.of(feature));
+        return project;
+    }
+
+    private static SProjectFeatureDescriptor feature(String enabled, String endpoint) {
+        var feature = mock(SProjectFeatureDescriptor.class);
+        when(feature.getParameters()).thenReturn(Map.of(
+                PROPERTY_KEY_ENABLED, enabled,
+                PROPERTY_KEY_SERVICE, "custom",
+                PROPERTY_KEY_ENDPOINT, endpoint));
+        return feature;
+    }
+}
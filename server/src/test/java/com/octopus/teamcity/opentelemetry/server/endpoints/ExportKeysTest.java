@@ -0,0 +1,40 @@
+package com.octopus.teamcity.opentelemetry.server.endpoints;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExportKeysTest {
+    @Test
+    void shouldSeparateDifferentCredentialsWithoutRevealingThem() {
+        // Arrange
+        var destination = "https://api.honeycomb.io:443";
+
+        // Act
+        var first = ExportKeys.of(destination, Map.of("x-honeycomb-team", "key-one", "x-honeycomb-dataset", "builds"));
+        var second = ExportKeys.of(destination, Map.of("x-honeycomb-team", "key-two", "x-honeycomb-dataset", "builds"));
+
+        // Assert
+        assertNotEquals(first, second);
+        assertTrue(first.startsWith(destination + "#"));
+        assertFalse(first.contains("key-one"));
+    }
+
+    @Test
+    void shouldGiveTheSameKeyWhateverTheOrderOfTheSettings() {
+        // Arrange
+        var forwards = new LinkedHashMap<String, String>();
+        forwards.put("a", "1");
+        forwards.put("b", "2");
+        var backwards = new LinkedHashMap<String, String>();
+        backwards.put("b", "2");
+        backwards.put("a", "1");
+
+        // Act & Assert
+        assertEquals(ExportKeys.of("https://collector", forwards), ExportKeys.of("https://collector", backwards));
+        assertEquals("https://collector", ExportKeys.of("https://collector", Map.of()));
+    }
+}
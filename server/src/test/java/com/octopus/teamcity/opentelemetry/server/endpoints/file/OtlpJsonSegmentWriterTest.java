@@ -0,0 +1,177 @@
+package com.octopus.teamcity.opentelemetry.server.endpoints.file;
+
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OtlpJsonSegmentWriterTest {
+
+    @TempDir
+    Path directory;
+    private SdkTracerProvider tracerProvider;
+
+    @BeforeEach
+    void setUp() {
+        this.tracerProvider = SdkTracerProvider.builder().build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        tracerProvider.close();
+    }
+
+    @Test
+    void closeShouldCompleteSegmentWithOneRequestPerLine() throws IOException {
+        // Arrange
+        var writer = new OtlpJsonSegmentWriter(directory, false, settings(1024 * 1024, 1024 * 1024));
+
+        // Act
+        writer.write(List.of(span("Build Step 1")));
+        writer.write(List.of(span("Build Step 2")));
+        writer.close();
+
+        // Assert
+        var segments = completedSegments();
+        assertEquals(1, segments.size());
+        var lines = Files.readAllLines(segments.get(0), StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).startsWith("{\"resourceSpans\""));
+        assertTrue(lines.get(0).contains("Build Step 1"));
+        assertTrue(lines.get(1).contains("Build Step 2"));
+    }
+
+    @Test
+    void fullSegmentShouldBeRotated() throws IOException {
+        // Arrange
+        var writer = new OtlpJsonSegmentWriter(directory, false, settings(1, 1024 * 1024));
+
+        // Act
+        writer.write(List.of(span("Build Step 1")));
+        writer.write(List.of(span("Build Step 2")));
+        writer.write(List.of(span("Build Step 3")));
+
+        // Assert
+        assertEquals(2, completedSegments().size());
+        assertEquals(1, openSegments().size());
+        writer.close();
+        assertEquals(3, completedSegments().size());
+        assertEquals(0, openSegments().size());
+    }
+
+    @Test
+    void compressedSegmentShouldBeGzippedJsonLines() throws IOException {
+        // Arrange
+        var writer = new OtlpJsonSegmentWriter(directory, true, settings(1024 * 1024, 1024 * 1024));
+
+        // Act
+        writer.write(List.of(span("Build Step 1")));
+        writer.close();
+
+        // Assert
+        var segments = completedSegments();
+        assertEquals(1, segments.size());
+        assertTrue(segments.get(0).getFileName().toString().endsWith(".jsonl.gz"));
+        try (var input = new GZIPInputStream(Files.newInputStream(segments.get(0)))) {
+            var content = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(content.contains("Build Step 1"));
+            assertTrue(content.endsWith("\n"));
+        }
+    }
+
+    @Test
+    void oldestSegmentsShouldBeDeletedOnceOverRetainedSize() throws IOException {
+        // Arrange
+        var writer = new OtlpJsonSegmentWriter(directory, false, settings(1, 1024 * 1024));
+        writer.write(List.of(span("Build Step 1")));
+        writer.close();
+        var segmentSize = Files.size(completedSegments().get(0));
+        Files.delete(completedSegments().get(0));
+        writer = new OtlpJsonSegmentWriter(directory, false, settings(1, segmentSize * 2 + segmentSize / 2));
+
+        // Act
+        for (int i = 1; i <= 5; i++)
+            writer.write(List.of(span("Build Step " + i)));
+        writer.close();
+
+        // Assert
+        var segments = completedSegments();
+        assertEquals(2, segments.size());
+        assertTrue(Files.readString(segments.get(0)).contains("Build Step 4"));
+        assertTrue(Files.readString(segments.get(1)).contains("Build Step 5"));
+    }
+
+    @Test
+    void segmentLeftOpenByPreviousRunShouldBeCompleted() throws IOException {
+        // Arrange
+        var abandoned = directory.resolve(OtlpJsonSegmentWriter.SEGMENT_PREFIX + "20240101T000000Z-000000.jsonl" + OtlpJsonSegmentWriter.OPEN_SUFFIX);
+        Files.writeString(abandoned, "{}\n");
+
+        // Act
+        new OtlpJsonSegmentWriter(directory, false, settings(1024 * 1024, 1024 * 1024)).close();
+
+        // Assert
+        assertFalse(Files.exists(abandoned));
+        assertEquals(1, completedSegments().size());
+    }
+
+    @Test
+    void registryShouldKeepWritersWithDifferentCompressionApartAndCompleteThemOnClose() throws IOException {
+        // Arrange
+        var registry = new OtlpJsonSegmentWriterRegistry(directory);
+        var uncompressed = registry.getWriter("traces", false);
+        var compressed = registry.getWriter("traces", true);
+
+        // Act
+        uncompressed.write(List.of(span("Build Step 1")));
+        compressed.write(List.of(span("Build Step 2")));
+        var again = registry.getWriter("traces", false);
+        registry.close();
+
+        // Assert
+        assertSame(uncompressed, again);
+        assertNotSame(uncompressed, compressed);
+        try (var files = Files.list(directory.resolve("traces"))) {
+            var names = files.map(path -> path.getFileName().toString()).sorted().collect(Collectors.toList());
+            assertEquals(2, names.size());
+            assertTrue(names.stream().noneMatch(name -> name.endsWith(OtlpJsonSegmentWriter.OPEN_SUFFIX)));
+        }
+        assertThrows(IOException.class, () -> registry.getWriter("other", false));
+    }
+
+    private FileSegmentSettings settings(long maxSegmentBytes, long maxRetainedBytes) {
+        return new FileSegmentSettings(maxSegmentBytes, Duration.ofMinutes(5), maxRetainedBytes, Duration.ofDays(1), 1024);
+    }
+
+    private SpanData span(String name) {
+        var span = tracerProvider.get("test").spanBuilder(name).startSpan();
+        span.end();
+        return ((ReadableSpan) span).toSpanData();
+    }
+
+    private List<Path> completedSegments() throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.filter(OtlpJsonSegmentWriter::isCompletedSegment).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private List<Path> openSegments() throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.filter(path -> path.toString().endsWith(OtlpJsonSegmentWriter.OPEN_SUFFIX)).collect(Collectors.toList());
+        }
+    }
+}
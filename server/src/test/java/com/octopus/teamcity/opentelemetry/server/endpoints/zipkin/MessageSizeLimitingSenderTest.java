@@ -0,0 +1,108 @@
+package com.octopus.teamcity.opentelemetry.server.endpoints.zipkin;
+
+import com.octopus.teamcity.opentelemetry.server.telemetry.PluginTelemetry;
+import org.junit.jupiter.api.Test;
+import zipkin2.reporter.BytesMessageSender;
+import zipkin2.reporter.Encoding;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class MessageSizeLimitingSenderTest {
+
+    @Test
+    void aBatchLargerThanTheLimitShouldBeSentAsSeveralMessages() throws IOException {
+        // Arrange
+        var delegate = new RecordingSender(10);
+        var pluginTelemetry = mock(PluginTelemetry.class);
+        var sender = new MessageSizeLimitingSender(delegate, pluginTelemetry);
+
+        // Act
+        sender.send(List.of(new byte[4], new byte[4], new byte[4], new byte[12], new byte[2]));
+
+        // Assert
+        assertEquals(List.of(2, 2), delegate.messageSpanCounts);
+        verify(pluginTelemetry).recordDroppedSpans("zipkin_message_too_large", 1);
+    }
+
+    @Test
+    void aRetryAfterAPartialFailureShouldOnlySendTheRest() throws IOException {
+        // Arrange
+        var delegate = new RecordingSender(10);
+        var sender = new MessageSizeLimitingSender(delegate, mock(PluginTelemetry.class));
+        var batch = List.of(new byte[] {1, 0, 0, 0}, new byte[] {2, 0, 0, 0}, new byte[] {3, 0, 0, 0}, new byte[] {4, 0, 0, 0});
+        delegate.failingSend = 2;
+
+        // Act
+        assertThrows(IOException.class, () -> sender.send(batch));
+        var retry = batch.stream().map(byte[]::clone).collect(Collectors.toList());
+        sender.send(retry);
+
+        // Assert
+        assertEquals(List.of(2, 2), delegate.messageSpanCounts);
+        assertEquals(3, delegate.messageFirstBytes.get(1));
+    }
+
+    @Test
+    void aBatchWithinTheLimitShouldBeSentAsItIs() throws IOException {
+        // Arrange
+        var delegate = new RecordingSender(10);
+        var sender = new MessageSizeLimitingSender(delegate, mock(PluginTelemetry.class));
+
+        // Act
+        sender.send(List.of(new byte[4], new byte[4]));
+
+        // Assert
+        assertEquals(List.of(2), delegate.messageSpanCounts);
+    }
+
+    private static class RecordingSender implements BytesMessageSender {
+        private final int messageMaxBytes;
+        private final List<Integer> messageSpanCounts = new ArrayList<>();
+        private final List<Byte> messageFirstBytes = new ArrayList<>();
+        private int sends;
+        private int failingSend;
+
+        RecordingSender(int messageMaxBytes) {
+            this.messageMaxBytes = messageMaxBytes;
+        }
+
+        @Override
+        public Encoding encoding() {
+            return Encoding.PROTO3;
+        }
+
+        @Override
+        public int messageMaxBytes() {
+            return messageMaxBytes;
+        }
+
+        @Override
+        public int messageSizeInBytes(List<byte[]> encodedSpans) {
+            return Encoding.PROTO3.listSizeInBytes(encodedSpans);
+        }
+
+        @Override
+        public int messageSizeInBytes(int encodedSizeInBytes) {
+            return Encoding.PROTO3.listSizeInBytes(encodedSizeInBytes);
+        }
+
+        @Override
+        public void send(List<byte[]> encodedSpans) throws IOException {
+            assertTrue(messageSizeInBytes(encodedSpans) <= messageMaxBytes);
+            if (++sends == failingSend)
+                throw new IOException("connection reset");
+            messageSpanCounts.add(encodedSpans.size());
+            messageFirstBytes.add(encodedSpans.get(0)[0]);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
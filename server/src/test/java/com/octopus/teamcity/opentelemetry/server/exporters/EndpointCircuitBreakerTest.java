@@ -0,0 +1,89 @@
+package com.octopus.teamcity.opentelemetry.server.exporters;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EndpointCircuitBreakerTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void shouldOpenAfterConsecutiveFailures() {
+        // Arrange
+        var circuitBreaker = new EndpointCircuitBreaker("https://collector", 3, Duration.ofSeconds(60), clock::get);
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordSuccess();
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        assertTrue(circuitBreaker.tryAcquirePermission());
+
+        // Act
+        circuitBreaker.recordFailure();
+
+        // Assert
+        assertEquals(EndpointCircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+    }
+
+    @Test
+    void shouldLetOneProbeThroughOnceOpenForLongEnough() {
+        // Arrange
+        var circuitBreaker = new EndpointCircuitBreaker("https://collector", 1, Duration.ofSeconds(60), clock::get);
+        circuitBreaker.recordFailure();
+        clock.addAndGet(Duration.ofSeconds(59).toNanos());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+
+        // Act
+        clock.addAndGet(Duration.ofSeconds(1).toNanos());
+        var probe = circuitBreaker.tryAcquirePermission();
+        var second = circuitBreaker.tryAcquirePermission();
+
+        // Assert
+        assertTrue(probe);
+        assertFalse(second);
+        assertEquals(EndpointCircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    void probeOutcomeShouldCloseOrReopen() {
+        // Arrange
+        var circuitBreaker = new EndpointCircuitBreaker("https://collector", 1, Duration.ofSeconds(60), clock::get);
+        circuitBreaker.recordFailure();
+        clock.addAndGet(Duration.ofSeconds(60).toNanos());
+        assertTrue(circuitBreaker.tryAcquirePermission());
+
+        // Act
+        circuitBreaker.recordFailure();
+        var reopened = circuitBreaker.getState();
+        clock.addAndGet(Duration.ofSeconds(60).toNanos());
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.recordSuccess();
+
+        // Assert
+        assertEquals(EndpointCircuitBreaker.State.OPEN, reopened);
+        assertEquals(EndpointCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.tryAcquirePermission());
+    }
+
+    @Test
+    void admittingNewChainsShouldNotTakeTheProbe() {
+        // Arrange
+        var circuitBreaker = new EndpointCircuitBreaker("https://collector", 1, Duration.ofSeconds(60), clock::get);
+        circuitBreaker.recordFailure();
+        assertFalse(circuitBreaker.isAdmittingNewChains());
+        clock.addAndGet(Duration.ofSeconds(60).toNanos());
+
+        // Act
+        var admitted = circuitBreaker.isAdmittingNewChains();
+        var probe = circuitBreaker.tryAcquirePermission();
+
+        // Assert
+        assertTrue(admitted);
+        assertTrue(probe);
+        assertFalse(circuitBreaker.isAdmittingNewChains());
+    }
+}
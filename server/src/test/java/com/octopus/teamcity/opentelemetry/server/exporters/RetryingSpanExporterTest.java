@@ -0,0 +1,164 @@
+package com.octopus.teamcity.opentelemetry.server.exporters;
+
+import io.opentelemetry.api.metrics.MeterProvider;
+import io.opentelemetry.exporter.internal.FailedExportException;
+import io.opentelemetry.exporter.internal.grpc.GrpcResponse;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class RetryingSpanExporterTest {
+
+    private ScheduledExecutorService scheduler;
+    private SpanExporter delegate;
+    private RetrySettings settings;
+    private List<SpanData> spans;
+
+    @BeforeEach
+    void setUp() {
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        this.delegate = mock(SpanExporter.class);
+        this.settings = new RetrySettings(3, Duration.ZERO, Duration.ZERO);
+        this.spans = List.of(mock(SpanData.class), mock(SpanData.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void retryableFailureShouldBeSentAgain() {
+        // Arrange
+        when(delegate.export(anyCollection()))
+                .thenReturn(CompletableResultCode.ofExceptionalFailure(new IOException("connection reset")))
+                .thenReturn(CompletableResultCode.ofSuccess());
+        var backoff = new DestinationBackoff("https://collector", settings);
+        var exporter = new RetryingSpanExporter(delegate, backoff, new RetryBudget(0, 100), settings, scheduler, MeterProvider.noop());
+
+        // Act
+        var result = exporter.export(spans).join(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertTrue(result.isSuccess());
+        verify(delegate, times(2)).export(anyCollection());
+        assertEquals(0, backoff.getConsecutiveFailures());
+    }
+
+    @Test
+    void nonRetryableFailureShouldNotBeSentAgain() {
+        // Arrange
+        when(delegate.export(anyCollection()))
+                .thenReturn(CompletableResultCode.ofExceptionalFailure(new RuntimeException("gRPC status code 16")));
+        var backoff = new DestinationBackoff("https://collector", settings);
+        var exporter = new RetryingSpanExporter(delegate, backoff, new RetryBudget(0, 100), settings, scheduler, MeterProvider.noop());
+
+        // Act
+        var result = exporter.export(spans).join(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertFalse(result.isSuccess());
+        verify(delegate, times(1)).export(anyCollection());
+        assertEquals(0, backoff.getConsecutiveFailures());
+    }
+
+    @Test
+    void grpcExportFailureShouldBeClassifiedByItsStatus() {
+        // Arrange
+        var unauthenticated = FailedExportException.grpcFailedWithResponse(GrpcResponse.create(16, "UNAUTHENTICATED"));
+        var unavailable = FailedExportException.grpcFailedWithResponse(GrpcResponse.create(14, "UNAVAILABLE"));
+
+        // Act & Assert
+        assertFalse(RetryClassifier.isRetryable(unauthenticated));
+        assertTrue(RetryClassifier.isRetryable(unavailable));
+        assertTrue(RetryClassifier.isRetryable(new RuntimeException("export failed", new IOException("connection reset"))));
+    }
+
+    @Test
+    void scheduledRetriesShouldBeCountedUntilTheyRun() {
+        // Arrange
+        when(delegate.export(anyCollection()))
+                .thenReturn(CompletableResultCode.ofExceptionalFailure(new IOException("connection reset")))
+                .thenReturn(CompletableResultCode.ofSuccess());
+        var retryScheduler = mock(ScheduledExecutorService.class);
+        var pendingRetrySpans = new AtomicLong();
+        var exporter = new RetryingSpanExporter(delegate, new DestinationBackoff("https://collector", settings), new RetryBudget(0, 100), settings, retryScheduler, pendingRetrySpans, MeterProvider.noop());
+
+        // Act
+        var result = exporter.export(spans);
+        var pendingBeforeRetry = pendingRetrySpans.get();
+        var retry = ArgumentCaptor.forClass(Runnable.class);
+        verify(retryScheduler).schedule(retry.capture(), anyLong(), eq(TimeUnit.MILLISECONDS));
+        retry.getValue().run();
+
+        // Assert
+        assertEquals(2, pendingBeforeRetry);
+        assertEquals(0, pendingRetrySpans.get());
+        assertTrue(result.isSuccess());
+    }
+
+    @Test
+    void shouldGiveUpAfterMaxAttempts() {
+        // Arrange
+        when(delegate.export(anyCollection()))
+                .thenReturn(CompletableResultCode.ofExceptionalFailure(new IOException("connection refused")));
+        var backoff = new DestinationBackoff("https://collector", settings);
+        var exporter = new RetryingSpanExporter(delegate, backoff, new RetryBudget(0, 100), settings, scheduler, MeterProvider.noop());
+
+        // Act
+        var result = exporter.export(spans).join(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertFalse(result.isSuccess());
+        verify(delegate, times(3)).export(anyCollection());
+        assertEquals(3, backoff.getConsecutiveFailures());
+    }
+
+    @Test
+    void shouldGiveUpWhenRetryBudgetIsExhausted() {
+        // Arrange
+        when(delegate.export(anyCollection()))
+                .thenReturn(CompletableResultCode.ofExceptionalFailure(new IOException("connection refused")));
+        var budget = new RetryBudget(0, 3, () -> 0L);
+        var exporter = new RetryingSpanExporter(delegate, new DestinationBackoff("https://collector", settings), budget, settings, scheduler, MeterProvider.noop());
+
+        // Act
+        var result = exporter.export(spans).join(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertFalse(result.isSuccess());
+        verify(delegate, times(2)).export(anyCollection());
+        assertEquals(1, budget.getAvailable());
+    }
+
+    @Test
+    void backoffCeilingShouldDoubleUpToMaximum() {
+        // Arrange
+        var backoff = new DestinationBackoff("https://collector", new RetrySettings(5, Duration.ofSeconds(1), Duration.ofSeconds(5)));
+
+        // Act & Assert
+        assertEquals(Duration.ofSeconds(1), backoff.getBackoffCeiling(1));
+        assertEquals(Duration.ofSeconds(2), backoff.getBackoffCeiling(2));
+        assertEquals(Duration.ofSeconds(4), backoff.getBackoffCeiling(3));
+        assertEquals(Duration.ofSeconds(5), backoff.getBackoffCeiling(4));
+        assertEquals(Duration.ofSeconds(5), backoff.getBackoffCeiling(100));
+    }
+}
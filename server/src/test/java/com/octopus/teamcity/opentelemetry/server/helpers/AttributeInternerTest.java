@@ -0,0 +1,38 @@
+package com.octopus.teamcity.opentelemetry.server.helpers;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AttributeInternerTest {
+
+    @Test
+    void equalValuesShouldShareOneInstance() {
+        // Arrange
+        var interner = new AttributeInterner(10);
+        var first = interner.value(new String("refs/heads/main"));
+
+        // Act
+        var second = interner.value(new String("refs/heads/main"));
+
+        // Assert
+        assertSame(first, second);
+        assertSame(interner.key("branch"), interner.key("branch"));
+    }
+
+    @Test
+    void valuesPastTheLimitShouldBeUsedAsTheyAre() {
+        // Arrange
+        var interner = new AttributeInterner(1);
+        var first = interner.value(new String("agent-1"));
+        var value = new String("agent-2");
+
+        // Act
+        var interned = interner.value(value);
+
+        // Assert
+        assertSame(value, interned);
+        assertSame(first, interner.value(new String("agent-1")));
+        assertEquals(1, interner.size());
+    }
+}
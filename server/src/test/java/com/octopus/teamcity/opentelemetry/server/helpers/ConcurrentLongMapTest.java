@@ -0,0 +1,43 @@
+package com.octopus.teamcity.opentelemetry.server.helpers;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentLongMapTest {
+
+    @Test
+    void shouldKeepEntriesReachableAsTheyAreAddedAndRemoved() {
+        // Arrange
+        var map = new ConcurrentLongMap<String>();
+        for (long id = 1; id <= 1000; id++)
+            map.computeIfAbsent(id, String::valueOf);
+
+        // Act
+        for (long id = 2; id <= 1000; id += 2)
+            assertEquals(String.valueOf(id), map.remove(id));
+
+        // Assert
+        assertEquals(500, map.size());
+        for (long id = 1; id <= 1000; id++) {
+            if (id % 2 == 0)
+                assertNull(map.get(id));
+            else
+                assertEquals(String.valueOf(id), map.get(id));
+        }
+    }
+
+    @Test
+    void computeIfAbsentShouldReturnTheExistingValue() {
+        // Arrange
+        var map = new ConcurrentLongMap<String>();
+        var first = map.computeIfAbsent(42, key -> "first");
+
+        // Act
+        var second = map.computeIfAbsent(42, key -> "second");
+
+        // Assert
+        assertSame(first, second);
+        assertEquals(1, map.size());
+    }
+}
@@ -0,0 +1,100 @@
+package com.octopus.teamcity.opentelemetry.server.helpers;
+
+import com.octopus.teamcity.opentelemetry.server.endpoints.OTELEndpointFactory;
+import com.octopus.teamcity.opentelemetry.server.processors.SpanProcessorFactory;
+import com.octopus.teamcity.opentelemetry.server.telemetry.PluginTelemetry;
+import jetbrains.buildServer.serverSide.BuildPromotion;
+import jetbrains.buildServer.serverSide.ProjectManager;
+import jetbrains.buildServer.serverSide.SProject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.PLUGIN_NAME;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class HelperPerBuildOTELHelperFactoryTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final PluginTelemetry pluginTelemetry = new PluginTelemetry(null, "test");
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        pluginTelemetry.shutdown();
+    }
+
+    @Test
+    void concurrentCallersForTheSameChainShouldShareOneHelperWithoutBlockingOtherChains() throws Exception {
+        // Arrange
+        var creating = new CountDownLatch(1);
+        var finishCreating = new CountDownLatch(1);
+        var projectManager = mock(ProjectManager.class);
+        var slowProject = project();
+        when(projectManager.findProjectByExternalId("Slow")).thenAnswer(invocation -> {
+            creating.countDown();
+            assertTrue(finishCreating.await(10, TimeUnit.SECONDS));
+            return slowProject;
+        });
+        var fastProject = project();
+        when(projectManager.findProjectByExternalId("Fast")).thenReturn(fastProject);
+        var factory = new HelperPerBuildOTELHelperFactory(projectManager, mock(OTELEndpointFactory.class), mock(SpanProcessorFactory.class), pluginTelemetry);
+
+        // Act
+        var first = executor.submit(() -> factory.getOTELHelper(promotion(1, "Slow")));
+        assertTrue(creating.await(10, TimeUnit.SECONDS));
+        var second = executor.submit(() -> factory.getOTELHelper(promotion(1, "Slow")));
+        var otherChain = factory.getOTELHelper(promotion(2, "Fast"));
+        finishCreating.countDown();
+
+        // Assert
+        assertNotNull(otherChain);
+        assertSame(first.get(10, TimeUnit.SECONDS), second.get(10, TimeUnit.SECONDS));
+        verify(projectManager, times(1)).findProjectByExternalId("Slow");
+    }
+
+    @Test
+    void releaseShouldNotWaitForAHelperThatIsStillBeingCreated() throws Exception {
+        // Arrange
+        var creating = new CountDownLatch(1);
+        var finishCreating = new CountDownLatch(1);
+        var projectManager = mock(ProjectManager.class);
+        var slowProject = project();
+        when(projectManager.findProjectByExternalId("Slow")).thenAnswer(invocation -> {
+            creating.countDown();
+            assertTrue(finishCreating.await(10, TimeUnit.SECONDS));
+            return slowProject;
+        });
+        var factory = new HelperPerBuildOTELHelperFactory(projectManager, mock(OTELEndpointFactory.class), mock(SpanProcessorFactory.class), pluginTelemetry);
+        var first = executor.submit(() -> factory.getOTELHelper(promotion(1, "Slow")));
+        assertTrue(creating.await(10, TimeUnit.SECONDS));
+
+        // Act
+        var release = executor.submit(() -> factory.release(1L));
+
+        // Assert
+        release.get(10, TimeUnit.SECONDS);
+        finishCreating.countDown();
+        assertNotNull(first.get(10, TimeUnit.SECONDS));
+        assertTrue(factory.getHelperSnapshots().isEmpty());
+    }
+
+    private static SProject project() {
+        var project = mock(SProject.class);
+        when(project.getAvailableFeaturesOfType(PLUGIN_NAME)).thenReturn(List.of());
+        return project;
+    }
+
+    private static BuildPromotion promotion(long id, String projectExternalId) {
+        var promotion = mock(BuildPromotion.class);
+        when(promotion.getId()).thenReturn(id);
+        when(promotion.getProjectExternalId()).thenReturn(projectExternalId);
+        return promotion;
+    }
+}
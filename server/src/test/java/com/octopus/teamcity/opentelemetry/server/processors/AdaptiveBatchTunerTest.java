@@ -0,0 +1,130 @@
+package com.octopus.teamcity.opentelemetry.server.processors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveBatchTunerTest {
+
+    private static final int MAX_QUEUE_SIZE = 10000;
+    private static final Duration TARGET_LATENCY = Duration.ofSeconds(1);
+    private AdaptiveBatchSettings settings;
+
+    @BeforeEach
+    void setUp() {
+        this.settings = new AdaptiveBatchSettings(
+                MAX_QUEUE_SIZE,
+                100,
+                1000,
+                Duration.ofMillis(100),
+                Duration.ofSeconds(10),
+                TARGET_LATENCY,
+                Duration.ofSeconds(30),
+                0.2);
+    }
+
+    @Test
+    void failedExportShouldShrinkBatchAndLengthenDelay() {
+        // Arrange
+        var tuner = new AdaptiveBatchTuner(settings, 400, Duration.ofSeconds(1));
+
+        // Act
+        var decision = tuner.onExportCompleted(400, Duration.ofMillis(10).toNanos(), false, 0);
+
+        // Assert
+        assertEquals(AdaptiveBatchTuner.Decision.BACK_OFF, decision);
+        assertEquals(200, tuner.getBatchSize());
+        assertEquals(Duration.ofSeconds(2), tuner.getScheduleDelay());
+    }
+
+    @Test
+    void slowExportShouldBackOff() {
+        // Arrange
+        var tuner = new AdaptiveBatchTuner(settings, 400, Duration.ofSeconds(1));
+
+        // Act
+        var decision = tuner.onExportCompleted(400, TARGET_LATENCY.multipliedBy(3).toNanos(), true, 0);
+
+        // Assert
+        assertEquals(AdaptiveBatchTuner.Decision.BACK_OFF, decision);
+        assertTrue(tuner.getBatchSize() < 400);
+    }
+
+    @Test
+    void fillingQueueShouldGrowBatchAndShortenDelay() {
+        // Arrange
+        var tuner = new AdaptiveBatchTuner(settings, 400, Duration.ofSeconds(1));
+
+        // Act
+        var decision = tuner.onExportCompleted(400, Duration.ofMillis(10).toNanos(), true, MAX_QUEUE_SIZE * 3 / 4);
+
+        // Assert
+        assertEquals(AdaptiveBatchTuner.Decision.SPEED_UP, decision);
+        assertEquals(800, tuner.getBatchSize());
+        assertEquals(Duration.ofMillis(500), tuner.getScheduleDelay());
+    }
+
+    @Test
+    void quietPeriodShouldLengthenDelay() {
+        // Arrange
+        var tuner = new AdaptiveBatchTuner(settings, 400, Duration.ofSeconds(1));
+
+        // Act
+        var decision = tuner.onExportCompleted(5, Duration.ofMillis(10).toNanos(), true, 0);
+
+        // Assert
+        assertEquals(AdaptiveBatchTuner.Decision.SLOW_DOWN, decision);
+        assertEquals(400, tuner.getBatchSize());
+        assertEquals(Duration.ofMillis(1500), tuner.getScheduleDelay());
+    }
+
+    @Test
+    void fullFastBatchesShouldGrowBatchSize() {
+        // Arrange
+        var tuner = new AdaptiveBatchTuner(settings, 400, Duration.ofSeconds(1));
+
+        // Act
+        var decision = tuner.onExportCompleted(400, Duration.ofMillis(10).toNanos(), true, MAX_QUEUE_SIZE / 10);
+
+        // Assert
+        assertEquals(AdaptiveBatchTuner.Decision.GROW_BATCH, decision);
+        assertEquals(500, tuner.getBatchSize());
+    }
+
+    @Test
+    void decisionsShouldStayWithinConfiguredBounds() {
+        // Arrange
+        var tuner = new AdaptiveBatchTuner(settings, 400, Duration.ofSeconds(1));
+
+        // Act
+        for (int i = 0; i < 20; i++) {
+            tuner.onExportCompleted(400, Duration.ofMillis(10).toNanos(), false, 0);
+        }
+
+        // Assert
+        assertEquals(settings.getMinBatchSize(), tuner.getBatchSize());
+        assertEquals(settings.getMaxScheduleDelay(), tuner.getScheduleDelay());
+
+        // Act
+        for (int i = 0; i < 50; i++) {
+            tuner.onExportCompleted(400, Duration.ofMillis(10).toNanos(), true, MAX_QUEUE_SIZE);
+        }
+
+        // Assert
+        assertEquals(settings.getMaxBatchSize(), tuner.getBatchSize());
+        assertEquals(settings.getMinScheduleDelay(), tuner.getScheduleDelay());
+    }
+
+    @Test
+    void initialValuesShouldBeClampedToBounds() {
+        // Act
+        var tuner = new AdaptiveBatchTuner(settings, 1_000_000, Duration.ofMinutes(5));
+
+        // Assert
+        assertEquals(settings.getMaxBatchSize(), tuner.getBatchSize());
+        assertEquals(settings.getMaxScheduleDelay(), tuner.getScheduleDelay());
+    }
+}
@@ -0,0 +1,82 @@
+package com.octopus.teamcity.opentelemetry.server.processors;
+
+import com.octopus.teamcity.opentelemetry.server.TeamCityBuildListener;
+import com.octopus.teamcity.opentelemetry.server.telemetry.MetricSummary;
+import com.octopus.teamcity.opentelemetry.server.telemetry.PluginTelemetry;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpanMetricsProcessorTest {
+
+    private PluginTelemetry pluginTelemetry;
+    private SdkTracerProvider tracerProvider;
+
+    @AfterEach
+    void tearDown() {
+        tracerProvider.close();
+        pluginTelemetry.shutdown();
+    }
+
+    @Test
+    void shouldCountRunsAndErrorsPerBuildConfigurationAndStatus() {
+        // Arrange
+        var tracer = createTracer(100);
+
+        // Act
+        endSpan(tracer, Map.of(ATTRIBUTE_SERVICE_NAME, TeamCityBuildListener.BUILD_SERVICE_NAME, ATTRIBUTE_PROJECT_ID, "Project", ATTRIBUTE_BUILD_TYPE_EXTERNAL_ID, "Project_Build", ATTRIBUTE_SUCCESS_STATUS, "false"));
+        endSpan(tracer, Map.of(ATTRIBUTE_SERVICE_NAME, "$STAGE$", ATTRIBUTE_PROJECT_ID, "Project", ATTRIBUTE_BUILD_TYPE_EXTERNAL_ID, "Project_Build", ATTRIBUTE_BUILD_STEP_STATUS, "NORMAL"));
+        endSpan(tracer, Map.of(ATTRIBUTE_SERVICE_NAME, "$STAGE$", ATTRIBUTE_PROJECT_ID, "Project", ATTRIBUTE_BUILD_TYPE_EXTERNAL_ID, "Project_Build", ATTRIBUTE_BUILD_STEP_STATUS, "NORMAL"));
+        endSpan(tracer, Map.of(ATTRIBUTE_SERVICE_NAME, "tests-execution", ATTRIBUTE_PROJECT_ID, "Project", ATTRIBUTE_BUILD_TYPE_EXTERNAL_ID, "Project_Build"));
+
+        // Assert
+        var summaries = pluginTelemetry.summarise();
+        assertEquals("1", find(summaries, METRIC_PREFIX + ".red.runs", "build_type=Project_Build, kind=build, project=Project, status=failure").getValue());
+        assertEquals("1", find(summaries, METRIC_PREFIX + ".red.errors", "build_type=Project_Build, kind=build, project=Project, status=failure").getValue());
+        assertEquals("2", find(summaries, METRIC_PREFIX + ".red.runs", "build_type=Project_Build, kind=step, project=Project, status=normal, step_type=$STAGE$").getValue());
+        assertEquals(2, summaries.stream().filter(summary -> summary.getName().equals(METRIC_PREFIX + ".red.runs")).count());
+    }
+
+    @Test
+    void shouldCountFurtherBuildConfigurationsTogetherOnceTheSeriesLimitIsReached() {
+        // Arrange
+        var tracer = createTracer(2);
+
+        // Act
+        for (var buildType : List.of("First", "Second", "Third", "Fourth"))
+            endSpan(tracer, Map.of(ATTRIBUTE_SERVICE_NAME, "test-execution", ATTRIBUTE_PROJECT_ID, "Project", ATTRIBUTE_BUILD_TYPE_EXTERNAL_ID, buildType, ATTRIBUTE_TEST_STATUS, "passed"));
+
+        // Assert
+        var summaries = pluginTelemetry.summarise();
+        assertEquals("1", find(summaries, METRIC_PREFIX + ".red.runs", "build_type=First, kind=test, project=Project, status=passed").getValue());
+        assertEquals("2", find(summaries, METRIC_PREFIX + ".red.runs", "build_type=_other, kind=test, project=_other, status=passed").getValue());
+    }
+
+    private Tracer createTracer(int maxSeries) {
+        this.pluginTelemetry = new PluginTelemetry(null, "test");
+        this.tracerProvider = SdkTracerProvider.builder()
+                .addSpanProcessor(new SpanMetricsProcessor(pluginTelemetry, maxSeries))
+                .build();
+        return tracerProvider.get("test");
+    }
+
+    private static void endSpan(Tracer tracer, Map<String, String> attributes) {
+        var span = tracer.spanBuilder("span").startSpan();
+        attributes.forEach(span::setAttribute);
+        span.end();
+    }
+
+    private static MetricSummary find(List<MetricSummary> summaries, String name, String attributes) {
+        return summaries.stream()
+                .filter(summary -> summary.getName().equals(name) && summary.getAttributes().equals(attributes))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No " + name + " {" + attributes + "} in " + summaries.size() + " metrics"));
+    }
+}
@@ -0,0 +1,113 @@
+package com.octopus.teamcity.opentelemetry.server.telemetry;
+
+import jetbrains.buildServer.serverSide.BuildAgentManager;
+import jetbrains.buildServer.serverSide.BuildQueue;
+import jetbrains.buildServer.serverSide.SBuildAgent;
+import jetbrains.buildServer.serverSide.SQueuedBuild;
+import jetbrains.buildServer.serverSide.SRunningBuild;
+import jetbrains.buildServer.serverSide.agentPools.AgentPool;
+import jetbrains.buildServer.serverSide.agentPools.AgentPoolManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.List;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.METRIC_PREFIX;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class BuildQueueMetricsTest {
+
+    private PluginTelemetry pluginTelemetry;
+    private BuildQueue buildQueue;
+    private BuildAgentManager buildAgentManager;
+    private AgentPoolManager agentPoolManager;
+
+    @BeforeEach
+    void setUp() {
+        this.pluginTelemetry = new PluginTelemetry(null, "test");
+        this.buildQueue = mock(BuildQueue.class);
+        this.buildAgentManager = mock(BuildAgentManager.class);
+        this.agentPoolManager = mock(AgentPoolManager.class);
+        var pool = mock(AgentPool.class);
+        when(pool.getName()).thenReturn("Default");
+        when(agentPoolManager.findAgentPoolById(0)).thenReturn(pool);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pluginTelemetry.shutdown();
+    }
+
+    @Test
+    void shouldSummariseTheQueueAndAgentsWhenSampled() {
+        // Arrange
+        var now = System.currentTimeMillis();
+        when(buildQueue.getItems()).thenReturn(List.of(
+                queuedBuild("First", now - 60_000),
+                queuedBuild("First", now - 1_000),
+                queuedBuild("Second", now - 5_000)));
+        doReturn(List.of(agent(true, true), agent(true, false), agent(true, false), agent(false, false)))
+                .when(buildAgentManager).getRegisteredAgents();
+        var metrics = new BuildQueueMetrics(buildQueue, buildAgentManager, agentPoolManager, pluginTelemetry, 10);
+
+        // Act
+        metrics.sample();
+
+        // Assert
+        var summaries = pluginTelemetry.summarise();
+        assertEquals("2", find(summaries, METRIC_PREFIX + ".queue.length", "project=First").getValue());
+        assertEquals("1", find(summaries, METRIC_PREFIX + ".queue.length", "project=Second").getValue());
+        assertTrue(Long.parseLong(find(summaries, METRIC_PREFIX + ".queue.wait.longest", "").getValue().split(" ")[0]) >= 60_000);
+        assertEquals("1", find(summaries, METRIC_PREFIX + ".agents", "pool=Default, state=busy").getValue());
+        assertEquals("2", find(summaries, METRIC_PREFIX + ".agents", "pool=Default, state=idle").getValue());
+        assertEquals("1", find(summaries, METRIC_PREFIX + ".agents", "pool=Default, state=disabled").getValue());
+        for (var queuedBuild : buildQueue.getItems())
+            verify(queuedBuild, never()).getBuildEstimates();
+    }
+
+    @Test
+    void shouldAddUpTheQuietestProjectsOnceThereAreTooMany() {
+        // Arrange
+        var now = System.currentTimeMillis();
+        when(buildQueue.getItems()).thenReturn(List.of(
+                queuedBuild("Busy", now),
+                queuedBuild("Busy", now),
+                queuedBuild("Quiet", now),
+                queuedBuild("Quieter", now)));
+        var metrics = new BuildQueueMetrics(buildQueue, buildAgentManager, agentPoolManager, pluginTelemetry, 1);
+
+        // Act
+        metrics.sample();
+
+        // Assert
+        var summaries = pluginTelemetry.summarise();
+        assertEquals("2", find(summaries, METRIC_PREFIX + ".queue.length", "project=Busy").getValue());
+        assertEquals("2", find(summaries, METRIC_PREFIX + ".queue.length", "project=" + BuildQueueMetrics.OVERFLOW).getValue());
+    }
+
+    private static SQueuedBuild queuedBuild(String project, long queuedAt) {
+        var queuedBuild = mock(SQueuedBuild.class, RETURNS_DEEP_STUBS);
+        when(queuedBuild.getWhenQueued()).thenReturn(new Date(queuedAt));
+        when(queuedBuild.getBuildType().getProjectExternalId()).thenReturn(project);
+        return queuedBuild;
+    }
+
+    private static SBuildAgent agent(boolean enabled, boolean busy) {
+        var agent = mock(SBuildAgent.class);
+        when(agent.getAgentPoolId()).thenReturn(0);
+        when(agent.isEnabled()).thenReturn(enabled);
+        if (busy)
+            when(agent.getRunningBuild()).thenReturn(mock(SRunningBuild.class));
+        return agent;
+    }
+
+    private static MetricSummary find(List<MetricSummary> summaries, String name, String attributes) {
+        return summaries.stream()
+                .filter(summary -> summary.getName().equals(name) && summary.getAttributes().equals(attributes))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No " + name + " {" + attributes + "} in " + summaries.size() + " metrics"));
+    }
+}
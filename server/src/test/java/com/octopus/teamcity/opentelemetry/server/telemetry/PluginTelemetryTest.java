@@ -0,0 +1,89 @@
+package com.octopus.teamcity.opentelemetry.server.telemetry;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.octopus.teamcity.opentelemetry.common.PluginConstants.METRIC_PREFIX;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PluginTelemetryTest {
+
+    private PluginTelemetry pluginTelemetry;
+
+    @BeforeEach
+    void setUp() {
+        this.pluginTelemetry = new PluginTelemetry(null, "test");
+    }
+
+    @AfterEach
+    void tearDown() {
+        pluginTelemetry.shutdown();
+    }
+
+    @Test
+    void summariseShouldIncludeRecordedValuesPerAttributeSet() {
+        // Arrange
+        pluginTelemetry.recordSpansCreated(PluginTelemetry.SPAN_CLASS_TEST, 100);
+        pluginTelemetry.recordSpansCreated(PluginTelemetry.SPAN_CLASS_TEST, 50);
+        pluginTelemetry.recordSpansCreated(PluginTelemetry.SPAN_CLASS_BUILD, 1);
+        pluginTelemetry.recordListenerDuration(PluginTelemetry.EVENT_BUILD_FINISHED, 4_000_000);
+        pluginTelemetry.recordListenerDuration(PluginTelemetry.EVENT_BUILD_FINISHED, 2_000_000);
+
+        // Act
+        var summaries = pluginTelemetry.summarise();
+
+        // Assert
+        assertEquals("150", find(summaries, METRIC_PREFIX + ".plugin.spans.created", "span_class=test").getValue());
+        assertEquals("1", find(summaries, METRIC_PREFIX + ".plugin.spans.created", "span_class=build").getValue());
+        assertEquals("count 2, mean 3.00 ms, max 4.00 ms",
+                find(summaries, METRIC_PREFIX + ".plugin.listener.duration", "event=build_finished").getValue());
+    }
+
+    @Test
+    void queueSizeShouldOnlyIncludeQueuesThatAreStillRegistered() throws Exception {
+        // Arrange
+        var first = pluginTelemetry.registerQueue("first", () -> 10, 100);
+        pluginTelemetry.registerQueue("second", () -> 5, 100);
+
+        // Act
+        first.close();
+
+        // Assert
+        assertEquals(5, pluginTelemetry.getQueuedSpanCount());
+        assertEquals("5", find(pluginTelemetry.summarise(), METRIC_PREFIX + ".plugin.exporter.queue.size", "").getValue());
+    }
+
+    @Test
+    void endpointSnapshotShouldSummariseExportsToThatDestination() {
+        // Arrange
+        pluginTelemetry.registerQueue("http://collector:4317", () -> 25, 100);
+        pluginTelemetry.recordExport("http://collector:4317", 10, 5_000_000, true);
+        pluginTelemetry.recordExport("http://collector:4317", 4, 20_000_000, false);
+        pluginTelemetry.recordExportError("http://collector:4317", "UNAVAILABLE");
+        pluginTelemetry.recordExport("file:/tmp/traces", 1, 1_000_000, true);
+
+        // Act
+        var snapshots = pluginTelemetry.getEndpointSnapshots();
+
+        // Assert
+        assertEquals(2, snapshots.size());
+        var snapshot = snapshots.get(1);
+        assertEquals("http://collector:4317", snapshot.getDestination());
+        assertEquals(10, snapshot.getExportedSpans());
+        assertEquals(4, snapshot.getFailedSpans());
+        assertEquals(25, snapshot.getQueueFillPercent());
+        assertEquals("UNAVAILABLE", snapshot.getLastError());
+        assertEquals(1, snapshot.getRecentLatencyHistogram().get("<= 10 ms"));
+        assertEquals(1, snapshot.getRecentLatencyHistogram().get("<= 50 ms"));
+    }
+
+    private static MetricSummary find(List<MetricSummary> summaries, String name, String attributes) {
+        return summaries.stream()
+                .filter(summary -> summary.getName().equals(name) && summary.getAttributes().equals(attributes))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No " + name + " {" + attributes + "} in " + summaries.size() + " metrics"));
+    }
+}
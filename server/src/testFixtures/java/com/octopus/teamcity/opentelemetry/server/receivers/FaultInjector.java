@@ -0,0 +1,72 @@
+package com.octopus.teamcity.opentelemetry.server.receivers;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Latency and failures to inject into a test receiver's responses. The failure code is protocol specific: a gRPC
+ * status code for the gRPC receiver and an HTTP status code for the HTTP receivers.
+ */
+public class FaultInjector {
+    private volatile Duration latency = Duration.ZERO;
+    private volatile double failureRate;
+    private volatile int failureCode;
+    private final AtomicInteger failuresRemaining = new AtomicInteger();
+
+    FaultInjector(int defaultFailureCode) {
+        this.failureCode = defaultFailureCode;
+    }
+
+    public FaultInjector withLatency(Duration latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * Fail the next <code>count</code> requests, then go back to succeeding (or to the failure rate, if set).
+     */
+    public FaultInjector failNext(int count) {
+        this.failuresRemaining.set(count);
+        return this;
+    }
+
+    public FaultInjector withFailureRate(double failureRate) {
+        if (failureRate < 0 || failureRate > 1)
+            throw new IllegalArgumentException("failureRate must be between 0 and 1");
+        this.failureRate = failureRate;
+        return this;
+    }
+
+    public FaultInjector withFailureCode(int failureCode) {
+        this.failureCode = failureCode;
+        return this;
+    }
+
+    public void reset() {
+        latency = Duration.ZERO;
+        failureRate = 0;
+        failuresRemaining.set(0);
+    }
+
+    public int getFailureCode() {
+        return failureCode;
+    }
+
+    void delay() {
+        var millis = latency.toMillis();
+        if (millis <= 0)
+            return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    boolean shouldFail() {
+        if (failuresRemaining.getAndUpdate(remaining -> Math.max(0, remaining - 1)) > 0)
+            return true;
+        return failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate;
+    }
+}
@@ -0,0 +1,91 @@
+package com.octopus.teamcity.opentelemetry.server.receivers;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Shared plumbing for the receivers that accept spans as an HTTP POST, using the JDK's built-in server.
+ */
+public abstract class HttpTestReceiver extends TestReceiver {
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String path;
+
+    protected HttpTestReceiver(String path) {
+        super(503);
+        this.path = path;
+        this.executor = Executors.newCachedThreadPool();
+        try {
+            this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        server.createContext(path, this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return the base url of the receiver, without the path spans are posted to
+     */
+    public String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public String getEndpoint() {
+        return getBaseUrl() + path;
+    }
+
+    protected abstract List<ReceivedSpan> parse(String contentType, byte[] body) throws IOException;
+
+    protected byte[] successResponse() {
+        return new byte[0];
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            var body = exchange.getRequestBody().readAllBytes();
+            if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                try (var gzip = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                    body = gzip.readAllBytes();
+                }
+            }
+            if (beforeRequest()) {
+                exchange.sendResponseHeaders(faults().getFailureCode(), -1);
+                return;
+            }
+            List<ReceivedSpan> received;
+            try {
+                received = parse(exchange.getRequestHeaders().getFirst("Content-Type"), body);
+            } catch (IOException | RuntimeException e) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            record(received);
+            var response = successResponse();
+            exchange.sendResponseHeaders(response.length == 0 ? 202 : 200, response.length == 0 ? -1 : response.length);
+            if (response.length > 0)
+                exchange.getResponseBody().write(response);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,105 @@
+package com.octopus.teamcity.opentelemetry.server.receivers;
+
+import io.grpc.Grpc;
+import io.grpc.InsecureServerCredentials;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An OTLP/gRPC trace receiver on a random local port. The service is registered by hand with a pass-through
+ * marshaller, so we don't need the generated gRPC stubs, just the protobuf messages.
+ */
+public class OtlpGrpcTestReceiver extends TestReceiver {
+    private static final String SERVICE_NAME = "opentelemetry.proto.collector.trace.v1.TraceService";
+    private static final MethodDescriptor<byte[], byte[]> EXPORT_METHOD = MethodDescriptor.<byte[], byte[]>newBuilder()
+            .setType(MethodDescriptor.MethodType.UNARY)
+            .setFullMethodName(MethodDescriptor.generateFullMethodName(SERVICE_NAME, "Export"))
+            .setRequestMarshaller(new ByteArrayMarshaller())
+            .setResponseMarshaller(new ByteArrayMarshaller())
+            .build();
+
+    private final Server server;
+
+    public OtlpGrpcTestReceiver() {
+        super(Status.Code.UNAVAILABLE.value());
+        var service = ServerServiceDefinition.builder(SERVICE_NAME)
+                .addMethod(EXPORT_METHOD, new ExportHandler())
+                .build();
+        try {
+            this.server = Grpc.newServerBuilderForPort(0, InsecureServerCredentials.create())
+                    .addService(service)
+                    .build()
+                    .start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String getEndpoint() {
+        return "http://localhost:" + server.getPort();
+    }
+
+    @Override
+    public void close() {
+        server.shutdownNow();
+        try {
+            server.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private class ExportHandler implements ServerCallHandler<byte[], byte[]> {
+        @Override
+        public ServerCall.Listener<byte[]> startCall(ServerCall<byte[], byte[]> call, Metadata headers) {
+            call.request(1);
+            return new ServerCall.Listener<>() {
+                @Override
+                public void onMessage(byte[] message) {
+                    if (beforeRequest()) {
+                        call.close(Status.fromCodeValue(faults().getFailureCode()).withDescription("Injected failure"), new Metadata());
+                        return;
+                    }
+                    try {
+                        record(OtlpTraceRequests.parse(message));
+                    } catch (IOException e) {
+                        call.close(Status.INVALID_ARGUMENT.withDescription(e.getMessage()), new Metadata());
+                        return;
+                    }
+                    call.sendHeaders(new Metadata());
+                    call.sendMessage(ExportTraceServiceResponse.getDefaultInstance().toByteArray());
+                    call.close(Status.OK, new Metadata());
+                }
+            };
+        }
+    }
+
+    private static class ByteArrayMarshaller implements MethodDescriptor.Marshaller<byte[]> {
+        @Override
+        public InputStream stream(byte[] value) {
+            return new ByteArrayInputStream(value);
+        }
+
+        @Override
+        public byte[] parse(InputStream stream) {
+            try {
+                return stream.readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.octopus.teamcity.opentelemetry.server.receivers;
+
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceResponse;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * An OTLP/HTTP trace receiver (binary protobuf payloads) on a random local port.
+ */
+public class OtlpHttpTestReceiver extends HttpTestReceiver {
+    public OtlpHttpTestReceiver() {
+        super("/v1/traces");
+    }
+
+    @Override
+    protected List<ReceivedSpan> parse(String contentType, byte[] body) throws IOException {
+        if (contentType != null && !contentType.startsWith("application/x-protobuf"))
+            throw new IOException("Only application/x-protobuf payloads are supported, not " + contentType);
+        return OtlpTraceRequests.parse(body);
+    }
+
+    @Override
+    protected byte[] successResponse() {
+        return ExportTraceServiceResponse.getDefaultInstance().toByteArray();
+    }
+}
@@ -0,0 +1,58 @@
+package com.octopus.teamcity.opentelemetry.server.receivers;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.proto.common.v1.AnyValue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+
+class OtlpTraceRequests {
+    private OtlpTraceRequests() {
+        throw new IllegalStateException("Utility class OtlpTraceRequests should not be instantiated ");
+    }
+
+    static List<ReceivedSpan> parse(byte[] body) throws InvalidProtocolBufferException {
+        var request = ExportTraceServiceRequest.parseFrom(body);
+        var received = new ArrayList<ReceivedSpan>();
+        for (var resourceSpans : request.getResourceSpansList()) {
+            for (var scopeSpans : resourceSpans.getScopeSpansList()) {
+                for (var span : scopeSpans.getSpansList()) {
+                    var attributes = new HashMap<String, String>();
+                    span.getAttributesList().forEach(kv -> attributes.put(kv.getKey(), toString(kv.getValue())));
+                    received.add(new ReceivedSpan(
+                            toHex(span.getTraceId()),
+                            toHex(span.getSpanId()),
+                            toHex(span.getParentSpanId()),
+                            span.getName(),
+                            attributes,
+                            span.getStartTimeUnixNano(),
+                            span.getEndTimeUnixNano()));
+                }
+            }
+        }
+        return received;
+    }
+
+    private static String toHex(ByteString bytes) {
+        return HexFormat.of().formatHex(bytes.toByteArray());
+    }
+
+    private static String toString(AnyValue value) {
+        switch (value.getValueCase()) {
+            case STRING_VALUE:
+                return value.getStringValue();
+            case BOOL_VALUE:
+                return String.valueOf(value.getBoolValue());
+            case INT_VALUE:
+                return String.valueOf(value.getIntValue());
+            case DOUBLE_VALUE:
+                return String.valueOf(value.getDoubleValue());
+            default:
+                return value.toString();
+        }
+    }
+}
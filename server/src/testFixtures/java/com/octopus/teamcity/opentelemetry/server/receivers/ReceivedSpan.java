@@ -0,0 +1,67 @@
+package com.octopus.teamcity.opentelemetry.server.receivers;
+
+import java.util.Map;
+
+/**
+ * A span as seen by one of the test receivers, reduced to the parts the tests assert on, so the same assertions
+ * work regardless of the wire format it arrived in.
+ */
+public class ReceivedSpan {
+    private final String traceId;
+    private final String spanId;
+    private final String parentSpanId;
+    private final String name;
+    private final Map<String, String> attributes;
+    private final long startEpochNanos;
+    private final long endEpochNanos;
+
+    public ReceivedSpan(String traceId, String spanId, String parentSpanId, String name, Map<String, String> attributes, long startEpochNanos, long endEpochNanos) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.name = name;
+        this.attributes = Map.copyOf(attributes);
+        this.startEpochNanos = startEpochNanos;
+        this.endEpochNanos = endEpochNanos;
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    /**
+     * @return the parent's span id, or an empty string for a root span
+     */
+    public String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    public boolean isRoot() {
+        return parentSpanId.isEmpty();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Map<String, String> getAttributes() {
+        return attributes;
+    }
+
+    public long getStartEpochNanos() {
+        return startEpochNanos;
+    }
+
+    public long getEndEpochNanos() {
+        return endEpochNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ReceivedSpan{name='%s', spanId=%s, parentSpanId=%s}", name, spanId, parentSpanId);
+    }
+}
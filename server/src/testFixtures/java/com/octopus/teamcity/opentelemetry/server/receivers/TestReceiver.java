@@ -0,0 +1,121 @@
+package com.octopus.teamcity.opentelemetry.server.receivers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Base for the in-process stand-ins for a collector. Records every span it accepts and can be told to slow down or
+ * fail requests via {@link #faults()}.
+ */
+public abstract class TestReceiver implements AutoCloseable {
+    private final List<ReceivedSpan> spans = new ArrayList<>();
+    private final AtomicInteger acceptedRequests = new AtomicInteger();
+    private final AtomicInteger rejectedRequests = new AtomicInteger();
+    private final FaultInjector faults;
+    private int spanCount;
+    private volatile boolean retainSpans = true;
+
+    protected TestReceiver(int defaultFailureCode) {
+        this.faults = new FaultInjector(defaultFailureCode);
+    }
+
+    /**
+     * @return the url to configure the exporter with
+     */
+    public abstract String getEndpoint();
+
+    public FaultInjector faults() {
+        return faults;
+    }
+
+    /**
+     * Stops keeping the spans received from now on, only counting them, so a long load run doesn't fill the heap
+     * it is trying to measure.
+     */
+    public void countSpansOnly() {
+        this.retainSpans = false;
+    }
+
+    public List<ReceivedSpan> getSpans() {
+        synchronized (spans) {
+            return List.copyOf(spans);
+        }
+    }
+
+    public List<ReceivedSpan> getSpans(Predicate<ReceivedSpan> filter) {
+        return getSpans().stream().filter(filter).collect(Collectors.toList());
+    }
+
+    public int getSpanCount() {
+        synchronized (spans) {
+            return spanCount;
+        }
+    }
+
+    public int getAcceptedRequestCount() {
+        return acceptedRequests.get();
+    }
+
+    public int getRejectedRequestCount() {
+        return rejectedRequests.get();
+    }
+
+    /**
+     * Waits until at least <code>count</code> spans have been received.
+     *
+     * @return whether they arrived before the timeout
+     */
+    public boolean awaitSpans(int count, Duration timeout) throws InterruptedException {
+        var deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (spans) {
+            while (spanCount < count) {
+                var remainingMillis = (deadline - System.nanoTime()) / 1_000_000;
+                if (remainingMillis <= 0)
+                    return false;
+                spans.wait(remainingMillis);
+            }
+            return true;
+        }
+    }
+
+    public void reset() {
+        synchronized (spans) {
+            spans.clear();
+            spanCount = 0;
+        }
+        acceptedRequests.set(0);
+        rejectedRequests.set(0);
+        faults.reset();
+    }
+
+    /**
+     * Applies any injected latency, then decides whether this request should be rejected.
+     *
+     * @return true if the request should be rejected with {@link FaultInjector#getFailureCode()}
+     */
+    protected boolean beforeRequest() {
+        faults.delay();
+        if (faults.shouldFail()) {
+            rejectedRequests.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    protected void record(List<ReceivedSpan> received) {
+        acceptedRequests.incrementAndGet();
+        synchronized (spans) {
+            if (retainSpans)
+                spans.addAll(received);
+            spanCount += received.size();
+            spans.notifyAll();
+        }
+    }
+
+    @Override
+    public abstract void close();
+}
@@ -0,0 +1,42 @@
+package com.octopus.teamcity.opentelemetry.server.receivers;
+
+import zipkin2.Span;
+import zipkin2.codec.SpanBytesDecoder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * A Zipkin v2 span receiver (JSON or proto3 payloads) on a random local port.
+ * <p>
+ * The Zipkin handler appends <code>/api/v2/spans</code> to the configured endpoint, so configure it with
+ * {@link #getBaseUrl()} rather than {@link #getEndpoint()}.
+ */
+public class ZipkinTestReceiver extends HttpTestReceiver {
+    public ZipkinTestReceiver() {
+        super("/api/v2/spans");
+    }
+
+    @Override
+    protected List<ReceivedSpan> parse(String contentType, byte[] body) {
+        var decoder = contentType != null && contentType.startsWith("application/x-protobuf")
+                ? SpanBytesDecoder.PROTO3
+                : SpanBytesDecoder.JSON_V2;
+        return decoder.decodeList(body).stream()
+                .map(ZipkinTestReceiver::toReceivedSpan)
+                .collect(Collectors.toList());
+    }
+
+    private static ReceivedSpan toReceivedSpan(Span span) {
+        var startNanos = TimeUnit.MICROSECONDS.toNanos(span.timestampAsLong());
+        return new ReceivedSpan(
+                span.traceId(),
+                span.id(),
+                span.parentId() == null ? "" : span.parentId(),
+                span.name() == null ? "" : span.name(),
+                span.tags(),
+                startNanos,
+                startNanos + TimeUnit.MICROSECONDS.toNanos(span.durationAsLong()));
+    }
+}
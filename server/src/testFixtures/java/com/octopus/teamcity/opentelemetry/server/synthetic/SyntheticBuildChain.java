@@ -0,0 +1,344 @@
+package com.octopus.teamcity.opentelemetry.server.synthetic;
+
+import jetbrains.buildServer.messages.DefaultMessagesInfo;
+import jetbrains.buildServer.messages.Status;
+import jetbrains.buildServer.serverSide.BuildPromotion;
+import jetbrains.buildServer.serverSide.BuildStatistics;
+import jetbrains.buildServer.serverSide.SBuildType;
+import jetbrains.buildServer.serverSide.SRunningBuild;
+import jetbrains.buildServer.serverSide.STestRun;
+import jetbrains.buildServer.serverSide.artifacts.BuildArtifact;
+import jetbrains.buildServer.serverSide.artifacts.BuildArtifacts;
+import jetbrains.buildServer.serverSide.buildLog.BlockLogMessage;
+import jetbrains.buildServer.serverSide.buildLog.LogMessage;
+import jetbrains.buildServer.serverSide.dependency.BuildDependency;
+import org.mockito.MockSettings;
+import org.mockito.quality.Strictness;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * A root build and its dependencies, mocked well enough to drive <code>TeamCityBuildListener</code> through start
+ * and finish of every build without a TeamCity server.
+ * <p>
+ * The dependencies form a tree below the root, <code>fanOut</code> wide and <code>depth</code> deep. Every build gets
+ * the same number of queue wait reasons, build steps (each a tree of nested blocks), tests (each with a test block in
+ * the log, run in a few parallel lanes) and artifacts, so the number of spans the listener should produce is known up
+ * front (see {@link #getExpectedSpanCount()}). The mocks are
+ * stub-only, so they don't record invocations and can be driven many times (eg from a benchmark) without growing.
+ */
+public class SyntheticBuildChain {
+    public static final String PROJECT_EXTERNAL_ID = "SyntheticProject";
+    public static final String STEP_BLOCK_TYPE = "teamcity-build-step-type";
+    public static final String NESTED_BLOCK_TYPE = "synthetic-nested-block";
+    public static final String TEST_BLOCK_TYPE = "$TEST_BLOCK$";
+    // tests run in this many parallel lanes, starting together when the build starts
+    private static final int TEST_LANES = 4;
+    private static final long STEP_DURATION_MS = 1000;
+
+    private final SRunningBuild root;
+    private final List<SRunningBuild> dependencies;
+    private final int spansPerBuild;
+
+    private SyntheticBuildChain(SRunningBuild root, List<SRunningBuild> dependencies, int spansPerBuild) {
+        this.root = root;
+        this.dependencies = dependencies;
+        this.spansPerBuild = spansPerBuild;
+    }
+
+    public static Builder builder(long rootBuildId) {
+        return new Builder(rootBuildId);
+    }
+
+    public SRunningBuild getRoot() {
+        return root;
+    }
+
+    /**
+     * @return every build below the root, in the order they ran (dependencies before the builds that depend on them)
+     */
+    public List<SRunningBuild> getDependencies() {
+        return dependencies;
+    }
+
+    /**
+     * @return the dependencies in the order they ran, followed by the root build
+     */
+    public List<SRunningBuild> getBuildsInExecutionOrder() {
+        var builds = new ArrayList<SRunningBuild>(dependencies);
+        builds.add(root);
+        return builds;
+    }
+
+    public int getBuildCount() {
+        return dependencies.size() + 1;
+    }
+
+    public int getSpansPerBuild() {
+        return spansPerBuild;
+    }
+
+    public int getExpectedSpanCount() {
+        return spansPerBuild * getBuildCount();
+    }
+
+    public static class Builder {
+        private final long rootBuildId;
+        private long nextBuildId;
+        private long nextQueuedAt;
+        private int fanOut = 3;
+        private int depth = 1;
+        private int stepsPerBuild = 3;
+        private int blockDepth = 1;
+        private int testsPerBuild = 10;
+        private int queueWaitReasonsPerBuild = 1;
+        private int artifactsPerBuild = 0;
+        private long startTime = System.currentTimeMillis() - 3_600_000;
+
+        private Builder(long rootBuildId) {
+            this.rootBuildId = rootBuildId;
+        }
+
+        /**
+         * Shorthand for a single level of <code>count</code> dependencies below the root.
+         */
+        public Builder withDependencies(int count) {
+            this.fanOut = count;
+            this.depth = 1;
+            return this;
+        }
+
+        public Builder withFanOut(int fanOut) {
+            this.fanOut = fanOut;
+            return this;
+        }
+
+        public Builder withDepth(int depth) {
+            this.depth = depth;
+            return this;
+        }
+
+        public Builder withStepsPerBuild(int stepsPerBuild) {
+            this.stepsPerBuild = stepsPerBuild;
+            return this;
+        }
+
+        /**
+         * How many levels of nested blocks each build step has (1 means just the step itself).
+         */
+        public Builder withBlockDepth(int blockDepth) {
+            if (blockDepth < 1)
+                throw new IllegalArgumentException("blockDepth must be at least 1");
+            this.blockDepth = blockDepth;
+            return this;
+        }
+
+        public Builder withTestsPerBuild(int testsPerBuild) {
+            this.testsPerBuild = testsPerBuild;
+            return this;
+        }
+
+        public Builder withQueueWaitReasonsPerBuild(int queueWaitReasonsPerBuild) {
+            this.queueWaitReasonsPerBuild = queueWaitReasonsPerBuild;
+            return this;
+        }
+
+        public Builder withArtifactsPerBuild(int artifactsPerBuild) {
+            this.artifactsPerBuild = artifactsPerBuild;
+            return this;
+        }
+
+        public Builder startingAt(long epochMillis) {
+            this.startTime = epochMillis;
+            return this;
+        }
+
+        public SyntheticBuildChain build() {
+            nextBuildId = rootBuildId + 1;
+            nextQueuedAt = startTime;
+
+            var rootPromotion = promotion(rootBuildId);
+            doReturn(List.of()).when(rootPromotion).getDependedOnMe();
+
+            var dependencies = new ArrayList<SRunningBuild>();
+            addDependencies(rootPromotion, rootPromotion, 1, dependencies);
+            var root = build(rootPromotion, rootPromotion, "Root");
+
+            var testSpans = testsPerBuild > 0 ? testsPerBuild + 1 : 0;
+            return new SyntheticBuildChain(root, dependencies, 1 + queueWaitReasonsPerBuild + stepsPerBuild * blockDepth + testSpans);
+        }
+
+        private void addDependencies(BuildPromotion parent, BuildPromotion rootPromotion, int level, List<SRunningBuild> dependencies) {
+            if (level > depth)
+                return;
+            for (int i = 0; i < fanOut; i++) {
+                var promotion = promotion(nextBuildId++);
+                var dependency = mock(BuildDependency.class, settings());
+                when(dependency.getDependent()).thenReturn(parent);
+                doReturn(List.of(dependency)).when(promotion).getDependedOnMe();
+                // the builds this one depends on run first
+                addDependencies(promotion, rootPromotion, level + 1, dependencies);
+                dependencies.add(build(promotion, rootPromotion, "Dependency " + promotion.getId()));
+            }
+        }
+
+        private BuildPromotion promotion(long id) {
+            var promotion = mock(BuildPromotion.class, settings());
+            when(promotion.getId()).thenReturn(id);
+            when(promotion.getProjectExternalId()).thenReturn(PROJECT_EXTERNAL_ID);
+            when(promotion.isCompositeBuild()).thenReturn(false);
+            return promotion;
+        }
+
+        private SRunningBuild build(BuildPromotion promotion, BuildPromotion rootPromotion, String name) {
+            var build = mock(SRunningBuild.class, settings());
+            var buildId = promotion.getId();
+            var queuedAt = nextQueuedAt;
+            var startedAt = queuedAt + STEP_DURATION_MS;
+            var finishedAt = startedAt + stepsPerBuild * STEP_DURATION_MS;
+            nextQueuedAt = finishedAt + STEP_DURATION_MS;
+
+            when(build.getBuildId()).thenReturn(buildId);
+            when(build.getBuildPromotion()).thenReturn(promotion);
+            when(promotion.findTops()).thenReturn(new BuildPromotion[]{rootPromotion});
+            when(build.isCompositeBuild()).thenReturn(false);
+
+            var buildType = mock(SBuildType.class, settings());
+            when(buildType.getName()).thenReturn(name);
+            when(buildType.getProject().getName()).thenReturn("Synthetic Project");
+            when(build.getBuildType()).thenReturn(buildType);
+            when(build.getBuildTypeId()).thenReturn("bt" + buildId);
+            when(build.getBuildTypeExternalId()).thenReturn("Synthetic_" + name.replace(' ', '_'));
+            when(build.getProjectExternalId()).thenReturn(PROJECT_EXTERNAL_ID);
+            when(build.getBranch().getName()).thenReturn("main");
+            when(build.getRevisions()).thenReturn(List.of());
+            when(build.getAgentName()).thenReturn("agent-1");
+            when(build.getBuildNumber()).thenReturn(String.valueOf(buildId));
+            when(build.getBuildStatus().isSuccessful()).thenReturn(true);
+
+            when(build.getQueuedDate()).thenReturn(new Date(queuedAt));
+            when(build.getClientStartDate()).thenReturn(new Date(startedAt));
+            when(build.convertToServerTime(any(Date.class))).thenAnswer(invocation -> invocation.getArgument(0));
+            when(build.getFinishDate()).thenReturn(new Date(finishedAt));
+
+            Map<String, BigDecimal> statistics = new HashMap<>();
+            for (int i = 0; i < queueWaitReasonsPerBuild; i++)
+                statistics.put("queueWaitReason:Waiting for reason " + i, BigDecimal.valueOf(STEP_DURATION_MS / Math.max(1, queueWaitReasonsPerBuild)));
+            when(build.getStatisticValues()).thenReturn(statistics);
+
+            var tests = new ArrayList<STestRun>(testsPerBuild);
+            for (int i = 0; i < testsPerBuild; i++)
+                tests.add(testRun(testName(name, i), i));
+            var buildStatistics = mock(BuildStatistics.class, settings());
+            when(build.getBuildStatistics(any())).thenReturn(buildStatistics);
+            when(buildStatistics.getAllTests()).thenReturn(tests);
+            when(buildStatistics.getFailedTestCount()).thenReturn(0);
+            when(buildStatistics.getCompilationErrorsCount()).thenReturn(0);
+
+            var blocks = blocks(name, startedAt);
+            // the listener removes non-block messages from this list, so hand out a fresh mutable copy each time
+            when(build.getBuildLog().getFilteredMessages(any())).thenAnswer(invocation -> new ArrayList<>(blocks));
+
+            var artifacts = artifacts();
+            when(build.getArtifacts(any())).thenReturn(artifacts);
+
+            return build;
+        }
+
+        private List<LogMessage> blocks(String buildName, long startedAt) {
+            var buildBlock = mock(BlockLogMessage.class, settings());
+            when(buildBlock.getBlockType()).thenReturn(DefaultMessagesInfo.BLOCK_TYPE_BUILD);
+
+            var blocks = new ArrayList<LogMessage>(stepsPerBuild * blockDepth + testsPerBuild);
+            for (int step = 0; step < stepsPerBuild; step++) {
+                var stepStart = startedAt + step * STEP_DURATION_MS;
+                var parent = buildBlock;
+                for (int level = 0; level < blockDepth; level++) {
+                    // nested blocks sit inside their parent, and (like the real log) come after it
+                    var text = level == 0 ? "Step " + (step + 1) : String.format("Step %d block %d", step + 1, level);
+                    var block = block(parent, level == 0 ? STEP_BLOCK_TYPE : NESTED_BLOCK_TYPE, text, stepStart + level, stepStart + STEP_DURATION_MS - level);
+                    blocks.add(block);
+                    parent = block;
+                }
+            }
+
+            var laneEnds = new long[TEST_LANES];
+            Arrays.fill(laneEnds, startedAt);
+            for (int i = 0; i < testsPerBuild; i++) {
+                var lane = i % TEST_LANES;
+                var testStart = laneEnds[lane];
+                laneEnds[lane] = testStart + testDuration(i);
+                blocks.add(block(buildBlock, TEST_BLOCK_TYPE, testName(buildName, i), testStart, laneEnds[lane]));
+            }
+            return blocks;
+        }
+
+        private BlockLogMessage block(BlockLogMessage parent, String blockType, String text, long startedAt, long finishedAt) {
+            var block = mock(BlockLogMessage.class, settings());
+            when(block.getBlockType()).thenReturn(blockType);
+            when(block.getText()).thenReturn(text);
+            when(block.getBlockDescription()).thenReturn("Synthetic block");
+            when(block.getParent()).thenReturn(parent);
+            when(block.getTimestamp()).thenReturn(new Date(startedAt));
+            when(block.getFinishDate()).thenReturn(new Date(finishedAt));
+            when(block.getStatus()).thenReturn(Status.NORMAL);
+            return block;
+        }
+
+        private static String testName(String buildName, int index) {
+            return String.format("com.example.%s.Test%d", buildName.replace(" ", ""), index);
+        }
+
+        private static int testDuration(int index) {
+            return 10 + index % 1000;
+        }
+
+        private STestRun testRun(String testName, int index) {
+            var testRun = mock(STestRun.class, settings());
+            when(testRun.getDuration()).thenReturn(testDuration(index));
+            when(testRun.getStatus()).thenReturn(Status.NORMAL);
+            when(testRun.isMuted()).thenReturn(false);
+            when(testRun.isIgnored()).thenReturn(false);
+            when(testRun.getTest().getName().getAsString()).thenReturn(testName);
+            return testRun;
+        }
+
+        private BuildArtifacts artifacts() {
+            var artifacts = new ArrayList<BuildArtifact>(artifactsPerBuild);
+            for (int i = 0; i < artifactsPerBuild; i++) {
+                var artifact = mock(BuildArtifact.class, settings());
+                when(artifact.getSize()).thenReturn(1024L * (i + 1));
+                when(artifact.getRelativePath()).thenReturn(String.format("dir%d/artifact%d.zip", i % 10, i));
+                when(artifact.isDirectory()).thenReturn(false);
+                when(artifact.isFile()).thenReturn(true);
+                artifacts.add(artifact);
+            }
+            var buildArtifacts = mock(BuildArtifacts.class, settings());
+            doAnswer(invocation -> {
+                BuildArtifacts.BuildArtifactsProcessor processor = invocation.getArgument(0);
+                for (var artifact : artifacts) {
+                    if (processor.processBuildArtifact(artifact) == BuildArtifacts.BuildArtifactsProcessor.Continuation.BREAK)
+                        break;
+                }
+                return null;
+            }).when(buildArtifacts).iterateArtifacts(any());
+            return buildArtifacts;
+        }
+
+        private static MockSettings settings() {
+            return withSettings()
+                    .defaultAnswer(RETURNS_DEEP_STUBS)
+                    .strictness(Strictness.LENIENT)
+                    .stubOnly();
+        }
+    }
+}